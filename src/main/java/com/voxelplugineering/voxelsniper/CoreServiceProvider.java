@@ -25,6 +25,7 @@ package com.voxelplugineering.voxelsniper;
 
 import com.voxelplugineering.voxelsniper.brush.CommonBrushManager;
 import com.voxelplugineering.voxelsniper.brush.GlobalBrushManager;
+import com.voxelplugineering.voxelsniper.brush.SnipePipeline;
 import com.voxelplugineering.voxelsniper.commands.AliasCommand;
 import com.voxelplugineering.voxelsniper.commands.BrushCommand;
 import com.voxelplugineering.voxelsniper.commands.HelpCommand;
@@ -76,6 +77,7 @@ import com.voxelplugineering.voxelsniper.service.text.TextFormatParser;
 import com.voxelplugineering.voxelsniper.util.AnnotationHelper;
 import com.voxelplugineering.voxelsniper.util.Context;
 import com.voxelplugineering.voxelsniper.util.defaults.DefaultAliasBuilder;
+import com.voxelplugineering.voxelsniper.world.queue.ChangeQueueScheduler;
 import com.voxelplugineering.voxelsniper.world.queue.ChangeQueueTask;
 import com.voxelplugineering.voxelsniper.world.queue.OfflineUndoHandler;
 
@@ -92,6 +94,7 @@ public class CoreServiceProvider
 
     private static final String CONFIG_CONTAINER = "VoxelSniperConfiguration";
     private static final int DEFAULT_CHANGE_INTERVAL = 100;
+    private static final int DEFAULT_SNIPE_INTERVAL = 50;
 
     public CoreServiceProvider()
     {
@@ -342,7 +345,15 @@ public class CoreServiceProvider
         {
             //Gunsmith.getScheduler().startSynchronousTask(aliasTask, configuration.get("aliasInterval", int.class).or(30000));
             int interval = configuration.get("changeInterval", int.class).or(DEFAULT_CHANGE_INTERVAL);
-            sched.get().startSynchronousTask(new ChangeQueueTask(players, configuration), interval);
+            ChangeQueueScheduler scheduler = new ChangeQueueScheduler(configuration, context.get(PermissionProxy.class).orNull());
+            context.put(scheduler);
+            sched.get().startSynchronousTask(new ChangeQueueTask(players, configuration, scheduler), interval);
+            if (configuration.get("asyncSnipes", boolean.class).or(true))
+            {
+                SnipePipeline pipeline = new SnipePipeline(configuration);
+                context.put(pipeline);
+                sched.get().startSynchronousTask(pipeline.getTickExecutor(), configuration.get("snipeInterval", int.class).or(DEFAULT_SNIPE_INTERVAL));
+            }
         }
     }
 
@@ -375,6 +386,11 @@ public class CoreServiceProvider
         {
             sched.get().stopAllTasks();
         }
+        Optional<SnipePipeline> pipeline = context.get(SnipePipeline.class);
+        if (pipeline.isPresent())
+        {
+            pipeline.get().shutdown();
+        }
         AnnotationHelper.clean();
     }
 
@@ -74,6 +74,47 @@ public class BrushVars
         this.context = context;
     }
 
+    /**
+     * Creates a copy of these variables, so that a brush chain may be run with the copy on another
+     * thread while these continue to be changed. The values themselves are shared.
+     * 
+     * @return The copy
+     */
+    public BrushVars copy()
+    {
+        BrushVars copy = new BrushVars();
+        copy.global.putAll(this.global);
+        copy.runtime.putAll(this.runtime);
+        for (Map.Entry<String, Map<String, Object>> e : this.brushes.entrySet())
+        {
+            copy.brushes.put(e.getKey(), Maps.newHashMap(e.getValue()));
+        }
+        copy.context = this.context;
+        return copy;
+    }
+
+    /**
+     * Copies the brush variables of the given variables into these, keeping what a brush chain run
+     * with a copy of these variables stored for later runs. Global and runtime variables are left
+     * unchanged.
+     * 
+     * @param vars The variables to take the brush variables from
+     */
+    public void putBrushVariables(BrushVars vars)
+    {
+        for (Map.Entry<String, Map<String, Object>> e : vars.brushes.entrySet())
+        {
+            Map<String, Object> data = this.brushes.get(e.getKey());
+            if (data == null)
+            {
+                this.brushes.put(e.getKey(), Maps.newHashMap(e.getValue()));
+            } else
+            {
+                data.putAll(e.getValue());
+            }
+        }
+    }
+
     /**
      * Clears the runtime variables to start a new execution run.
      */
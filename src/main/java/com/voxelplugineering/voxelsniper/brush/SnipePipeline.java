@@ -0,0 +1,322 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 The Voxel Plugineering Team
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.voxelplugineering.voxelsniper.brush;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import com.google.common.collect.MapMaker;
+import com.voxelplugineering.voxelsniper.GunsmithLogger;
+import com.voxelplugineering.voxelsniper.entity.Player;
+import com.voxelplugineering.voxelsniper.service.config.Configuration;
+import com.voxelplugineering.voxelsniper.util.Contextable;
+import com.voxelplugineering.voxelsniper.util.TickExecutor;
+import com.voxelplugineering.voxelsniper.world.World;
+import com.voxelplugineering.voxelsniper.world.queue.StagedChanges;
+import com.voxelplugineering.voxelsniper.world.queue.StagedWorld;
+
+/**
+ * Runs snipes in stages so that brushes do not stall the tick thread. A snipe is prepared on the
+ * tick thread, where the target is found and the region around it captured, its brush chain is
+ * then run on a pool of worker threads against a {@link StagedWorld}, and the change queues it
+ * flushes are finally handed to their owners back on the tick thread.
+ * <p>
+ * Each player has at most one snipe in flight, starting a new snipe cancels the last one if its
+ * changes have not yet been handed over.
+ * </p>
+ */
+public class SnipePipeline implements Contextable
+{
+
+    private static final int DEFAULT_THREADS = 2;
+
+    private final TickExecutor tick;
+    private final ExecutorService workers;
+    private final Map<Player, Snipe> snipes = new MapMaker().weakKeys().makeMap();
+
+    /**
+     * Creates a new {@link SnipePipeline} sized from the configuration.
+     * 
+     * @param conf The configuration
+     */
+    public SnipePipeline(Configuration conf)
+    {
+        this(new TickExecutor(), conf.get("snipeWorkerThreads", int.class).or(DEFAULT_THREADS), conf.get("snipeThreadPrefix", String.class)
+                .or("VoxelSniperSnipe-"));
+    }
+
+    /**
+     * Creates a new {@link SnipePipeline}.
+     * 
+     * @param tick The executor for the tick thread, which must be run each tick
+     * @param threads The number of worker threads
+     * @param prefix The prefix of the names of the worker threads
+     */
+    public SnipePipeline(TickExecutor tick, int threads, final String prefix)
+    {
+        checkArgument(threads > 0, "There must be at least one worker thread");
+        this.tick = checkNotNull(tick);
+        this.workers = Executors.newFixedThreadPool(threads, new ThreadFactory()
+        {
+
+            private int count;
+
+            @Override
+            public synchronized Thread newThread(Runnable r)
+            {
+                Thread thr = new Thread(r, prefix + this.count++);
+                thr.setDaemon(true);
+                return thr;
+            }
+        });
+    }
+
+    /**
+     * Gets the executor for the tick thread. It must be run from a synchronous task each tick for
+     * snipes to progress.
+     * 
+     * @return The tick executor
+     */
+    public TickExecutor getTickExecutor()
+    {
+        return this.tick;
+    }
+
+    /**
+     * Starts a new snipe for the given player, cancelling the last snipe of the player if it is
+     * still in flight.
+     * 
+     * @param player The player
+     * @return The new snipe
+     */
+    public Snipe begin(Player player)
+    {
+        checkNotNull(player);
+        Snipe snipe = new Snipe(player);
+        Snipe last = this.snipes.put(player, snipe);
+        if (last != null)
+        {
+            last.cancel();
+        }
+        return snipe;
+    }
+
+    /**
+     * Cancels the snipe in flight for the given player, if any.
+     * 
+     * @param player The player
+     * @return Whether a snipe was cancelled
+     */
+    public boolean cancel(Player player)
+    {
+        Snipe last = this.snipes.remove(player);
+        if (last != null)
+        {
+            last.cancel();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Cancels the given snipe, if it has not already completed.
+     * 
+     * @param snipe The snipe
+     */
+    public void cancel(Snipe snipe)
+    {
+        this.snipes.remove(snipe.player, snipe);
+        snipe.cancel();
+    }
+
+    /**
+     * Gets the number of snipes in flight.
+     * 
+     * @return The number of snipes
+     */
+    public int getActiveSnipes()
+    {
+        return this.snipes.size();
+    }
+
+    /**
+     * Runs the given work on a worker thread. Once it completes the queues flushed from the
+     * snipe's world are handed to their owners on the tick thread, followed by the given commit
+     * task, unless the snipe has been cancelled in the meantime.
+     * 
+     * @param snipe The snipe
+     * @param work The work, typically running a brush chain
+     * @param commit The task to run on the tick thread once the changes are handed over, may be
+     *            null
+     */
+    public void evaluate(final Snipe snipe, final Runnable work, final Runnable commit)
+    {
+        checkNotNull(snipe);
+        checkNotNull(work);
+        if (snipe.isCancelled())
+        {
+            return;
+        }
+        Future<?> future = this.workers.submit(new Runnable()
+        {
+
+            @Override
+            public void run()
+            {
+                try
+                {
+                    if (!snipe.isCancelled())
+                    {
+                        work.run();
+                    }
+                } finally
+                {
+                    SnipePipeline.this.tick.execute(new Runnable()
+                    {
+
+                        @Override
+                        public void run()
+                        {
+                            complete(snipe, commit);
+                        }
+
+                    });
+                }
+            }
+
+        });
+        snipe.setFuture(future);
+    }
+
+    private void complete(Snipe snipe, Runnable commit)
+    {
+        this.snipes.remove(snipe.player, snipe);
+        if (snipe.isCancelled())
+        {
+            snipe.staged.discard();
+            return;
+        }
+        snipe.staged.commit();
+        if (commit != null)
+        {
+            try
+            {
+                commit.run();
+            } catch (Exception e)
+            {
+                GunsmithLogger.getLogger().error(e, "Error completing snipe");
+            }
+        }
+    }
+
+    /**
+     * Stops the worker threads, cancelling every snipe in flight.
+     */
+    public void shutdown()
+    {
+        for (Snipe snipe : this.snipes.values())
+        {
+            snipe.cancel();
+        }
+        this.snipes.clear();
+        this.workers.shutdownNow();
+    }
+
+    /**
+     * A single snipe in flight.
+     */
+    public static final class Snipe
+    {
+
+        private final Player player;
+        private final StagedChanges staged = new StagedChanges();
+        private volatile boolean cancelled = false;
+        private volatile Future<?> future;
+
+        private Snipe(Player player)
+        {
+            this.player = player;
+        }
+
+        /**
+         * Gets the player who made this snipe.
+         * 
+         * @return The player
+         */
+        public Player getPlayer()
+        {
+            return this.player;
+        }
+
+        /**
+         * Creates a view of the given world for this snipe's brush chain to run against.
+         * 
+         * @param world The world, which may include pending changes
+         * @param tick The executor for the tick thread
+         * @return The view
+         */
+        public StagedWorld createWorld(World world, TickExecutor tick)
+        {
+            return new StagedWorld(world, tick, this.staged);
+        }
+
+        /**
+         * Gets whether this snipe has been cancelled.
+         * 
+         * @return Is cancelled
+         */
+        public boolean isCancelled()
+        {
+            return this.cancelled;
+        }
+
+        private void setFuture(Future<?> future)
+        {
+            this.future = future;
+            if (this.cancelled)
+            {
+                future.cancel(true);
+            }
+        }
+
+        private void cancel()
+        {
+            this.cancelled = true;
+            this.staged.discard();
+            Future<?> f = this.future;
+            if (f != null)
+            {
+                f.cancel(true);
+            }
+        }
+
+    }
+
+}
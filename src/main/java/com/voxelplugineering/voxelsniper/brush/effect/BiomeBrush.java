@@ -0,0 +1,84 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 The Voxel Plugineering Team
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.voxelplugineering.voxelsniper.brush.effect;
+
+import com.google.common.base.Optional;
+import com.voxelplugineering.voxelsniper.brush.AbstractBrush;
+import com.voxelplugineering.voxelsniper.brush.BrushKeys;
+import com.voxelplugineering.voxelsniper.brush.BrushPartType;
+import com.voxelplugineering.voxelsniper.brush.BrushVars;
+import com.voxelplugineering.voxelsniper.brush.ExecutionResult;
+import com.voxelplugineering.voxelsniper.entity.Player;
+import com.voxelplugineering.voxelsniper.service.registry.BiomeRegistry;
+import com.voxelplugineering.voxelsniper.shape.Shape;
+import com.voxelplugineering.voxelsniper.world.Block;
+import com.voxelplugineering.voxelsniper.world.World;
+import com.voxelplugineering.voxelsniper.world.biome.Biome;
+
+/**
+ * An effect brush which sets the biome of every column of the shape to the biome named by the
+ * {@code biome} parameter. The biomes are set directly through
+ * {@link World#fillBiome(Biome, com.voxelplugineering.voxelsniper.util.math.Vector3i, Shape)}
+ * rather than through a change queue, and so cannot be undone.
+ */
+public class BiomeBrush extends AbstractBrush
+{
+
+    /**
+     * Creates a new {@link BiomeBrush}.
+     */
+    public BiomeBrush()
+    {
+        super("biome", BrushPartType.EFFECT);
+    }
+
+    @Override
+    public ExecutionResult run(Player player, BrushVars args)
+    {
+        Optional<Shape> s = args.get(BrushKeys.SHAPE, Shape.class);
+        if (!s.isPresent())
+        {
+            player.sendMessage("You must have at least one shape brush before your biome brush.");
+            return ExecutionResult.abortExecution();
+        }
+        Optional<String> name = args.get(BrushKeys.BIOME, String.class);
+        if (!name.isPresent())
+        {
+            player.sendMessage("You must set the biome parameter of the biome brush.");
+            return ExecutionResult.abortExecution();
+        }
+        Optional<Block> l = args.get(BrushKeys.TARGET_BLOCK, Block.class);
+        World world = l.get().getWorld();
+        Optional<BiomeRegistry<?>> biomes = world.getBiomeRegistry();
+        Optional<Biome> biome = biomes.isPresent() ? biomes.get().getBiome(name.get()) : Optional.<Biome> absent();
+        if (!biome.isPresent())
+        {
+            player.sendMessage("Could not find the %s biome.", name.get());
+            return ExecutionResult.abortExecution();
+        }
+        world.fillBiome(biome.get(), l.get().getPosition(), s.get());
+        return ExecutionResult.continueExecution();
+    }
+
+}
@@ -68,7 +68,7 @@ public class MaterialBrush extends AbstractBrush
         }
         Optional<Block> l = args.get(BrushKeys.TARGET_BLOCK, Block.class);
         MaterialShape ms = new SingleMaterialShape(s.get(), m.get());
-        new ShapeChangeQueue(player, l.get().getLocation(), ms).flush();
+        new ShapeChangeQueue(player, l.get().getLocation(), ms).diff().flush();
         return ExecutionResult.continueExecution();
     }
 
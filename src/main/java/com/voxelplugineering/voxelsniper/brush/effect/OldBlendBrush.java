@@ -36,6 +36,8 @@ import com.voxelplugineering.voxelsniper.entity.Player;
 import com.voxelplugineering.voxelsniper.shape.ComplexMaterialShape;
 import com.voxelplugineering.voxelsniper.shape.MaterialShape;
 import com.voxelplugineering.voxelsniper.shape.Shape;
+import com.voxelplugineering.voxelsniper.shape.ShapeCache;
+import com.voxelplugineering.voxelsniper.shape.SpanBuffer;
 import com.voxelplugineering.voxelsniper.shape.csg.CuboidShape;
 import com.voxelplugineering.voxelsniper.shape.csg.PrimativeShapeFactory;
 import com.voxelplugineering.voxelsniper.util.math.Maths;
@@ -43,6 +45,7 @@ import com.voxelplugineering.voxelsniper.util.math.Vector3i;
 import com.voxelplugineering.voxelsniper.world.Block;
 import com.voxelplugineering.voxelsniper.world.Location;
 import com.voxelplugineering.voxelsniper.world.World;
+import com.voxelplugineering.voxelsniper.world.WorldSnapshot;
 import com.voxelplugineering.voxelsniper.world.material.Material;
 import com.voxelplugineering.voxelsniper.world.queue.ShapeChangeQueue;
 
@@ -92,101 +95,92 @@ public class OldBlendBrush extends AbstractBrush
         Optional<Shape> se = PrimativeShapeFactory.createShape(kernelString, size);
         if (!se.isPresent())
         {
-            se = Optional.<Shape> of(new CuboidShape(3, 3, 3, new Vector3i(1, 1, 1)));
+            se = Optional.of(ShapeCache.get(new CuboidShape(3, 3, 3, new Vector3i(1, 1, 1))));
         }
 
         Optional<Block> l = args.get(BrushKeys.TARGET_BLOCK, Block.class);
         MaterialShape ms = new ComplexMaterialShape(s.get(), m.get());
 
-        World world = player.getWorld();
         Location loc = l.get().getLocation();
+        World world = loc.getWorld();
         Shape shape = s.get();
         Shape structElem = se.get();
+        WorldSnapshot snapshot = WorldSnapshot.captureNeighbourhood(world, loc, shape, structElem);
 
         // Extract the location in the world to x0, y0 and z0.
-        for (int x = 0; x < ms.getWidth(); x++)
+        SpanBuffer spans = SpanBuffer.of(shape);
+        SpanBuffer kernel = SpanBuffer.of(structElem);
+        for (int i = 0; i < spans.size(); i++)
         {
+            int x = spans.getX(i);
+            int z = spans.getZ(i);
             int x0 = loc.getFlooredX() + x - shape.getOrigin().getX();
-            for (int y = 0; y < ms.getHeight(); y++)
+            int z0 = loc.getFlooredZ() + z - shape.getOrigin().getZ();
+            for (int y = spans.getMinY(i); y < spans.getMaxY(i); y++)
             {
                 int y0 = loc.getFlooredY() + y - shape.getOrigin().getY();
-                for (int z = 0; z < ms.getLength(); z++)
-                {
-                    int z0 = loc.getFlooredZ() + z - shape.getOrigin().getZ();
-                    if (!shape.get(x, y, z, false))
-                    {
-                        continue;
-                    }
 
-                    // Represents a histogram of material occurrences hit by the
-                    // structuring element.
-                    Map<Material, Integer> mats = Maps.newHashMapWithExpectedSize(10);
+                // Represents a histogram of material occurrences hit by the
+                // structuring element.
+                Map<Material, Integer> mats = Maps.newHashMapWithExpectedSize(10);
 
-                    for (int a = 0; a < structElem.getWidth(); a++)
+                for (int k = 0; k < kernel.size(); k++)
+                {
+                    int a = kernel.getX(k);
+                    int c = kernel.getZ(k);
+                    for (int b = kernel.getMinY(k); b < kernel.getMaxY(k); b++)
                     {
-                        for (int b = 0; b < structElem.getHeight(); b++)
+                        int a0 = a - structElem.getOrigin().getX();
+                        int b0 = b - structElem.getOrigin().getY();
+                        int c0 = c - structElem.getOrigin().getZ();
+                        // Discludes the target block from the
+                        // calculation.
+                        if (!(a0 == 0 && b0 == 0 && c0 == 0))
                         {
-                            for (int c = 0; c < structElem.getLength(); c++)
+                            int clampedY = Maths.clamp(y0 + b0, world.getMinHeight(), world.getMaxHeight());
+                            Material mat = snapshot.getMaterial(x0 + a0, clampedY, z0 + c0).get();
+                            if (mats.containsKey(mat))
+                            {
+                                mats.put(mat, mats.get(mat) + 1);
+                            } else
                             {
-                                if (!structElem.get(a, b, c, false))
-                                {
-                                    continue;
-                                }
-                                int a0 = a - structElem.getOrigin().getX();
-                                int b0 = b - structElem.getOrigin().getY();
-                                int c0 = c - structElem.getOrigin().getZ();
-                                // Discludes the target block from the
-                                // calculation.
-                                if (!(a0 == 0 && b0 == 0 && c0 == 0))
-                                {
-                                    // TODO: Use world bounds instead of
-                                    // hardcoded magical values from Minecraft.
-                                    int clampedY = Maths.clamp(y0 + b0, 0, 255);
-                                    Material mat = world.getBlock(x0 + a0, clampedY, z0 + c0).get().getMaterial();
-                                    if (mats.containsKey(mat))
-                                    {
-                                        mats.put(mat, mats.get(mat) + 1);
-                                    } else
-                                    {
-                                        mats.put(mat, 1);
-                                    }
-                                }
+                                mats.put(mat, 1);
                             }
                         }
                     }
+                }
 
-                    // Select the material which occured the most.
-                    int n = 0;
-                    Material winner = null;
-                    for (Map.Entry<Material, Integer> e : mats.entrySet())
+                // Select the material which occured the most.
+                int n = 0;
+                Material winner = null;
+                for (Map.Entry<Material, Integer> e : mats.entrySet())
+                {
+                    if (e.getValue() > n && !(excludeFluid && e.getKey().isLiquid()))
                     {
-                        if (e.getValue() > n && !(excludeFluid && e.getKey().isLiquid()))
-                        {
-                            winner = e.getKey();
-                            n = e.getValue();
-                        }
+                        winner = e.getKey();
+                        n = e.getValue();
                     }
+                }
 
-                    // If multiple materials occurred the most, the tie check
-                    // will become true.
-                    boolean tie = false;
-                    for (Map.Entry<Material, Integer> e : mats.entrySet())
+                // If multiple materials occurred the most, the tie check
+                // will become true.
+                boolean tie = false;
+                for (Map.Entry<Material, Integer> e : mats.entrySet())
+                {
+                    if (e.getValue() == n && !(excludeFluid && e.getKey().isLiquid()) && !e.getKey().equals(winner))
                     {
-                        if (e.getValue() == n && !(excludeFluid && e.getKey().isLiquid()) && !e.getKey().equals(winner))
-                        {
-                            tie = true;
-                        }
+                        tie = true;
                     }
+                }
 
-                    // If a tie is found, no change is made.
-                    if (!tie)
-                    {
-                        ms.setMaterial(x, y, z, false, winner);
-                    }
+                // If a tie is found, no change is made.
+                if (!tie)
+                {
+                    ms.setMaterial(x, y, z, false, winner);
                 }
             }
         }
-        new ShapeChangeQueue(player, loc, ms).flush();
+        new ShapeChangeQueue(player, loc, ms).diff().flush();
         return ExecutionResult.continueExecution();
     }
 }
@@ -28,7 +28,9 @@ import java.util.Map;
 import com.google.common.base.Optional;
 import com.google.common.collect.Maps;
 import com.voxelplugineering.voxelsniper.util.math.Maths;
+import com.voxelplugineering.voxelsniper.world.BlockVolume;
 import com.voxelplugineering.voxelsniper.world.World;
+import com.voxelplugineering.voxelsniper.world.WorldSnapshot;
 import com.voxelplugineering.voxelsniper.world.material.Material;
 
 public class BlendMaterialOperation implements FilterOperation
@@ -48,14 +50,14 @@ public class BlendMaterialOperation implements FilterOperation
     }
 
     @Override
-    public boolean checkPosition(int x, int y, int z, int dx, int dy, int dz, World w, Material m)
+    public boolean checkPosition(int x, int y, int z, int dx, int dy, int dz, BlockVolume w, Material m)
     {
         if (!(dx == 0 && dy == 0 && dz == 0))
         {
-            // TODO: Use world bounds instead of hardcoded magical values from
-            // Minecraft.
-            int clampedY = Maths.clamp(y + dy, 0, 255);
-            Material mat = w.getBlock(x + dx, clampedY, z + dz).get().getMaterial();
+            World world = w instanceof WorldSnapshot ? ((WorldSnapshot) w).getWorld() : (World) w;
+            int clampedY = Maths.clamp(y + dy, world.getMinHeight(), world.getMaxHeight());
+            // m is the material at the unclamped position
+            Material mat = clampedY == y + dy ? m : w.getBlock(x + dx, clampedY, z + dz).get().getMaterial();
             if (mats.containsKey(mat))
             {
                 mats.put(mat, mats.get(mat) + 1);
@@ -0,0 +1,56 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 The Voxel Plugineering Team
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.voxelplugineering.voxelsniper.brush.effect.morphological;
+
+import com.voxelplugineering.voxelsniper.shape.ComplexShape;
+import com.voxelplugineering.voxelsniper.shape.Morphology;
+import com.voxelplugineering.voxelsniper.shape.Shape;
+
+/**
+ * An effect brush which shrinks the solid blocks within the shape by the kernel, clearing to air.
+ */
+public class ErodeBrush extends MorphologyBrush
+{
+
+    /**
+     * Creates a new {@link ErodeBrush}.
+     */
+    public ErodeBrush()
+    {
+        super("erode", false);
+    }
+
+    @Override
+    protected ComplexShape apply(ComplexShape solid, Shape kernel)
+    {
+        return Morphology.erode(solid, kernel);
+    }
+
+    @Override
+    protected int getSteps()
+    {
+        return 1;
+    }
+
+}
@@ -33,12 +33,15 @@ import com.voxelplugineering.voxelsniper.entity.Player;
 import com.voxelplugineering.voxelsniper.shape.ComplexMaterialShape;
 import com.voxelplugineering.voxelsniper.shape.MaterialShape;
 import com.voxelplugineering.voxelsniper.shape.Shape;
+import com.voxelplugineering.voxelsniper.shape.ShapeCache;
+import com.voxelplugineering.voxelsniper.shape.SpanBuffer;
 import com.voxelplugineering.voxelsniper.shape.csg.CuboidShape;
 import com.voxelplugineering.voxelsniper.shape.csg.PrimativeShapeFactory;
 import com.voxelplugineering.voxelsniper.util.math.Vector3i;
 import com.voxelplugineering.voxelsniper.world.Block;
 import com.voxelplugineering.voxelsniper.world.Location;
 import com.voxelplugineering.voxelsniper.world.World;
+import com.voxelplugineering.voxelsniper.world.WorldSnapshot;
 import com.voxelplugineering.voxelsniper.world.material.Material;
 import com.voxelplugineering.voxelsniper.world.queue.ShapeChangeQueue;
 
@@ -59,6 +62,7 @@ public class FilterBrush extends AbstractBrush
     public FilterBrush(FilterOperation operation)
     {
         super(operation.getName(), BrushPartType.EFFECT);
+        this.operation = operation;
     }
 
     @Override
@@ -90,69 +94,60 @@ public class FilterBrush extends AbstractBrush
         Optional<Shape> se = PrimativeShapeFactory.createShape(kernelString, size);
         if (!se.isPresent())
         {
-            se = Optional.<Shape> of(new CuboidShape(3, 3, 3, new Vector3i(1, 1, 1)));
+            se = Optional.of(ShapeCache.get(new CuboidShape(3, 3, 3, new Vector3i(1, 1, 1))));
         }
 
         Optional<Block> l = args.get(BrushKeys.TARGET_BLOCK, Block.class);
         MaterialShape ms = new ComplexMaterialShape(s.get(), m.get());
 
-        World world = player.getWorld();
         Location loc = l.get().getLocation();
+        World world = loc.getWorld();
         Shape shape = s.get();
         Shape structElem = se.get();
+        WorldSnapshot snapshot = WorldSnapshot.captureNeighbourhood(world, loc, shape, structElem);
 
         // Extract the location in the world to x0, y0 and z0.
-        for (int x = 0; x < ms.getWidth(); x++)
+        SpanBuffer spans = SpanBuffer.of(shape);
+        SpanBuffer kernel = SpanBuffer.of(structElem);
+        for (int i = 0; i < spans.size(); i++)
         {
+            int x = spans.getX(i);
+            int z = spans.getZ(i);
             int x0 = loc.getFlooredX() + x - shape.getOrigin().getX();
-            for (int y = 0; y < ms.getHeight(); y++)
+            int z0 = loc.getFlooredZ() + z - shape.getOrigin().getZ();
+            for (int y = spans.getMinY(i); y < spans.getMaxY(i); y++)
             {
                 int y0 = loc.getFlooredY() + y - shape.getOrigin().getY();
-                for (int z = 0; z < ms.getLength(); z++)
+                for (int k = 0; k < kernel.size(); k++)
                 {
-                    int z0 = loc.getFlooredZ() + z - shape.getOrigin().getZ();
-                    if (!shape.get(x, y, z, false))
+                    int a = kernel.getX(k);
+                    int c = kernel.getZ(k);
+                    for (int b = kernel.getMinY(k); b < kernel.getMaxY(k); b++)
                     {
-                        continue;
-                    }
-                    for (int a = 0; a < structElem.getWidth(); a++)
-                    {
-                        for (int b = 0; b < structElem.getHeight(); b++)
-                        {
-                            for (int c = 0; c < structElem.getLength(); c++)
-                            {
-
-                                if (!structElem.get(a, b, c, false))
-                                {
-                                    continue;
-                                }
-
-                                int a0 = a - structElem.getOrigin().getX();
-                                int b0 = b - structElem.getOrigin().getY();
-                                int c0 = c - structElem.getOrigin().getZ();
-
-                                if (excludeFluid && world.getBlock(x0 + a0, y0 + b0, z0 + c0).get().getMaterial().isLiquid())
-                                {
-                                    continue;
-                                }
+                        int a0 = a - structElem.getOrigin().getX();
+                        int b0 = b - structElem.getOrigin().getY();
+                        int c0 = c - structElem.getOrigin().getZ();
 
-                                // Request visitor to perform check operation on
-                                // relevant voxel.
-                                operation.checkPosition(x0, y0, z0, a0, b0, c0, world, world.getBlock(x0 + a0, y0 + b0, z0 + c0).get().getMaterial());
-                            }
+                        if (excludeFluid && snapshot.getMaterial(x0 + a0, y0 + b0, z0 + c0).get().isLiquid())
+                        {
+                            continue;
                         }
-                    }
 
-                    // Request visitor to decide final material.
-                    if (operation.getResult().isPresent())
-                    {
-                        ms.setMaterial(x, y, z, false, operation.getResult().get());
+                        // Request visitor to perform check operation on
+                        // relevant voxel.
+                        operation.checkPosition(x0, y0, z0, a0, b0, c0, snapshot, snapshot.getMaterial(x0 + a0, y0 + b0, z0 + c0).get());
                     }
-                    operation.reset();
                 }
+
+                // Request visitor to decide final material.
+                if (operation.getResult().isPresent())
+                {
+                    ms.setMaterial(x, y, z, false, operation.getResult().get());
+                }
+                operation.reset();
             }
         }
-        new ShapeChangeQueue(player, loc, ms).flush();
+        new ShapeChangeQueue(player, loc, ms).diff().flush();
         return ExecutionResult.continueExecution();
     }
 }
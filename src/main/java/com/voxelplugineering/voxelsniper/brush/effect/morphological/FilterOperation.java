@@ -24,7 +24,7 @@
 package com.voxelplugineering.voxelsniper.brush.effect.morphological;
 
 import com.google.common.base.Optional;
-import com.voxelplugineering.voxelsniper.world.World;
+import com.voxelplugineering.voxelsniper.world.BlockVolume;
 import com.voxelplugineering.voxelsniper.world.material.Material;
 
 /*
@@ -53,7 +53,7 @@ public interface FilterOperation
      * TODO: Add argument for type of border-check to perform when outside the
      * world's extent.
      */
-    boolean checkPosition(int x, int y, int z, int dx, int dy, int dz, World w, Material m);
+    boolean checkPosition(int x, int y, int z, int dx, int dy, int dz, BlockVolume w, Material m);
 
     /*
      * Provides a material as a result of the morphological operation.
@@ -0,0 +1,215 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 The Voxel Plugineering Team
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.voxelplugineering.voxelsniper.brush.effect.morphological;
+
+import com.google.common.base.Optional;
+import com.voxelplugineering.voxelsniper.brush.AbstractBrush;
+import com.voxelplugineering.voxelsniper.brush.BrushKeys;
+import com.voxelplugineering.voxelsniper.brush.BrushPartType;
+import com.voxelplugineering.voxelsniper.brush.BrushVars;
+import com.voxelplugineering.voxelsniper.brush.ExecutionResult;
+import com.voxelplugineering.voxelsniper.entity.Player;
+import com.voxelplugineering.voxelsniper.shape.ComplexMaterialShape;
+import com.voxelplugineering.voxelsniper.shape.ComplexShape;
+import com.voxelplugineering.voxelsniper.shape.MaterialShape;
+import com.voxelplugineering.voxelsniper.shape.Shape;
+import com.voxelplugineering.voxelsniper.shape.ShapeCache;
+import com.voxelplugineering.voxelsniper.shape.SpanBuffer;
+import com.voxelplugineering.voxelsniper.shape.csg.CuboidShape;
+import com.voxelplugineering.voxelsniper.shape.csg.PrimativeShapeFactory;
+import com.voxelplugineering.voxelsniper.util.math.Vector3i;
+import com.voxelplugineering.voxelsniper.world.Block;
+import com.voxelplugineering.voxelsniper.world.Location;
+import com.voxelplugineering.voxelsniper.world.World;
+import com.voxelplugineering.voxelsniper.world.material.Material;
+import com.voxelplugineering.voxelsniper.world.queue.ShapeChangeQueue;
+
+/**
+ * An effect brush which applies a binary morphological operator to the solid blocks within the
+ * shape. The blocks around the shape are read from the world once into a bitset of solid positions,
+ * the operator is applied with the kernel as the structuring element, and every position within
+ * the shape which changed is either filled with the selected material or cleared to air.
+ */
+public abstract class MorphologyBrush extends AbstractBrush
+{
+
+    private final boolean needsMaterial;
+
+    /**
+     * Sets up a new {@link MorphologyBrush}.
+     * 
+     * @param name The name of the brush
+     * @param needsMaterial Whether the operator can add positions, and therefore requires a
+     *            material
+     */
+    protected MorphologyBrush(String name, boolean needsMaterial)
+    {
+        super(name, BrushPartType.EFFECT);
+        this.needsMaterial = needsMaterial;
+    }
+
+    /**
+     * Applies the operator to the solid positions.
+     * 
+     * @param solid The solid positions
+     * @param kernel The structuring element
+     * @return The solid positions after the operation
+     */
+    protected abstract ComplexShape apply(ComplexShape solid, Shape kernel);
+
+    /**
+     * Gets the number of dilations and erosions performed by {@link #apply}. Each one moves the
+     * influence of the edge of the region read from the world a kernel further in, so the region
+     * is padded by this many kernels.
+     * 
+     * @return The number of steps
+     */
+    protected abstract int getSteps();
+
+    @Override
+    public ExecutionResult run(Player player, BrushVars args)
+    {
+        boolean excludeFluid = true;
+        if (args.has(BrushKeys.EXCLUDE_FLUID))
+        {
+            excludeFluid = args.get(BrushKeys.EXCLUDE_FLUID, Boolean.class).get();
+        }
+
+        Optional<Shape> s = args.get(BrushKeys.SHAPE, Shape.class);
+        if (!s.isPresent())
+        {
+            player.sendMessage("You must have at least one shape brush before your " + this.getName() + " brush.");
+            return ExecutionResult.abortExecution();
+        }
+        Optional<Material> m = args.get(BrushKeys.MATERIAL, Material.class);
+        if (this.needsMaterial && !m.isPresent())
+        {
+            player.sendMessage("You must select a material.");
+            return ExecutionResult.abortExecution();
+        }
+
+        Optional<String> kernelShape = args.get(BrushKeys.KERNEL, String.class);
+        Optional<Double> kernelSize = args.get(BrushKeys.KERNEL_SIZE, Double.class);
+        Optional<Shape> se = PrimativeShapeFactory.createShape(kernelShape.or("voxel"), kernelSize.or(1.0));
+        if (!se.isPresent())
+        {
+            se = Optional.of(ShapeCache.get(new CuboidShape(3, 3, 3, new Vector3i(1, 1, 1))));
+        }
+
+        Optional<Block> l = args.get(BrushKeys.TARGET_BLOCK, Block.class);
+        Location loc = l.get().getLocation();
+        World world = loc.getWorld();
+        Material air = world.getMaterialRegistry().getAirMaterial();
+        Shape shape = s.get();
+        Shape kernel = se.get();
+
+        int pad = getSteps() * Math.max(kernel.getWidth(), Math.max(kernel.getHeight(), kernel.getLength()));
+        Vector3i origin = shape.getOrigin();
+        CuboidShape region =
+                new CuboidShape(shape.getWidth() + 2 * pad, shape.getHeight() + 2 * pad, shape.getLength() + 2 * pad, new Vector3i(
+                        origin.getX() + pad, origin.getY() + pad, origin.getZ() + pad));
+        ComplexShape solid = readSolid(world.getShapeFromWorld(loc, region), air, excludeFluid);
+        ComplexShape result = apply(solid, kernel);
+
+        ComplexShape changed = new ComplexShape(shape.getWidth(), shape.getHeight(), shape.getLength(), origin);
+        ComplexShape removed = new ComplexShape(shape.getWidth(), shape.getHeight(), shape.getLength(), origin);
+        SpanBuffer spans = SpanBuffer.of(shape);
+        for (int i = 0; i < spans.size(); i++)
+        {
+            int x = spans.getX(i);
+            int z = spans.getZ(i);
+            for (int y = spans.getMinY(i); y < spans.getMaxY(i); y++)
+            {
+                boolean before = solid.get(x + pad, y + pad, z + pad, false);
+                boolean after = result.get(x + pad, y + pad, z + pad, false);
+                if (before != after)
+                {
+                    changed.set(x, y, z, false);
+                    if (before)
+                    {
+                        removed.set(x, y, z, false);
+                    }
+                }
+            }
+        }
+
+        MaterialShape ms = new ComplexMaterialShape(changed, m.or(air));
+        SpanBuffer removals = SpanBuffer.of(removed);
+        for (int i = 0; i < removals.size(); i++)
+        {
+            for (int y = removals.getMinY(i); y < removals.getMaxY(i); y++)
+            {
+                ms.setMaterial(removals.getX(i), y, removals.getZ(i), false, air);
+            }
+        }
+        new ShapeChangeQueue(player, loc, ms).diff().flush();
+        return ExecutionResult.continueExecution();
+    }
+
+    /**
+     * Reads the positions of the given region which hold a solid block, that is any block other
+     * than air and, if fluids are excluded, liquids.
+     * 
+     * @param region The blocks of the region
+     * @param air The air material
+     * @param excludeFluid Whether liquids are treated as not solid
+     * @return The solid positions
+     */
+    private static ComplexShape readSolid(MaterialShape region, Material air, boolean excludeFluid)
+    {
+        Material[] palette = region.getPalette();
+        boolean[] solidIds = new boolean[palette.length];
+        for (int i = 0; i < palette.length; i++)
+        {
+            solidIds[i] = palette[i] != null && !palette[i].equals(air) && !(excludeFluid && palette[i].isLiquid());
+        }
+        int width = region.getWidth();
+        int height = region.getHeight();
+        int length = region.getLength();
+        ComplexShape solid = new ComplexShape(width, height, length, region.getOrigin());
+        int[] column = new int[height];
+        for (int x = 0; x < width; x++)
+        {
+            for (int z = 0; z < length; z++)
+            {
+                region.copyIds(column, x, 0, z, 1, height, 1);
+                int start = -1;
+                for (int y = 0; y <= height; y++)
+                {
+                    boolean set = y < height && column[y] != MaterialShape.UNSET_ID && solidIds[column[y]];
+                    if (set && start < 0)
+                    {
+                        start = y;
+                    } else if (!set && start >= 0)
+                    {
+                        solid.fillColumn(x, z, start, y);
+                        start = -1;
+                    }
+                }
+            }
+        }
+        return solid;
+    }
+
+}
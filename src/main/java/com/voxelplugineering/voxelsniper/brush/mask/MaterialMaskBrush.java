@@ -33,8 +33,10 @@ import com.voxelplugineering.voxelsniper.brush.ExecutionResult;
 import com.voxelplugineering.voxelsniper.entity.Player;
 import com.voxelplugineering.voxelsniper.shape.ComplexShape;
 import com.voxelplugineering.voxelsniper.shape.Shape;
+import com.voxelplugineering.voxelsniper.shape.SpanBuffer;
 import com.voxelplugineering.voxelsniper.world.Block;
 import com.voxelplugineering.voxelsniper.world.Location;
+import com.voxelplugineering.voxelsniper.world.WorldSnapshot;
 import com.voxelplugineering.voxelsniper.world.material.Material;
 
 /**
@@ -78,23 +80,20 @@ public class MaterialMaskBrush extends AbstractBrush
             shape = new ComplexShape(s.get());
         }
 
-        for (int x = 0; x < shape.getWidth(); x++)
+        WorldSnapshot snapshot = WorldSnapshot.capture(loc.getWorld(), loc, shape);
+        SpanBuffer spans = SpanBuffer.of(shape);
+        for (int i = 0; i < spans.size(); i++)
         {
+            int x = spans.getX(i);
+            int z = spans.getZ(i);
             int x0 = loc.getFlooredX() + x - shape.getOrigin().getX();
-            for (int y = 0; y < shape.getHeight(); y++)
+            int z0 = loc.getFlooredZ() + z - shape.getOrigin().getZ();
+            for (int y = spans.getMinY(i); y < spans.getMaxY(i); y++)
             {
                 int y0 = loc.getFlooredY() + y - shape.getOrigin().getY();
-                for (int z = 0; z < shape.getLength(); z++)
+                if (!m.get().equals(snapshot.getMaterial(x0, y0, z0).orNull()))
                 {
-                    int z0 = loc.getFlooredZ() + z - shape.getOrigin().getZ();
-                    if (!shape.get(x, y, z, false))
-                    {
-                        continue;
-                    }
-                    if (!m.get().equals(player.getWorld().getBlock(x0, y0, z0).get().getMaterial()))
-                    {
-                        shape.unset(x, y, z, false);
-                    }
+                    shape.unset(x, y, z, false);
                 }
             }
         }
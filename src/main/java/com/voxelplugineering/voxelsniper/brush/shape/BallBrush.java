@@ -31,6 +31,7 @@ import com.voxelplugineering.voxelsniper.brush.BrushVars;
 import com.voxelplugineering.voxelsniper.brush.ExecutionResult;
 import com.voxelplugineering.voxelsniper.entity.Player;
 import com.voxelplugineering.voxelsniper.shape.Shape;
+import com.voxelplugineering.voxelsniper.shape.ShapeCache;
 import com.voxelplugineering.voxelsniper.shape.csg.EllipsoidShape;
 import com.voxelplugineering.voxelsniper.util.math.Vector3i;
 
@@ -53,7 +54,7 @@ public class BallBrush extends AbstractBrush
     {
         double size = args.get(BrushKeys.BRUSH_SIZE, Double.class).get();
         Shape s = new EllipsoidShape(size, size, size, new Vector3i(size, size, size));
-        args.set(BrushContext.RUNTIME, BrushKeys.SHAPE, s);
+        args.set(BrushContext.RUNTIME, BrushKeys.SHAPE, ShapeCache.get(s));
         return ExecutionResult.continueExecution();
     }
 
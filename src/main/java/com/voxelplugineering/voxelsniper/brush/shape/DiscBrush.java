@@ -31,6 +31,7 @@ import com.voxelplugineering.voxelsniper.brush.BrushVars;
 import com.voxelplugineering.voxelsniper.brush.ExecutionResult;
 import com.voxelplugineering.voxelsniper.entity.Player;
 import com.voxelplugineering.voxelsniper.shape.Shape;
+import com.voxelplugineering.voxelsniper.shape.ShapeCache;
 import com.voxelplugineering.voxelsniper.shape.csg.CylinderShape;
 import com.voxelplugineering.voxelsniper.util.Direction;
 import com.voxelplugineering.voxelsniper.util.math.Vector3i;
@@ -76,7 +77,7 @@ public class DiscBrush extends AbstractBrush
         {
             s = new CylinderShape(size, 1, size, new Vector3i(size, 0, size));
         }
-        args.set(BrushContext.RUNTIME, BrushKeys.SHAPE, s);
+        args.set(BrushContext.RUNTIME, BrushKeys.SHAPE, ShapeCache.get(s));
         return ExecutionResult.continueExecution();
     }
 
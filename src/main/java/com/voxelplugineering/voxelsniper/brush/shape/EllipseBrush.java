@@ -31,6 +31,7 @@ import com.voxelplugineering.voxelsniper.brush.BrushVars;
 import com.voxelplugineering.voxelsniper.brush.ExecutionResult;
 import com.voxelplugineering.voxelsniper.entity.Player;
 import com.voxelplugineering.voxelsniper.shape.Shape;
+import com.voxelplugineering.voxelsniper.shape.ShapeCache;
 import com.voxelplugineering.voxelsniper.shape.csg.CylinderShape;
 import com.voxelplugineering.voxelsniper.util.Direction;
 import com.voxelplugineering.voxelsniper.util.math.Vector3i;
@@ -77,7 +78,7 @@ public class EllipseBrush extends AbstractBrush
         {
             s = new CylinderShape(rx, 1, ry, new Vector3i(rx, 0, ry));
         }
-        args.set(BrushContext.RUNTIME, BrushKeys.SHAPE, s);
+        args.set(BrushContext.RUNTIME, BrushKeys.SHAPE, ShapeCache.get(s));
         return ExecutionResult.continueExecution();
     }
 
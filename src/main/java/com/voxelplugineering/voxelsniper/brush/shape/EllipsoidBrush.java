@@ -31,6 +31,7 @@ import com.voxelplugineering.voxelsniper.brush.BrushVars;
 import com.voxelplugineering.voxelsniper.brush.ExecutionResult;
 import com.voxelplugineering.voxelsniper.entity.Player;
 import com.voxelplugineering.voxelsniper.shape.Shape;
+import com.voxelplugineering.voxelsniper.shape.ShapeCache;
 import com.voxelplugineering.voxelsniper.shape.csg.EllipsoidShape;
 import com.voxelplugineering.voxelsniper.util.math.Vector3i;
 
@@ -55,7 +56,7 @@ public class EllipsoidBrush extends AbstractBrush
         double ry = args.get(BrushKeys.RADIUS_Y, Double.class).get();
         double rz = args.get(BrushKeys.RADIUS_Z, Double.class).get();
         Shape s = new EllipsoidShape(rx, ry, rz, new Vector3i(rx, ry, rz));
-        args.set(BrushContext.RUNTIME, BrushKeys.SHAPE, s);
+        args.set(BrushContext.RUNTIME, BrushKeys.SHAPE, ShapeCache.get(s));
         return ExecutionResult.continueExecution();
     }
 
@@ -26,8 +26,10 @@ package com.voxelplugineering.voxelsniper.commands;
 import static com.google.common.base.Preconditions.checkNotNull;
 
 import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
 
+import com.google.common.base.Optional;
 import com.google.common.collect.Maps;
 import com.voxelplugineering.voxelsniper.brush.BrushContext;
 import com.voxelplugineering.voxelsniper.brush.BrushKeys;
@@ -36,6 +38,8 @@ import com.voxelplugineering.voxelsniper.service.command.CommandSender;
 import com.voxelplugineering.voxelsniper.service.config.Configuration;
 import com.voxelplugineering.voxelsniper.service.platform.PlatformProxy;
 import com.voxelplugineering.voxelsniper.util.Context;
+import com.voxelplugineering.voxelsniper.world.queue.ChangeQueueOwner;
+import com.voxelplugineering.voxelsniper.world.queue.ChangeQueueScheduler;
 
 /**
  * Standard brush command to select a brush and provide the necessary arguments to said brush.
@@ -46,6 +50,7 @@ public class VSCommand extends Command
     private static final String EQUALS_SEPARATOR = "=";
 
     private final PlatformProxy platform;
+    private final Context context;
     private final Map<String, SubCommand> subcommands;
 
     /**
@@ -60,6 +65,7 @@ public class VSCommand extends Command
         setPermissions("voxelsniper.command.vs");
         this.subcommands = Maps.newHashMap();
         this.platform = context.getRequired(PlatformProxy.class);
+        this.context = context;
         setupSubcommands();
     }
 
@@ -168,6 +174,50 @@ public class VSCommand extends Command
                 return "  /vs range # -- sets maximum range";
             }
 
+        });
+        this.subcommands.put("queue", new SubCommand(getConfig(), this.platform)
+        {
+
+            @Override
+            boolean execute(CommandSender sender, String[] args)
+            {
+                Optional<ChangeQueueScheduler> scheduler = VSCommand.this.context.get(ChangeQueueScheduler.class);
+                if (!scheduler.isPresent())
+                {
+                    sender.sendMessage("Changes are not being applied.");
+                    return true;
+                }
+                List<ChangeQueueOwner> senders = scheduler.get().getActiveSenders();
+                // only admins may see the queues of other players
+                boolean all = !sender.isPlayer() || getPerms().hasPermission((Player) sender, "voxelsniper.command.vs.queue.all");
+                if (all)
+                {
+                    sender.sendMessage("%d players with pending changes", senders.size());
+                } else if (!senders.contains(sender))
+                {
+                    sender.sendMessage("You have no pending changes.");
+                    return true;
+                }
+                for (ChangeQueueOwner owner : senders)
+                {
+                    if (!all && owner != sender)
+                    {
+                        continue;
+                    }
+                    String name = owner instanceof Player ? ((Player) owner).getName() : owner.toString();
+                    sender.sendMessage("  %s: %d queues, weight %.1f, waited %d ms, %d changes applied", name,
+                            scheduler.get().getQueueDepth(owner), scheduler.get().getWeight(owner),
+                            scheduler.get().getWaitTime(owner) / 1000000, scheduler.get().getServedChanges(owner));
+                }
+                return true;
+            }
+
+            @Override
+            String getHelp()
+            {
+                return "  /vs queue -- displays your pending changes, or those of each player with voxelsniper.command.vs.queue.all";
+            }
+
         });
         /*this.subcommands.put("unittest", new SubCommand(this.config, this.platform)
         {
@@ -35,6 +35,8 @@ public class BaseConfiguration extends ConfigurationContainer
     int minimumWorldDepth = 0;
     int maximumWorldHeight = 255;
     double rayTraceStep = 0.2;
+    boolean overlayAllPendingChanges = false;
+    boolean coalescePendingChanges = true;
 
     String defaultBiomeName = "plains";
     String defaultMaterialName = "air";
@@ -42,6 +44,7 @@ public class BaseConfiguration extends ConfigurationContainer
     String playerSysVarName = "__PLAYER__";
     String brushArgumentRegex = "([\\S&&[^\\{]]+)[\\s]*(?:((?:\\{[^\\}]*\\}[\\s]*)+))?";
     String eventBusThreadPrefix = "VoxelSniperEventBus-";
+    String snipeThreadPrefix = "VoxelSniperSnipe-";
 
     String originVariable = "origin";
     String yawVariable = "yaw";
@@ -51,5 +54,8 @@ public class BaseConfiguration extends ConfigurationContainer
 
     int aliasInterval = 30000;
     int changeInterval = 100;
+    int snipeInterval = 50;
+    int snipeWorkerThreads = 2;
+    boolean asyncSnipes = true;
 
 }
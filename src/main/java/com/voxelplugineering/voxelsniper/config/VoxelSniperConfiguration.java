@@ -35,6 +35,9 @@ public class VoxelSniperConfiguration extends ConfigurationContainer
     // Default constants
     double rayTraceRange = 250;
     int blockChangesPerSecond = 80000;
+    double changeTimeBudget = 8;
+    double defaultChangeWeight = 1;
+    int changeAgingPeriod = 1000;
     int undoHistorySize = 20;
     int statusMessageThreshold = 80000;
     String playerDataDirectory = "players/";
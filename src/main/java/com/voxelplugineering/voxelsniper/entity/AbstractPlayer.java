@@ -25,10 +25,12 @@ package com.voxelplugineering.voxelsniper.entity;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 
+import java.util.Collections;
+import java.util.Deque;
 import java.util.LinkedList;
-import java.util.Queue;
 
 import com.google.common.base.Optional;
+import com.google.common.collect.Lists;
 import com.voxelplugineering.voxelsniper.GunsmithLogger;
 import com.voxelplugineering.voxelsniper.brush.Brush;
 import com.voxelplugineering.voxelsniper.brush.BrushChain;
@@ -46,7 +48,9 @@ import com.voxelplugineering.voxelsniper.service.persistence.DataSourceReader;
 import com.voxelplugineering.voxelsniper.util.Context;
 import com.voxelplugineering.voxelsniper.world.material.Material;
 import com.voxelplugineering.voxelsniper.world.queue.ChangeQueue;
+import com.voxelplugineering.voxelsniper.world.queue.ChangeQueueScheduler;
 import com.voxelplugineering.voxelsniper.world.queue.CommonUndoQueue;
+import com.voxelplugineering.voxelsniper.world.queue.DiffChangeQueue;
 import com.voxelplugineering.voxelsniper.world.queue.UndoQueue;
 
 /**
@@ -58,11 +62,14 @@ public abstract class AbstractPlayer<T> extends AbstractEntity<T> implements Pla
 {
 
     private final Configuration conf;
+    private final Context context;
 
     private BrushManager personalBrushManager;
     private BrushChain currentBrush;
     private BrushVars brushVariables;
-    private Queue<ChangeQueue> pending;
+    private final Deque<ChangeQueue> pending = new LinkedList<ChangeQueue>();
+    private boolean coalesce;
+    private boolean uncoalesced = false;
     private AliasHandler personalAliasHandler;
     private UndoQueue history;
 
@@ -76,10 +83,11 @@ public abstract class AbstractPlayer<T> extends AbstractEntity<T> implements Pla
     protected AbstractPlayer(T player, BrushManager parentBrushManager, Context context)
     {
         super(player);
+        this.context = context;
         this.conf = context.getRequired(Configuration.class);
         this.personalBrushManager = new CommonBrushManager(parentBrushManager);
         this.brushVariables = new BrushVars();
-        this.pending = new LinkedList<ChangeQueue>();
+        this.coalesce = this.conf.get("coalescePendingChanges", boolean.class).or(true);
         boolean caseSensitiveAliases = this.conf.get("caseSensitiveAliases", boolean.class).or(false);
         this.personalAliasHandler = new CommonAliasHandler(this, context.getRequired(GlobalAliasHandler.class), caseSensitiveAliases);
         this.history = new CommonUndoQueue(this);
@@ -94,10 +102,11 @@ public abstract class AbstractPlayer<T> extends AbstractEntity<T> implements Pla
     protected AbstractPlayer(T player, Context context)
     {
         super(player);
+        this.context = context;
         this.conf = context.getRequired(Configuration.class);
         this.personalBrushManager = new CommonBrushManager(context.getRequired(GlobalBrushManager.class));
         this.brushVariables = new BrushVars();
-        this.pending = new LinkedList<ChangeQueue>();
+        this.coalesce = this.conf.get("coalescePendingChanges", boolean.class).or(true);
         boolean caseSensitiveAliases = this.conf.get("caseSensitiveAliases", boolean.class).or(false);
         this.personalAliasHandler = new CommonAliasHandler(this, context.getRequired(GlobalAliasHandler.class), caseSensitiveAliases);
         this.history = new CommonUndoQueue(this);
@@ -214,29 +223,69 @@ public abstract class AbstractPlayer<T> extends AbstractEntity<T> implements Pla
     @Override
     public boolean hasPendingChanges()
     {
-        return this.pending.size() != 0;
+        synchronized (this.pending)
+        {
+            return !this.pending.isEmpty();
+        }
     }
 
     @Override
     public Optional<ChangeQueue> getNextPendingChange()
     {
-        return Optional.fromNullable(this.pending.peek());
+        synchronized (this.pending)
+        {
+            if (this.uncoalesced)
+            {
+                // changes flushed since the last call which have not started are merged so that
+                // overlapping snipes write each block once
+                this.uncoalesced = false;
+                DiffChangeQueue.coalesce(this.pending);
+            }
+            return Optional.fromNullable(this.pending.peek());
+        }
+    }
+
+    /**
+     * Gets a copy of the pending change queues taken under the lock guarding them, so that it may
+     * be iterated from any thread while the queues are applied on the tick thread.
+     * 
+     * @return The pending change queues
+     */
+    @Override
+    public Iterable<ChangeQueue> getPendingChanges()
+    {
+        synchronized (this.pending)
+        {
+            return Collections.unmodifiableList(Lists.newArrayList(this.pending));
+        }
     }
 
     @Override
     public void addPending(ChangeQueue queue)
     {
         checkNotNull(queue, "ChangeQueue cannot be null");
-        queue.reset();
-        this.pending.add(queue);
+        synchronized (this.pending)
+        {
+            queue.reset();
+            this.pending.add(queue);
+            this.uncoalesced = this.coalesce;
+        }
+        Optional<ChangeQueueScheduler> scheduler = this.context.get(ChangeQueueScheduler.class);
+        if (scheduler.isPresent())
+        {
+            scheduler.get().activate(this);
+        }
     }
 
     @Override
     public void clearNextPending(boolean force)
     {
-        if (!this.pending.isEmpty() && (this.pending.peek().isFinished() || force))
+        synchronized (this.pending)
         {
-            this.pending.remove();
+            if (!this.pending.isEmpty() && (this.pending.peek().isFinished() || force))
+            {
+                this.pending.remove();
+            }
         }
     }
 
@@ -23,11 +23,17 @@
  */
 package com.voxelplugineering.voxelsniper.event.handler;
 
+import java.util.Collections;
+import java.util.concurrent.CancellationException;
+
+import com.google.common.base.Optional;
 import com.google.common.eventbus.DeadEvent;
 import com.voxelplugineering.voxelsniper.GunsmithLogger;
+import com.voxelplugineering.voxelsniper.brush.BrushChain;
 import com.voxelplugineering.voxelsniper.brush.BrushContext;
 import com.voxelplugineering.voxelsniper.brush.BrushKeys;
 import com.voxelplugineering.voxelsniper.brush.BrushVars;
+import com.voxelplugineering.voxelsniper.brush.SnipePipeline;
 import com.voxelplugineering.voxelsniper.entity.Player;
 import com.voxelplugineering.voxelsniper.event.SnipeEvent;
 import com.voxelplugineering.voxelsniper.event.SniperEvent;
@@ -40,8 +46,15 @@ import com.voxelplugineering.voxelsniper.service.registry.PlayerRegistry;
 import com.voxelplugineering.voxelsniper.util.Context;
 import com.voxelplugineering.voxelsniper.util.RayTrace;
 import com.voxelplugineering.voxelsniper.util.math.Vector3d;
+import com.voxelplugineering.voxelsniper.util.math.Vector3i;
+import com.voxelplugineering.voxelsniper.world.Block;
+import com.voxelplugineering.voxelsniper.world.CommonBlock;
+import com.voxelplugineering.voxelsniper.world.CommonLocation;
 import com.voxelplugineering.voxelsniper.world.Location;
+import com.voxelplugineering.voxelsniper.world.World;
 import com.voxelplugineering.voxelsniper.world.queue.OfflineUndoHandler;
+import com.voxelplugineering.voxelsniper.world.queue.PendingChangeWorld;
+import com.voxelplugineering.voxelsniper.world.queue.StagedWorld;
 
 /**
  * An event handler for the default behavior for events.
@@ -53,6 +66,7 @@ public class CommonEventHandler
     private final PlayerRegistry<?> players;
     private final OfflineUndoHandler undo;
     private final PermissionProxy perms;
+    private final Context context;
 
     //private final String playerFolderName = this.conf.get("playerDataDirectory", String.class).or("players/");
     //private final String aliasFile = this.conf.get("aliasesFileName", String.class).or("aliases.json");
@@ -70,6 +84,7 @@ public class CommonEventHandler
         this.players = context.getRequired(PlayerRegistry.class);
         this.undo = context.getRequired(OfflineUndoHandler.class);
         this.perms = context.getRequired(PermissionProxy.class);
+        this.context = context;
 
         this.rayTraceRange = this.conf.get("rayTraceRange", Double.class).or(250.0);
     }
@@ -138,6 +153,11 @@ public class CommonEventHandler
      * Processes the given {@link com.voxelplugineering.voxelsniper.event.SnipeEvent} and
      * performs all necessary checks of the event. This event handler is supports asynchronous
      * callback.
+     * <p>
+     * If a {@link SnipePipeline} is available the target is found on the tick thread and the brush
+     * is run on a worker thread against a staged view of the world, otherwise the snipe is
+     * performed entirely on the calling thread.
+     * </p>
      * 
      * @param event the snipe event to perform
      */
@@ -149,43 +169,23 @@ public class CommonEventHandler
         {
             return;
         }
+        Optional<SnipePipeline> pipeline = this.context.get(SnipePipeline.class);
+        if (pipeline.isPresent())
+        {
+            stage(pipeline.get(), event);
+            return;
+        }
         boolean attemptedNullAction = false;
         try
         {
-            Location location = sniper.getLocation();
-            double yaw = event.getYaw();
-            double pitch = event.getPitch();
-            //TODO move min/max values form conf to world
-            int minY = this.conf.get("minimumWorldDepth", int.class).or(0);
-            int maxY = this.conf.get("maximumWorldHeight", int.class).or(255);
-            double step = this.conf.get("rayTraceStep", double.class).or(0.2);
-            Vector3d eyeOffs = new Vector3d(0, this.conf.get("playerEyeHeight", double.class).or(1.62), 0);
-            RayTrace ray = new RayTrace(location, yaw, pitch, this.rayTraceRange, minY, maxY, step, eyeOffs);
-            double range = this.rayTraceRange;
-            if (sniper.getBrushVars().has(BrushKeys.RANGE))
-            {
-                range = sniper.getBrushVars().get(BrushKeys.RANGE, Double.class).get();
-            }
-            ray.setRange(range);
-            ray.trace();
-
+            Location location = overlay(sniper);
+            RayTrace ray = trace(sniper, location, event);
             if (ray.getTargetBlock() == null)
             {
                 attemptedNullAction = true;
             }
             BrushVars vars = sniper.getBrushVars();
-            vars.clearRuntime();
-            vars.set(BrushContext.RUNTIME, BrushKeys.ORIGIN, location);
-            vars.set(BrushContext.RUNTIME, BrushKeys.YAW, yaw);
-            vars.set(BrushContext.RUNTIME, BrushKeys.PITCH, pitch);
-            vars.set(BrushContext.RUNTIME, BrushKeys.TARGET_BLOCK, ray.getTargetBlock());
-            vars.set(BrushContext.RUNTIME, BrushKeys.TARGET_FACE, ray.getTargetFace());
-            vars.set(BrushContext.RUNTIME, BrushKeys.LAST_BLOCK, ray.getLastBlock());
-            vars.set(BrushContext.RUNTIME, BrushKeys.LAST_FACE, ray.getLastFace());
-            vars.set(BrushContext.RUNTIME, BrushKeys.ACTION, event.getAction());
-            vars.set(BrushContext.RUNTIME, BrushKeys.LENGTH, ray.getLength());
-            //TODO move player to the global context not runtime
-            vars.set(BrushContext.RUNTIME, BrushKeys.PLAYER, sniper);
+            setRuntime(vars, event, location, ray, ray.getTargetBlock(), ray.getLastBlock());
             //Gunsmith.getLogger().info("Snipe at " + ray.getTargetBlock().getLocation().toString());
             sniper.getCurrentBrush().run(sniper, vars);
         } catch (Throwable e)
@@ -198,6 +198,170 @@ public class CommonEventHandler
         }
     }
 
+    /**
+     * Finds the target of the snipe on the tick thread and then hands the brush chain to the
+     * pipeline to be run against a staged view of the world around the target.
+     * 
+     * @param pipeline The pipeline
+     * @param event The snipe event
+     */
+    private void stage(final SnipePipeline pipeline, final SnipeEvent event)
+    {
+        final Player sniper = event.getSniper();
+        final SnipePipeline.Snipe snipe = pipeline.begin(sniper);
+        pipeline.getTickExecutor().execute(new Runnable()
+        {
+
+            @Override
+            public void run()
+            {
+                if (snipe.isCancelled())
+                {
+                    return;
+                }
+                final BrushVars vars;
+                final BrushChain brush;
+                final boolean attemptedNullAction;
+                try
+                {
+                    Location origin = overlay(sniper);
+                    RayTrace ray = trace(sniper, origin, event);
+                    attemptedNullAction = ray.getTargetBlock() == null;
+                    StagedWorld world = snipe.createWorld(origin.getWorld(), pipeline.getTickExecutor());
+                    origin = new CommonLocation(world, origin.getX(), origin.getY(), origin.getZ());
+                    Block target = rebase(ray.getTargetBlock(), world);
+                    vars = sniper.getBrushVars().copy();
+                    if (target != null)
+                    {
+                        int radius = (int) Math.ceil(vars.get(BrushKeys.BRUSH_SIZE, Double.class).or(0.0))
+                                + (int) Math.ceil(vars.get(BrushKeys.KERNEL_SIZE, Double.class).or(1.0)) + 2;
+                        Vector3i pos = target.getPosition();
+                        world.prefetch(pos.add(new Vector3i(-radius, -radius, -radius)), pos.add(new Vector3i(radius, radius, radius)));
+                    }
+                    setRuntime(vars, event, origin, ray, target, rebase(ray.getLastBlock(), world));
+                    brush = sniper.getCurrentBrush();
+                } catch (Throwable e)
+                {
+                    pipeline.cancel(snipe);
+                    sniper.sendMessage("Error executing brush, see console for more details.");
+                    GunsmithLogger.getLogger().error(e, "Error executing brush");
+                    return;
+                }
+                pipeline.evaluate(snipe, new Runnable()
+                {
+
+                    @Override
+                    public void run()
+                    {
+                        try
+                        {
+                            brush.run(sniper, vars);
+                        } catch (CancellationException ignored)
+                        {
+                            // superseded by a later snipe
+                        } catch (Throwable e)
+                        {
+                            if (!attemptedNullAction && !snipe.isCancelled())
+                            {
+                                sniper.sendMessage("Error executing brush, see console for more details.");
+                                GunsmithLogger.getLogger().error(e, "Error executing brush");
+                            }
+                        }
+                    }
+
+                }, new Runnable()
+                {
+
+                    @Override
+                    public void run()
+                    {
+                        sniper.getBrushVars().putBrushVariables(vars);
+                    }
+
+                });
+            }
+
+        });
+    }
+
+    /**
+     * Gets the location of the sniper in a view of the world which includes pending changes. When
+     * snipes are not staged this runs on the event thread, which is safe as the view is built from
+     * copies of the pending queues each owner takes under its own lock.
+     * 
+     * @param sniper The sniper
+     * @return The location
+     */
+    private Location overlay(Player sniper)
+    {
+        Location location = sniper.getLocation();
+        // read the world as it will be once the pending changes have been applied
+        World world;
+        if (this.conf.get("overlayAllPendingChanges", boolean.class).or(false))
+        {
+            world = PendingChangeWorld.overlay(location.getWorld(), this.players.getPlayers());
+        } else
+        {
+            world = PendingChangeWorld.overlay(location.getWorld(), Collections.singleton(sniper));
+        }
+        if (world != location.getWorld())
+        {
+            location = new CommonLocation(world, location.getX(), location.getY(), location.getZ());
+        }
+        return location;
+    }
+
+    /**
+     * Traces the line of sight of the sniper from the given location.
+     * 
+     * @param sniper The sniper
+     * @param location The location of the sniper
+     * @param event The snipe event
+     * @return The completed ray trace
+     */
+    private RayTrace trace(Player sniper, Location location, SnipeEvent event)
+    {
+        int minY = location.getWorld().getMinHeight();
+        int maxY = location.getWorld().getMaxHeight();
+        double step = this.conf.get("rayTraceStep", double.class).or(0.2);
+        Vector3d eyeOffs = new Vector3d(0, this.conf.get("playerEyeHeight", double.class).or(1.62), 0);
+        RayTrace ray = new RayTrace(location, event.getYaw(), event.getPitch(), this.rayTraceRange, minY, maxY, step, eyeOffs);
+        double range = this.rayTraceRange;
+        if (sniper.getBrushVars().has(BrushKeys.RANGE))
+        {
+            range = sniper.getBrushVars().get(BrushKeys.RANGE, Double.class).get();
+        }
+        ray.setRange(range);
+        ray.trace();
+        return ray;
+    }
+
+    private static void setRuntime(BrushVars vars, SnipeEvent event, Location origin, RayTrace ray, Block target, Block last)
+    {
+        vars.clearRuntime();
+        vars.set(BrushContext.RUNTIME, BrushKeys.ORIGIN, origin);
+        vars.set(BrushContext.RUNTIME, BrushKeys.YAW, event.getYaw());
+        vars.set(BrushContext.RUNTIME, BrushKeys.PITCH, event.getPitch());
+        vars.set(BrushContext.RUNTIME, BrushKeys.TARGET_BLOCK, target);
+        vars.set(BrushContext.RUNTIME, BrushKeys.TARGET_FACE, ray.getTargetFace());
+        vars.set(BrushContext.RUNTIME, BrushKeys.LAST_BLOCK, last);
+        vars.set(BrushContext.RUNTIME, BrushKeys.LAST_FACE, ray.getLastFace());
+        vars.set(BrushContext.RUNTIME, BrushKeys.ACTION, event.getAction());
+        vars.set(BrushContext.RUNTIME, BrushKeys.LENGTH, ray.getLength());
+        //TODO move player to the global context not runtime
+        vars.set(BrushContext.RUNTIME, BrushKeys.PLAYER, event.getSniper());
+    }
+
+    private static Block rebase(Block block, World world)
+    {
+        if (block == null)
+        {
+            return null;
+        }
+        Location loc = block.getLocation();
+        return new CommonBlock(new CommonLocation(world, loc.getX(), loc.getY(), loc.getZ()), block.getMaterial());
+    }
+
     /**
      * Reports on unhandled (aka. dead) events on the event bus.
      * 
@@ -45,6 +45,7 @@ public class WeakRegistry<K, V> implements Registry<K, V>
 
     private final Map<K, V> registry;
     private final Map<String, K> nameRegistry;
+    private final Map<V, String> valueNames;
 
     private boolean caseSensitiveKeys = true;
 
@@ -55,6 +56,7 @@ public class WeakRegistry<K, V> implements Registry<K, V>
     {
         this.registry = new MapMaker().weakKeys().makeMap();
         this.nameRegistry = new MapMaker().weakValues().makeMap();
+        this.valueNames = new MapMaker().weakKeys().makeMap();
     }
 
     /**
@@ -76,7 +78,9 @@ public class WeakRegistry<K, V> implements Registry<K, V>
         this.registry.put(key, value);
         if (name != null)
         {
-            this.nameRegistry.put(this.caseSensitiveKeys ? name : name.toUpperCase(), key);
+            String registered = this.caseSensitiveKeys ? name : name.toUpperCase();
+            this.nameRegistry.put(registered, key);
+            this.valueNames.put(value, registered);
         }
     }
 
@@ -112,26 +116,18 @@ public class WeakRegistry<K, V> implements Registry<K, V>
     public Optional<String> getNameForValue(V value)
     {
         checkNotNull(value);
-        K key = null;
-        for (Map.Entry<K, V> entry : this.registry.entrySet())
+        String name = this.valueNames.get(value);
+        if (name == null)
         {
-            if (entry.getValue() == value)
-            {
-                key = entry.getKey();
-                break;
-            }
+            return Optional.absent();
         }
-        if (key != null)
+        // the name is only valid while it still leads back to this value
+        K key = this.nameRegistry.get(name);
+        if (key == null || this.registry.get(key) != value)
         {
-            for (Map.Entry<String, K> entry : this.nameRegistry.entrySet())
-            {
-                if (entry.getValue() == key)
-                {
-                    return Optional.of(entry.getKey());
-                }
-            }
+            return Optional.absent();
         }
-        return Optional.absent();
+        return Optional.of(name);
     }
 
     @Override
@@ -28,6 +28,7 @@ import java.util.Map;
 
 import com.google.common.base.Optional;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.voxelplugineering.voxelsniper.registry.WeakRegistry;
 import com.voxelplugineering.voxelsniper.service.config.Configuration;
 import com.voxelplugineering.voxelsniper.service.registry.BiomeRegistry;
@@ -47,6 +48,8 @@ public class BiomeRegistryService<T> extends AbstractService implements BiomeReg
     private WeakRegistry<T, Biome> registry;
     private Biome defaultBiome;
     private String defaultBiomeName;
+    private List<Biome> byId;
+    private Map<Biome, Integer> ids;
 
     /**
      * Creates a new {@link BiomeRegistryService}.
@@ -65,6 +68,8 @@ public class BiomeRegistryService<T> extends AbstractService implements BiomeReg
         this.registry = new WeakRegistry<T, Biome>();
         this.registry.setCaseSensitiveKeys(false);
         this.defaultBiomeName = this.conf.get("defaultBiomeName", String.class).or("plains");
+        this.byId = Lists.newArrayList();
+        this.ids = Maps.newHashMap();
     }
 
     @Override
@@ -72,6 +77,8 @@ public class BiomeRegistryService<T> extends AbstractService implements BiomeReg
     {
         this.registry = null;
         this.defaultBiomeName = null;
+        this.byId = null;
+        this.ids = null;
     }
 
     @Override
@@ -93,6 +100,11 @@ public class BiomeRegistryService<T> extends AbstractService implements BiomeReg
     {
         check("registerBiome");
         this.registry.register(name, object, biome);
+        if (!this.ids.containsKey(biome))
+        {
+            this.ids.put(biome, this.byId.size());
+            this.byId.add(biome);
+        }
         if (name.equalsIgnoreCase(this.defaultBiomeName))
         {
             this.defaultBiome = biome;
@@ -118,4 +130,26 @@ public class BiomeRegistryService<T> extends AbstractService implements BiomeReg
         return this.defaultBiome;
     }
 
+    @Override
+    public int getId(Biome biome)
+    {
+        check("getId");
+        Integer id = this.ids.get(biome);
+        return id == null ? -1 : id;
+    }
+
+    @Override
+    public Biome byId(int id)
+    {
+        check("byId");
+        return this.byId.get(id);
+    }
+
+    @Override
+    public int getBiomeCount()
+    {
+        check("getBiomeCount");
+        return this.byId.size();
+    }
+
 }
@@ -23,6 +23,7 @@
  */
 package com.voxelplugineering.voxelsniper.service;
 
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
@@ -30,6 +31,7 @@ import java.util.Set;
 
 import com.google.common.base.Optional;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.voxelplugineering.voxelsniper.registry.WeakRegistry;
 import com.voxelplugineering.voxelsniper.service.config.Configuration;
 import com.voxelplugineering.voxelsniper.service.registry.MaterialRegistry;
@@ -49,6 +51,12 @@ public class MaterialRegistryService<T> extends AbstractService implements Mater
     private WeakRegistry<T, Material> registry;
     private Material air;
     private String defaultMaterialName;
+    private List<Material> byId;
+    private Map<Material, Integer> ids;
+    private BitSet liquid;
+    private BitSet gravity;
+    private BitSet solid;
+    private BitSet reliant;
 
     /**
      * Creates a new {@link MaterialRegistryService}.
@@ -67,6 +75,12 @@ public class MaterialRegistryService<T> extends AbstractService implements Mater
         this.registry = new WeakRegistry<T, Material>();
         this.registry.setCaseSensitiveKeys(false);
         this.defaultMaterialName = this.conf.get("defaultMaterialName", String.class).or("air");
+        this.byId = Lists.newArrayList();
+        this.ids = Maps.newHashMap();
+        this.liquid = new BitSet();
+        this.gravity = new BitSet();
+        this.solid = new BitSet();
+        this.reliant = new BitSet();
     }
 
     @Override
@@ -74,6 +88,12 @@ public class MaterialRegistryService<T> extends AbstractService implements Mater
     {
         this.registry = null;
         this.defaultMaterialName = null;
+        this.byId = null;
+        this.ids = null;
+        this.liquid = null;
+        this.gravity = null;
+        this.solid = null;
+        this.reliant = null;
     }
 
     @Override
@@ -101,6 +121,16 @@ public class MaterialRegistryService<T> extends AbstractService implements Mater
     {
         check("registerMaterial");
         this.registry.register(name, object, material);
+        if (!this.ids.containsKey(material))
+        {
+            int id = this.byId.size();
+            this.byId.add(material);
+            this.ids.put(material, id);
+            this.liquid.set(id, material.isLiquid());
+            this.gravity.set(id, material.isAffectedByGravity());
+            this.solid.set(id, material.isSolid());
+            this.reliant.set(id, material.isReliantOnEnvironment());
+        }
         if (name.equalsIgnoreCase(this.defaultMaterialName))
         {
             this.air = material;
@@ -120,4 +150,54 @@ public class MaterialRegistryService<T> extends AbstractService implements Mater
         return mats;
     }
 
+    @Override
+    public int getId(Material material)
+    {
+        check("getId");
+        Integer id = this.ids.get(material);
+        return id == null ? -1 : id;
+    }
+
+    @Override
+    public Material byId(int id)
+    {
+        check("byId");
+        return this.byId.get(id);
+    }
+
+    @Override
+    public int getMaterialCount()
+    {
+        check("getMaterialCount");
+        return this.byId.size();
+    }
+
+    @Override
+    public BitSet getLiquidMaterials()
+    {
+        check("getLiquidMaterials");
+        return (BitSet) this.liquid.clone();
+    }
+
+    @Override
+    public BitSet getGravityMaterials()
+    {
+        check("getGravityMaterials");
+        return (BitSet) this.gravity.clone();
+    }
+
+    @Override
+    public BitSet getSolidMaterials()
+    {
+        check("getSolidMaterials");
+        return (BitSet) this.solid.clone();
+    }
+
+    @Override
+    public BitSet getEnvironmentReliantMaterials()
+    {
+        check("getEnvironmentReliantMaterials");
+        return (BitSet) this.reliant.clone();
+    }
+
 }
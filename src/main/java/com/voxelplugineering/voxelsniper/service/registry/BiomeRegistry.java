@@ -74,4 +74,29 @@ public interface BiomeRegistry<T> extends Service
      */
     Biome getDefaultBiome();
 
+    /**
+     * Gets the dense id of the given biome. Ids are assigned from zero in the order biomes are
+     * registered and never change, so they may be used to index arrays.
+     * 
+     * @param biome The biome
+     * @return The id, or -1 if the biome is not registered
+     */
+    int getId(Biome biome);
+
+    /**
+     * Gets the biome with the given dense id.
+     * 
+     * @param id The id
+     * @return The biome
+     * @throws IndexOutOfBoundsException If no biome has the id
+     */
+    Biome byId(int id);
+
+    /**
+     * Gets the number of dense ids assigned, one more than the largest id.
+     * 
+     * @return The number of ids
+     */
+    int getBiomeCount();
+
 }
@@ -23,6 +23,8 @@
  */
 package com.voxelplugineering.voxelsniper.service.registry;
 
+import java.util.BitSet;
+
 import com.google.common.base.Optional;
 import com.voxelplugineering.voxelsniper.service.Service;
 import com.voxelplugineering.voxelsniper.world.material.Material;
@@ -75,4 +77,61 @@ public interface MaterialRegistry<T> extends Service
      */
     Iterable<Material> getMaterials();
 
+    /**
+     * Gets the dense id of the given material. Ids are assigned from zero in the order materials
+     * are registered and never change, so they may be used to index arrays.
+     * 
+     * @param material The material
+     * @return The id, or -1 if the material is not registered
+     */
+    int getId(Material material);
+
+    /**
+     * Gets the material with the given dense id.
+     * 
+     * @param id The id
+     * @return The material
+     * @throws IndexOutOfBoundsException If no material has the id
+     */
+    Material byId(int id);
+
+    /**
+     * Gets the number of dense ids assigned, one more than the largest id.
+     * 
+     * @return The number of ids
+     */
+    int getMaterialCount();
+
+    /**
+     * Gets the ids of the liquid materials. The set is a copy and may be kept and changed by the
+     * caller.
+     * 
+     * @return The liquid material ids
+     */
+    BitSet getLiquidMaterials();
+
+    /**
+     * Gets the ids of the materials which are affected by gravity. The set is a copy and may be
+     * kept and changed by the caller.
+     * 
+     * @return The gravity affected material ids
+     */
+    BitSet getGravityMaterials();
+
+    /**
+     * Gets the ids of the solid materials. The set is a copy and may be kept and changed by the
+     * caller.
+     * 
+     * @return The solid material ids
+     */
+    BitSet getSolidMaterials();
+
+    /**
+     * Gets the ids of the materials which are reliant on their environment. The set is a copy and
+     * may be kept and changed by the caller.
+     * 
+     * @return The environment reliant material ids
+     */
+    BitSet getEnvironmentReliantMaterials();
+
 }
@@ -29,22 +29,28 @@ import java.util.Arrays;
 import java.util.Map;
 
 import com.google.common.base.Optional;
-import com.google.common.collect.BiMap;
-import com.google.common.collect.HashBiMap;
+import com.google.common.collect.Maps;
 import com.voxelplugineering.voxelsniper.util.math.Vector3i;
 import com.voxelplugineering.voxelsniper.world.material.Material;
 
 /**
  * A {@link MaterialShape} which a material for each point in the shape.
+ * <p>
+ * Each point stores an index into a palette of the materials used by this shape, packed into a
+ * {@link PackedIntArray} with only as many bits per point as the palette needs. Id 0 is always
+ * the default material. Points which are not set in the shape have no material, they read as
+ * {@link Optional#absent()} and as -1 in the raw material data.
+ * </p>
  */
 public class ComplexMaterialShape implements MaterialShape
 {
 
+    private static final int INITIAL_PALETTE_SIZE = 4;
+
     private short nextId = 1;
-    private BiMap<Short, Material> materialDictionary;
-    private BiMap<Material, Short> inverseDictionary;
-    private byte[] materialsA;
-    private byte[] materialsB;
+    private Optional<Material>[] palette;
+    private Map<Material, Short> inverseDictionary;
+    private PackedIntArray materials;
     private Shape shape;
     private Material defaultMaterial;
 
@@ -65,14 +71,20 @@ public class ComplexMaterialShape implements MaterialShape
         {
             this.shape = new ComplexShape(shape);
         }
-        this.materialDictionary = HashBiMap.create();
-        this.inverseDictionary = this.materialDictionary.inverse();
-        this.materialsA = new byte[shape.getWidth() * shape.getLength() * shape.getHeight()];
-        this.materialDictionary.put((short) 0, defaultMaterial);
-        this.flood(defaultMaterial);
+        this.palette = newPalette(INITIAL_PALETTE_SIZE);
+        this.inverseDictionary = Maps.newHashMap();
+        this.materials = new PackedIntArray(shape.getWidth() * shape.getLength() * shape.getHeight(), 0);
+        this.palette[0] = Optional.of(defaultMaterial);
+        this.inverseDictionary.put(defaultMaterial, (short) 0);
         this.defaultMaterial = defaultMaterial;
     }
 
+    @SuppressWarnings("unchecked")
+    private static Optional<Material>[] newPalette(int size)
+    {
+        return (Optional<Material>[]) new Optional<?>[size];
+    }
+
     /**
      * Returns the wrapped shape.
      * 
@@ -102,40 +114,91 @@ public class ComplexMaterialShape implements MaterialShape
     @Override
     public Optional<Material> getMaterial(int x, int y, int z, boolean relative)
     {
-        if (this.getShape().get(x, y, z, relative))
+        if (this.shape.get(x, y, z, relative))
         {
-            if (get(x, y, z) == -1)
+            if (relative)
             {
-                set(x, y, z, (short) 0); // the default material
+                x += this.shape.getOrigin().getX();
+                y += this.shape.getOrigin().getY();
+                z += this.shape.getOrigin().getZ();
             }
-            return Optional.<Material>of(this.materialDictionary.get(get(x, y, z)));
+            return this.palette[this.materials.get(getIndex(x, y, z))];
         }
         return Optional.absent();
     }
 
-    private short get(int x, int y, int z)
+    @Override
+    public int getMaterialId(int x, int y, int z)
     {
-        int index = getIndex(x, y, z);
-        short ret = (short) (this.materialsA[index] & 0xFF);
-        if (this.nextId > 255)
+        if (!this.shape.get(x, y, z, false))
         {
-            ret = (short) (ret | (this.materialsB[index] & 0xFF));
+            return UNSET_ID;
         }
-        return ret;
+        return this.materials.get(getIndex(x, y, z));
     }
 
-    private void set(int x, int y, int z, short data)
+    @Override
+    public Material[] getPalette()
     {
-        int index = getIndex(x, y, z);
-        this.materialsA[index] = (byte) (data & 0xff);
-        if (this.nextId > 255)
+        Material[] copy = new Material[this.nextId];
+        for (int i = 0; i < copy.length; i++)
+        {
+            copy[i] = this.palette[i] == null ? null : this.palette[i].get();
+        }
+        return copy;
+    }
+
+    @Override
+    public void copyIds(int[] dst, int x, int y, int z, int width, int height, int length)
+    {
+        if (x < 0 || y < 0 || z < 0 || x + width > getWidth() || y + height > getHeight() || z + length > getLength()
+                || dst.length < width * height * length)
+        {
+            throw new ArrayIndexOutOfBoundsException("Tried to copy a region outside of the shape. (" + x + ", " + y + ", " + z + ")");
+        }
+        int i = 0;
+        for (int y0 = y; y0 < y + height; y0++)
         {
-            if (this.materialsB == null)
+            for (int z0 = z; z0 < z + length; z0++)
             {
-                this.materialsB = new byte[this.materialsA.length];
+                int index = getIndex(x, y0, z0);
+                for (int x0 = x; x0 < x + width; x0++, index++)
+                {
+                    dst[i++] = this.shape.get(x0, y0, z0, false) ? this.materials.get(index) : UNSET_ID;
+                }
             }
+        }
+    }
 
-            this.materialsB[index] = (byte) ((data & 0xff00) >> 8);
+    /**
+     * Writes material ids for a region of the shape from an array in the layout of
+     * {@link #copyIds(int[], int, int, int, int, int, int)}. Entries of {@link #UNSET_ID} are
+     * skipped, the ids must already be registered and the positions set in the shape.
+     * 
+     * @param src The ids
+     * @param x The lowest x position of the region
+     * @param y The lowest y position of the region
+     * @param z The lowest z position of the region
+     * @param width The width of the region
+     * @param height The height of the region
+     * @param length The length of the region
+     */
+    void putIds(int[] src, int x, int y, int z, int width, int height, int length)
+    {
+        int i = 0;
+        for (int y0 = y; y0 < y + height; y0++)
+        {
+            for (int z0 = z; z0 < z + length; z0++)
+            {
+                int index = getIndex(x, y0, z0);
+                for (int x0 = 0; x0 < width; x0++, index++, i++)
+                {
+                    if (src[i] != UNSET_ID)
+                    {
+                        this.materials.set(index, src[i]);
+                    }
+                }
+            }
         }
     }
 
@@ -167,7 +230,7 @@ public class ComplexMaterialShape implements MaterialShape
             throw new ArrayIndexOutOfBoundsException("Tried to set material outside of the shape. (" + x + ", " + y + ", " + z + ")");
         }
         short id = this.getOrRegisterMaterial(material);
-        set(x, y, z, id);
+        this.materials.set(getIndex(x, y, z), id);
         getShape().set(x, y, z, false);
     }
 
@@ -195,7 +258,7 @@ public class ComplexMaterialShape implements MaterialShape
         {
             throw new ArrayIndexOutOfBoundsException("Tried to unset material outside of the shape. (" + x + ", " + y + ", " + z + ")");
         }
-        set(x, y, z, (short) -1);
+        this.materials.set(getIndex(x, y, z), 0);
         getShape().unset(x, y, z, false);
     }
 
@@ -207,23 +270,26 @@ public class ComplexMaterialShape implements MaterialShape
     @Override
     public void flood(Material material)
     {
-        short id = this.getOrRegisterMaterial(material);
-        for (int x = 0; x < getShape().getWidth(); x++)
+        final int id = this.getOrRegisterMaterial(material);
+        this.materials.fill(0, this.materials.size(), 0);
+        if (id == 0)
+        {
+            return;
+        }
+        final int row = this.shape.getWidth() * this.shape.getLength();
+        this.shape.forEachSpan(new SpanVisitor()
         {
-            for (int y = 0; y < getShape().getHeight(); y++)
+
+            @Override
+            public void visit(int x, int z, int minY, int maxY)
             {
-                for (int z = 0; z < getShape().getLength(); z++)
+                for (int index = getIndex(x, minY, z); minY < maxY; minY++, index += row)
                 {
-                    if (this.getShape().get(x, y, z, false))
-                    {
-                        set(x, y, z, id);
-                    } else
-                    {
-                        set(x, y, z, (short) -1);
-                    }
+                    ComplexMaterialShape.this.materials.set(index, id);
                 }
             }
-        }
+
+        });
     }
 
     /**
@@ -238,16 +304,7 @@ public class ComplexMaterialShape implements MaterialShape
         short id = this.getOrRegisterMaterial(material);
         int startIndex = getIndex(0, y, 0);
         int endIndex = getIndex(this.shape.getWidth() - 1, y + height - 1, this.shape.getLength() - 1) + 1;
-        Arrays.fill(this.materialsA, startIndex, endIndex, (byte) (id & 0xff));
-        if (this.nextId > 255)
-        {
-            if (this.materialsB == null)
-            {
-                this.materialsB = new byte[this.materialsA.length];
-            }
-
-            Arrays.fill(this.materialsB, startIndex, endIndex, (byte) ((id & 0xff00) >> 8));
-        }
+        this.materials.fill(startIndex, endIndex, id);
     }
 
     /**
@@ -259,15 +316,29 @@ public class ComplexMaterialShape implements MaterialShape
      */
     private short getOrRegisterMaterial(Material material)
     {
-        if (this.inverseDictionary.containsKey(material))
+        Short existing = this.inverseDictionary.get(material);
+        if (existing != null)
         {
-            return this.inverseDictionary.get(material);
+            return existing;
         }
         short id = this.nextId++;
-        this.materialDictionary.put(id, material);
+        putMaterial(id, material);
         return id;
     }
 
+    private void putMaterial(short id, Material material)
+    {
+        if (id >= this.palette.length)
+        {
+            Optional<Material>[] expanded = newPalette(Math.max(this.palette.length * 2, id + 1));
+            System.arraycopy(this.palette, 0, expanded, 0, this.palette.length);
+            this.palette = expanded;
+        }
+        this.palette[id] = Optional.of(material);
+        this.inverseDictionary.put(material, id);
+        this.materials.ensureCapacity(id);
+    }
+
     /**
      * Returns the width of the underlying shape (x-axis size). Note that this is not the width of
      * the region set, but rather the width of the total possible volume.
@@ -356,6 +427,12 @@ public class ComplexMaterialShape implements MaterialShape
         return null;
     }
 
+    @Override
+    public void forEachSpan(SpanVisitor visitor)
+    {
+        this.shape.forEachSpan(visitor);
+    }
+
     @Override
     public void unset(int x, int y, int z, boolean relative)
     {
@@ -368,16 +445,61 @@ public class ComplexMaterialShape implements MaterialShape
         return this.defaultMaterial;
     }
 
+    /**
+     * Gets the least significant byte of the material data for this shape. The array is unpacked
+     * from the palette indices on each call, points which are not set hold -1.
+     * 
+     * @return The lower byte array
+     */
     @Override
     public byte[] getLowerMaterialData()
     {
-        return this.materialsA;
+        return unpackMaterialData(0);
     }
 
+    /**
+     * Gets the most significant byte of the material data for this shape, or null if no ids exceed
+     * a single byte. The array is unpacked from the palette indices on each call, points which are
+     * not set hold -1.
+     * 
+     * @return The upper byte array
+     */
     @Override
     public byte[] getUpperMaterialData()
     {
-        return this.materialsB;
+        if (!hasExtraData())
+        {
+            return null;
+        }
+        return unpackMaterialData(8);
+    }
+
+    /**
+     * Unpacks one byte of the material id of every point set in the shape. All other points are
+     * filled with -1.
+     * 
+     * @param shift The shift of the byte within the id
+     * @return The unpacked bytes
+     */
+    private byte[] unpackMaterialData(final int shift)
+    {
+        final byte[] data = new byte[this.materials.size()];
+        Arrays.fill(data, (byte) -1);
+        final int row = this.shape.getWidth() * this.shape.getLength();
+        this.shape.forEachSpan(new SpanVisitor()
+        {
+
+            @Override
+            public void visit(int x, int z, int minY, int maxY)
+            {
+                for (int index = getIndex(x, minY, z); minY < maxY; minY++, index += row)
+                {
+                    data[index] = (byte) (ComplexMaterialShape.this.materials.get(index) >> shift);
+                }
+            }
+
+        });
+        return data;
     }
 
     @Override
@@ -388,10 +510,24 @@ public class ComplexMaterialShape implements MaterialShape
         return this.nextId > 256;
     }
 
+    /**
+     * Gets the material dictionary for this shape. The dictionary is a copy built from the palette
+     * on each call.
+     * 
+     * @return The material dictionary
+     */
     @Override
     public Map<Short, Material> getMaterialsDictionary()
     {
-        return this.materialDictionary;
+        Map<Short, Material> dictionary = Maps.newHashMap();
+        for (short id = 0; id < this.nextId; id++)
+        {
+            if (this.palette[id] != null)
+            {
+                dictionary.put(id, this.palette[id].get());
+            }
+        }
+        return dictionary;
     }
 
     @Override
@@ -400,6 +536,16 @@ public class ComplexMaterialShape implements MaterialShape
         return this.nextId - 1;
     }
 
+    /**
+     * Gets the number of bits used to store the material of each point.
+     * 
+     * @return The bits per point
+     */
+    public int getBitsPerPoint()
+    {
+        return this.materials.getBits();
+    }
+
     /**
      * Registers a material at the given key index.
      * 
@@ -408,8 +554,8 @@ public class ComplexMaterialShape implements MaterialShape
      */
     protected void registerMaterial(short key, Material material)
     {
-        this.materialDictionary.put(key, material);
-        this.nextId = (short) Math.max(this.nextId, key);
+        putMaterial(key, material);
+        this.nextId = (short) Math.max(this.nextId, key + 1);
     }
 
     @Override
@@ -422,37 +568,9 @@ public class ComplexMaterialShape implements MaterialShape
         Material existing = this.defaultMaterial;
         this.defaultMaterial = material;
         short other = getOrRegisterMaterial(material);
-        this.materialDictionary.put((short) 0, material);
-        this.materialDictionary.put(other, existing);
-        this.inverseDictionary.put(material, (short) 0);
-        this.inverseDictionary.put(existing, other);
-        if (this.materialsB != null)
-        {
-            for (int i = 0; i < this.materialsA.length; i++)
-            {
-                if (this.materialsA[i] == (other & 0xff) && this.materialsB[i] == (other & 0xff00 >> 8))
-                {
-                    this.materialsA[i] = 0;
-                    this.materialsB[i] = 0;
-                } else if (this.materialsA[i] == 0 && this.materialsB[i] == 0)
-                {
-                    this.materialsA[i] = (byte) (other & 0xff);
-                    this.materialsB[i] = (byte) (other & 0xff00 >> 8);
-                }
-            }
-        } else
-        {
-            for (int i = 0; i < this.materialsA.length; i++)
-            {
-                if (this.materialsA[i] == (other & 0xff))
-                {
-                    this.materialsA[i] = 0;
-                } else if (this.materialsA[i] == 0)
-                {
-                    this.materialsA[i] = (byte) (other & 0xff);
-                }
-            }
-        }
+        putMaterial((short) 0, material);
+        putMaterial(other, existing);
+        this.materials.swap(0, other);
     }
 
 }
@@ -32,14 +32,23 @@ import com.voxelplugineering.voxelsniper.util.math.Vector3i;
 
 /**
  * Represent a 3-d voxel shape.
+ * <p>
+ * The voxels are stored in a flat bitset of 64-bit words. Each (x, z) column is a run of
+ * {@code ceil(height / 64)} words with y as the bit index, so columns are word aligned and boolean
+ * operations between shapes of matching bounds work a whole word at a time. Bits above the height
+ * of the shape in the last word of each column are always kept clear.
  */
 public class ComplexShape implements Shape
 {
 
     /**
-     * The shape. Dimensions are [x][z][y/8].
+     * The shape. Column (x, z) starts at word {@code (x * length + z) * stride}.
      */
-    private byte[][][] shape;
+    private long[] shape;
+    /**
+     * The number of words per column.
+     */
+    private int stride;
 
     private Vector3i origin;
     private int width;
@@ -70,11 +79,7 @@ public class ComplexShape implements Shape
      */
     public ComplexShape(int width, int height, int length, int ox, int oy, int oz)
     {
-        this.shape = new byte[width][length][height / 8 + 1];
-        this.width = width;
-        this.height = height;
-        this.length = length;
-        this.origin = new Vector3i(ox, oy, oz);
+        this(width, height, length, new Vector3i(ox, oy, oz));
     }
 
     /**
@@ -87,7 +92,8 @@ public class ComplexShape implements Shape
      */
     public ComplexShape(int width, int height, int length, Vector3i origin)
     {
-        this.shape = new byte[width][length][height / 8 + 1];
+        this.stride = wordsFor(height);
+        this.shape = new long[width * length * this.stride];
         this.width = width;
         this.height = height;
         this.length = length;
@@ -101,24 +107,76 @@ public class ComplexShape implements Shape
      */
     public ComplexShape(Shape shape)
     {
-        this.shape = new byte[shape.getWidth()][shape.getLength()][shape.getHeight() / 8 + 1];
-        this.width = shape.getWidth();
-        this.height = shape.getHeight();
-        this.length = shape.getLength();
-        this.origin = shape.getOrigin();
-        for (int x = 0; x < shape.getWidth(); x++)
+        this(shape.getWidth(), shape.getHeight(), shape.getLength(), shape.getOrigin());
+        if (shape instanceof ComplexShape)
+        {
+            long[] words = ((ComplexShape) shape).shape;
+            System.arraycopy(words, 0, this.shape, 0, words.length);
+            return;
+        }
+        shape.forEachSpan(new SpanVisitor()
         {
-            for (int y = 0; y < shape.getHeight(); y++)
+
+            @Override
+            public void visit(int x, int z, int minY, int maxY)
             {
-                for (int z = 0; z < shape.getLength(); z++)
-                {
-                    if (shape.get(x, y, z, false))
-                    {
-                        set(x, y, z, false);
-                    }
-                }
+                fillColumn(x, z, minY, maxY);
             }
+
+        });
+    }
+
+    /**
+     * Gets the number of 64-bit words needed to hold a column of the given height.
+     * 
+     * @param height The column height
+     * @return The word count
+     */
+    private static int wordsFor(int height)
+    {
+        return (height + 63) >>> 6;
+    }
+
+    /**
+     * Gets the mask of the valid bits in the last word of a column of the given height.
+     * 
+     * @param height The column height
+     * @return The mask
+     */
+    private static long tailMask(int height)
+    {
+        int r = height & 63;
+        return r == 0 ? -1L : (1L << r) - 1;
+    }
+
+    /**
+     * Reads 64 bits of a column starting at the given bit, bits outside of the column are read as
+     * unset.
+     * 
+     * @param words The words
+     * @param base The index of the first word of the column
+     * @param stride The number of words in the column
+     * @param start The first bit to read, may be negative
+     * @return The bits
+     */
+    private static long readBits(long[] words, int base, int stride, int start)
+    {
+        if (start <= -64 || start >= stride << 6)
+        {
+            return 0;
+        }
+        if (start < 0)
+        {
+            return words[base] << -start;
         }
+        int index = start >>> 6;
+        int bit = start & 63;
+        long bits = words[base + index] >>> bit;
+        if (bit != 0 && index + 1 < stride)
+        {
+            bits |= words[base + index + 1] << (64 - bit);
+        }
+        return bits;
     }
 
     @Override
@@ -174,7 +232,7 @@ public class ComplexShape implements Shape
         {
             throw new ArrayIndexOutOfBoundsException("Tried to set point outside of the shape. (" + x + ", " + y + ", " + z + ")");
         }
-        this.shape[x][z][y / 8] = (byte) (this.shape[x][z][y / 8] | (byte) (1 << (y % 8)));
+        this.shape[(x * this.length + z) * this.stride + (y >>> 6)] |= 1L << y;
     }
 
     @Override
@@ -190,7 +248,7 @@ public class ComplexShape implements Shape
         {
             throw new ArrayIndexOutOfBoundsException("Tried to set point outside of the shape. (" + x + ", " + y + ", " + z + ")");
         }
-        this.shape[x][z][y / 8] = (byte) (this.shape[x][z][y / 8] & (byte) ~(1 << (y % 8)));
+        this.shape[(x * this.length + z) * this.stride + (y >>> 6)] &= ~(1L << y);
     }
 
     @Override
@@ -206,7 +264,176 @@ public class ComplexShape implements Shape
         {
             throw new ArrayIndexOutOfBoundsException("Tried to get point outside of the shape. (" + x + ", " + y + ", " + z + ")");
         }
-        return ((this.shape[x][z][y / 8] >> y % 8) & 1) == 1;
+        return (this.shape[(x * this.length + z) * this.stride + (y >>> 6)] & (1L << y)) != 0;
+    }
+
+    /**
+     * Gets the words backing this shape. The column at x, z starts at index (x * length + z) *
+     * {@link #getStride()} and bit y of the column is the value at y. Changes to the array are
+     * changes to the shape, the bits above the height of each column must be left clear.
+     * 
+     * @return The words
+     */
+    long[] getWords()
+    {
+        return this.shape;
+    }
+
+    /**
+     * Gets the number of words in each column.
+     * 
+     * @return The number of words
+     */
+    int getStride()
+    {
+        return this.stride;
+    }
+
+    /**
+     * Clears the bits above the height of every column.
+     */
+    void clearPadding()
+    {
+        long mask = tailMask(this.height);
+        for (int i = this.stride - 1; i >= 0 && i < this.shape.length; i += this.stride)
+        {
+            this.shape[i] &= mask;
+        }
+    }
+
+    /**
+     * Reads 64 bits of the column at the given x, z position starting at the given y position, the
+     * lowest bit of the result is the value at y. Positions above the height of the shape are read
+     * as unset. No bounds checks are performed.
+     * 
+     * @param x The X position
+     * @param z The Z position
+     * @param y The starting Y position
+     * @return The bits
+     */
+    long readColumn(int x, int z, int y)
+    {
+        return readBits(this.shape, (x * this.length + z) * this.stride, this.stride, y);
+    }
+
+    /**
+     * Sets every position in the column at the given x, z position whose bit is set in the given
+     * bits, the lowest bit corresponds to the given y position. The caller must ensure that no bits
+     * fall above the height of the shape. No bounds checks are performed.
+     * 
+     * @param x The X position
+     * @param z The Z position
+     * @param y The starting Y position
+     * @param bits The bits to set
+     */
+    void orColumn(int x, int z, int y, long bits)
+    {
+        int base = (x * this.length + z) * this.stride;
+        int index = y >>> 6;
+        int bit = y & 63;
+        this.shape[base + index] |= bits << bit;
+        if (bit != 0 && index + 1 < this.stride)
+        {
+            this.shape[base + index + 1] |= bits >>> (64 - bit);
+        }
+    }
+
+    /**
+     * Sets every position in the column at the given x, z position from minY up to but not
+     * including maxY. Whole words are written at a time.
+     * 
+     * @param x The X position
+     * @param z The Z position
+     * @param minY The lowest y position to set
+     * @param maxY The y position above the highest position to set
+     */
+    public void fillColumn(int x, int z, int minY, int maxY)
+    {
+        if (minY >= maxY)
+        {
+            return;
+        }
+        if (x >= this.width || x < 0 || minY < 0 || maxY > this.height || z >= this.length || z < 0)
+        {
+            throw new ArrayIndexOutOfBoundsException("Tried to set point outside of the shape. (" + x + ", " + minY + "-" + maxY + ", " + z + ")");
+        }
+        int base = (x * this.length + z) * this.stride;
+        int first = minY >>> 6;
+        int last = (maxY - 1) >>> 6;
+        long firstMask = -1L << minY;
+        long lastMask = -1L >>> (63 - ((maxY - 1) & 63));
+        if (first == last)
+        {
+            this.shape[base + first] |= firstMask & lastMask;
+            return;
+        }
+        this.shape[base + first] |= firstMask;
+        for (int i = first + 1; i < last; i++)
+        {
+            this.shape[base + i] = -1L;
+        }
+        this.shape[base + last] |= lastMask;
+    }
+
+    /**
+     * Gets the number of set positions in this shape.
+     * 
+     * @return The number of set positions
+     */
+    public int cardinality()
+    {
+        int count = 0;
+        for (long word : this.shape)
+        {
+            count += Long.bitCount(word);
+        }
+        return count;
+    }
+
+    @Override
+    public void forEachSpan(SpanVisitor visitor)
+    {
+        for (int x = 0; x < this.width; x++)
+        {
+            for (int z = 0; z < this.length; z++)
+            {
+                int base = (x * this.length + z) * this.stride;
+                int start = -1;
+                for (int i = 0; i < this.stride; i++)
+                {
+                    long word = this.shape[base + i];
+                    int offset = i << 6;
+                    if (start != -1)
+                    {
+                        if (word == -1L)
+                        {
+                            continue;
+                        }
+                        int end = Long.numberOfTrailingZeros(~word);
+                        visitor.visit(x, z, start, offset + end);
+                        start = -1;
+                        word &= -1L << end;
+                    }
+                    while (word != 0)
+                    {
+                        int first = Long.numberOfTrailingZeros(word);
+                        long clear = ~word & (-1L << first);
+                        if (clear == 0)
+                        {
+                            start = offset + first;
+                            break;
+                        }
+                        int end = Long.numberOfTrailingZeros(clear);
+                        visitor.visit(x, z, offset + first, offset + end);
+                        word &= -1L << end;
+                    }
+                }
+                if (start != -1)
+                {
+                    visitor.visit(x, z, start, this.height);
+                }
+            }
+        }
     }
 
     /**
@@ -262,7 +489,9 @@ public class ComplexShape implements Shape
     }
 
     /**
-     * Changes the size to the given values. Attempts to retain as much of the shape as possible.
+     * Changes the size to the given values. Positions keep their location relative to the origin,
+     * anything falling outside of the new bounds is discarded. Columns whose y alignment is
+     * unchanged are copied in bulk.
      * 
      * @param w the new width
      * @param h the new height
@@ -270,26 +499,42 @@ public class ComplexShape implements Shape
      */
     private void resize(int w, int h, int l, int ox, int oy, int oz)
     {
-        byte[][][] newShape = new byte[w][l][h / 8 + 1];
-        for (int x = 0; x < w && x < this.width; x++)
+        int newStride = wordsFor(h);
+        long[] newShape = new long[w * l * newStride];
+        int dy = oy - this.origin.getY();
+        long mask = tailMask(h);
+        for (int x = 0; x < w; x++)
         {
-            int xx = x + ox - this.origin.getX();
-            for (int z = 0; z < l && z < this.length; z++)
+            int xx = x - ox + this.origin.getX();
+            if (xx < 0 || xx >= this.width)
             {
-                int zz = z + oz - this.origin.getZ();
-                for (int y = 0; y < h && y < this.height; y++)
+                continue;
+            }
+            for (int z = 0; z < l; z++)
+            {
+                int zz = z - oz + this.origin.getZ();
+                if (zz < 0 || zz >= this.length || newStride == 0)
+                {
+                    continue;
+                }
+                int base = (xx * this.length + zz) * this.stride;
+                int newBase = (x * l + z) * newStride;
+                if (dy == 0)
+                {
+                    System.arraycopy(this.shape, base, newShape, newBase, Math.min(this.stride, newStride));
+                } else
                 {
-                    int yy = y + oy - this.origin.getY();
-                    if (xx < this.width && xx >= 0 && yy < this.height && yy >= 0 && zz < this.length && zz >= 0)
+                    for (int i = 0; i < newStride; i++)
                     {
-                        newShape[x][z][y / 8] =
-                                (byte) (newShape[x][z][y / 8] | ((this.shape[xx][zz][yy / 8] & (1 << (yy % 8))) >> (yy % 8) << (y % 8)));
+                        newShape[newBase + i] = readBits(this.shape, base, this.stride, (i << 6) - dy);
                     }
                 }
+                newShape[newBase + newStride - 1] &= mask;
             }
         }
 
         this.shape = newShape;
+        this.stride = newStride;
         this.width = w;
         this.height = h;
         this.length = l;
@@ -331,29 +576,82 @@ public class ComplexShape implements Shape
      */
     public void combineSizes(Shape other)
     {
-        throw new UnsupportedOperationException();
+        checkNotNull(other, "Cannot combine size with a null shape.");
+        Vector3i o = other.getOrigin();
+        int minX = Math.min(-this.origin.getX(), -o.getX());
+        int minY = Math.min(-this.origin.getY(), -o.getY());
+        int minZ = Math.min(-this.origin.getZ(), -o.getZ());
+        int maxX = Math.max(this.width - this.origin.getX(), other.getWidth() - o.getX());
+        int maxY = Math.max(this.height - this.origin.getY(), other.getHeight() - o.getY());
+        int maxZ = Math.max(this.length - this.origin.getZ(), other.getLength() - o.getZ());
+        if (maxX - minX != this.width || maxY - minY != this.height || maxZ - minZ != this.length || -minX != this.origin.getX()
+                || -minY != this.origin.getY() || -minZ != this.origin.getZ())
+        {
+            resize(maxX - minX, maxY - minY, maxZ - minZ, -minX, -minY, -minZ);
+        }
     }
 
     /**
-     * Performs a CSG add operation between this shape and the given shape. First ensures that sizes
-     * and origins are matched between the two shapes.
+     * Gets the words of the given shape aligned to the bounds of this shape. If the bounds already
+     * match the backing array of the other shape is returned directly.
      * 
-     * @param s the shape to add
+     * @param s The shape
+     * @return The aligned words
      */
-    public void add(ComplexShape s)
+    private long[] alignedWords(ComplexShape s)
     {
-        checkNotNull(s, "Cannot operate with a null shape.");
-        combineSizes(s);
+        if (s.width == this.width && s.height == this.height && s.length == this.length && s.origin.equals(this.origin))
+        {
+            return s.shape;
+        }
+        long[] words = new long[this.shape.length];
+        if (this.stride == 0)
+        {
+            return words;
+        }
+        int dy = s.origin.getY() - this.origin.getY();
+        long mask = tailMask(this.height);
         for (int x = 0; x < this.width; x++)
         {
+            int xx = x - this.origin.getX() + s.origin.getX();
+            if (xx < 0 || xx >= s.width)
+            {
+                continue;
+            }
             for (int z = 0; z < this.length; z++)
             {
-                for (int y = 0; y < this.height / 8 + 1; y++)
+                int zz = z - this.origin.getZ() + s.origin.getZ();
+                if (zz < 0 || zz >= s.length)
+                {
+                    continue;
+                }
+                int base = (xx * s.length + zz) * s.stride;
+                int newBase = (x * this.length + z) * this.stride;
+                for (int i = 0; i < this.stride; i++)
                 {
-                    this.shape[x][z][y] = (byte) (this.shape[x][z][y] | s.shape[x][z][y]);
+                    words[newBase + i] = readBits(s.shape, base, s.stride, (i << 6) + dy);
                 }
+                words[newBase + this.stride - 1] &= mask;
             }
         }
+        return words;
+    }
+
+    /**
+     * Performs a CSG add operation between this shape and the given shape. First ensures that sizes
+     * and origins are matched between the two shapes.
+     * 
+     * @param s the shape to add
+     */
+    public void add(ComplexShape s)
+    {
+        checkNotNull(s, "Cannot operate with a null shape.");
+        combineSizes(s);
+        long[] other = alignedWords(s);
+        for (int i = 0; i < this.shape.length; i++)
+        {
+            this.shape[i] |= other[i];
+        }
     }
 
     /**
@@ -366,15 +664,10 @@ public class ComplexShape implements Shape
     {
         checkNotNull(s, "Cannot operate with a null shape.");
         combineSizes(s);
-        for (int x = 0; x < this.width; x++)
+        long[] other = alignedWords(s);
+        for (int i = 0; i < this.shape.length; i++)
         {
-            for (int z = 0; z < this.length; z++)
-            {
-                for (int y = 0; y < this.height / 8 + 1; y++)
-                {
-                    this.shape[x][z][y] = (byte) (this.shape[x][z][y] | ~s.shape[x][z][y]);
-                }
-            }
+            this.shape[i] &= ~other[i];
         }
     }
 
@@ -388,15 +681,10 @@ public class ComplexShape implements Shape
     {
         checkNotNull(s, "Cannot operate with a null shape.");
         combineSizes(s);
-        for (int x = 0; x < this.width; x++)
+        long[] other = alignedWords(s);
+        for (int i = 0; i < this.shape.length; i++)
         {
-            for (int z = 0; z < this.length; z++)
-            {
-                for (int y = 0; y < this.height / 8 + 1; y++)
-                {
-                    this.shape[x][z][y] = (byte) (this.shape[x][z][y] & s.shape[x][z][y]);
-                }
-            }
+            this.shape[i] &= other[i];
         }
     }
 
@@ -410,15 +698,10 @@ public class ComplexShape implements Shape
     {
         checkNotNull(s, "Cannot operate with a null shape.");
         combineSizes(s);
-        for (int x = 0; x < this.width; x++)
+        long[] other = alignedWords(s);
+        for (int i = 0; i < this.shape.length; i++)
         {
-            for (int z = 0; z < this.length; z++)
-            {
-                for (int y = 0; y < this.height / 8 + 1; y++)
-                {
-                    this.shape[x][z][y] = (byte) ((this.shape[x][z][y] & ~s.shape[x][z][y]) | (~this.shape[x][z][y] & s.shape[x][z][y]));
-                }
-            }
+            this.shape[i] ^= other[i];
         }
     }
 
@@ -427,14 +710,13 @@ public class ComplexShape implements Shape
      */
     public void invert()
     {
-        for (int x = 0; x < this.width; x++)
+        long mask = tailMask(this.height);
+        for (int i = 0; i < this.shape.length; i++)
         {
-            for (int z = 0; z < this.length; z++)
+            this.shape[i] = ~this.shape[i];
+            if (i % this.stride == this.stride - 1)
             {
-                for (int y = 0; y < this.height / 8 + 1; y++)
-                {
-                    this.shape[x][z][y] = (byte) (~this.shape[x][z][y]);
-                }
+                this.shape[i] &= mask;
             }
         }
     }
@@ -446,15 +728,19 @@ public class ComplexShape implements Shape
      */
     public Vector3i[] getShape()
     {
-        List<Vector3i> points = new ArrayList<Vector3i>();
+        List<Vector3i> points = new ArrayList<Vector3i>(cardinality());
         for (int x = 0; x < this.width; x++)
         {
-            for (int y = 0; y < this.height; y++)
+            for (int z = 0; z < this.length; z++)
             {
-                for (int z = 0; z < this.length; z++)
+                int base = (x * this.length + z) * this.stride;
+                for (int i = 0; i < this.stride; i++)
                 {
-                    if (get(x, y, z, false))
+                    long word = this.shape[base + i];
+                    while (word != 0)
                     {
+                        int y = (i << 6) + Long.numberOfTrailingZeros(word);
+                        word &= word - 1;
                         points.add(new Vector3i(x - this.origin.getX(), y - this.origin.getY(), z - this.origin.getZ()));
                     }
                 }
@@ -474,21 +760,21 @@ public class ComplexShape implements Shape
         {
             return;
         }
-        for (int x = 0; x < this.width; x++)
+        long[] newShape = new long[this.width * this.length];
+        for (int c = 0; c < newShape.length; c++)
         {
-            for (int z = 0; z < this.length; z++)
+            for (int i = c * this.stride; i < (c + 1) * this.stride; i++)
             {
-                for (int y = 0; y < this.height; y++)
+                if (this.shape[i] != 0)
                 {
-                    if (get(x, y, z, false))
-                    {
-                        set(x, 0, z, false);
-                        break;
-                    }
+                    newShape[c] = 1;
+                    break;
                 }
             }
         }
-        resize(this.width, 1, this.length, this.origin.getX(), this.origin.getY(), this.origin.getZ());
+        this.shape = newShape;
+        this.stride = 1;
+        this.height = 1;
         setOrigin(new Vector3i(this.origin.getX(), 0, this.origin.getZ()));
     }
 
@@ -501,19 +787,7 @@ public class ComplexShape implements Shape
     public ComplexShape clone()
     {
         ComplexShape newShape = new ComplexShape(this.width, this.height, this.length, this.origin);
-        for (int x = 0; x < this.width; x++)
-        {
-            for (int y = 0; y < this.height; y++)
-            {
-                for (int z = 0; z < this.length; z++)
-                {
-                    if (get(x, y, z, false))
-                    {
-                        newShape.set(x, y, z, false);
-                    }
-                }
-            }
-        }
+        System.arraycopy(this.shape, 0, newShape.shape, 0, this.shape.length);
         return newShape;
     }
 
@@ -34,6 +34,11 @@ import com.voxelplugineering.voxelsniper.world.material.Material;
 public interface MaterialShape extends Shape
 {
 
+    /**
+     * The material id of positions which are not set in the shape.
+     */
+    int UNSET_ID = -1;
+
     /**
      * Gets the underlying shape.
      * 
@@ -52,6 +57,42 @@ public interface MaterialShape extends Shape
      */
     Optional<Material> getMaterial(int x, int y, int z, boolean relative);
 
+    /**
+     * Gets the id of the material at the given location. Ids index the array returned by
+     * {@link #getPalette()}. Unlike {@link #getMaterial(int, int, int, boolean)} this never
+     * allocates and is intended for loops over every position of the shape.
+     * 
+     * @param x The X position, not offset by the origin
+     * @param y The Y position, not offset by the origin
+     * @param z The Z position, not offset by the origin
+     * @return The material id, or {@link #UNSET_ID} if the position is not set
+     */
+    int getMaterialId(int x, int y, int z);
+
+    /**
+     * Gets the materials of this shape indexed by their ids. Ids which are not in use map to null.
+     * The returned array is a copy.
+     * 
+     * @return The palette
+     */
+    Material[] getPalette();
+
+    /**
+     * Copies the material ids of a region of this shape into the given array. The id at (x + i, y
+     * + j, z + k) is written to {@code dst[(j * length + k) * width + i]}, matching the order of
+     * {@link #getLowerMaterialData()}. Positions which are not set are written as
+     * {@link #UNSET_ID}.
+     * 
+     * @param dst The array to fill, at least width * height * length long
+     * @param x The lowest X position of the region, not offset by the origin
+     * @param y The lowest Y position of the region, not offset by the origin
+     * @param z The lowest Z position of the region, not offset by the origin
+     * @param width The width of the region
+     * @param height The height of the region
+     * @param length The length of the region
+     */
+    void copyIds(int[] dst, int x, int y, int z, int width, int height, int length);
+
     /**
      * Sets the material at the given location.
      * 
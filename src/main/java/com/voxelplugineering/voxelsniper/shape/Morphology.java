@@ -0,0 +1,366 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 The Voxel Plugineering Team
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.voxelplugineering.voxelsniper.shape;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.Arrays;
+
+/**
+ * Morphological operators over {@link ComplexShape}s with a structuring element, known here as the
+ * kernel.
+ * <p>
+ * The kernel is split into its columns, and each column into spans along the y axis. A span is
+ * applied to a whole column of the shape at once: the column is smeared (for a dilation) or
+ * run-anded (for an erosion) across the length of the span with a logarithmic number of word
+ * shifts, then shifted into place and combined a word at a time. Kernels which fill their bounds
+ * are separable and are applied as three passes of line kernels, one along each axis.
+ * </p>
+ * <p>
+ * The results have the size and origin of the given shape. Positions outside of the shape are
+ * treated as unset.
+ * </p>
+ */
+public final class Morphology
+{
+
+    private Morphology()
+    {
+
+    }
+
+    /**
+     * Dilates the given shape by the kernel. A position is set in the result if it is covered by
+     * the kernel placed with its origin on any set position of the shape.
+     * 
+     * @param shape The shape
+     * @param kernel The kernel
+     * @return The dilated shape
+     */
+    public static ComplexShape dilate(ComplexShape shape, Shape kernel)
+    {
+        ComplexShape result = shape;
+        for (int[] pass : passes(kernel))
+        {
+            result = apply(result, pass, true);
+        }
+        return result == shape ? new ComplexShape(shape) : result;
+    }
+
+    /**
+     * Erodes the given shape by the kernel. A position is set in the result if every position of
+     * the kernel, placed with its origin on that position, covers a set position of the shape.
+     * 
+     * @param shape The shape
+     * @param kernel The kernel
+     * @return The eroded shape
+     */
+    public static ComplexShape erode(ComplexShape shape, Shape kernel)
+    {
+        ComplexShape result = shape;
+        for (int[] pass : passes(kernel))
+        {
+            result = apply(result, pass, false);
+        }
+        return result == shape ? new ComplexShape(shape) : result;
+    }
+
+    /**
+     * Opens the given shape by the kernel, an erosion followed by a dilation. This removes features
+     * of the shape smaller than the kernel.
+     * 
+     * @param shape The shape
+     * @param kernel The kernel
+     * @return The opened shape
+     */
+    public static ComplexShape open(ComplexShape shape, Shape kernel)
+    {
+        return dilate(erode(shape, kernel), kernel);
+    }
+
+    /**
+     * Closes the given shape by the kernel, a dilation followed by an erosion. This fills gaps in
+     * the shape smaller than the kernel.
+     * 
+     * @param shape The shape
+     * @param kernel The kernel
+     * @return The closed shape
+     */
+    public static ComplexShape close(ComplexShape shape, Shape kernel)
+    {
+        return erode(dilate(shape, kernel), kernel);
+    }
+
+    /**
+     * Applies the hit-or-miss transform to the given shape. A position is set in the result if
+     * every position of the hit kernel covers a set position of the shape and every position of
+     * the miss kernel covers an unset position of the shape.
+     * 
+     * @param shape The shape
+     * @param hit The kernel which must be covered by the shape
+     * @param miss The kernel which must not be covered by the shape
+     * @return The matching positions
+     */
+    public static ComplexShape hitOrMiss(ComplexShape shape, Shape hit, Shape miss)
+    {
+        ComplexShape inverse = new ComplexShape(shape);
+        inverse.invert();
+        ComplexShape result = erode(shape, hit);
+        result.intersect(erode(inverse, miss));
+        return result;
+    }
+
+    /**
+     * Gets every position reached by the kernel when it is placed on each set position of the
+     * given shape, this is the dilation of the shape without clipping to its bounds. The result is
+     * enlarged by the extent of the kernel and its origin moved to match, so relative positions in
+     * the result are relative positions in the shape.
+     * 
+     * @param shape The shape
+     * @param kernel The kernel
+     * @return The reached positions
+     */
+    public static ComplexShape reach(Shape shape, Shape kernel)
+    {
+        checkNotNull(shape);
+        checkNotNull(kernel);
+        final int kx = kernel.getOrigin().getX();
+        final int ky = kernel.getOrigin().getY();
+        final int kz = kernel.getOrigin().getZ();
+        final ComplexShape padded =
+                new ComplexShape(shape.getWidth() + kernel.getWidth() - 1, shape.getHeight() + kernel.getHeight() - 1, shape.getLength()
+                        + kernel.getLength() - 1, shape.getOrigin().add(kernel.getOrigin()));
+        shape.forEachSpan(new SpanVisitor()
+        {
+
+            @Override
+            public void visit(int x, int z, int minY, int maxY)
+            {
+                padded.fillColumn(x + kx, z + kz, minY + ky, maxY + ky);
+            }
+
+        });
+        return dilate(padded, kernel);
+    }
+
+    /**
+     * Splits the kernel into passes, each pass is a list of spans as groups of four ints: the x and
+     * z offsets of the column, the y offset of the bottom of the span and the length of the span.
+     * A kernel which fills its bounds is split into one line along each axis.
+     * 
+     * @param kernel The kernel
+     * @return The passes
+     */
+    private static int[][] passes(Shape kernel)
+    {
+        checkNotNull(kernel);
+        SpanBuffer spans = SpanBuffer.of(kernel);
+        int ox = kernel.getOrigin().getX();
+        int oy = kernel.getOrigin().getY();
+        int oz = kernel.getOrigin().getZ();
+        int w = kernel.getWidth();
+        int h = kernel.getHeight();
+        int l = kernel.getLength();
+        if (spans.size() > 0 && spans.getVolume() == (long) w * h * l)
+        {
+            int[] xs = new int[w * 4];
+            for (int x = 0; x < w; x++)
+            {
+                xs[x * 4] = x - ox;
+                xs[x * 4 + 3] = 1;
+            }
+            int[] zs = new int[l * 4];
+            for (int z = 0; z < l; z++)
+            {
+                zs[z * 4 + 1] = z - oz;
+                zs[z * 4 + 3] = 1;
+            }
+            return new int[][] { xs, zs, new int[] { 0, 0, -oy, h } };
+        }
+        int[] pass = new int[spans.size() * 4];
+        for (int i = 0; i < spans.size(); i++)
+        {
+            pass[i * 4] = spans.getX(i) - ox;
+            pass[i * 4 + 1] = spans.getZ(i) - oz;
+            pass[i * 4 + 2] = spans.getMinY(i) - oy;
+            pass[i * 4 + 3] = spans.getMaxY(i) - spans.getMinY(i);
+        }
+        return new int[][] { pass };
+    }
+
+    /**
+     * Applies a single pass of kernel spans to the shape.
+     * 
+     * @param shape The shape
+     * @param spans The spans of the pass
+     * @param dilate Whether to dilate, otherwise erodes
+     * @return The result
+     */
+    private static ComplexShape apply(ComplexShape shape, int[] spans, boolean dilate)
+    {
+        int width = shape.getWidth();
+        int length = shape.getLength();
+        int stride = shape.getStride();
+        ComplexShape result = new ComplexShape(width, shape.getHeight(), length, shape.getOrigin());
+        long[] out = result.getWords();
+        if (!dilate)
+        {
+            if (spans.length == 0)
+            {
+                // an empty kernel is covered everywhere
+                result.invert();
+                return result;
+            }
+            Arrays.fill(out, -1L);
+        }
+        long[][] runs = new long[maxLength(spans) + 1][];
+        for (int i = 0; i < spans.length; i += 4)
+        {
+            int dx = spans[i];
+            int dz = spans[i + 1];
+            int dy = spans[i + 2];
+            int len = spans[i + 3];
+            if (runs[len] == null)
+            {
+                runs[len] = dilate ? smear(shape, len) : runAnd(shape, len);
+            }
+            long[] src = runs[len];
+            for (int x = 0; x < width; x++)
+            {
+                int sx = dilate ? x - dx : x + dx;
+                for (int z = 0; z < length; z++)
+                {
+                    int sz = dilate ? z - dz : z + dz;
+                    int base = (x * length + z) * stride;
+                    if (sx < 0 || sx >= width || sz < 0 || sz >= length)
+                    {
+                        if (!dilate)
+                        {
+                            Arrays.fill(out, base, base + stride, 0L);
+                        }
+                        continue;
+                    }
+                    int srcBase = (sx * length + sz) * stride;
+                    if (dilate)
+                    {
+                        for (int w = 0; w < stride; w++)
+                        {
+                            out[base + w] |= shifted(src, srcBase, stride, w, dy);
+                        }
+                    } else
+                    {
+                        for (int w = 0; w < stride; w++)
+                        {
+                            out[base + w] &= shifted(src, srcBase, stride, w, -dy);
+                        }
+                    }
+                }
+            }
+        }
+        result.clearPadding();
+        return result;
+    }
+
+    private static int maxLength(int[] spans)
+    {
+        int max = 0;
+        for (int i = 3; i < spans.length; i += 4)
+        {
+            max = Math.max(max, spans[i]);
+        }
+        return max;
+    }
+
+    /**
+     * Gets a word of a column shifted towards higher y by the given number of bits, or towards
+     * lower y if negative. Bits shifted in from outside of the column are unset.
+     * 
+     * @param words The words
+     * @param base The index of the first word of the column
+     * @param stride The number of words in the column
+     * @param index The index of the word within the shifted column
+     * @param shift The number of bits to shift by
+     * @return The word
+     */
+    private static long shifted(long[] words, int base, int stride, int index, int shift)
+    {
+        int src = index - (shift >> 6);
+        int bits = shift & 63;
+        long word = src >= 0 && src < stride ? words[base + src] << bits : 0;
+        if (bits != 0 && src - 1 >= 0 && src - 1 < stride)
+        {
+            word |= words[base + src - 1] >>> (64 - bits);
+        }
+        return word;
+    }
+
+    /**
+     * Gets a copy of the words of the shape where each column is smeared upwards, a bit is set if
+     * any of the given number of bits at and below it is set.
+     */
+    private static long[] smear(ComplexShape shape, int len)
+    {
+        long[] words = shape.getWords().clone();
+        int stride = shape.getStride();
+        for (int covered = 1; covered < len;)
+        {
+            int step = Math.min(covered, len - covered);
+            for (int base = 0; base < words.length; base += stride)
+            {
+                // descending so the lower words read are not yet changed
+                for (int w = stride - 1; w >= 0; w--)
+                {
+                    words[base + w] |= shifted(words, base, stride, w, step);
+                }
+            }
+            covered += step;
+        }
+        return words;
+    }
+
+    /**
+     * Gets a copy of the words of the shape where a bit is set if each of the given number of bits
+     * at and above it is set in the shape.
+     */
+    private static long[] runAnd(ComplexShape shape, int len)
+    {
+        long[] words = shape.getWords().clone();
+        int stride = shape.getStride();
+        for (int covered = 1; covered < len;)
+        {
+            int step = Math.min(covered, len - covered);
+            for (int base = 0; base < words.length; base += stride)
+            {
+                // ascending so the higher words read are not yet changed
+                for (int w = 0; w < stride; w++)
+                {
+                    words[base + w] &= shifted(words, base, stride, w, -step);
+                }
+            }
+            covered += step;
+        }
+        return words;
+    }
+
+}
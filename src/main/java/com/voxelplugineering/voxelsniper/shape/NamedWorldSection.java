@@ -69,7 +69,7 @@ public class NamedWorldSection extends ComplexMaterialShape
      */
     public NamedWorldSection(CuboidShape shape, Map<Short, Material> materialDict)
     {
-        super(shape, materialDict.get(0));
+        super(shape, materialDict.get((short) 0));
         for (short key : materialDict.keySet())
         {
             this.registerMaterial(key, materialDict.get(key));
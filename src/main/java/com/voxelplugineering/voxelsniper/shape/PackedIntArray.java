@@ -0,0 +1,257 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 The Voxel Plugineering Team
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.voxelplugineering.voxelsniper.shape;
+
+/**
+ * A fixed length array of non-negative integers packed into 64-bit words with a variable number of
+ * bits per entry. The number of bits per entry is always a power of two so entries never straddle
+ * two words, and grows as larger values are stored. This is intended for holding indices into a
+ * small palette where most arrays need only a few bits per entry.
+ */
+public final class PackedIntArray
+{
+
+    private final int size;
+    private int bits;
+    private int log2Bits;
+    private int shift;
+    private int indexMask;
+    private long valueMask;
+    private long[] words;
+
+    /**
+     * Creates a new {@link PackedIntArray} with every entry set to zero.
+     * 
+     * @param size The number of entries
+     * @param maxValue The largest value which will initially be stored
+     */
+    public PackedIntArray(int size, int maxValue)
+    {
+        if (size < 0)
+        {
+            throw new IllegalArgumentException("Size cannot be negative");
+        }
+        this.size = size;
+        setBits(bitsFor(maxValue));
+        this.words = new long[wordsFor(size)];
+    }
+
+    /**
+     * Creates a new {@link PackedIntArray} which is a copy of the given array.
+     * 
+     * @param other The array to copy
+     */
+    public PackedIntArray(PackedIntArray other)
+    {
+        this.size = other.size;
+        setBits(other.bits);
+        this.words = other.words.clone();
+    }
+
+    /**
+     * Gets the number of bits needed per entry to store the given value. This is always a power
+     * of two.
+     * 
+     * @param value The value
+     * @return The number of bits
+     */
+    public static int bitsFor(int value)
+    {
+        if (value < 0)
+        {
+            throw new IllegalArgumentException("Values cannot be negative");
+        }
+        int bits = 1;
+        while (bits < 32 && (value >>> bits) != 0)
+        {
+            bits <<= 1;
+        }
+        return bits;
+    }
+
+    private void setBits(int bits)
+    {
+        this.bits = bits;
+        this.log2Bits = Integer.numberOfTrailingZeros(bits);
+        this.shift = 6 - this.log2Bits;
+        this.indexMask = (1 << this.shift) - 1;
+        this.valueMask = -1L >>> (64 - bits);
+    }
+
+    private int wordsFor(int entries)
+    {
+        return (int) (((long) entries + this.indexMask) >>> this.shift);
+    }
+
+    /**
+     * Gets the number of entries in this array.
+     * 
+     * @return The number of entries
+     */
+    public int size()
+    {
+        return this.size;
+    }
+
+    /**
+     * Gets the number of bits currently used per entry.
+     * 
+     * @return The number of bits
+     */
+    public int getBits()
+    {
+        return this.bits;
+    }
+
+    /**
+     * Gets the number of bytes used to store the entries.
+     * 
+     * @return The size in bytes
+     */
+    public long getByteSize()
+    {
+        return this.words.length * 8L;
+    }
+
+    /**
+     * Gets the entry at the given index.
+     * 
+     * @param index The index
+     * @return The value
+     */
+    public int get(int index)
+    {
+        return (int) ((this.words[index >>> this.shift] >>> ((index & this.indexMask) << this.log2Bits)) & this.valueMask);
+    }
+
+    /**
+     * Sets the entry at the given index, widening the entries first if the value does not fit.
+     * 
+     * @param index The index
+     * @param value The new value
+     */
+    public void set(int index, int value)
+    {
+        if ((value & ~this.valueMask) != 0)
+        {
+            ensureCapacity(value);
+        }
+        int offset = (index & this.indexMask) << this.log2Bits;
+        int word = index >>> this.shift;
+        this.words[word] = (this.words[word] & ~(this.valueMask << offset)) | ((long) value << offset);
+    }
+
+    /**
+     * Sets every entry from the start index up to but not including the end index to the given
+     * value. Whole words are written at a time where possible.
+     * 
+     * @param from The first index
+     * @param to The index after the last index
+     * @param value The new value
+     */
+    public void fill(int from, int to, int value)
+    {
+        if (from < 0 || to > this.size || from > to)
+        {
+            throw new ArrayIndexOutOfBoundsException("Invalid range " + from + " to " + to + " of " + this.size);
+        }
+        if ((value & ~this.valueMask) != 0)
+        {
+            ensureCapacity(value);
+        }
+        int i = from;
+        while (i < to && (i & this.indexMask) != 0)
+        {
+            set(i++, value);
+        }
+        long pattern = 0;
+        for (int n = 0; n < 64; n += this.bits)
+        {
+            pattern |= (long) value << n;
+        }
+        int perWord = this.indexMask + 1;
+        while (to - i >= perWord)
+        {
+            this.words[i >>> this.shift] = pattern;
+            i += perWord;
+        }
+        while (i < to)
+        {
+            set(i++, value);
+        }
+    }
+
+    /**
+     * Exchanges two values throughout the array, every entry equal to the first value is set to
+     * the second and every entry equal to the second is set to the first.
+     * 
+     * @param a The first value
+     * @param b The second value
+     */
+    public void swap(int a, int b)
+    {
+        ensureCapacity(Math.max(a, b));
+        for (int i = 0; i < this.size; i++)
+        {
+            int v = get(i);
+            if (v == a)
+            {
+                set(i, b);
+            } else if (v == b)
+            {
+                set(i, a);
+            }
+        }
+    }
+
+    /**
+     * Widens the entries of this array if needed so that the given value can be stored.
+     * 
+     * @param maxValue The largest value to be stored
+     */
+    public void ensureCapacity(int maxValue)
+    {
+        int required = bitsFor(maxValue);
+        if (required <= this.bits)
+        {
+            return;
+        }
+        long[] oldWords = this.words;
+        int oldShift = this.shift;
+        int oldIndexMask = this.indexMask;
+        int oldLog2Bits = this.log2Bits;
+        long oldValueMask = this.valueMask;
+        setBits(required);
+        this.words = new long[wordsFor(this.size)];
+        for (int i = 0; i < this.size; i++)
+        {
+            int value = (int) ((oldWords[i >>> oldShift] >>> ((i & oldIndexMask) << oldLog2Bits)) & oldValueMask);
+            if (value != 0)
+            {
+                set(i, value);
+            }
+        }
+    }
+
+}
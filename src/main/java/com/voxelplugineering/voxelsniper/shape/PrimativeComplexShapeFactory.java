@@ -31,6 +31,8 @@ import com.voxelplugineering.voxelsniper.util.Direction;
 public class PrimativeComplexShapeFactory
 {
 
+    private static final double ROUNDING = 1e-9;
+
     /**
      * Creates a cube with the given radius, the distance along a side of the cube will be
      * radius*2+1
@@ -84,49 +86,45 @@ public class PrimativeComplexShapeFactory
     }
 
     /**
-     * Creates an ellipsoidal shape.
+     * Creates an ellipsoidal shape. Each column is solved directly and written whole, large shapes
+     * are split into slabs along the x-axis which are rasterized in parallel.
      * 
      * @param rx the x-axis radius
      * @param ry the y-axis radius
      * @param rz the z-axis radius
      * @return the new shape
      */
-    public static ComplexShape createEllipsoid(double rx, double ry, double rz)
+    public static ComplexShape createEllipsoid(final double rx, final double ry, final double rz)
     {
-        ComplexShape s =
-                new ComplexShape((int) Math.ceil(rx) * 2 + 1, (int) Math.ceil(ry) * 2 + 1, (int) Math.ceil(rz) * 2 + 1, (int) Math.ceil(rx),
-                        (int) Math.ceil(ry), (int) Math.ceil(rz));
-        s.set((int) Math.ceil(rx), (int) Math.ceil(ry), (int) Math.ceil(rz), false);
-        for (double x = 0; x <= rx; x++)
+        final int cx = (int) Math.ceil(rx);
+        final int cy = (int) Math.ceil(ry);
+        final int cz = (int) Math.ceil(rz);
+        final ComplexShape s = new ComplexShape(cx * 2 + 1, cy * 2 + 1, cz * 2 + 1, cx, cy, cz);
+        s.set(cx, cy, cz, false);
+        final int maxZ = (int) Math.floor(rz);
+        SlabRasterizer.run(rows(rx), volume(s), new SlabRasterizer.Slab()
         {
 
-            final double xSquared = (x / (rx)) * (x / (rx));
-
-            for (double z = 0; z <= rz; z++)
+            @Override
+            public void rasterize(int start, int end)
             {
-
-                final double zSquared = (z / (rz)) * (z / (rz));
-
-                for (double y = 0; y <= ry; y++)
+                for (int x = start; x < end; x++)
                 {
-
-                    final double ySquared = (y / (ry)) * (y / (ry));
-
-                    if (xSquared + ySquared + zSquared <= 1)
+                    final double xSquared = (x / rx) * (x / rx);
+                    for (int z = 0; z <= maxZ; z++)
                     {
-                        s.set((int) (Math.ceil(rx) + x), (int) (Math.ceil(ry) + y), (int) (Math.ceil(rz) + z), false);
-                        s.set((int) (Math.ceil(rx) + x), (int) (Math.ceil(ry) + y), (int) (Math.ceil(rz) - z), false);
-                        s.set((int) (Math.ceil(rx) + x), (int) (Math.ceil(ry) - y), (int) (Math.ceil(rz) + z), false);
-                        s.set((int) (Math.ceil(rx) + x), (int) (Math.ceil(ry) - y), (int) (Math.ceil(rz) - z), false);
-                        s.set((int) (Math.ceil(rx) - x), (int) (Math.ceil(ry) + y), (int) (Math.ceil(rz) + z), false);
-                        s.set((int) (Math.ceil(rx) - x), (int) (Math.ceil(ry) + y), (int) (Math.ceil(rz) - z), false);
-                        s.set((int) (Math.ceil(rx) - x), (int) (Math.ceil(ry) - y), (int) (Math.ceil(rz) + z), false);
-                        s.set((int) (Math.ceil(rx) - x), (int) (Math.ceil(ry) - y), (int) (Math.ceil(rz) - z), false);
+                        final double zSquared = (z / rz) * (z / rz);
+                        int y = extent(xSquared, zSquared, ry);
+                        if (y < 0)
+                        {
+                            break;
+                        }
+                        fillMirrored(s, cx, cz, x, z, cy - y, cy + y + 1);
                     }
-
                 }
             }
-        }
+
+        });
         return s;
     }
 
@@ -144,6 +142,8 @@ public class PrimativeComplexShapeFactory
     /**
      * Creates an elliptical cylinder in the direction of the given axis. <p> The axes are ordered
      * according to the right had rule, where the directional axis takes the place of the z-axis.
+     * </p> <p> Each row of the ellipse is solved directly and written a column at a time, large
+     * shapes are split into slabs which are rasterized in parallel. </p>
      * 
      * @param rx the first radius perpendicular to the axis
      * @param ry the second radius perpendicular to the axis
@@ -151,91 +151,94 @@ public class PrimativeComplexShapeFactory
      * @param direction the direction axis
      * @return the new shape
      */
-    public static ComplexShape createEllipticalCylinder(double rx, double ry, int height, Direction direction)
+    public static ComplexShape createEllipticalCylinder(final double rx, final double ry, final int height, Direction direction)
     {
-        ComplexShape s;
+        final int cx = (int) Math.ceil(rx);
+        final int cy = (int) Math.ceil(ry);
+        final ComplexShape s;
         if (direction == Direction.EAST || direction == Direction.WEST) // x-axis
         {
-            s = new ComplexShape(height, (int) Math.ceil(rx) * 2 + 1, (int) Math.ceil(ry) * 2 + 1, 0, (int) Math.ceil(rx), (int) Math.ceil(ry));
-            s.set((int) Math.ceil(rx), (int) Math.ceil(ry), 0, false);
-            for (double x = 0; x <= rx; x++)
+            s = new ComplexShape(height, cx * 2 + 1, cy * 2 + 1, 0, cx, cy);
+            s.set(0, cx, cy, false);
+            SlabRasterizer.run(rows(ry), volume(s), new SlabRasterizer.Slab()
             {
 
-                final double xSquared = (x / rx) * (x / rx);
-
-                for (double y = 0; y <= ry; y++)
+                @Override
+                public void rasterize(int start, int end)
                 {
-
-                    final double zSquared = (y / ry) * (y / ry);
-
-                    for (int z = 0; z < height; z++)
+                    for (int y = start; y < end; y++)
                     {
-                        if (xSquared + zSquared <= 1)
+                        final double zSquared = (y / ry) * (y / ry);
+                        int x = extent(0, zSquared, rx);
+                        if (x < 0)
                         {
-                            s.set(z, (int) (Math.ceil(rx) + x), (int) (Math.ceil(ry) + y), false);
-                            s.set(z, (int) (Math.ceil(rx) + x), (int) (Math.ceil(ry) - y), false);
-                            s.set(z, (int) (Math.ceil(rx) - x), (int) (Math.ceil(ry) + y), false);
-                            s.set(z, (int) (Math.ceil(rx) - x), (int) (Math.ceil(ry) - y), false);
+                            break;
+                        }
+                        for (int z = 0; z < height; z++)
+                        {
+                            s.fillColumn(z, cy + y, cx - x, cx + x + 1);
+                            if (y != 0)
+                            {
+                                s.fillColumn(z, cy - y, cx - x, cx + x + 1);
+                            }
                         }
-
                     }
                 }
-            }
+
+            });
         } else if (direction == Direction.NORTH || direction == Direction.SOUTH) // z-axis
         {
-            s = new ComplexShape((int) Math.ceil(rx) * 2 + 1, (int) Math.ceil(ry) * 2 + 1, height, (int) Math.ceil(rx), (int) Math.ceil(ry), 0);
-            s.set((int) Math.ceil(rx), 0, (int) Math.ceil(ry), false);
-            for (double x = 0; x <= rx; x++)
+            s = new ComplexShape(cx * 2 + 1, cy * 2 + 1, height, cx, cy, 0);
+            s.set(cx, cy, 0, false);
+            SlabRasterizer.run(rows(rx), volume(s), new SlabRasterizer.Slab()
             {
 
-                final double xSquared = (x / rx) * (x / rx);
-
-                for (double y = 0; y <= ry; y++)
+                @Override
+                public void rasterize(int start, int end)
                 {
-
-                    final double zSquared = (y / ry) * (y / ry);
-
-                    for (int z = 0; z < height; z++)
+                    for (int x = start; x < end; x++)
                     {
-                        if (xSquared + zSquared <= 1)
+                        final double xSquared = (x / rx) * (x / rx);
+                        int y = extent(xSquared, 0, ry);
+                        if (y < 0)
                         {
-                            s.set((int) (Math.ceil(rx) + x), (int) (Math.ceil(ry) + y), z, false);
-                            s.set((int) (Math.ceil(rx) + x), (int) (Math.ceil(ry) - y), z, false);
-                            s.set((int) (Math.ceil(rx) - x), (int) (Math.ceil(ry) + y), z, false);
-                            s.set((int) (Math.ceil(rx) - x), (int) (Math.ceil(ry) - y), z, false);
+                            continue;
+                        }
+                        for (int z = 0; z < height; z++)
+                        {
+                            s.fillColumn(cx + x, z, cy - y, cy + y + 1);
+                            if (x != 0)
+                            {
+                                s.fillColumn(cx - x, z, cy - y, cy + y + 1);
+                            }
                         }
-
                     }
                 }
-            }
+
+            });
         } else
         // y-axis default
         {
-            s = new ComplexShape((int) Math.ceil(rx) * 2 + 1, height, (int) Math.ceil(ry) * 2 + 1, (int) Math.ceil(rx), 0, (int) Math.ceil(ry));
-            s.set((int) Math.ceil(rx), 0, (int) Math.ceil(ry), false);
-            for (double x = 0; x <= rx; x++)
+            s = new ComplexShape(cx * 2 + 1, height, cy * 2 + 1, cx, 0, cy);
+            s.set(cx, 0, cy, false);
+            SlabRasterizer.run(rows(rx), volume(s), new SlabRasterizer.Slab()
             {
 
-                final double xSquared = (x / rx) * (x / rx);
-
-                for (double y = 0; y <= ry; y++)
+                @Override
+                public void rasterize(int start, int end)
                 {
-
-                    final double zSquared = (y / ry) * (y / ry);
-
-                    for (int z = 0; z < height; z++)
+                    for (int x = start; x < end; x++)
                     {
-                        if (xSquared + zSquared <= 1)
+                        final double xSquared = (x / rx) * (x / rx);
+                        int y = extent(xSquared, 0, ry);
+                        for (int z = 0; z <= y; z++)
                         {
-                            s.set((int) (Math.ceil(rx) + x), z, (int) (Math.ceil(ry) + y), false);
-                            s.set((int) (Math.ceil(rx) + x), z, (int) (Math.ceil(ry) - y), false);
-                            s.set((int) (Math.ceil(rx) - x), z, (int) (Math.ceil(ry) + y), false);
-                            s.set((int) (Math.ceil(rx) - x), z, (int) (Math.ceil(ry) - y), false);
+                            fillMirrored(s, cx, cy, x, z, 0, height);
                         }
-
                     }
                 }
-            }
+
+            });
         }
         return s;
     }
@@ -282,4 +285,78 @@ public class PrimativeComplexShapeFactory
         return createEllipticalCylinder(rx, ry, 1, direction);
     }
 
+    /**
+     * Gets the number of rows along an axis with the given radius.
+     * 
+     * @param r The radius
+     * @return The number of rows
+     */
+    private static int rows(double r)
+    {
+        return Math.max(0, (int) Math.floor(r) + 1);
+    }
+
+    private static long volume(ComplexShape s)
+    {
+        return (long) s.getWidth() * s.getHeight() * s.getLength();
+    }
+
+    /**
+     * Finds the largest offset along an axis with the given radius which lies within the shape,
+     * given the squared and normalized offsets along the other axes. The offset is estimated with a
+     * single square root and then corrected against the exact test.
+     * 
+     * @param before The normalized squared offset summed before this axis
+     * @param after The normalized squared offset summed after this axis
+     * @param r The radius along this axis
+     * @return The largest offset within the shape, or -1 if there is none
+     */
+    private static int extent(double before, double after, double r)
+    {
+        double t = 1 - before - after;
+        // rounding may leave rows on the surface slightly negative
+        if (!(t >= -ROUNDING))
+        {
+            return -1;
+        }
+        int max = (int) Math.floor(r);
+        int k = t > 0 ? Math.min(max, (int) (r * Math.sqrt(t))) : 0;
+        while (k < max && isInside(before, k + 1, after, r))
+        {
+            k++;
+        }
+        while (k >= 0 && !isInside(before, k, after, r))
+        {
+            k--;
+        }
+        return k;
+    }
+
+    private static boolean isInside(double before, int k, double after, double r)
+    {
+        double f = k / r;
+        return before + f * f + after <= 1;
+    }
+
+    /**
+     * Fills the column at the given offset from the center and its mirror images in each
+     * quadrant.
+     */
+    private static void fillMirrored(ComplexShape s, int cx, int cz, int x, int z, int minY, int maxY)
+    {
+        s.fillColumn(cx + x, cz + z, minY, maxY);
+        if (z != 0)
+        {
+            s.fillColumn(cx + x, cz - z, minY, maxY);
+        }
+        if (x != 0)
+        {
+            s.fillColumn(cx - x, cz + z, minY, maxY);
+            if (z != 0)
+            {
+                s.fillColumn(cx - x, cz - z, minY, maxY);
+            }
+        }
+    }
+
 }
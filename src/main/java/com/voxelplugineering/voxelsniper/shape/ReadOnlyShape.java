@@ -0,0 +1,116 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 The Voxel Plugineering Team
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.voxelplugineering.voxelsniper.shape;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.voxelplugineering.voxelsniper.util.math.Vector3i;
+
+/**
+ * A read-only view of another {@link Shape}. Views are handed out in place of shapes which are
+ * shared and must not be changed, such as those held by the {@link ShapeCache}. Copies made with
+ * {@link #clone()} are copies of the underlying shape and may be changed freely.
+ */
+public class ReadOnlyShape implements Shape
+{
+
+    private final Shape shape;
+
+    /**
+     * Creates a new {@link ReadOnlyShape}.
+     * 
+     * @param shape The shape to view
+     */
+    public ReadOnlyShape(Shape shape)
+    {
+        this.shape = checkNotNull(shape);
+    }
+
+    @Override
+    public int getWidth()
+    {
+        return this.shape.getWidth();
+    }
+
+    @Override
+    public int getHeight()
+    {
+        return this.shape.getHeight();
+    }
+
+    @Override
+    public int getLength()
+    {
+        return this.shape.getLength();
+    }
+
+    @Override
+    public boolean isMutable()
+    {
+        return false;
+    }
+
+    @Override
+    public boolean get(int x, int y, int z, boolean relative)
+    {
+        return this.shape.get(x, y, z, relative);
+    }
+
+    @Override
+    public Vector3i getOrigin()
+    {
+        return this.shape.getOrigin();
+    }
+
+    @Override
+    public void set(int x, int y, int z, boolean relative)
+    {
+        throw new UnsupportedOperationException("Cannot change a read-only shape");
+    }
+
+    @Override
+    public void unset(int x, int y, int z, boolean relative)
+    {
+        throw new UnsupportedOperationException("Cannot change a read-only shape");
+    }
+
+    @Override
+    public void forEachSpan(SpanVisitor visitor)
+    {
+        this.shape.forEachSpan(visitor);
+    }
+
+    @Override
+    public Shape clone()
+    {
+        return this.shape.clone();
+    }
+
+    @Override
+    public String toString()
+    {
+        return "ReadOnly" + this.shape.toString();
+    }
+
+}
@@ -102,6 +102,15 @@ public interface Shape
      */
     void unset(int x, int y, int z, boolean relative);
 
+    /**
+     * Visits every span of set positions in this shape. A span is a run of set positions along the
+     * y axis in a single column, a run may be reported as several adjacent spans. Spans are in the
+     * coordinates of the shape, not relative to its origin.
+     * 
+     * @param visitor The visitor
+     */
+    void forEachSpan(SpanVisitor visitor);
+
     /**
      * Returns a copy of this shape.
      * 
@@ -0,0 +1,143 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 The Voxel Plugineering Team
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.voxelplugineering.voxelsniper.shape;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.LoadingCache;
+import com.google.common.cache.Weigher;
+
+/**
+ * A shared cache of rasterized shapes. Brushes describe their shape with a primitive such as an
+ * {@link com.voxelplugineering.voxelsniper.shape.csg.EllipsoidShape} and receive a read-only view
+ * of a {@link ComplexShape} holding the same positions, which is rasterized only the first time
+ * those parameters are seen.
+ * <p>
+ * Primitives are used as keys and must implement equals and hashCode over everything which
+ * affects the positions they cover, including their origin. A copy of the primitive is stored so
+ * the caller may reuse it. The cache is bounded by the memory used by the rasterized shapes and is
+ * safe for concurrent use. The cache is held in a single segment so that the whole bound is
+ * available to each shape, and shapes larger than half of the bound are rasterized on each request
+ * without being cached so that a single large shape cannot evict every other entry.
+ * </p>
+ */
+public final class ShapeCache
+{
+
+    /**
+     * The maximum number of 64-bit words held by rasterized shapes in the cache.
+     */
+    private static final long MAXIMUM_WORDS = 1 << 22;
+
+    /**
+     * The maximum number of 64-bit words held by a single rasterized shape for it to be cached.
+     */
+    private static final long MAXIMUM_SHAPE_WORDS = MAXIMUM_WORDS / 2;
+
+    private static final LoadingCache<Shape, Shape> CACHE = CacheBuilder.newBuilder().concurrencyLevel(1)
+            .maximumWeight(MAXIMUM_WORDS).weigher(new Weigher<Shape, Shape>()
+            {
+
+                @Override
+                public int weigh(Shape key, Shape value)
+                {
+                    return (int) Math.min(Integer.MAX_VALUE, getWords(value));
+                }
+
+            }).recordStats().build(new CacheLoader<Shape, Shape>()
+            {
+
+                @Override
+                public Shape load(Shape key)
+                {
+                    return new ReadOnlyShape(new ComplexShape(key));
+                }
+
+            });
+
+    private ShapeCache()
+    {
+
+    }
+
+    /**
+     * Gets a read-only rasterized copy of the given primitive shape, from the cache if an equal
+     * primitive has been rasterized before.
+     * 
+     * @param primitive The primitive shape
+     * @return The rasterized shape
+     */
+    public static Shape get(Shape primitive)
+    {
+        checkNotNull(primitive);
+        if (getWords(primitive) > MAXIMUM_SHAPE_WORDS)
+        {
+            return new ReadOnlyShape(new ComplexShape(primitive));
+        }
+        return CACHE.getUnchecked(primitive.clone());
+    }
+
+    /**
+     * Gets the number of 64-bit words used by the rasterized form of the given shape.
+     * 
+     * @param shape The shape
+     * @return The number of words
+     */
+    private static long getWords(Shape shape)
+    {
+        return Math.max(1, (long) shape.getWidth() * shape.getLength() * ((shape.getHeight() + 63) >>> 6));
+    }
+
+    /**
+     * Gets the hit, miss and eviction statistics of the cache.
+     * 
+     * @return The statistics
+     */
+    public static CacheStats getStats()
+    {
+        return CACHE.stats();
+    }
+
+    /**
+     * Gets the number of shapes currently cached.
+     * 
+     * @return The number of shapes
+     */
+    public static long size()
+    {
+        return CACHE.size();
+    }
+
+    /**
+     * Removes all shapes from the cache.
+     */
+    public static void invalidateAll()
+    {
+        CACHE.invalidateAll();
+    }
+
+}
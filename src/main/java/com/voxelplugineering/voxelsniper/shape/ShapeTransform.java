@@ -0,0 +1,310 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 The Voxel Plugineering Team
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.voxelplugineering.voxelsniper.shape;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.voxelplugineering.voxelsniper.util.math.Vector3i;
+
+/**
+ * An immutable transform made up of quarter turn rotations, mirrors, integer scaling and
+ * translation. Rotations and mirrors are about the origin of the shape, scaling turns each
+ * position into a cube of positions starting at the scaled position, and translation moves the
+ * shape relative to its origin.
+ * <p>
+ * Transforms are applied to shapes as views with {@link #apply(Shape)} and
+ * {@link #apply(MaterialShape)}, which remap coordinates on access rather than copying.
+ * </p>
+ */
+public final class ShapeTransform
+{
+
+    /**
+     * The transform which leaves shapes unchanged.
+     */
+    public static final ShapeTransform IDENTITY = new ShapeTransform(new int[] { 0, 1, 2 }, new boolean[3], 1, Vector3i.ZERO);
+
+    private final int[] axis;
+    private final boolean[] flip;
+    private final int scale;
+    private final Vector3i translation;
+
+    private ShapeTransform(int[] axis, boolean[] flip, int scale, Vector3i translation)
+    {
+        this.axis = axis;
+        this.flip = flip;
+        this.scale = scale;
+        this.translation = translation;
+    }
+
+    /**
+     * Gets the source axis which the given axis of a transformed shape is read from, where 0, 1
+     * and 2 are the x, y and z axes.
+     * 
+     * @param axis The axis of the transformed shape
+     * @return The axis of the source shape
+     */
+    public int getSourceAxis(int axis)
+    {
+        return this.axis[axis];
+    }
+
+    /**
+     * Gets whether the given axis of a transformed shape runs opposite to its source axis.
+     * 
+     * @param axis The axis of the transformed shape
+     * @return Whether the axis is mirrored
+     */
+    public boolean isMirrored(int axis)
+    {
+        return this.flip[axis];
+    }
+
+    /**
+     * Gets the scale factor.
+     * 
+     * @return The scale
+     */
+    public int getScale()
+    {
+        return this.scale;
+    }
+
+    /**
+     * Gets the translation.
+     * 
+     * @return The translation
+     */
+    public Vector3i getTranslation()
+    {
+        return this.translation;
+    }
+
+    /**
+     * Gets whether this transform leaves the y axis of shapes unchanged apart from scaling, so
+     * that columns of the source shape are columns of the transformed shape.
+     * 
+     * @return Whether columns are preserved
+     */
+    public boolean preservesColumns()
+    {
+        return this.axis[1] == 1 && !this.flip[1];
+    }
+
+    /**
+     * Returns this transform followed by the given number of quarter turns about the x axis, from
+     * y towards z.
+     * 
+     * @param quarterTurns The number of quarter turns, may be negative
+     * @return The new transform
+     */
+    public ShapeTransform rotateX(int quarterTurns)
+    {
+        return rotate(1, 2, quarterTurns);
+    }
+
+    /**
+     * Returns this transform followed by the given number of quarter turns about the y axis, from
+     * z towards x.
+     * 
+     * @param quarterTurns The number of quarter turns, may be negative
+     * @return The new transform
+     */
+    public ShapeTransform rotateY(int quarterTurns)
+    {
+        return rotate(2, 0, quarterTurns);
+    }
+
+    /**
+     * Returns this transform followed by the given number of quarter turns about the z axis, from
+     * x towards y.
+     * 
+     * @param quarterTurns The number of quarter turns, may be negative
+     * @return The new transform
+     */
+    public ShapeTransform rotateZ(int quarterTurns)
+    {
+        return rotate(0, 1, quarterTurns);
+    }
+
+    /**
+     * Returns this transform followed by a mirror along the given axis, where 0, 1 and 2 are the x,
+     * y and z axes.
+     * 
+     * @param axis The axis to mirror along
+     * @return The new transform
+     */
+    public ShapeTransform mirror(int axis)
+    {
+        checkArgument(axis >= 0 && axis < 3, "Axis must be 0, 1 or 2");
+        int[] map = { 0, 1, 2 };
+        boolean[] negate = new boolean[3];
+        negate[axis] = true;
+        return then(map, negate);
+    }
+
+    /**
+     * Returns this transform followed by scaling by the given factor.
+     * 
+     * @param factor The scale factor, must be positive
+     * @return The new transform
+     */
+    public ShapeTransform scale(int factor)
+    {
+        checkArgument(factor > 0, "Scale must be positive");
+        Vector3i t = this.translation;
+        return new ShapeTransform(this.axis, this.flip, this.scale * factor, new Vector3i(t.getX() * factor, t.getY() * factor, t.getZ()
+                * factor));
+    }
+
+    /**
+     * Returns this transform followed by a translation.
+     * 
+     * @param offset The translation
+     * @return The new transform
+     */
+    public ShapeTransform translate(Vector3i offset)
+    {
+        checkNotNull(offset);
+        return new ShapeTransform(this.axis, this.flip, this.scale, this.translation.add(offset));
+    }
+
+    private ShapeTransform rotate(int from, int to, int quarterTurns)
+    {
+        ShapeTransform result = this;
+        for (int i = ((quarterTurns % 4) + 4) % 4; i > 0; i--)
+        {
+            // a quarter turn sends the from axis to the to axis and the to axis to minus the from axis
+            int[] map = { 0, 1, 2 };
+            boolean[] negate = new boolean[3];
+            map[to] = from;
+            map[from] = to;
+            negate[from] = true;
+            result = result.then(map, negate);
+        }
+        return result;
+    }
+
+    /**
+     * Returns this transform followed by a signed permutation of the axes, where the axis i of the
+     * result is the axis map[i] of this transform, negated if negate[i] is set.
+     */
+    private ShapeTransform then(int[] map, boolean[] negate)
+    {
+        int[] a = new int[3];
+        boolean[] f = new boolean[3];
+        int[] t = { this.translation.getX(), this.translation.getY(), this.translation.getZ() };
+        int[] nt = new int[3];
+        for (int i = 0; i < 3; i++)
+        {
+            a[i] = this.axis[map[i]];
+            f[i] = negate[i] ^ this.flip[map[i]];
+            nt[i] = negate[i] ? -t[map[i]] : t[map[i]];
+        }
+        return new ShapeTransform(a, f, this.scale, new Vector3i(nt[0], nt[1], nt[2]));
+    }
+
+    /**
+     * Gets the size of the given shape after this transform.
+     * 
+     * @param shape The shape
+     * @return The transformed size
+     */
+    public Vector3i getSize(Shape shape)
+    {
+        int[] size = { shape.getWidth(), shape.getHeight(), shape.getLength() };
+        return new Vector3i(size[this.axis[0]] * this.scale, size[this.axis[1]] * this.scale, size[this.axis[2]] * this.scale);
+    }
+
+    /**
+     * Gets the origin of the given shape after this transform.
+     * 
+     * @param shape The shape
+     * @return The transformed origin
+     */
+    public Vector3i getOrigin(Shape shape)
+    {
+        int[] size = { shape.getWidth(), shape.getHeight(), shape.getLength() };
+        Vector3i o = shape.getOrigin();
+        int[] origin = { o.getX(), o.getY(), o.getZ() };
+        int[] t = { this.translation.getX(), this.translation.getY(), this.translation.getZ() };
+        int[] result = new int[3];
+        for (int i = 0; i < 3; i++)
+        {
+            int a = this.axis[i];
+            result[i] = this.scale * (this.flip[i] ? size[a] - 1 - origin[a] : origin[a]) - t[i];
+        }
+        return new Vector3i(result[0], result[1], result[2]);
+    }
+
+    /**
+     * Creates a table mapping each position along an axis of a transformed shape to the position
+     * along the corresponding axis of the source shape.
+     * 
+     * @param axis The axis of the transformed shape
+     * @param sourceSize The size of the source shape along the source axis
+     * @return The table
+     */
+    int[] createLookup(int axis, int sourceSize)
+    {
+        int[] lookup = new int[sourceSize * this.scale];
+        for (int i = 0; i < lookup.length; i++)
+        {
+            int q = i / this.scale;
+            lookup[i] = this.flip[axis] ? sourceSize - 1 - q : q;
+        }
+        return lookup;
+    }
+
+    /**
+     * Creates a view of the given shape with this transform applied.
+     * 
+     * @param shape The shape
+     * @return The transformed view
+     */
+    public TransformedShape apply(Shape shape)
+    {
+        return new TransformedShape(shape, this);
+    }
+
+    /**
+     * Creates a view of the given material shape with this transform applied.
+     * 
+     * @param shape The material shape
+     * @return The transformed view
+     */
+    public TransformedMaterialShape apply(MaterialShape shape)
+    {
+        return new TransformedMaterialShape(shape, this);
+    }
+
+    @Override
+    public String toString()
+    {
+        return "ShapeTransform{axis=" + this.axis[0] + this.axis[1] + this.axis[2] + ", mirror=" + this.flip[0] + "," + this.flip[1] + ","
+                + this.flip[2] + ", scale=" + this.scale + ", translation=" + this.translation + "}";
+    }
+
+}
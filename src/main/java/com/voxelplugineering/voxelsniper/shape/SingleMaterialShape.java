@@ -83,6 +83,12 @@ public class SingleMaterialShape implements MaterialShape
         return this.shape.get(x, y, z, relative);
     }
 
+    @Override
+    public void forEachSpan(SpanVisitor visitor)
+    {
+        this.shape.forEachSpan(visitor);
+    }
+
     @Override
     public Vector3i getOrigin()
     {
@@ -125,6 +131,39 @@ public class SingleMaterialShape implements MaterialShape
         return Optional.of(this.material);
     }
 
+    @Override
+    public int getMaterialId(int x, int y, int z)
+    {
+        return this.shape.get(x, y, z, false) ? 0 : UNSET_ID;
+    }
+
+    @Override
+    public Material[] getPalette()
+    {
+        return new Material[] { this.material };
+    }
+
+    @Override
+    public void copyIds(int[] dst, int x, int y, int z, int width, int height, int length)
+    {
+        if (x < 0 || y < 0 || z < 0 || x + width > getWidth() || y + height > getHeight() || z + length > getLength()
+                || dst.length < width * height * length)
+        {
+            throw new ArrayIndexOutOfBoundsException("Tried to copy a region outside of the shape. (" + x + ", " + y + ", " + z + ")");
+        }
+        int i = 0;
+        for (int y0 = y; y0 < y + height; y0++)
+        {
+            for (int z0 = z; z0 < z + length; z0++)
+            {
+                for (int x0 = x; x0 < x + width; x0++)
+                {
+                    dst[i++] = this.shape.get(x0, y0, z0, false) ? 0 : UNSET_ID;
+                }
+            }
+        }
+    }
+
     @Override
     public void setMaterial(int x, int y, int z, boolean b, Material material)
     {
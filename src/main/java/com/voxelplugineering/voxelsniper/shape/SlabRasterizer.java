@@ -0,0 +1,164 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 The Voxel Plugineering Team
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.voxelplugineering.voxelsniper.shape;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Runs rasterization work split into independent slabs of rows. Large shapes are split across a
+ * shared pool of daemon threads with the calling thread taking the last slab, small shapes are
+ * rasterized directly on the calling thread.
+ * <p>
+ * Each slab must only write to columns that no other slab writes to, the caller sees all writes
+ * once {@link #run(int, long, Slab)} returns.
+ * </p>
+ */
+final class SlabRasterizer
+{
+
+    /**
+     * The number of positions in a shape below which it is rasterized on the calling thread.
+     */
+    static final long PARALLEL_THRESHOLD = 1 << 18;
+
+    private static final int THREADS = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+    private static ExecutorService executor;
+
+    private SlabRasterizer()
+    {
+
+    }
+
+    /**
+     * A unit of rasterization work covering a range of rows.
+     */
+    interface Slab
+    {
+
+        /**
+         * Rasterizes the given rows.
+         * 
+         * @param start The first row
+         * @param end The row after the last row
+         */
+        void rasterize(int start, int end);
+
+    }
+
+    /**
+     * Rasterizes the given number of rows, splitting them into slabs if the shape is large enough.
+     * 
+     * @param rows The number of rows
+     * @param volume The number of positions in the shape being rasterized
+     * @param slab The work for each slab
+     */
+    static void run(int rows, long volume, final Slab slab)
+    {
+        int slabs = Math.min(rows, THREADS + 1);
+        if (volume < PARALLEL_THRESHOLD || slabs <= 1)
+        {
+            slab.rasterize(0, rows);
+            return;
+        }
+        ExecutorService pool = getExecutor();
+        List<Future<?>> futures = new ArrayList<Future<?>>(slabs - 1);
+        int start = 0;
+        for (int i = 0; i < slabs - 1; i++)
+        {
+            final int from = start;
+            final int to = start + (rows - start) / (slabs - i);
+            futures.add(pool.submit(new Runnable()
+            {
+
+                @Override
+                public void run()
+                {
+                    slab.rasterize(from, to);
+                }
+
+            }));
+            start = to;
+        }
+        slab.rasterize(start, rows);
+        boolean interrupted = false;
+        try
+        {
+            for (Future<?> future : futures)
+            {
+                while (true)
+                {
+                    try
+                    {
+                        future.get();
+                        break;
+                    } catch (InterruptedException e)
+                    {
+                        interrupted = true;
+                    } catch (ExecutionException e)
+                    {
+                        if (e.getCause() instanceof RuntimeException)
+                        {
+                            throw (RuntimeException) e.getCause();
+                        }
+                        throw new IllegalStateException("Error rasterizing shape", e.getCause());
+                    }
+                }
+            }
+        } finally
+        {
+            if (interrupted)
+            {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private static synchronized ExecutorService getExecutor()
+    {
+        if (executor == null)
+        {
+            executor = Executors.newFixedThreadPool(THREADS, new ThreadFactory()
+            {
+
+                private int count;
+
+                @Override
+                public synchronized Thread newThread(Runnable r)
+                {
+                    Thread thr = new Thread(r, "ShapeRasterizer-" + this.count++);
+                    thr.setDaemon(true);
+                    return thr;
+                }
+            });
+        }
+        return executor;
+    }
+
+}
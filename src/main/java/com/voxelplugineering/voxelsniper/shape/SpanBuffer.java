@@ -0,0 +1,165 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 The Voxel Plugineering Team
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.voxelplugineering.voxelsniper.shape;
+
+import java.util.Arrays;
+
+/**
+ * A {@link SpanVisitor} which records the spans it visits so that they may be iterated later, or
+ * processed incrementally.
+ */
+public class SpanBuffer implements SpanVisitor
+{
+
+    private int[] spans;
+    private int size;
+    private long volume;
+
+    /**
+     * Creates a new {@link SpanBuffer}.
+     */
+    public SpanBuffer()
+    {
+        this.spans = new int[64];
+    }
+
+    /**
+     * Creates a new {@link SpanBuffer} holding the spans of the given shape.
+     * 
+     * @param shape The shape
+     * @return The spans
+     */
+    public static SpanBuffer of(Shape shape)
+    {
+        SpanBuffer buffer = new SpanBuffer();
+        shape.forEachSpan(buffer);
+        return buffer;
+    }
+
+    @Override
+    public void visit(int x, int z, int minY, int maxY)
+    {
+        if (minY >= maxY)
+        {
+            return;
+        }
+        if ((this.size + 1) * 4 > this.spans.length)
+        {
+            this.spans = Arrays.copyOf(this.spans, this.spans.length * 2);
+        }
+        int index = this.size++ * 4;
+        this.spans[index] = x;
+        this.spans[index + 1] = z;
+        this.spans[index + 2] = minY;
+        this.spans[index + 3] = maxY;
+        this.volume += maxY - minY;
+    }
+
+    /**
+     * Gets the number of spans held.
+     * 
+     * @return The span count
+     */
+    public int size()
+    {
+        return this.size;
+    }
+
+    /**
+     * Gets the total number of positions covered by the held spans.
+     * 
+     * @return The volume
+     */
+    public long getVolume()
+    {
+        return this.volume;
+    }
+
+    /**
+     * Gets the X position of the column of the given span.
+     * 
+     * @param span The span index
+     * @return The X position
+     */
+    public int getX(int span)
+    {
+        return this.spans[span * 4];
+    }
+
+    /**
+     * Gets the Z position of the column of the given span.
+     * 
+     * @param span The span index
+     * @return The Z position
+     */
+    public int getZ(int span)
+    {
+        return this.spans[span * 4 + 1];
+    }
+
+    /**
+     * Gets the lowest y position of the given span.
+     * 
+     * @param span The span index
+     * @return The lowest y position
+     */
+    public int getMinY(int span)
+    {
+        return this.spans[span * 4 + 2];
+    }
+
+    /**
+     * Gets the y position above the highest position of the given span.
+     * 
+     * @param span The span index
+     * @return The exclusive upper y position
+     */
+    public int getMaxY(int span)
+    {
+        return this.spans[span * 4 + 3];
+    }
+
+    /**
+     * Visits every held span with the given visitor.
+     * 
+     * @param visitor The visitor
+     */
+    public void replay(SpanVisitor visitor)
+    {
+        for (int i = 0; i < this.size * 4; i += 4)
+        {
+            visitor.visit(this.spans[i], this.spans[i + 1], this.spans[i + 2], this.spans[i + 3]);
+        }
+    }
+
+    /**
+     * Removes all held spans.
+     */
+    public void clear()
+    {
+        this.size = 0;
+        this.volume = 0;
+    }
+
+}
@@ -0,0 +1,94 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 The Voxel Plugineering Team
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.voxelplugineering.voxelsniper.shape;
+
+/**
+ * Utilities for producing the spans of a {@link Shape}.
+ */
+public final class Spans
+{
+
+    private Spans()
+    {
+
+    }
+
+    /**
+     * Visits the spans of the given shape by testing every position. This is intended for shapes
+     * which have no better way to find their spans.
+     * 
+     * @param shape The shape
+     * @param visitor The visitor
+     */
+    public static void scan(Shape shape, SpanVisitor visitor)
+    {
+        for (int x = 0; x < shape.getWidth(); x++)
+        {
+            for (int z = 0; z < shape.getLength(); z++)
+            {
+                int start = -1;
+                for (int y = 0; y < shape.getHeight(); y++)
+                {
+                    if (shape.get(x, y, z, false))
+                    {
+                        if (start == -1)
+                        {
+                            start = y;
+                        }
+                    } else if (start != -1)
+                    {
+                        visitor.visit(x, z, start, y);
+                        start = -1;
+                    }
+                }
+                if (start != -1)
+                {
+                    visitor.visit(x, z, start, shape.getHeight());
+                }
+            }
+        }
+    }
+
+    /**
+     * Visits the span centered on the given y position with the given half height, clipped to the
+     * given height.
+     * 
+     * @param visitor The visitor
+     * @param x The X position of the column
+     * @param z The Z position of the column
+     * @param centerY The center of the span
+     * @param halfHeight The distance from the center to the ends of the span
+     * @param height The height of the shape
+     */
+    public static void visitCentered(SpanVisitor visitor, int x, int z, int centerY, int halfHeight, int height)
+    {
+        int minY = Math.max(0, centerY - halfHeight);
+        int maxY = Math.min(height, centerY + halfHeight + 1);
+        if (minY < maxY)
+        {
+            visitor.visit(x, z, minY, maxY);
+        }
+    }
+
+}
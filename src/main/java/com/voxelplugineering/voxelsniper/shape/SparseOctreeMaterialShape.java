@@ -0,0 +1,771 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 The Voxel Plugineering Team
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.voxelplugineering.voxelsniper.shape;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.Arrays;
+import java.util.Map;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.BiMap;
+import com.google.common.collect.HashBiMap;
+import com.voxelplugineering.voxelsniper.util.math.Vector3i;
+import com.voxelplugineering.voxelsniper.world.material.Material;
+
+/**
+ * A {@link MaterialShape} stored as a sparse voxel octree of material ids. Regions holding a single
+ * material, or which are entirely unset, collapse into a single node. The smallest nodes are 4x4x4
+ * bricks of ids. The shape acts as its own underlying {@link Shape}, a position is set if it holds
+ * any material.
+ */
+public class SparseOctreeMaterialShape implements MaterialShape
+{
+
+    /**
+     * The material id of an unset position.
+     */
+    private static final short UNSET = -1;
+    private static final int BRICK_SHIFT = 2;
+
+    private short nextId = 1;
+    private BiMap<Short, Material> materialDictionary;
+    private BiMap<Material, Short> inverseDictionary;
+    private Material defaultMaterial;
+    /**
+     * Shared uniform nodes, indexed by material id + 1.
+     */
+    private Node[] uniform = new Node[0];
+    private Node root;
+    private int shift;
+    private Vector3i origin;
+    private int width;
+    private int height;
+    private int length;
+
+    /**
+     * Creates a new {@link SparseOctreeMaterialShape}. The shape is initially all unset.
+     * 
+     * @param width the width
+     * @param height the height
+     * @param length the length
+     * @param origin the origin
+     * @param defaultMaterial the default material for the shape
+     */
+    public SparseOctreeMaterialShape(int width, int height, int length, Vector3i origin, Material defaultMaterial)
+    {
+        checkNotNull(defaultMaterial, "Default material cannot be null!");
+        this.width = width;
+        this.height = height;
+        this.length = length;
+        this.origin = checkNotNull(origin, "Origin cannot be null");
+        this.shift = SparseOctreeShape.shiftFor(Math.max(width, Math.max(height, length)));
+        this.materialDictionary = HashBiMap.create();
+        this.inverseDictionary = this.materialDictionary.inverse();
+        this.materialDictionary.put((short) 0, defaultMaterial);
+        this.defaultMaterial = defaultMaterial;
+        this.root = uniform(UNSET);
+    }
+
+    /**
+     * Creates a new {@link SparseOctreeMaterialShape} with every position which is set in the
+     * given shape set to the default material.
+     * 
+     * @param shape the shape
+     * @param defaultMaterial the default material for the shape
+     */
+    public SparseOctreeMaterialShape(Shape shape, Material defaultMaterial)
+    {
+        this(checkNotNull(shape).getWidth(), shape.getHeight(), shape.getLength(), shape.getOrigin(), defaultMaterial);
+        SparseOctreeShape octree = shape instanceof SparseOctreeShape ? (SparseOctreeShape) shape : new SparseOctreeShape(shape);
+        this.root = build(octree, 0, 0, 0, this.shift);
+    }
+
+    /**
+     * Creates a new {@link SparseOctreeMaterialShape} holding the same materials as the given
+     * shape.
+     * 
+     * @param shape the shape to copy
+     */
+    public SparseOctreeMaterialShape(MaterialShape shape)
+    {
+        this(checkNotNull(shape).getWidth(), shape.getHeight(), shape.getLength(), shape.getOrigin(), shape.getDefaultMaterial());
+        for (int x = 0; x < this.width; x++)
+        {
+            for (int y = 0; y < this.height; y++)
+            {
+                for (int z = 0; z < this.length; z++)
+                {
+                    Optional<Material> material = shape.getMaterial(x, y, z, false);
+                    if (material.isPresent())
+                    {
+                        setMaterial(x, y, z, false, material.get());
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Gets the shared uniform node for the given id.
+     * 
+     * @param id The material id
+     * @return The node
+     */
+    private Node uniform(short id)
+    {
+        if (id + 1 >= this.uniform.length)
+        {
+            this.uniform = Arrays.copyOf(this.uniform, Math.max(id + 2, this.uniform.length * 2));
+        }
+        Node node = this.uniform[id + 1];
+        if (node == null)
+        {
+            node = new Node(null, null, id);
+            this.uniform[id + 1] = node;
+        }
+        return node;
+    }
+
+    private static boolean isUniform(Node node)
+    {
+        return node.children == null && node.brick == null;
+    }
+
+    private static int brickIndex(int x, int y, int z)
+    {
+        return (y & 3) | (x & 3) << 2 | (z & 3) << 4;
+    }
+
+    private static int childIndex(int x, int y, int z, int shift)
+    {
+        return (x >> shift & 1) | (y >> shift & 1) << 1 | (z >> shift & 1) << 2;
+    }
+
+    /**
+     * Collapses a brick or branch node into a shared node if it holds a single material.
+     * 
+     * @param node The node
+     * @return The collapsed node, or the given node if it is not uniform
+     */
+    private Node collapse(Node node)
+    {
+        if (node.brick != null)
+        {
+            short first = node.brick[0];
+            for (int i = 1; i < node.brick.length; i++)
+            {
+                if (node.brick[i] != first)
+                {
+                    return node;
+                }
+            }
+            return uniform(first);
+        }
+        Node first = node.children[0];
+        if (!isUniform(first))
+        {
+            return node;
+        }
+        for (int i = 1; i < 8; i++)
+        {
+            if (node.children[i] != first)
+            {
+                return node;
+            }
+        }
+        return first;
+    }
+
+    private Node build(SparseOctreeShape shape, int x0, int y0, int z0, int shift)
+    {
+        if (x0 >= this.width || y0 >= this.height || z0 >= this.length)
+        {
+            return uniform(UNSET);
+        }
+        if (shift == BRICK_SHIFT)
+        {
+            short[] brick = new short[64];
+            Arrays.fill(brick, UNSET);
+            for (int x = x0; x < x0 + 4 && x < this.width; x++)
+            {
+                for (int y = y0; y < y0 + 4 && y < this.height; y++)
+                {
+                    for (int z = z0; z < z0 + 4 && z < this.length; z++)
+                    {
+                        if (shape.get(x, y, z, false))
+                        {
+                            brick[brickIndex(x, y, z)] = 0;
+                        }
+                    }
+                }
+            }
+            return collapse(new Node(null, brick, UNSET));
+        }
+        int half = 1 << (shift - 1);
+        Node node = new Node(new Node[8], null, UNSET);
+        for (int i = 0; i < 8; i++)
+        {
+            node.children[i] =
+                    build(shape, x0 + ((i & 1) != 0 ? half : 0), y0 + ((i & 2) != 0 ? half : 0), z0 + ((i & 4) != 0 ? half : 0), shift - 1);
+        }
+        return collapse(node);
+    }
+
+    /**
+     * Returns this shape, a position is set if it holds any material.
+     * 
+     * @return the shape
+     */
+    @Override
+    public Shape getShape()
+    {
+        return this;
+    }
+
+    @Override
+    public int getWidth()
+    {
+        return this.width;
+    }
+
+    @Override
+    public int getHeight()
+    {
+        return this.height;
+    }
+
+    @Override
+    public int getLength()
+    {
+        return this.length;
+    }
+
+    @Override
+    public boolean isMutable()
+    {
+        return true;
+    }
+
+    @Override
+    public Vector3i getOrigin()
+    {
+        return this.origin;
+    }
+
+    /**
+     * Gets the material id at the given position, or -1 if the position is unset.
+     * 
+     * @param x The X position
+     * @param y The Y position
+     * @param z The Z position
+     * @return The material id
+     */
+    private short getId(int x, int y, int z)
+    {
+        Node node = this.root;
+        int s = this.shift;
+        while (node.children != null)
+        {
+            s--;
+            node = node.children[childIndex(x, y, z, s)];
+        }
+        return node.brick == null ? node.id : node.brick[brickIndex(x, y, z)];
+    }
+
+    private void setId(int x, int y, int z, short id)
+    {
+        this.root = setId(this.root, this.shift, x, y, z, id);
+    }
+
+    private Node setId(Node node, int shift, int x, int y, int z, short id)
+    {
+        if (node.brick == null && node.children == null && node.id == id)
+        {
+            return node;
+        }
+        if (shift == BRICK_SHIFT)
+        {
+            if (node.brick == null)
+            {
+                short[] brick = new short[64];
+                Arrays.fill(brick, node.id);
+                node = new Node(null, brick, UNSET);
+            }
+            node.brick[brickIndex(x, y, z)] = id;
+            return collapse(node);
+        }
+        if (node.children == null)
+        {
+            Node branch = new Node(new Node[8], null, UNSET);
+            Arrays.fill(branch.children, node);
+            node = branch;
+        }
+        int index = childIndex(x, y, z, shift - 1);
+        node.children[index] = setId(node.children[index], shift - 1, x, y, z, id);
+        return collapse(node);
+    }
+
+    /**
+     * Replaces every id in the tree according to the given mapping, the mapping is indexed by id +
+     * 1.
+     * 
+     * @param node The node
+     * @param mapping The id mapping
+     * @return The new node
+     */
+    private Node remap(Node node, short[] mapping)
+    {
+        if (node.children != null)
+        {
+            for (int i = 0; i < 8; i++)
+            {
+                node.children[i] = remap(node.children[i], mapping);
+            }
+            return collapse(node);
+        } else if (node.brick != null)
+        {
+            for (int i = 0; i < node.brick.length; i++)
+            {
+                node.brick[i] = mapping[node.brick[i] + 1];
+            }
+            return collapse(node);
+        }
+        return uniform(mapping[node.id + 1]);
+    }
+
+    private void checkBounds(int x, int y, int z, String op)
+    {
+        if (x >= this.width || x < 0 || y >= this.height || y < 0 || z >= this.length || z < 0)
+        {
+            throw new ArrayIndexOutOfBoundsException("Tried to " + op + " outside of the shape. (" + x + ", " + y + ", " + z + ")");
+        }
+    }
+
+    @Override
+    public boolean get(int x, int y, int z, boolean relative)
+    {
+        if (relative)
+        {
+            x += this.origin.getX();
+            y += this.origin.getY();
+            z += this.origin.getZ();
+        }
+        checkBounds(x, y, z, "get point");
+        return getId(x, y, z) != UNSET;
+    }
+
+    /**
+     * Sets the given position, positions which are not already set take the default material.
+     * 
+     * @param x The X position
+     * @param y The Y position
+     * @param z The Z position
+     * @param relative Whether to offset by the origin
+     */
+    @Override
+    public void set(int x, int y, int z, boolean relative)
+    {
+        if (relative)
+        {
+            x += this.origin.getX();
+            y += this.origin.getY();
+            z += this.origin.getZ();
+        }
+        checkBounds(x, y, z, "set point");
+        if (getId(x, y, z) == UNSET)
+        {
+            setId(x, y, z, (short) 0);
+        }
+    }
+
+    @Override
+    public void unset(int x, int y, int z, boolean relative)
+    {
+        if (relative)
+        {
+            x += this.origin.getX();
+            y += this.origin.getY();
+            z += this.origin.getZ();
+        }
+        checkBounds(x, y, z, "set point");
+        setId(x, y, z, UNSET);
+    }
+
+    @Override
+    public void forEachSpan(SpanVisitor visitor)
+    {
+        forEachSpan(visitor, this.root, 0, 0, 0, this.shift);
+    }
+
+    private void forEachSpan(SpanVisitor visitor, Node node, int x0, int y0, int z0, int shift)
+    {
+        if (node.children != null)
+        {
+            int half = 1 << (shift - 1);
+            for (int i = 0; i < 8; i++)
+            {
+                forEachSpan(visitor, node.children[i], x0 + ((i & 1) != 0 ? half : 0), y0 + ((i & 2) != 0 ? half : 0),
+                        z0 + ((i & 4) != 0 ? half : 0), shift - 1);
+            }
+        } else if (node.brick != null)
+        {
+            for (int x = 0; x < 4; x++)
+            {
+                for (int z = 0; z < 4; z++)
+                {
+                    int start = -1;
+                    for (int y = 0; y < 4; y++)
+                    {
+                        if (node.brick[brickIndex(x, y, z)] != UNSET)
+                        {
+                            if (start == -1)
+                            {
+                                start = y;
+                            }
+                        } else if (start != -1)
+                        {
+                            visitor.visit(x0 + x, z0 + z, y0 + start, y0 + y);
+                            start = -1;
+                        }
+                    }
+                    if (start != -1)
+                    {
+                        visitor.visit(x0 + x, z0 + z, y0 + start, y0 + 4);
+                    }
+                }
+            }
+        } else if (node.id != UNSET)
+        {
+            int side = 1 << shift;
+            for (int x = x0; x < x0 + side && x < this.width; x++)
+            {
+                for (int z = z0; z < z0 + side && z < this.length; z++)
+                {
+                    visitor.visit(x, z, y0, Math.min(y0 + side, this.height));
+                }
+            }
+        }
+    }
+
+    @Override
+    public Optional<Material> getMaterial(int x, int y, int z, boolean relative)
+    {
+        if (relative)
+        {
+            x += this.origin.getX();
+            y += this.origin.getY();
+            z += this.origin.getZ();
+        }
+        checkBounds(x, y, z, "get point");
+        short id = getId(x, y, z);
+        if (id == UNSET)
+        {
+            return Optional.absent();
+        }
+        return Optional.of(this.materialDictionary.get(id));
+    }
+
+    @Override
+    public void setMaterial(int x, int y, int z, boolean relative, Material material)
+    {
+        checkNotNull(material);
+        if (relative)
+        {
+            x += this.origin.getX();
+            y += this.origin.getY();
+            z += this.origin.getZ();
+        }
+        checkBounds(x, y, z, "set material");
+        setId(x, y, z, getOrRegisterMaterial(material));
+    }
+
+    /**
+     * Sets every point of the shape which is set to the given material.
+     * 
+     * @param material the material
+     */
+    @Override
+    public void flood(Material material)
+    {
+        short id = getOrRegisterMaterial(material);
+        short[] mapping = new short[this.nextId + 1];
+        Arrays.fill(mapping, id);
+        mapping[0] = UNSET;
+        this.root = remap(this.root, mapping);
+    }
+
+    @Override
+    public void reset()
+    {
+        flood(this.defaultMaterial);
+    }
+
+    private short getOrRegisterMaterial(Material material)
+    {
+        if (this.inverseDictionary.containsKey(material))
+        {
+            return this.inverseDictionary.get(material);
+        }
+        short id = this.nextId++;
+        this.materialDictionary.put(id, material);
+        return id;
+    }
+
+    /**
+     * Creates a {@link ComplexMaterialShape} with the same bounds and materials as this shape.
+     * 
+     * @return The new shape
+     */
+    public ComplexMaterialShape toComplexMaterialShape()
+    {
+        ComplexMaterialShape shape =
+                new ComplexMaterialShape(new ComplexShape(this.width, this.height, this.length, this.origin), this.defaultMaterial);
+        for (int x = 0; x < this.width; x++)
+        {
+            for (int y = 0; y < this.height; y++)
+            {
+                for (int z = 0; z < this.length; z++)
+                {
+                    short id = getId(x, y, z);
+                    if (id != UNSET)
+                    {
+                        shape.setMaterial(x, y, z, false, this.materialDictionary.get(id));
+                    }
+                }
+            }
+        }
+        return shape;
+    }
+
+    @Override
+    public int getMaterialId(int x, int y, int z)
+    {
+        checkBounds(x, y, z, "get point");
+        return getId(x, y, z);
+    }
+
+    @Override
+    public Material[] getPalette()
+    {
+        Material[] palette = new Material[this.nextId];
+        for (Map.Entry<Short, Material> entry : this.materialDictionary.entrySet())
+        {
+            palette[entry.getKey()] = entry.getValue();
+        }
+        return palette;
+    }
+
+    @Override
+    public void copyIds(int[] dst, int x, int y, int z, int width, int height, int length)
+    {
+        if (x < 0 || y < 0 || z < 0 || x + width > this.width || y + height > this.height || z + length > this.length
+                || dst.length < width * height * length)
+        {
+            throw new ArrayIndexOutOfBoundsException("Tried to copy a region outside of the shape. (" + x + ", " + y + ", " + z + ")");
+        }
+        int i = 0;
+        for (int y0 = y; y0 < y + height; y0++)
+        {
+            for (int z0 = z; z0 < z + length; z0++)
+            {
+                for (int x0 = x; x0 < x + width; x0++)
+                {
+                    dst[i++] = getId(x0, y0, z0);
+                }
+            }
+        }
+    }
+
+    @Override
+    public SparseOctreeMaterialShape clone()
+    {
+        SparseOctreeMaterialShape shape =
+                new SparseOctreeMaterialShape(this.width, this.height, this.length, this.origin, this.defaultMaterial);
+        shape.materialDictionary.putAll(this.materialDictionary);
+        shape.nextId = this.nextId;
+        shape.root = shape.copy(this.root);
+        return shape;
+    }
+
+    private Node copy(Node node)
+    {
+        if (node.children != null)
+        {
+            Node branch = new Node(new Node[8], null, UNSET);
+            for (int i = 0; i < 8; i++)
+            {
+                branch.children[i] = copy(node.children[i]);
+            }
+            return branch;
+        } else if (node.brick != null)
+        {
+            return new Node(null, node.brick.clone(), UNSET);
+        }
+        return uniform(node.id);
+    }
+
+    @Override
+    public Material getDefaultMaterial()
+    {
+        return this.defaultMaterial;
+    }
+
+    /**
+     * Gets the least significant byte of the material data for this shape. The array is built from
+     * the octree on each call.
+     * 
+     * @return The lower byte array
+     */
+    @Override
+    public byte[] getLowerMaterialData()
+    {
+        return getMaterialData(false);
+    }
+
+    /**
+     * Gets the most significant byte of the material data for this shape, or null if no ids exceed
+     * a single byte. The array is built from the octree on each call.
+     * 
+     * @return The upper byte array
+     */
+    @Override
+    public byte[] getUpperMaterialData()
+    {
+        if (!hasExtraData())
+        {
+            return null;
+        }
+        return getMaterialData(true);
+    }
+
+    private byte[] getMaterialData(boolean upper)
+    {
+        byte[] data = new byte[this.width * this.height * this.length];
+        int index = 0;
+        for (int y = 0; y < this.height; y++)
+        {
+            for (int z = 0; z < this.length; z++)
+            {
+                for (int x = 0; x < this.width; x++)
+                {
+                    short id = getId(x, y, z);
+                    data[index++] = (byte) (upper ? (id & 0xff00) >> 8 : id & 0xff);
+                }
+            }
+        }
+        return data;
+    }
+
+    @Override
+    public boolean hasExtraData()
+    {
+        return this.nextId > 256;
+    }
+
+    @Override
+    public void setDefaultMaterial(Material material)
+    {
+        checkNotNull(material);
+        if (this.defaultMaterial.equals(material))
+        {
+            return;
+        }
+        Material existing = this.defaultMaterial;
+        short other = getOrRegisterMaterial(material);
+        this.defaultMaterial = material;
+        this.materialDictionary.remove(other);
+        this.materialDictionary.put((short) 0, material);
+        this.materialDictionary.put(other, existing);
+        short[] mapping = new short[this.nextId + 1];
+        for (int i = 0; i < mapping.length; i++)
+        {
+            mapping[i] = (short) (i - 1);
+        }
+        mapping[1] = other;
+        mapping[other + 1] = 0;
+        this.root = remap(this.root, mapping);
+    }
+
+    @Override
+    public Map<Short, Material> getMaterialsDictionary()
+    {
+        return this.materialDictionary;
+    }
+
+    @Override
+    public int getMaxMaterialId()
+    {
+        return this.nextId - 1;
+    }
+
+    /**
+     * Gets the number of distinct nodes held by this shape, the shared uniform nodes are not
+     * counted. This is a rough measure of the memory used by the shape.
+     * 
+     * @return The node count
+     */
+    public int getNodeCount()
+    {
+        return nodeCount(this.root);
+    }
+
+    private static int nodeCount(Node node)
+    {
+        if (isUniform(node))
+        {
+            return 0;
+        }
+        int count = 1;
+        if (node.children != null)
+        {
+            for (Node child : node.children)
+            {
+                count += nodeCount(child);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * A node of the octree. Branch nodes have eight children, bricks hold the ids of each of their
+     * positions, and all other nodes are shared uniform nodes holding a single id.
+     */
+    private static final class Node
+    {
+
+        final Node[] children;
+        final short[] brick;
+        final short id;
+
+        Node(Node[] children, short[] brick, short id)
+        {
+            this.children = children;
+            this.brick = brick;
+            this.id = id;
+        }
+
+    }
+
+}
@@ -0,0 +1,550 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 The Voxel Plugineering Team
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.voxelplugineering.voxelsniper.shape;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.voxelplugineering.voxelsniper.util.math.Vector3i;
+
+/**
+ * A mutable {@link Shape} stored as a sparse voxel octree. Regions which are entirely set or
+ * entirely unset collapse into a single shared node, so memory use scales with the surface area of
+ * the shape rather than with its bounding volume. The smallest nodes are 4x4x4 bricks stored as a
+ * single 64-bit mask.
+ */
+public class SparseOctreeShape implements Shape
+{
+
+    /**
+     * The shift of the side length of a brick.
+     */
+    private static final int BRICK_SHIFT = 2;
+    private static final Node EMPTY = new Node(null, 0L);
+    private static final Node FULL = new Node(null, -1L);
+
+    private Node root;
+    private int shift;
+    private Vector3i origin;
+    private int width;
+    private int height;
+    private int length;
+
+    /**
+     * Creates a new shape. The shape is initially all unset.
+     * 
+     * @param width the width
+     * @param height the height
+     * @param length the length
+     * @param origin the origin
+     */
+    public SparseOctreeShape(int width, int height, int length, Vector3i origin)
+    {
+        this.width = width;
+        this.height = height;
+        this.length = length;
+        this.origin = checkNotNull(origin, "Origin cannot be null");
+        this.shift = shiftFor(Math.max(width, Math.max(height, length)));
+        this.root = EMPTY;
+    }
+
+    /**
+     * Creates a new {@link SparseOctreeShape} initialized with the given shape. Shapes which are a
+     * {@link ComplexShape} are read a column at a time.
+     * 
+     * @param shape The shape to mirror
+     */
+    public SparseOctreeShape(Shape shape)
+    {
+        this(shape.getWidth(), shape.getHeight(), shape.getLength(), shape.getOrigin());
+        this.root = build(shape, 0, 0, 0, this.shift);
+    }
+
+    /**
+     * Gets the shift of the smallest power of two side length which can hold the given size.
+     * 
+     * @param size The size
+     * @return The shift
+     */
+    static int shiftFor(int size)
+    {
+        int shift = BRICK_SHIFT;
+        while ((1 << shift) < size)
+        {
+            shift++;
+        }
+        return shift;
+    }
+
+    /**
+     * Gets the index of the given position within a brick, the four y positions of a column are
+     * adjacent bits.
+     * 
+     * @param x The X position
+     * @param y The Y position
+     * @param z The Z position
+     * @return The bit index
+     */
+    private static int brickIndex(int x, int y, int z)
+    {
+        return (y & 3) | (x & 3) << 2 | (z & 3) << 4;
+    }
+
+    /**
+     * Gets the index of the child of a node containing the given position.
+     * 
+     * @param x The X position
+     * @param y The Y position
+     * @param z The Z position
+     * @param shift The shift of the side length of the children
+     * @return The child index
+     */
+    private static int childIndex(int x, int y, int z, int shift)
+    {
+        return (x >> shift & 1) | (y >> shift & 1) << 1 | (z >> shift & 1) << 2;
+    }
+
+    /**
+     * Gets a brick node for the given mask, collapsing uniform masks into the shared nodes.
+     * 
+     * @param bits The mask
+     * @return The node
+     */
+    private static Node brick(long bits)
+    {
+        if (bits == 0)
+        {
+            return EMPTY;
+        } else if (bits == -1L)
+        {
+            return FULL;
+        }
+        return new Node(null, bits);
+    }
+
+    /**
+     * Collapses a branch node into a shared node if all of its children are the same uniform node.
+     * 
+     * @param node The branch node
+     * @return The collapsed node, or the given node if it is not uniform
+     */
+    private static Node collapse(Node node)
+    {
+        Node first = node.children[0];
+        if (first != EMPTY && first != FULL)
+        {
+            return node;
+        }
+        for (int i = 1; i < 8; i++)
+        {
+            if (node.children[i] != first)
+            {
+                return node;
+            }
+        }
+        return first;
+    }
+
+    private Node build(Shape shape, int x0, int y0, int z0, int shift)
+    {
+        if (x0 >= this.width || y0 >= this.height || z0 >= this.length)
+        {
+            return EMPTY;
+        }
+        if (shift == BRICK_SHIFT)
+        {
+            long bits = 0;
+            for (int x = 0; x < 4 && x0 + x < this.width; x++)
+            {
+                for (int z = 0; z < 4 && z0 + z < this.length; z++)
+                {
+                    long column = 0;
+                    if (shape instanceof ComplexShape)
+                    {
+                        column = ((ComplexShape) shape).readColumn(x0 + x, z0 + z, y0) & 0xF;
+                    } else
+                    {
+                        for (int y = 0; y < 4 && y0 + y < this.height; y++)
+                        {
+                            if (shape.get(x0 + x, y0 + y, z0 + z, false))
+                            {
+                                column |= 1L << y;
+                            }
+                        }
+                    }
+                    bits |= column << brickIndex(x, 0, z);
+                }
+            }
+            return brick(bits);
+        }
+        int half = 1 << (shift - 1);
+        Node node = new Node(new Node[8], 0L);
+        for (int i = 0; i < 8; i++)
+        {
+            node.children[i] =
+                    build(shape, x0 + ((i & 1) != 0 ? half : 0), y0 + ((i & 2) != 0 ? half : 0), z0 + ((i & 4) != 0 ? half : 0), shift - 1);
+        }
+        return collapse(node);
+    }
+
+    @Override
+    public int getWidth()
+    {
+        return this.width;
+    }
+
+    @Override
+    public int getHeight()
+    {
+        return this.height;
+    }
+
+    @Override
+    public int getLength()
+    {
+        return this.length;
+    }
+
+    @Override
+    public boolean isMutable()
+    {
+        return true;
+    }
+
+    /**
+     * Sets the origin of this shape.
+     * 
+     * @param origin the new origin
+     */
+    public void setOrigin(Vector3i origin)
+    {
+        this.origin = checkNotNull(origin, "Origin cannot be null");
+    }
+
+    @Override
+    public Vector3i getOrigin()
+    {
+        return this.origin;
+    }
+
+    @Override
+    public boolean get(int x, int y, int z, boolean relative)
+    {
+        if (relative)
+        {
+            x += this.origin.getX();
+            y += this.origin.getY();
+            z += this.origin.getZ();
+        }
+        if (x >= this.width || x < 0 || y >= this.height || y < 0 || z >= this.length || z < 0)
+        {
+            throw new ArrayIndexOutOfBoundsException("Tried to get point outside of the shape. (" + x + ", " + y + ", " + z + ")");
+        }
+        Node node = this.root;
+        int s = this.shift;
+        while (node.children != null)
+        {
+            s--;
+            node = node.children[childIndex(x, y, z, s)];
+        }
+        return (node.bits & (1L << brickIndex(x, y, z))) != 0;
+    }
+
+    @Override
+    public void set(int x, int y, int z, boolean relative)
+    {
+        update(x, y, z, relative, true);
+    }
+
+    @Override
+    public void unset(int x, int y, int z, boolean relative)
+    {
+        update(x, y, z, relative, false);
+    }
+
+    private void update(int x, int y, int z, boolean relative, boolean value)
+    {
+        if (relative)
+        {
+            x += this.origin.getX();
+            y += this.origin.getY();
+            z += this.origin.getZ();
+        }
+        if (x >= this.width || x < 0 || y >= this.height || y < 0 || z >= this.length || z < 0)
+        {
+            throw new ArrayIndexOutOfBoundsException("Tried to set point outside of the shape. (" + x + ", " + y + ", " + z + ")");
+        }
+        this.root = update(this.root, this.shift, x, y, z, value);
+    }
+
+    private Node update(Node node, int shift, int x, int y, int z, boolean value)
+    {
+        if (node == (value ? FULL : EMPTY))
+        {
+            return node;
+        }
+        if (shift == BRICK_SHIFT)
+        {
+            long mask = 1L << brickIndex(x, y, z);
+            long bits = value ? node.bits | mask : node.bits & ~mask;
+            if (node == EMPTY || node == FULL || bits == 0 || bits == -1L)
+            {
+                return brick(bits);
+            }
+            node.bits = bits;
+            return node;
+        }
+        if (node.children == null)
+        {
+            Node branch = new Node(new Node[8], 0L);
+            for (int i = 0; i < 8; i++)
+            {
+                branch.children[i] = node;
+            }
+            node = branch;
+        }
+        int index = childIndex(x, y, z, shift - 1);
+        node.children[index] = update(node.children[index], shift - 1, x, y, z, value);
+        return collapse(node);
+    }
+
+    @Override
+    public void forEachSpan(SpanVisitor visitor)
+    {
+        forEachSpan(visitor, this.root, 0, 0, 0, this.shift);
+    }
+
+    private void forEachSpan(SpanVisitor visitor, Node node, int x0, int y0, int z0, int shift)
+    {
+        if (node == EMPTY)
+        {
+            return;
+        }
+        if (node.children != null)
+        {
+            int half = 1 << (shift - 1);
+            for (int i = 0; i < 8; i++)
+            {
+                forEachSpan(visitor, node.children[i], x0 + ((i & 1) != 0 ? half : 0), y0 + ((i & 2) != 0 ? half : 0),
+                        z0 + ((i & 4) != 0 ? half : 0), shift - 1);
+            }
+        } else if (shift == BRICK_SHIFT)
+        {
+            for (int x = 0; x < 4; x++)
+            {
+                for (int z = 0; z < 4; z++)
+                {
+                    long column = node.bits >>> brickIndex(x, 0, z) & 0xF;
+                    while (column != 0)
+                    {
+                        int first = Long.numberOfTrailingZeros(column);
+                        int end = Long.numberOfTrailingZeros(~column & (-1L << first));
+                        visitor.visit(x0 + x, z0 + z, y0 + first, y0 + end);
+                        column &= -1L << end;
+                    }
+                }
+            }
+        } else
+        {
+            int side = 1 << shift;
+            for (int x = x0; x < x0 + side && x < this.width; x++)
+            {
+                for (int z = z0; z < z0 + side && z < this.length; z++)
+                {
+                    visitor.visit(x, z, y0, Math.min(y0 + side, this.height));
+                }
+            }
+        }
+    }
+
+    /**
+     * Gets the number of set positions in this shape.
+     * 
+     * @return The number of set positions
+     */
+    public long cardinality()
+    {
+        return cardinality(this.root, this.shift);
+    }
+
+    private static long cardinality(Node node, int shift)
+    {
+        if (node == FULL)
+        {
+            return 1L << (shift * 3);
+        } else if (node.children == null)
+        {
+            return Long.bitCount(node.bits);
+        }
+        long count = 0;
+        for (Node child : node.children)
+        {
+            count += cardinality(child, shift - 1);
+        }
+        return count;
+    }
+
+    /**
+     * Gets the number of distinct nodes held by this shape, the shared uniform nodes are not
+     * counted. This is a rough measure of the memory used by the shape.
+     * 
+     * @return The node count
+     */
+    public int getNodeCount()
+    {
+        return nodeCount(this.root);
+    }
+
+    private static int nodeCount(Node node)
+    {
+        if (node == EMPTY || node == FULL)
+        {
+            return 0;
+        }
+        int count = 1;
+        if (node.children != null)
+        {
+            for (Node child : node.children)
+            {
+                count += nodeCount(child);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Creates a {@link ComplexShape} with the same bounds and contents as this shape. Uniform
+     * regions are written a column at a time.
+     * 
+     * @return The new shape
+     */
+    public ComplexShape toComplexShape()
+    {
+        ComplexShape shape = new ComplexShape(this.width, this.height, this.length, this.origin);
+        write(shape, this.root, 0, 0, 0, this.shift);
+        return shape;
+    }
+
+    private static void write(ComplexShape shape, Node node, int x0, int y0, int z0, int shift)
+    {
+        if (node == EMPTY)
+        {
+            return;
+        }
+        if (node.children != null)
+        {
+            int half = 1 << (shift - 1);
+            for (int i = 0; i < 8; i++)
+            {
+                write(shape, node.children[i], x0 + ((i & 1) != 0 ? half : 0), y0 + ((i & 2) != 0 ? half : 0), z0 + ((i & 4) != 0 ? half : 0),
+                        shift - 1);
+            }
+            return;
+        }
+        if (shift == BRICK_SHIFT)
+        {
+            for (int x = 0; x < 4; x++)
+            {
+                for (int z = 0; z < 4; z++)
+                {
+                    long column = node.bits >>> brickIndex(x, 0, z) & 0xF;
+                    if (column != 0)
+                    {
+                        shape.orColumn(x0 + x, z0 + z, y0, column);
+                    }
+                }
+            }
+            return;
+        }
+        // a full node larger than a brick, always lies entirely within the bounds
+        int side = 1 << shift;
+        for (int x = x0; x < x0 + side; x++)
+        {
+            for (int z = z0; z < z0 + side; z++)
+            {
+                for (int y = y0; y < y0 + side; y += 64)
+                {
+                    int run = Math.min(64, y0 + side - y);
+                    shape.orColumn(x, z, y, run == 64 ? -1L : (1L << run) - 1);
+                }
+            }
+        }
+    }
+
+    @Override
+    public SparseOctreeShape clone()
+    {
+        SparseOctreeShape shape = new SparseOctreeShape(this.width, this.height, this.length, this.origin);
+        shape.root = copy(this.root);
+        return shape;
+    }
+
+    private static Node copy(Node node)
+    {
+        if (node == EMPTY || node == FULL)
+        {
+            return node;
+        }
+        if (node.children == null)
+        {
+            return new Node(null, node.bits);
+        }
+        Node branch = new Node(new Node[8], 0L);
+        for (int i = 0; i < 8; i++)
+        {
+            branch.children[i] = copy(node.children[i]);
+        }
+        return branch;
+    }
+
+    /**
+     * Gets a String representation of this shape's size and origin.
+     * 
+     * @return The string
+     */
+    @Override
+    public String toString()
+    {
+        return "SparseOctreeShape (" + this.width + "x" + this.height + "x" + this.length + ") origin: " + this.origin.toString() + " nodes: "
+                + getNodeCount();
+    }
+
+    /**
+     * A node of the octree. Branch nodes have eight children, all other nodes are either one of the
+     * shared uniform nodes or a brick whose voxels are held in the mask.
+     */
+    private static final class Node
+    {
+
+        final Node[] children;
+        long bits;
+
+        Node(Node[] children, long bits)
+        {
+            this.children = children;
+            this.bits = bits;
+        }
+
+    }
+
+}
@@ -0,0 +1,347 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 The Voxel Plugineering Team
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.voxelplugineering.voxelsniper.shape;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.Map;
+
+import com.google.common.base.Optional;
+import com.voxelplugineering.voxelsniper.util.math.Vector3i;
+import com.voxelplugineering.voxelsniper.world.material.Material;
+
+/**
+ * A read-only view of a {@link MaterialShape} with a {@link ShapeTransform} applied. Material ids
+ * and the palette are those of the underlying shape, so a view may be passed anywhere a material
+ * shape is read, such as to a change queue, without copying. {@link #materialize()} copies the view
+ * into a new {@link ComplexMaterialShape} a block at a time.
+ */
+public class TransformedMaterialShape implements MaterialShape
+{
+
+    /**
+     * The edge length of the blocks copied by {@link #materialize()}.
+     */
+    private static final int BLOCK_SIZE = 16;
+
+    private final MaterialShape source;
+    private final TransformedShape view;
+    private final TransformedShape shapeView;
+
+    /**
+     * Creates a new {@link TransformedMaterialShape}.
+     * 
+     * @param source The material shape to view
+     * @param transform The transform
+     */
+    public TransformedMaterialShape(MaterialShape source, ShapeTransform transform)
+    {
+        this.source = checkNotNull(source);
+        this.view = new TransformedShape(source, transform);
+        this.shapeView = new TransformedShape(source.getShape(), transform);
+    }
+
+    /**
+     * Gets the underlying material shape.
+     * 
+     * @return The material shape
+     */
+    public MaterialShape getSource()
+    {
+        return this.source;
+    }
+
+    /**
+     * Gets the transform applied to the underlying shape.
+     * 
+     * @return The transform
+     */
+    public ShapeTransform getTransform()
+    {
+        return this.view.getTransform();
+    }
+
+    @Override
+    public Shape getShape()
+    {
+        return this.shapeView;
+    }
+
+    @Override
+    public Optional<Material> getMaterial(int x, int y, int z, boolean relative)
+    {
+        if (relative)
+        {
+            x += getOrigin().getX();
+            y += getOrigin().getY();
+            z += getOrigin().getZ();
+        }
+        this.view.checkBounds(x, y, z);
+        return this.source.getMaterial(this.view.toSource(0, x, y, z), this.view.toSource(1, x, y, z), this.view.toSource(2, x, y, z),
+                false);
+    }
+
+    @Override
+    public int getMaterialId(int x, int y, int z)
+    {
+        this.view.checkBounds(x, y, z);
+        return this.source.getMaterialId(this.view.toSource(0, x, y, z), this.view.toSource(1, x, y, z), this.view.toSource(2, x, y, z));
+    }
+
+    @Override
+    public Material[] getPalette()
+    {
+        return this.source.getPalette();
+    }
+
+    @Override
+    public void copyIds(int[] dst, int x, int y, int z, int width, int height, int length)
+    {
+        if (x < 0 || y < 0 || z < 0 || x + width > getWidth() || y + height > getHeight() || z + length > getLength()
+                || dst.length < width * height * length)
+        {
+            throw new ArrayIndexOutOfBoundsException("Tried to copy a region outside of the shape. (" + x + ", " + y + ", " + z + ")");
+        }
+        if (width == 0 || height == 0 || length == 0)
+        {
+            return;
+        }
+        int[] lx = this.view.getLookup(0);
+        int[] ly = this.view.getLookup(1);
+        int[] lz = this.view.getLookup(2);
+        // the region of the source covering the requested region, the lookups are monotonic
+        int[] min = new int[3];
+        int[] max = new int[3];
+        bound(0, lx[x], lx[x + width - 1], min, max);
+        bound(1, ly[y], ly[y + height - 1], min, max);
+        bound(2, lz[z], lz[z + length - 1], min, max);
+        int sw = max[0] - min[0] + 1;
+        int sh = max[1] - min[1] + 1;
+        int sl = max[2] - min[2] + 1;
+        int[] block = new int[sw * sh * sl];
+        this.source.copyIds(block, min[0], min[1], min[2], sw, sh, sl);
+        // strides through the block for a step along each axis of the source
+        int[] step = { 1, sw * sl, sw };
+        ShapeTransform transform = this.view.getTransform();
+        int ax = transform.getSourceAxis(0);
+        int ay = transform.getSourceAxis(1);
+        int az = transform.getSourceAxis(2);
+        int i = 0;
+        for (int y0 = y; y0 < y + height; y0++)
+        {
+            int oy = (ly[y0] - min[ay]) * step[ay];
+            for (int z0 = z; z0 < z + length; z0++)
+            {
+                int oz = oy + (lz[z0] - min[az]) * step[az];
+                for (int x0 = x; x0 < x + width; x0++)
+                {
+                    dst[i++] = block[oz + (lx[x0] - min[ax]) * step[ax]];
+                }
+            }
+        }
+    }
+
+    private void bound(int axis, int a, int b, int[] min, int[] max)
+    {
+        int sourceAxis = this.view.getTransform().getSourceAxis(axis);
+        min[sourceAxis] = Math.min(a, b);
+        max[sourceAxis] = Math.max(a, b);
+    }
+
+    /**
+     * Copies this view into a new {@link ComplexMaterialShape}. The copy is made in cubic blocks so
+     * that the reads from the underlying shape and the writes to the copy both stay within a small
+     * region, whichever axes the transform exchanges.
+     * 
+     * @return The copy
+     */
+    public ComplexMaterialShape materialize()
+    {
+        Material[] palette = getPalette();
+        Material defaultMaterial = palette.length > 0 && palette[0] != null ? palette[0] : getDefaultMaterial();
+        ComplexMaterialShape copy = new ComplexMaterialShape(this.shapeView.materialize(), defaultMaterial);
+        for (int id = 1; id < palette.length; id++)
+        {
+            if (palette[id] != null)
+            {
+                copy.registerMaterial((short) id, palette[id]);
+            }
+        }
+        int[] buffer = new int[BLOCK_SIZE * BLOCK_SIZE * BLOCK_SIZE];
+        for (int y = 0; y < getHeight(); y += BLOCK_SIZE)
+        {
+            int height = Math.min(BLOCK_SIZE, getHeight() - y);
+            for (int z = 0; z < getLength(); z += BLOCK_SIZE)
+            {
+                int length = Math.min(BLOCK_SIZE, getLength() - z);
+                for (int x = 0; x < getWidth(); x += BLOCK_SIZE)
+                {
+                    int width = Math.min(BLOCK_SIZE, getWidth() - x);
+                    copyIds(buffer, x, y, z, width, height, length);
+                    copy.putIds(buffer, x, y, z, width, height, length);
+                }
+            }
+        }
+        return copy;
+    }
+
+    @Override
+    public void setMaterial(int x, int y, int z, boolean relative, Material material)
+    {
+        throw new UnsupportedOperationException("Cannot change a transformed view");
+    }
+
+    @Override
+    public void flood(Material material)
+    {
+        throw new UnsupportedOperationException("Cannot change a transformed view");
+    }
+
+    @Override
+    public void reset()
+    {
+        throw new UnsupportedOperationException("Cannot change a transformed view");
+    }
+
+    @Override
+    public Material getDefaultMaterial()
+    {
+        return this.source.getDefaultMaterial();
+    }
+
+    /**
+     * Gets the least significant byte of the material data of this view. The view is materialized
+     * on each call.
+     * 
+     * @return The lower byte array
+     */
+    @Override
+    public byte[] getLowerMaterialData()
+    {
+        return materialize().getLowerMaterialData();
+    }
+
+    /**
+     * Gets the most significant byte of the material data of this view. The view is materialized on
+     * each call.
+     * 
+     * @return The upper byte array
+     */
+    @Override
+    public byte[] getUpperMaterialData()
+    {
+        return materialize().getUpperMaterialData();
+    }
+
+    @Override
+    public boolean hasExtraData()
+    {
+        return this.source.hasExtraData();
+    }
+
+    @Override
+    public void setDefaultMaterial(Material material)
+    {
+        throw new UnsupportedOperationException("Cannot change a transformed view");
+    }
+
+    @Override
+    public Map<Short, Material> getMaterialsDictionary()
+    {
+        return this.source.getMaterialsDictionary();
+    }
+
+    @Override
+    public int getMaxMaterialId()
+    {
+        return this.source.getMaxMaterialId();
+    }
+
+    @Override
+    public int getWidth()
+    {
+        return this.view.getWidth();
+    }
+
+    @Override
+    public int getHeight()
+    {
+        return this.view.getHeight();
+    }
+
+    @Override
+    public int getLength()
+    {
+        return this.view.getLength();
+    }
+
+    @Override
+    public boolean isMutable()
+    {
+        return false;
+    }
+
+    @Override
+    public boolean get(int x, int y, int z, boolean relative)
+    {
+        return this.view.get(x, y, z, relative);
+    }
+
+    @Override
+    public Vector3i getOrigin()
+    {
+        return this.view.getOrigin();
+    }
+
+    @Override
+    public void set(int x, int y, int z, boolean relative)
+    {
+        throw new UnsupportedOperationException("Cannot change a transformed view");
+    }
+
+    @Override
+    public void unset(int x, int y, int z, boolean relative)
+    {
+        throw new UnsupportedOperationException("Cannot change a transformed view");
+    }
+
+    @Override
+    public void forEachSpan(SpanVisitor visitor)
+    {
+        this.view.forEachSpan(visitor);
+    }
+
+    @Override
+    public MaterialShape clone()
+    {
+        return materialize();
+    }
+
+    @Override
+    public String toString()
+    {
+        return "TransformedMaterialShape{" + this.source + ", " + getTransform() + "}";
+    }
+
+}
@@ -0,0 +1,324 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 The Voxel Plugineering Team
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.voxelplugineering.voxelsniper.shape;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.voxelplugineering.voxelsniper.util.math.Vector3i;
+
+/**
+ * A read-only view of a {@link Shape} with a {@link ShapeTransform} applied. Positions are remapped
+ * to the underlying shape on access so creating a view copies nothing, changes to the underlying
+ * shape are visible through the view. {@link #materialize()} copies the view into a new
+ * {@link ComplexShape}.
+ */
+public class TransformedShape implements Shape
+{
+
+    private final Shape source;
+    private final ShapeTransform transform;
+    private final int width;
+    private final int height;
+    private final int length;
+    private final Vector3i origin;
+    private final int[][] lookup;
+    private final int[] inverse;
+
+    /**
+     * Creates a new {@link TransformedShape}.
+     * 
+     * @param source The shape to view
+     * @param transform The transform
+     */
+    public TransformedShape(Shape source, ShapeTransform transform)
+    {
+        this.source = checkNotNull(source);
+        this.transform = checkNotNull(transform);
+        Vector3i size = transform.getSize(source);
+        this.width = size.getX();
+        this.height = size.getY();
+        this.length = size.getZ();
+        this.origin = transform.getOrigin(source);
+        int[] sourceSize = { source.getWidth(), source.getHeight(), source.getLength() };
+        this.lookup = new int[3][];
+        this.inverse = new int[3];
+        for (int i = 0; i < 3; i++)
+        {
+            int a = transform.getSourceAxis(i);
+            this.lookup[i] = transform.createLookup(i, sourceSize[a]);
+            this.inverse[a] = i;
+        }
+    }
+
+    /**
+     * Gets the underlying shape.
+     * 
+     * @return The shape
+     */
+    public Shape getSource()
+    {
+        return this.source;
+    }
+
+    /**
+     * Gets the transform applied to the underlying shape.
+     * 
+     * @return The transform
+     */
+    public ShapeTransform getTransform()
+    {
+        return this.transform;
+    }
+
+    /**
+     * Gets the position along the given axis of the underlying shape which the given position of
+     * this view is read from. The position must be within this view and is not relative.
+     * 
+     * @param axis The axis of the underlying shape
+     * @param x The X position
+     * @param y The Y position
+     * @param z The Z position
+     * @return The position along the axis
+     */
+    int toSource(int axis, int x, int y, int z)
+    {
+        int i = this.inverse[axis];
+        return this.lookup[i][i == 0 ? x : i == 1 ? y : z];
+    }
+
+    /**
+     * Gets the table mapping each position along the given axis of this view to the position along
+     * the corresponding axis of the underlying shape.
+     * 
+     * @param axis The axis of this view
+     * @return The table, must not be changed
+     */
+    int[] getLookup(int axis)
+    {
+        return this.lookup[axis];
+    }
+
+    /**
+     * Checks the given position is within this view.
+     * 
+     * @param x The X position
+     * @param y The Y position
+     * @param z The Z position
+     */
+    void checkBounds(int x, int y, int z)
+    {
+        if (x >= this.width || x < 0 || y >= this.height || y < 0 || z >= this.length || z < 0)
+        {
+            throw new ArrayIndexOutOfBoundsException("Tried to get point outside of the shape. (" + x + ", " + y + ", " + z + ")");
+        }
+    }
+
+    @Override
+    public int getWidth()
+    {
+        return this.width;
+    }
+
+    @Override
+    public int getHeight()
+    {
+        return this.height;
+    }
+
+    @Override
+    public int getLength()
+    {
+        return this.length;
+    }
+
+    @Override
+    public boolean isMutable()
+    {
+        return false;
+    }
+
+    @Override
+    public boolean get(int x, int y, int z, boolean relative)
+    {
+        if (relative)
+        {
+            x += this.origin.getX();
+            y += this.origin.getY();
+            z += this.origin.getZ();
+        }
+        checkBounds(x, y, z);
+        return this.source.get(toSource(0, x, y, z), toSource(1, x, y, z), toSource(2, x, y, z), false);
+    }
+
+    @Override
+    public Vector3i getOrigin()
+    {
+        return this.origin;
+    }
+
+    @Override
+    public void set(int x, int y, int z, boolean relative)
+    {
+        throw new UnsupportedOperationException("Cannot change a transformed view");
+    }
+
+    @Override
+    public void unset(int x, int y, int z, boolean relative)
+    {
+        throw new UnsupportedOperationException("Cannot change a transformed view");
+    }
+
+    @Override
+    public void forEachSpan(final SpanVisitor visitor)
+    {
+        final int scale = this.transform.getScale();
+        if (this.transform.preservesColumns())
+        {
+            // each source span becomes a scale by scale block of columns
+            final int[] xs = firstPositions(0);
+            final int[] zs = firstPositions(2);
+            final boolean swap = this.transform.getSourceAxis(0) == 2;
+            this.source.forEachSpan(new SpanVisitor()
+            {
+
+                @Override
+                public void visit(int x, int z, int minY, int maxY)
+                {
+                    int x0 = xs[swap ? z : x];
+                    int z0 = zs[swap ? x : z];
+                    for (int dx = 0; dx < scale; dx++)
+                    {
+                        for (int dz = 0; dz < scale; dz++)
+                        {
+                            visitor.visit(x0 + dx, z0 + dz, minY * scale, maxY * scale);
+                        }
+                    }
+                }
+
+            });
+            return;
+        }
+        for (int x = 0; x < this.width; x++)
+        {
+            for (int z = 0; z < this.length; z++)
+            {
+                int start = -1;
+                for (int y = 0; y <= this.height; y++)
+                {
+                    boolean set = y < this.height && get(x, y, z, false);
+                    if (set && start < 0)
+                    {
+                        start = y;
+                    } else if (!set && start >= 0)
+                    {
+                        visitor.visit(x, z, start, y);
+                        start = -1;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Gets, for each position along the source axis of the given axis of this view, the lowest
+     * position of this view it is copied to.
+     */
+    private int[] firstPositions(int axis)
+    {
+        int[] table = this.lookup[axis];
+        int scale = this.transform.getScale();
+        int[] first = new int[table.length / scale];
+        for (int i = 0; i < table.length; i += scale)
+        {
+            first[table[i]] = i;
+        }
+        return first;
+    }
+
+    /**
+     * Copies this view into a new {@link ComplexShape}.
+     * 
+     * @return The copy
+     */
+    public ComplexShape materialize()
+    {
+        final ComplexShape copy = new ComplexShape(this.width, this.height, this.length, this.origin);
+        if (this.transform.preservesColumns())
+        {
+            forEachSpan(new SpanVisitor()
+            {
+
+                @Override
+                public void visit(int x, int z, int minY, int maxY)
+                {
+                    copy.fillColumn(x, z, minY, maxY);
+                }
+
+            });
+            return copy;
+        }
+        // the y axis of the source runs along another axis of the copy, so every set position of the
+        // source is written as a block of scale columns of height scale
+        final int scale = this.transform.getScale();
+        final int[][] first = { firstPositions(0), firstPositions(1), firstPositions(2) };
+        final int[] axes = { this.inverse[0], this.inverse[1], this.inverse[2] };
+        this.source.forEachSpan(new SpanVisitor()
+        {
+
+            @Override
+            public void visit(int x, int z, int minY, int maxY)
+            {
+                int[] position = new int[3];
+                for (int y = minY; y < maxY; y++)
+                {
+                    position[axes[0]] = first[axes[0]][x];
+                    position[axes[1]] = first[axes[1]][y];
+                    position[axes[2]] = first[axes[2]][z];
+                    for (int dx = 0; dx < scale; dx++)
+                    {
+                        for (int dz = 0; dz < scale; dz++)
+                        {
+                            copy.fillColumn(position[0] + dx, position[2] + dz, position[1], position[1] + scale);
+                        }
+                    }
+                }
+            }
+
+        });
+        return copy;
+    }
+
+    @Override
+    public Shape clone()
+    {
+        return materialize();
+    }
+
+    @Override
+    public String toString()
+    {
+        return "TransformedShape{" + this.source + ", " + this.transform + "}";
+    }
+
+}
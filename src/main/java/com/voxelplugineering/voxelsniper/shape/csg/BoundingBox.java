@@ -0,0 +1,284 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 The Voxel Plugineering Team
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.voxelplugineering.voxelsniper.shape.csg;
+
+import com.voxelplugineering.voxelsniper.util.math.Vector3i;
+
+/**
+ * An immutable axis aligned box of integer positions. The minimum corner is inclusive and the
+ * maximum corner is exclusive.
+ */
+public final class BoundingBox
+{
+
+    /**
+     * A box containing no positions.
+     */
+    public static final BoundingBox EMPTY = new BoundingBox(0, 0, 0, 0, 0, 0);
+
+    private final int minX;
+    private final int minY;
+    private final int minZ;
+    private final int maxX;
+    private final int maxY;
+    private final int maxZ;
+
+    /**
+     * Creates a new {@link BoundingBox}.
+     * 
+     * @param minX The minimum x position, inclusive
+     * @param minY The minimum y position, inclusive
+     * @param minZ The minimum z position, inclusive
+     * @param maxX The maximum x position, exclusive
+     * @param maxY The maximum y position, exclusive
+     * @param maxZ The maximum z position, exclusive
+     */
+    public BoundingBox(int minX, int minY, int minZ, int maxX, int maxY, int maxZ)
+    {
+        this.minX = minX;
+        this.minY = minY;
+        this.minZ = minZ;
+        this.maxX = maxX;
+        this.maxY = maxY;
+        this.maxZ = maxZ;
+    }
+
+    /**
+     * Gets the minimum x position, inclusive.
+     * 
+     * @return The minimum x position
+     */
+    public int getMinX()
+    {
+        return this.minX;
+    }
+
+    /**
+     * Gets the minimum y position, inclusive.
+     * 
+     * @return The minimum y position
+     */
+    public int getMinY()
+    {
+        return this.minY;
+    }
+
+    /**
+     * Gets the minimum z position, inclusive.
+     * 
+     * @return The minimum z position
+     */
+    public int getMinZ()
+    {
+        return this.minZ;
+    }
+
+    /**
+     * Gets the maximum x position, exclusive.
+     * 
+     * @return The maximum x position
+     */
+    public int getMaxX()
+    {
+        return this.maxX;
+    }
+
+    /**
+     * Gets the maximum y position, exclusive.
+     * 
+     * @return The maximum y position
+     */
+    public int getMaxY()
+    {
+        return this.maxY;
+    }
+
+    /**
+     * Gets the maximum z position, exclusive.
+     * 
+     * @return The maximum z position
+     */
+    public int getMaxZ()
+    {
+        return this.maxZ;
+    }
+
+    /**
+     * Gets the minimum corner of this box.
+     * 
+     * @return The minimum corner
+     */
+    public Vector3i getMin()
+    {
+        return new Vector3i(this.minX, this.minY, this.minZ);
+    }
+
+    /**
+     * Gets the size of this box along the x axis.
+     * 
+     * @return The width
+     */
+    public int getWidth()
+    {
+        return isEmpty() ? 0 : this.maxX - this.minX;
+    }
+
+    /**
+     * Gets the size of this box along the y axis.
+     * 
+     * @return The height
+     */
+    public int getHeight()
+    {
+        return isEmpty() ? 0 : this.maxY - this.minY;
+    }
+
+    /**
+     * Gets the size of this box along the z axis.
+     * 
+     * @return The length
+     */
+    public int getLength()
+    {
+        return isEmpty() ? 0 : this.maxZ - this.minZ;
+    }
+
+    /**
+     * Gets if this box contains no positions.
+     * 
+     * @return Is empty
+     */
+    public boolean isEmpty()
+    {
+        return this.minX >= this.maxX || this.minY >= this.maxY || this.minZ >= this.maxZ;
+    }
+
+    /**
+     * Gets if this box contains the given position.
+     * 
+     * @param x The X position
+     * @param y The Y position
+     * @param z The Z position
+     * @return Contains the position
+     */
+    public boolean contains(int x, int y, int z)
+    {
+        return x >= this.minX && x < this.maxX && y >= this.minY && y < this.maxY && z >= this.minZ && z < this.maxZ;
+    }
+
+    /**
+     * Gets if this box contains every position of the given box.
+     * 
+     * @param other The other box
+     * @return Contains the box
+     */
+    public boolean contains(BoundingBox other)
+    {
+        return other.isEmpty() || (other.minX >= this.minX && other.maxX <= this.maxX && other.minY >= this.minY && other.maxY <= this.maxY
+                && other.minZ >= this.minZ && other.maxZ <= this.maxZ);
+    }
+
+    /**
+     * Gets if this box shares any positions with the given box.
+     * 
+     * @param other The other box
+     * @return Overlaps the box
+     */
+    public boolean overlaps(BoundingBox other)
+    {
+        return !intersect(other).isEmpty();
+    }
+
+    /**
+     * Gets the smallest box containing both this box and the given box.
+     * 
+     * @param other The other box
+     * @return The union
+     */
+    public BoundingBox union(BoundingBox other)
+    {
+        if (isEmpty())
+        {
+            return other;
+        } else if (other.isEmpty())
+        {
+            return this;
+        }
+        return new BoundingBox(Math.min(this.minX, other.minX), Math.min(this.minY, other.minY), Math.min(this.minZ, other.minZ), Math.max(
+                this.maxX, other.maxX), Math.max(this.maxY, other.maxY), Math.max(this.maxZ, other.maxZ));
+    }
+
+    /**
+     * Gets the box of the positions shared by this box and the given box.
+     * 
+     * @param other The other box
+     * @return The intersection
+     */
+    public BoundingBox intersect(BoundingBox other)
+    {
+        BoundingBox box =
+                new BoundingBox(Math.max(this.minX, other.minX), Math.max(this.minY, other.minY), Math.max(this.minZ, other.minZ), Math.min(
+                        this.maxX, other.maxX), Math.min(this.maxY, other.maxY), Math.min(this.maxZ, other.maxZ));
+        return box.isEmpty() ? EMPTY : box;
+    }
+
+    @Override
+    public boolean equals(Object o)
+    {
+        if (!(o instanceof BoundingBox))
+        {
+            return false;
+        }
+        BoundingBox b = (BoundingBox) o;
+        if (isEmpty() || b.isEmpty())
+        {
+            return isEmpty() && b.isEmpty();
+        }
+        return this.minX == b.minX && this.minY == b.minY && this.minZ == b.minZ && this.maxX == b.maxX && this.maxY == b.maxY
+                && this.maxZ == b.maxZ;
+    }
+
+    @Override
+    public int hashCode()
+    {
+        if (isEmpty())
+        {
+            return 0;
+        }
+        return ((((this.minX * 31 + this.minY) * 31 + this.minZ) * 31 + this.maxX) * 31 + this.maxY) * 31 + this.maxZ;
+    }
+
+    /**
+     * Returns a string representation of this box.
+     * 
+     * @return The string
+     */
+    @Override
+    public String toString()
+    {
+        return "BoundingBox: (" + this.minX + ", " + this.minY + ", " + this.minZ + ") to (" + this.maxX + ", " + this.maxY + ", " + this.maxZ
+                + ")";
+    }
+
+}
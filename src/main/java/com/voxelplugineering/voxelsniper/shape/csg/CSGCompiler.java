@@ -0,0 +1,237 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 The Voxel Plugineering Team
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.voxelplugineering.voxelsniper.shape.csg;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.voxelplugineering.voxelsniper.shape.ComplexShape;
+import com.voxelplugineering.voxelsniper.shape.SpanVisitor;
+import com.voxelplugineering.voxelsniper.util.math.Vector3i;
+
+/**
+ * Compiles trees of {@link CSGShape}s into {@link ComplexShape}s.
+ * <p>
+ * Each node of the tree is rasterized only within the region where it can affect the result.
+ * Subtracted shapes are clipped to the bounds of the shape they are subtracted from, and subtrees
+ * whose bounds do not overlap are skipped. Primitives are rasterized from their spans and the
+ * results are combined a word at a time. Compiled shapes are memoized by the structure of the tree,
+ * so repeated compiles of an equal tree are a single copy.
+ * </p>
+ */
+public final class CSGCompiler
+{
+
+    /**
+     * The maximum number of compiled trees to retain.
+     */
+    private static final int CACHE_SIZE = 32;
+
+    private static final Map<CSGShape, ComplexShape> CACHE = new LinkedHashMap<CSGShape, ComplexShape>(CACHE_SIZE, 0.75f, true)
+    {
+
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<CSGShape, ComplexShape> eldest)
+        {
+            return size() > CACHE_SIZE;
+        }
+
+    };
+
+    private CSGCompiler()
+    {
+
+    }
+
+    /**
+     * Compiles the given shape. The result covers the bounds of the shape and its origin is placed
+     * such that relative positions in the result match relative positions in the given shape.
+     * 
+     * @param shape The shape to compile
+     * @return The compiled shape, a new copy is returned each time
+     */
+    public static ComplexShape compile(CSGShape shape)
+    {
+        checkNotNull(shape);
+        ComplexShape compiled;
+        synchronized (CACHE)
+        {
+            compiled = CACHE.get(shape);
+        }
+        if (compiled == null)
+        {
+            compiled = compile(shape, shape.getBounds());
+            if (compiled == null)
+            {
+                compiled = new ComplexShape(0, 0, 0);
+            }
+            synchronized (CACHE)
+            {
+                CACHE.put(shape.clone(), compiled);
+            }
+        }
+        return compiled.clone();
+    }
+
+    /**
+     * Clears all memoized compiled shapes.
+     */
+    public static void clearCache()
+    {
+        synchronized (CACHE)
+        {
+            CACHE.clear();
+        }
+    }
+
+    /**
+     * Compiles the given shape within the given clipping bounds.
+     * 
+     * @param shape The shape
+     * @param clip The region of interest, in relative positions
+     * @return The compiled shape, or null if it is empty within the clipping bounds
+     */
+    private static ComplexShape compile(CSGShape shape, BoundingBox clip)
+    {
+        BoundingBox box = shape.getBounds().intersect(clip);
+        if (box.isEmpty())
+        {
+            return null;
+        }
+        if (!(shape instanceof CSGCompoundShape))
+        {
+            return rasterize(shape, box);
+        }
+        CSGCompoundShape compound = (CSGCompoundShape) shape;
+        if (compound.getSecond() == null)
+        {
+            return compile(compound.getFirst(), box);
+        }
+        ComplexShape a = compile(compound.getFirst(), box);
+        switch (compound.getOperation())
+        {
+        case SUBTRACT:
+            if (a == null)
+            {
+                return null;
+            }
+            ComplexShape subtracted = compile(compound.getSecond(), boundsOf(a));
+            if (subtracted != null)
+            {
+                a.subtract(subtracted);
+            }
+            return a;
+        case ADD:
+        case XOR:
+            ComplexShape b = compile(compound.getSecond(), box);
+            if (a == null || b == null)
+            {
+                return a == null ? b : a;
+            }
+            if (compound.getOperation() == CSGOperation.ADD)
+            {
+                a.add(b);
+            } else
+            {
+                a.xor(b);
+            }
+            return a;
+        default:
+            return null;
+        }
+    }
+
+    /**
+     * Gets the bounds of a compiled shape in relative positions.
+     * 
+     * @param shape The compiled shape
+     * @return The bounds
+     */
+    private static BoundingBox boundsOf(ComplexShape shape)
+    {
+        Vector3i o = shape.getOrigin();
+        return new BoundingBox(-o.getX(), -o.getY(), -o.getZ(), shape.getWidth() - o.getX(), shape.getHeight() - o.getY(), shape.getLength()
+                - o.getZ());
+    }
+
+    /**
+     * Rasterizes a primitive shape within the given bounds. If the shape lies within its own
+     * width, height and length its spans are used, otherwise each position is tested.
+     * 
+     * @param shape The shape
+     * @param box The bounds to rasterize, in relative positions
+     * @return The rasterized shape
+     */
+    private static ComplexShape rasterize(CSGShape shape, final BoundingBox box)
+    {
+        final ComplexShape result = new ComplexShape(box.getWidth(), box.getHeight(), box.getLength(), box.getMin().multipy(-1));
+        Vector3i origin = shape.getOrigin();
+        BoundingBox grid =
+                new BoundingBox(-origin.getX(), -origin.getY(), -origin.getZ(), shape.getWidth() - origin.getX(), shape.getHeight()
+                        - origin.getY(), shape.getLength() - origin.getZ());
+        if (grid.contains(shape.getBounds()))
+        {
+            // local positions of the shape to local positions of the result
+            final int dx = -origin.getX() - box.getMinX();
+            final int dy = -origin.getY() - box.getMinY();
+            final int dz = -origin.getZ() - box.getMinZ();
+            shape.forEachSpan(new SpanVisitor()
+            {
+
+                @Override
+                public void visit(int x, int z, int minY, int maxY)
+                {
+                    x += dx;
+                    z += dz;
+                    if (x < 0 || x >= result.getWidth() || z < 0 || z >= result.getLength())
+                    {
+                        return;
+                    }
+                    result.fillColumn(x, z, Math.max(0, minY + dy), Math.min(result.getHeight(), maxY + dy));
+                }
+
+            });
+            return result;
+        }
+        for (int x = box.getMinX(); x < box.getMaxX(); x++)
+        {
+            for (int y = box.getMinY(); y < box.getMaxY(); y++)
+            {
+                for (int z = box.getMinZ(); z < box.getMaxZ(); z++)
+                {
+                    if (shape.get(x, y, z, true))
+                    {
+                        result.set(x, y, z, true);
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+}
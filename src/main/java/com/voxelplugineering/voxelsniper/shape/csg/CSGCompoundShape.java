@@ -25,10 +25,19 @@ package com.voxelplugineering.voxelsniper.shape.csg;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 
+import com.voxelplugineering.voxelsniper.shape.ComplexShape;
+import com.voxelplugineering.voxelsniper.shape.SpanVisitor;
 import com.voxelplugineering.voxelsniper.util.math.Vector3i;
 
 /**
  * A Compound CSG shape made up of up to two other CSG shapes and an operation.
+ * <p>
+ * Positions relative to the origin of the compound are passed on to the child shapes as relative
+ * positions. The origin and size of the compound are derived from the bounds of its children so
+ * that its bounds fit exactly within its width, height and length. The first lookup compiles the
+ * tree into a bitset with {@link CSGCompiler}, after which lookups are constant time. The child
+ * shapes should not be changed once they are part of a compound.
+ * </p>
  */
 public class CSGCompoundShape extends OffsetShape
 {
@@ -36,9 +45,8 @@ public class CSGCompoundShape extends OffsetShape
     private final CSGShape a;
     private final CSGShape b;
     private final CSGOperation operation;
-    private final int width;
-    private final int height;
-    private final int length;
+    private final BoundingBox bounds;
+    private ComplexShape compiled;
 
     /**
      * Creates a new {@link CSGCompoundShape}.
@@ -48,14 +56,12 @@ public class CSGCompoundShape extends OffsetShape
      */
     public CSGCompoundShape(CSGShape base, Vector3i offset)
     {
-        super(offset);
         base.offset(offset.multipy(-1));
         this.a = checkNotNull(base);
         this.b = null;
         this.operation = null;
-        this.width = 0;
-        this.height = 0;
-        this.length = 0;
+        this.bounds = base.getBounds();
+        offset(this.bounds.getMin().multipy(-1));
     }
 
     /**
@@ -67,14 +73,72 @@ public class CSGCompoundShape extends OffsetShape
      */
     public CSGCompoundShape(CSGShape a, CSGShape b, CSGOperation o)
     {
-        super(a.getOrigin());
         this.a = checkNotNull(a);
         this.b = checkNotNull(b);
         this.operation = checkNotNull(o);
         b.offset(a.getOrigin().multipy(-1));
-        this.width = 0;
-        this.height = 0;
-        this.length = 0;
+        this.bounds = computeBounds(a.getBounds(), b.getBounds(), o);
+        offset(this.bounds.getMin().multipy(-1));
+    }
+
+    /**
+     * Creates a copy of the given {@link CSGCompoundShape}, the children are copied without being
+     * offset again.
+     * 
+     * @param other The shape to copy
+     */
+    private CSGCompoundShape(CSGCompoundShape other)
+    {
+        super(other.getOrigin());
+        this.a = other.a.clone();
+        this.b = other.b == null ? null : other.b.clone();
+        this.operation = other.operation;
+        this.bounds = other.bounds;
+        this.compiled = other.compiled;
+    }
+
+    private static BoundingBox computeBounds(BoundingBox a, BoundingBox b, CSGOperation operation)
+    {
+        switch (operation)
+        {
+        case ADD:
+        case XOR:
+            return a.union(b);
+        case SUBTRACT:
+        default:
+            return a;
+        }
+    }
+
+    /**
+     * Gets the first child of this compound.
+     * 
+     * @return The first child
+     */
+    CSGShape getFirst()
+    {
+        return this.a;
+    }
+
+    /**
+     * Gets the second child of this compound, or null if this compound only wraps a single shape.
+     * 
+     * @return The second child
+     */
+    CSGShape getSecond()
+    {
+        return this.b;
+    }
+
+    /**
+     * Gets the operation combining the children of this compound, or null if this compound only
+     * wraps a single shape.
+     * 
+     * @return The operation
+     */
+    CSGOperation getOperation()
+    {
+        return this.operation;
     }
 
     @Override
@@ -116,42 +180,96 @@ public class CSGCompoundShape extends OffsetShape
         return new CSGCompoundShape(this, other, CSGOperation.XOR);
     }
 
+    /**
+     * Gets the compiled form of this shape, compiling it on first use.
+     * 
+     * @return The compiled shape
+     */
+    private ComplexShape getCompiled()
+    {
+        if (this.compiled == null)
+        {
+            this.compiled = CSGCompiler.compile(this);
+        }
+        return this.compiled;
+    }
+
+    @Override
+    public BoundingBox getBounds()
+    {
+        return this.bounds;
+    }
+
     @Override
     public boolean get(int x, int y, int z, boolean relative)
     {
-        if (this.b == null)
+        if (!relative)
         {
-            return this.a.get(x, y, z, relative);
+            x -= getOrigin().getX();
+            y -= getOrigin().getY();
+            z -= getOrigin().getZ();
         }
-        switch (this.operation)
+        ComplexShape shape = getCompiled();
+        x += shape.getOrigin().getX();
+        y += shape.getOrigin().getY();
+        z += shape.getOrigin().getZ();
+        if (x >= shape.getWidth() || x < 0 || y >= shape.getHeight() || y < 0 || z >= shape.getLength() || z < 0)
         {
-        case ADD:
-            return this.a.get(x, y, z, relative) || this.b.get(x, y, z, relative);
-        case SUBTRACT:
-            return this.a.get(x, y, z, relative) && !this.b.get(x, y, z, relative);
-        case XOR:
-            return this.a.get(x, y, z, relative) ^ this.b.get(x, y, z, relative);
-        default:
             return false;
         }
+        return shape.get(x, y, z, false);
+    }
+
+    @Override
+    public void forEachSpan(final SpanVisitor visitor)
+    {
+        ComplexShape shape = getCompiled();
+        final int dx = getOrigin().getX() - shape.getOrigin().getX();
+        final int dy = getOrigin().getY() - shape.getOrigin().getY();
+        final int dz = getOrigin().getZ() - shape.getOrigin().getZ();
+        if (dx == 0 && dy == 0 && dz == 0)
+        {
+            shape.forEachSpan(visitor);
+            return;
+        }
+        final int width = getWidth();
+        final int height = getHeight();
+        final int length = getLength();
+        shape.forEachSpan(new SpanVisitor()
+        {
+
+            @Override
+            public void visit(int x, int z, int minY, int maxY)
+            {
+                x += dx;
+                z += dz;
+                minY = Math.max(0, minY + dy);
+                maxY = Math.min(height, maxY + dy);
+                if (x >= 0 && x < width && z >= 0 && z < length && minY < maxY)
+                {
+                    visitor.visit(x, z, minY, maxY);
+                }
+            }
+
+        });
     }
 
     @Override
     public int getWidth()
     {
-        return this.width;
+        return this.bounds.getWidth();
     }
 
     @Override
     public int getHeight()
     {
-        return this.height;
+        return this.bounds.getHeight();
     }
 
     @Override
     public int getLength()
     {
-        return this.length;
+        return this.bounds.getLength();
     }
 
     @Override
@@ -169,11 +287,35 @@ public class CSGCompoundShape extends OffsetShape
     @Override
     public CSGCompoundShape clone()
     {
-        if (this.b == null)
+        return new CSGCompoundShape(this);
+    }
+
+    /**
+     * Gets whether the given object is a compound with an equal structure, that is equal children,
+     * operation and origin.
+     * 
+     * @param o The object
+     * @return Is equal
+     */
+    @Override
+    public boolean equals(Object o)
+    {
+        if (!(o instanceof CSGCompoundShape))
         {
-            return new CSGCompoundShape(this.a.clone(), this.getOrigin());
+            return false;
         }
-        return new CSGCompoundShape(this.a.clone(), this.b.clone(), this.operation);
+        CSGCompoundShape s = (CSGCompoundShape) o;
+        return this.operation == s.operation && this.a.equals(s.a) && (this.b == null ? s.b == null : this.b.equals(s.b))
+                && getOrigin().equals(s.getOrigin());
+    }
+
+    @Override
+    public int hashCode()
+    {
+        int hash = this.a.hashCode();
+        hash = hash * 31 + (this.b == null ? 0 : this.b.hashCode());
+        hash = hash * 31 + (this.operation == null ? 0 : this.operation.hashCode());
+        return hash * 31 + getOrigin().hashCode();
     }
 
 }
@@ -39,6 +39,15 @@ public interface CSGShape extends Shape
      */
     void offset(Vector3i offset);
 
+    /**
+     * Gets the bounds of the positions covered by this shape, relative to its origin. That is,
+     * every position for which {@link #get(int, int, int, boolean)} returns true when called with
+     * relative set lies within these bounds.
+     * 
+     * @return The bounds
+     */
+    BoundingBox getBounds();
+
     /**
      * Creates an identical copy of this shape.
      * 
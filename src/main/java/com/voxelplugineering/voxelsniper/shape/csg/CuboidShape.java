@@ -23,6 +23,7 @@
  */
 package com.voxelplugineering.voxelsniper.shape.csg;
 
+import com.voxelplugineering.voxelsniper.shape.SpanVisitor;
 import com.voxelplugineering.voxelsniper.util.math.Vector3i;
 
 /**
@@ -56,13 +57,37 @@ public class CuboidShape extends OffsetShape
     {
         if (relative)
         {
-            x -= getOrigin().getX();
-            y -= getOrigin().getY();
-            z -= getOrigin().getZ();
+            x += getOrigin().getX();
+            y += getOrigin().getY();
+            z += getOrigin().getZ();
         }
         return x >= 0 && x < this.w && y >= 0 && y < this.h && z >= 0 && z < this.l;
     }
 
+    @Override
+    public BoundingBox getBounds()
+    {
+        Vector3i origin = getOrigin();
+        return new BoundingBox(-origin.getX(), -origin.getY(), -origin.getZ(), this.w - origin.getX(), this.h - origin.getY(), this.l
+                - origin.getZ());
+    }
+
+    @Override
+    public void forEachSpan(SpanVisitor visitor)
+    {
+        if (this.h <= 0)
+        {
+            return;
+        }
+        for (int x = 0; x < this.w; x++)
+        {
+            for (int z = 0; z < this.l; z++)
+            {
+                visitor.visit(x, z, 0, this.h);
+            }
+        }
+    }
+
     @Override
     public int getWidth()
     {
@@ -105,4 +130,21 @@ public class CuboidShape extends OffsetShape
         return new CuboidShape(this.w, this.h, this.l, getOrigin());
     }
 
+    @Override
+    public boolean equals(Object o)
+    {
+        if (!(o instanceof CuboidShape))
+        {
+            return false;
+        }
+        CuboidShape s = (CuboidShape) o;
+        return this.w == s.w && this.h == s.h && this.l == s.l && getOrigin().equals(s.getOrigin());
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return ((this.w * 31 + this.h) * 31 + this.l) * 31 + getOrigin().hashCode();
+    }
+
 }
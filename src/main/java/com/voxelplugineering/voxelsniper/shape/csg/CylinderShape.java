@@ -23,6 +23,8 @@
  */
 package com.voxelplugineering.voxelsniper.shape.csg;
 
+import com.voxelplugineering.voxelsniper.shape.SpanVisitor;
+import com.voxelplugineering.voxelsniper.shape.Spans;
 import com.voxelplugineering.voxelsniper.util.Direction;
 import com.voxelplugineering.voxelsniper.util.math.Vector3i;
 
@@ -99,6 +101,89 @@ public class CylinderShape extends OffsetShape
         return false;
     }
 
+    @Override
+    public BoundingBox getBounds()
+    {
+        if (!(this.rx > 0 && this.rz > 0) || this.height <= 0)
+        {
+            return BoundingBox.EMPTY;
+        }
+        int ex = (int) this.rx;
+        int ez = (int) this.rz;
+        if (this.axis.getModY() == 1)
+        {
+            return new BoundingBox(-ex, 0, -ez, ex + 1, this.height, ez + 1);
+        }
+        if (this.axis.getModX() == 1)
+        {
+            return new BoundingBox(0, -ex, -ez, this.height, ex + 1, ez + 1);
+        }
+        if (this.axis.getModZ() == 1)
+        {
+            return new BoundingBox(-ex, -ez, 0, ex + 1, ez + 1, this.height);
+        }
+        return BoundingBox.EMPTY;
+    }
+
+    /**
+     * Visits the spans of this cylinder. The extent of each column is solved directly and then
+     * corrected against {@link #get(int, int, int, boolean)} so the spans match it exactly.
+     * 
+     * @param visitor The visitor
+     */
+    @Override
+    public void forEachSpan(SpanVisitor visitor)
+    {
+        Vector3i origin = getOrigin();
+        int h = getHeight();
+        boolean vertical = this.axis.getModY() == 1;
+        if (!vertical && this.axis.getModX() != 1 && this.axis.getModZ() != 1)
+        {
+            return;
+        }
+        for (int x = 0; x < getWidth(); x++)
+        {
+            int dx = x - origin.getX();
+            for (int z = 0; z < getLength(); z++)
+            {
+                int dz = z - origin.getZ();
+                if (vertical)
+                {
+                    if (get(dx, 0, dz, true))
+                    {
+                        int minY = Math.max(0, origin.getY());
+                        int maxY = Math.min(h, origin.getY() + this.height);
+                        if (minY < maxY)
+                        {
+                            visitor.visit(x, z, minY, maxY);
+                        }
+                    }
+                    continue;
+                }
+                double f = this.axis.getModX() == 1 ? dz / this.rz : dx / this.rx;
+                double r = this.axis.getModX() == 1 ? this.rx : this.rz;
+                double t = 1 - f * f;
+                if (t < 0)
+                {
+                    continue;
+                }
+                int dy = (int) (r * Math.sqrt(t));
+                while (get(dx, dy + 1, dz, true))
+                {
+                    dy++;
+                }
+                while (dy >= 0 && !get(dx, dy, dz, true))
+                {
+                    dy--;
+                }
+                if (dy >= 0)
+                {
+                    Spans.visitCentered(visitor, x, z, origin.getY(), dy, h);
+                }
+            }
+        }
+    }
+
     @Override
     public int getWidth()
     {
@@ -166,7 +251,28 @@ public class CylinderShape extends OffsetShape
     @Override
     public CylinderShape clone()
     {
-        return new CylinderShape(this.rx, this.height, this.rz, getOrigin());
+        return new CylinderShape(this.rx, this.height, this.rz, getOrigin(), this.axis);
+    }
+
+    @Override
+    public boolean equals(Object o)
+    {
+        if (!(o instanceof CylinderShape))
+        {
+            return false;
+        }
+        CylinderShape s = (CylinderShape) o;
+        return Double.compare(this.rx, s.rx) == 0 && this.height == s.height && Double.compare(this.rz, s.rz) == 0 && this.axis == s.axis
+                && getOrigin().equals(s.getOrigin());
+    }
+
+    @Override
+    public int hashCode()
+    {
+        long bits = Double.doubleToLongBits(this.rx);
+        bits = bits * 31 + this.height;
+        bits = bits * 31 + Double.doubleToLongBits(this.rz);
+        return ((int) (bits ^ (bits >>> 32)) * 31 + this.axis.hashCode()) * 31 + getOrigin().hashCode();
     }
 
     /**
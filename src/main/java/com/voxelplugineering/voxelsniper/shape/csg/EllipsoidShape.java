@@ -23,6 +23,8 @@
  */
 package com.voxelplugineering.voxelsniper.shape.csg;
 
+import com.voxelplugineering.voxelsniper.shape.SpanVisitor;
+import com.voxelplugineering.voxelsniper.shape.Spans;
 import com.voxelplugineering.voxelsniper.util.math.Vector3i;
 
 /**
@@ -31,6 +33,8 @@ import com.voxelplugineering.voxelsniper.util.math.Vector3i;
 public class EllipsoidShape extends OffsetShape
 {
 
+    private static final double ROUNDING = 1e-9;
+
     private double rx;
     private double ry;
     private double rz;
@@ -63,6 +67,61 @@ public class EllipsoidShape extends OffsetShape
         return (x / this.rx) * (x / this.rx) + (y / this.ry) * (y / this.ry) + (z / this.rz) * (z / this.rz) <= 1;
     }
 
+    @Override
+    public BoundingBox getBounds()
+    {
+        if (!(this.rx > 0 && this.ry > 0 && this.rz > 0))
+        {
+            return BoundingBox.EMPTY;
+        }
+        int ex = (int) this.rx;
+        int ey = (int) this.ry;
+        int ez = (int) this.rz;
+        return new BoundingBox(-ex, -ey, -ez, ex + 1, ey + 1, ez + 1);
+    }
+
+    /**
+     * Visits the spans of this ellipsoid. The extent of each column is solved directly and then
+     * corrected against {@link #get(int, int, int, boolean)} so the spans match it exactly.
+     * 
+     * @param visitor The visitor
+     */
+    @Override
+    public void forEachSpan(SpanVisitor visitor)
+    {
+        Vector3i origin = getOrigin();
+        int height = getHeight();
+        for (int x = 0; x < getWidth(); x++)
+        {
+            int dx = x - origin.getX();
+            double fx = dx / this.rx;
+            for (int z = 0; z < getLength(); z++)
+            {
+                int dz = z - origin.getZ();
+                double fz = dz / this.rz;
+                double t = 1 - fx * fx - fz * fz;
+                // rounding may leave columns on the surface slightly negative
+                if (t < -ROUNDING)
+                {
+                    continue;
+                }
+                int dy = t > 0 ? (int) (this.ry * Math.sqrt(t)) : 0;
+                while (get(dx, dy + 1, dz, true))
+                {
+                    dy++;
+                }
+                while (dy >= 0 && !get(dx, dy, dz, true))
+                {
+                    dy--;
+                }
+                if (dy >= 0)
+                {
+                    Spans.visitCentered(visitor, x, z, origin.getY(), dy, height);
+                }
+            }
+        }
+    }
+
     @Override
     public int getWidth()
     {
@@ -99,6 +158,27 @@ public class EllipsoidShape extends OffsetShape
         return new EllipsoidShape(this.rx, this.ry, this.rz, getOrigin());
     }
 
+    @Override
+    public boolean equals(Object o)
+    {
+        if (!(o instanceof EllipsoidShape))
+        {
+            return false;
+        }
+        EllipsoidShape s = (EllipsoidShape) o;
+        return Double.compare(this.rx, s.rx) == 0 && Double.compare(this.ry, s.ry) == 0 && Double.compare(this.rz, s.rz) == 0
+                && getOrigin().equals(s.getOrigin());
+    }
+
+    @Override
+    public int hashCode()
+    {
+        long bits = Double.doubleToLongBits(this.rx);
+        bits = bits * 31 + Double.doubleToLongBits(this.ry);
+        bits = bits * 31 + Double.doubleToLongBits(this.rz);
+        return (int) (bits ^ (bits >>> 32)) * 31 + getOrigin().hashCode();
+    }
+
     @Override
     public boolean isMutable()
     {
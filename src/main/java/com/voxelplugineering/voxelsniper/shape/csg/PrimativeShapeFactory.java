@@ -30,6 +30,7 @@ import java.util.Set;
 
 import com.google.common.base.Optional;
 import com.voxelplugineering.voxelsniper.shape.Shape;
+import com.voxelplugineering.voxelsniper.shape.ShapeCache;
 import com.voxelplugineering.voxelsniper.util.math.Vector3i;
 
 /**
@@ -47,6 +48,7 @@ public class PrimativeShapeFactory
     /*
      * Creates a shape from it's name and a size.
      * Shapes with direction are assumed to face in the positive y direction.
+     * The returned shape is a shared read-only view from the ShapeCache.
      */
     public static Optional<Shape> createShape(String name, double size)
     {
@@ -78,7 +80,11 @@ public class PrimativeShapeFactory
         {
             s = new CylinderShape(size, 1, size, new Vector3i(origin, 0, origin));
         }
-        return Optional.of(s);
+        if (s == null)
+        {
+            return Optional.absent();
+        }
+        return Optional.of(ShapeCache.get(s));
     }
     
     static {
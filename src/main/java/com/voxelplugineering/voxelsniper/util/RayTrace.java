@@ -28,10 +28,10 @@ import static com.google.common.base.Preconditions.checkNotNull;
 import java.util.Collections;
 import java.util.List;
 
-import com.google.common.base.Optional;
 import com.google.common.collect.Lists;
 import com.voxelplugineering.voxelsniper.util.math.Vector3d;
 import com.voxelplugineering.voxelsniper.world.Block;
+import com.voxelplugineering.voxelsniper.world.BlockCursor;
 import com.voxelplugineering.voxelsniper.world.Location;
 import com.voxelplugineering.voxelsniper.world.World;
 import com.voxelplugineering.voxelsniper.world.material.Material;
@@ -75,6 +75,10 @@ public class RayTrace
      */
     private Block lastBlock = null;
     private Direction lastDirection = null;
+    /**
+     * The cursor used to read the blocks along the ray.
+     */
+    private BlockCursor cursor = null;
 
     /*
      * Values used internally for the calculation of the ray trace. length: the
@@ -305,6 +309,7 @@ public class RayTrace
      */
     public void trace()
     {
+        this.cursor = this.world.createCursor();
         init();
         checkOutOfWorld();
         if (this.length <= this.range)
@@ -341,8 +346,8 @@ public class RayTrace
 
         this.targetDirection = dirFromDiff(this.targetX, this.targetY, this.targetZ, this.lastX, this.lastY, this.lastZ);
 
-        Optional<Block> next = this.world.getBlock(this.targetX, this.targetY, this.targetZ);
-        if (!next.isPresent())
+        this.cursor.moveTo(this.targetX, this.targetY, this.targetZ);
+        if (!this.cursor.isPresent())
         {
             // Abort out of bounds, or something wrong with area of world
             this.targetX = this.lastX;
@@ -351,7 +356,7 @@ public class RayTrace
             this.targetDirection = this.lastDirection;
             return;
         }
-        if (!this.traversalBlocks.contains(next.get().getMaterial()))
+        if (!this.traversalBlocks.contains(this.cursor.getMaterial()))
         {
             // Abort - found non-traversal block
             return;
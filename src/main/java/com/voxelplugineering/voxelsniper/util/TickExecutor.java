@@ -0,0 +1,142 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 The Voxel Plugineering Team
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.voxelplugineering.voxelsniper.util;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+
+import com.voxelplugineering.voxelsniper.GunsmithLogger;
+
+/**
+ * An {@link Executor} whose tasks are run on the tick thread of the platform. Tasks are queued from
+ * any thread and run when the executor is itself run, which should be from a synchronous task of
+ * the platform scheduler.
+ */
+public class TickExecutor implements Executor, Runnable
+{
+
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<Runnable>();
+    private volatile Thread tickThread;
+
+    @Override
+    public void execute(Runnable task)
+    {
+        this.tasks.add(checkNotNull(task));
+    }
+
+    /**
+     * Runs the given task on the tick thread and waits for its result. If called from the tick
+     * thread the task is run immediately.
+     * 
+     * @param task The task
+     * @param <T> The result type
+     * @return The result of the task
+     * @throws CancellationException If the calling thread is interrupted while waiting
+     */
+    public <T> T call(Callable<T> task)
+    {
+        checkNotNull(task);
+        FutureTask<T> future = new FutureTask<T>(task);
+        if (isTickThread())
+        {
+            future.run();
+        } else
+        {
+            execute(future);
+        }
+        try
+        {
+            return future.get();
+        } catch (InterruptedException e)
+        {
+            future.cancel(false);
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Interrupted while waiting for the tick thread");
+        } catch (ExecutionException e)
+        {
+            if (e.getCause() instanceof RuntimeException)
+            {
+                throw (RuntimeException) e.getCause();
+            }
+            if (e.getCause() instanceof Error)
+            {
+                throw (Error) e.getCause();
+            }
+            throw new IllegalStateException("Error running task on the tick thread", e.getCause());
+        }
+    }
+
+    /**
+     * Gets whether the calling thread is the thread which last ran this executor.
+     * 
+     * @return Is the tick thread
+     */
+    public boolean isTickThread()
+    {
+        return Thread.currentThread() == this.tickThread;
+    }
+
+    /**
+     * Gets the number of tasks waiting to be run.
+     * 
+     * @return The number of tasks
+     */
+    public int getQueuedTaskCount()
+    {
+        return this.tasks.size();
+    }
+
+    /**
+     * Runs the tasks which were queued before this call. Tasks queued while running are left for
+     * the next run.
+     */
+    @Override
+    public void run()
+    {
+        this.tickThread = Thread.currentThread();
+        for (int n = this.tasks.size(); n > 0; n--)
+        {
+            Runnable task = this.tasks.poll();
+            if (task == null)
+            {
+                break;
+            }
+            try
+            {
+                task.run();
+            } catch (Exception e)
+            {
+                GunsmithLogger.getLogger().error(e, "Error running task on the tick thread");
+            }
+        }
+    }
+
+}
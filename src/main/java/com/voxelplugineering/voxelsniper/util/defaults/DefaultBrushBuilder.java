@@ -30,9 +30,13 @@ import java.util.Map;
 import com.google.common.collect.Maps;
 import com.voxelplugineering.voxelsniper.brush.Brush;
 import com.voxelplugineering.voxelsniper.brush.BrushManager;
+import com.voxelplugineering.voxelsniper.brush.effect.BiomeBrush;
 import com.voxelplugineering.voxelsniper.brush.effect.MaterialBrush;
 import com.voxelplugineering.voxelsniper.brush.effect.OldBlendBrush;
 import com.voxelplugineering.voxelsniper.brush.effect.OldLinearBlendBrush;
+import com.voxelplugineering.voxelsniper.brush.effect.morphological.DilateBrush;
+import com.voxelplugineering.voxelsniper.brush.effect.morphological.ErodeBrush;
+import com.voxelplugineering.voxelsniper.brush.effect.morphological.SmoothBrush;
 import com.voxelplugineering.voxelsniper.brush.mask.MaterialMaskBrush;
 import com.voxelplugineering.voxelsniper.brush.shape.BallBrush;
 import com.voxelplugineering.voxelsniper.brush.shape.CylinderBrush;
@@ -119,6 +123,10 @@ public final class DefaultBrushBuilder
         GRAPHS.put("material", new MaterialBrush());
         GRAPHS.put("blend", new OldBlendBrush());
         GRAPHS.put("linearblend", new OldLinearBlendBrush());
+        GRAPHS.put("dilate", new DilateBrush());
+        GRAPHS.put("erode", new ErodeBrush());
+        GRAPHS.put("smooth", new SmoothBrush());
+        GRAPHS.put("biome", new BiomeBrush());
     }
 
 }
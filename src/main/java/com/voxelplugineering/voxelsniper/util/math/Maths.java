@@ -31,4 +31,9 @@ public final class Maths
 	public static int clamp(int value, int min, int max) {
 		return value < min ? min : value > max ? max : value;
 	}	
+
+	public static int floorDiv(int value, int divisor) {
+		int q = value / divisor;
+		return (value % divisor != 0 && (value < 0) != (divisor < 0)) ? q - 1 : q;
+	}
 }
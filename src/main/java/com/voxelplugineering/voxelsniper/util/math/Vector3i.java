@@ -212,6 +212,38 @@ public class Vector3i implements Serializable, Cloneable
         return new Vector3i(getX(), getY(), getZ());
     }
 
+    /**
+     * Gets whether the given object is a vector with the same components as this vector.
+     * 
+     * @param o The object
+     * @return Is equal
+     */
+    @Override
+    public boolean equals(Object o)
+    {
+        if (this == o)
+        {
+            return true;
+        }
+        if (!(o instanceof Vector3i))
+        {
+            return false;
+        }
+        Vector3i v = (Vector3i) o;
+        return this.vec[0] == v.vec[0] && this.vec[1] == v.vec[1] && this.vec[2] == v.vec[2];
+    }
+
+    /**
+     * Gets a hash code of the components of this vector.
+     * 
+     * @return The hash code
+     */
+    @Override
+    public int hashCode()
+    {
+        return (this.vec[0] * 31 + this.vec[1]) * 31 + this.vec[2];
+    }
+
     /**
      * Returns a string representation of this vector.
      * 
@@ -39,6 +39,7 @@ public final class SniperStats extends Metrics
     private static int snipesDone;
     private static long snipeCounterInitTimeStamp;
     private static Map<String, Integer> brushUsageCounter = Maps.newHashMap();
+    private static volatile int blockChangeRate;
 
     /**
      * Increase the Snipes Counter.
@@ -72,6 +73,16 @@ public final class SniperStats extends Metrics
         SniperStats.snipeCounterInitTimeStamp = currentTimeMillis;
     }
 
+    /**
+     * Sets the observed rate at which block changes are applied.
+     * 
+     * @param rate The rate, in changes per second of tick time
+     */
+    public static void setBlockChangeRate(final int rate)
+    {
+        SniperStats.blockChangeRate = rate;
+    }
+
     private final PlatformProxy platform;
 
     /**
@@ -141,6 +152,16 @@ public final class SniperStats extends Metrics
                 }
             });
 
+            defaultGraph.addPlotter(new Metrics.Plotter("Block Changes per Second")
+            {
+
+                @Override
+                public int getValue()
+                {
+                    return blockChangeRate;
+                }
+            });
+
             final Graph brushUsageGraph = createGraph("Brush Usage");
 
             for (final Map.Entry<String, Integer> entry : brushUsageCounter.entrySet())
@@ -294,11 +294,25 @@ public class CommonSchematicLoader implements SchematicLoader
         schematic.setInt("WEOffsetY", origin.getY());
         schematic.setInt("WEOffsetZ", origin.getZ());
 
-        // store the lower byte of the block Ids
-        schematic.setByteArray("Blocks", shape.getLowerMaterialData());
-        if (shape.hasExtraData())
+        // store the lower byte of the block Ids, and the upper byte if any
+        // ids need it, unset positions are stored as the default material
+        int[] ids = new int[width * height * length];
+        shape.copyIds(ids, 0, 0, 0, width, height, length);
+        byte[] blocks = new byte[ids.length];
+        byte[] addBlocks = shape.hasExtraData() ? new byte[ids.length] : null;
+        for (int i = 0; i < ids.length; i++)
         {
-            schematic.setByteArray("AddBlocks", shape.getUpperMaterialData());
+            int id = Math.max(0, ids[i]);
+            blocks[i] = (byte) (id & 0xff);
+            if (addBlocks != null)
+            {
+                addBlocks[i] = (byte) ((id & 0xff00) >> 8);
+            }
+        }
+        schematic.setByteArray("Blocks", blocks);
+        if (addBlocks != null)
+        {
+            schematic.setByteArray("AddBlocks", addBlocks);
         }
         if (shape instanceof NamedWorldSection)
         {
@@ -313,13 +327,17 @@ public class CommonSchematicLoader implements SchematicLoader
             }
         }
 
-        Map<Short, Material> materialDict = shape.getMaterialsDictionary();
+        Material[] palette = shape.getPalette();
         List<CompoundTag> materials = Lists.newArrayList();
-        for (Map.Entry<Short, Material> entry : materialDict.entrySet())
+        for (short id = 0; id < palette.length; id++)
         {
+            if (palette[id] == null)
+            {
+                continue;
+            }
             Map<String, Tag> material = Maps.newHashMap();
-            material.put("Key", new ShortTag("Key", entry.getKey()));
-            material.put("Name", new StringTag("Name", entry.getValue().getName()));
+            material.put("Key", new ShortTag("Key", id));
+            material.put("Name", new StringTag("Name", palette[id].getName()));
             CompoundTag tag = new CompoundTag("Material", material);
             materials.add(tag);
         }
@@ -70,6 +70,36 @@ public abstract class AbstractChunk<T> extends WeakWrapper<T> implements Chunk
         return getBlock(vector.getX(), vector.getY(), vector.getZ());
     }
 
+    /**
+     * Reads the region a block at a time, platforms should override this to copy from their chunk
+     * storage directly.
+     * 
+     * @param min The lowest corner of the region, inclusive
+     * @param max The highest corner of the region, inclusive
+     * @param sink The sink to receive the materials
+     */
+    @Override
+    public void readRegion(Vector3i min, Vector3i max, MaterialSink sink)
+    {
+        checkNotNull(min);
+        checkNotNull(max);
+        checkNotNull(sink);
+        for (int y = min.getY(); y <= max.getY(); y++)
+        {
+            for (int z = min.getZ(); z <= max.getZ(); z++)
+            {
+                for (int x = min.getX(); x <= max.getX(); x++)
+                {
+                    Optional<Block> block = getBlock(x, y, z);
+                    if (block.isPresent())
+                    {
+                        sink.accept(x, y, z, block.get().getMaterial());
+                    }
+                }
+            }
+        }
+    }
+
     @Override
     public void setBlock(Material material, Location location)
     {
@@ -90,6 +120,22 @@ public abstract class AbstractChunk<T> extends WeakWrapper<T> implements Chunk
         setBlock(material, vector.getX(), vector.getY(), vector.getZ());
     }
 
+    @Override
+    public void setBlocks(EditBatch batch)
+    {
+        checkNotNull(batch);
+        for (int i = 0; i < batch.size(); i++)
+        {
+            setBlock(batch.getMaterial(i), batch.getX(i), batch.getY(i), batch.getZ(i));
+        }
+    }
+
+    @Override
+    public BlockCursor createCursor()
+    {
+        return new CommonBlockCursor(this, this.world.getMaterialRegistry());
+    }
+
     @Override
     public World getWorld()
     {
@@ -23,15 +23,28 @@
  */
 package com.voxelplugineering.voxelsniper.world;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
 import com.google.common.base.Optional;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
 import com.voxelplugineering.voxelsniper.registry.WeakWrapper;
+import com.voxelplugineering.voxelsniper.service.config.Configuration;
+import com.voxelplugineering.voxelsniper.service.registry.BiomeRegistry;
 import com.voxelplugineering.voxelsniper.service.registry.MaterialRegistry;
 import com.voxelplugineering.voxelsniper.shape.ComplexMaterialShape;
+import com.voxelplugineering.voxelsniper.shape.ComplexShape;
 import com.voxelplugineering.voxelsniper.shape.MaterialShape;
 import com.voxelplugineering.voxelsniper.shape.Shape;
+import com.voxelplugineering.voxelsniper.shape.SpanBuffer;
+import com.voxelplugineering.voxelsniper.shape.SparseOctreeMaterialShape;
 import com.voxelplugineering.voxelsniper.util.Context;
+import com.voxelplugineering.voxelsniper.util.math.Maths;
 import com.voxelplugineering.voxelsniper.util.math.Vector3i;
 import com.voxelplugineering.voxelsniper.world.biome.Biome;
 import com.voxelplugineering.voxelsniper.world.material.Material;
@@ -44,7 +57,18 @@ import com.voxelplugineering.voxelsniper.world.material.Material;
 public abstract class AbstractWorld<T> extends WeakWrapper<T> implements World
 {
 
+    /**
+     * The volume above which shapes read from the world are stored in a sparse octree rather than
+     * a dense array.
+     */
+    private static final int SPARSE_VOLUME = 2000000;
+
     private final MaterialRegistry<?> mats;
+    private final BiomeRegistry<?> biomes;
+    private final Set<Vector3i> dirtyChunks = Sets.newConcurrentHashSet();
+    private final int minHeight;
+    private final int maxHeight;
+    private volatile Heightmap heightmap;
 
     /**
      * Sets up the {@link AbstractWorld}.
@@ -55,6 +79,28 @@ public abstract class AbstractWorld<T> extends WeakWrapper<T> implements World
     {
         super(value);
         this.mats = context.getRequired(MaterialRegistry.class);
+        this.biomes = context.get(BiomeRegistry.class).orNull();
+        Optional<Configuration> conf = context.get(Configuration.class);
+        this.minHeight = conf.isPresent() ? conf.get().get("minimumWorldDepth", int.class).or(0) : 0;
+        this.maxHeight = conf.isPresent() ? conf.get().get("maximumWorldHeight", int.class).or(255) : 255;
+    }
+
+    /**
+     * Sets up the {@link AbstractWorld} with the given material registry and heights, and without
+     * a biome registry.
+     * 
+     * @param value The underlying world object
+     * @param materials The material registry
+     * @param minHeight The minimum height
+     * @param maxHeight The maximum height
+     */
+    protected AbstractWorld(T value, MaterialRegistry<?> materials, int minHeight, int maxHeight)
+    {
+        super(value);
+        this.mats = checkNotNull(materials);
+        this.biomes = null;
+        this.minHeight = minHeight;
+        this.maxHeight = maxHeight;
     }
 
     @Override
@@ -95,6 +141,140 @@ public abstract class AbstractWorld<T> extends WeakWrapper<T> implements World
         setBlock(material, vector.getX(), vector.getY(), vector.getZ());
     }
 
+    /**
+     * Applies the batch a chunk at a time through
+     * {@link #writeChunk(Vector3i, EditBatch, int, int)} and marks each chunk written to as dirty.
+     * 
+     * @param batch The changes
+     */
+    @Override
+    public void setBlocks(EditBatch batch)
+    {
+        checkNotNull(batch);
+        if (batch.isEmpty())
+        {
+            return;
+        }
+        batch.sortByChunk(getChunkSize());
+        for (int i = 0; i < batch.getChunkCount(); i++)
+        {
+            writeChunk(batch.getChunk(i), batch, batch.getChunkStart(i), batch.getChunkEnd(i));
+            this.dirtyChunks.add(batch.getChunk(i));
+            if (this.heightmap != null)
+            {
+                this.heightmap.update(batch, batch.getChunkStart(i), batch.getChunkEnd(i));
+            }
+        }
+    }
+
+    /**
+     * Applies the changes of a batch which lie within a single chunk. The chunk is refreshed once
+     * by {@link #refreshDirtyChunks()} after the changes, so platforms overriding this may skip
+     * per block lighting and client updates. The default sets a block at a time.
+     * 
+     * @param chunk The position of the chunk, in chunks
+     * @param batch The batch
+     * @param start The index of the first change in the chunk
+     * @param end The index after the last change in the chunk
+     */
+    protected void writeChunk(Vector3i chunk, EditBatch batch, int start, int end)
+    {
+        for (int i = start; i < end; i++)
+        {
+            setBlock(batch.getMaterial(i), batch.getX(i), batch.getY(i), batch.getZ(i));
+        }
+    }
+
+    /**
+     * Gets the height configured by {@code minimumWorldDepth}, defaulting to zero.
+     * 
+     * @return The minimum height
+     */
+    @Override
+    public int getMinHeight()
+    {
+        return this.minHeight;
+    }
+
+    /**
+     * Gets the height configured by {@code maximumWorldHeight}, defaulting to 255.
+     * 
+     * @return The maximum height
+     */
+    @Override
+    public int getMaxHeight()
+    {
+        return this.maxHeight;
+    }
+
+    @Override
+    public Heightmap getHeightmap()
+    {
+        Heightmap map = this.heightmap;
+        if (map == null)
+        {
+            synchronized (this)
+            {
+                map = this.heightmap;
+                if (map == null)
+                {
+                    map = new Heightmap(this);
+                    this.heightmap = map;
+                }
+            }
+        }
+        return map;
+    }
+
+    /**
+     * Passes a single block change to the heightmap, if it has been created. Platforms should call
+     * this from {@link #setBlock(Material, int, int, int)}, changes made through
+     * {@link #setBlocks(EditBatch)} are passed on already.
+     * 
+     * @param material The new material
+     * @param x The X position
+     * @param y The Y position
+     * @param z The Z position
+     */
+    protected void updateHeightmap(Material material, int x, int y, int z)
+    {
+        Heightmap map = this.heightmap;
+        if (map != null)
+        {
+            map.update(material, x, y, z);
+        }
+    }
+
+    @Override
+    public int getDirtyChunkCount()
+    {
+        return this.dirtyChunks.size();
+    }
+
+    @Override
+    public int refreshDirtyChunks()
+    {
+        int count = 0;
+        for (Iterator<Vector3i> it = this.dirtyChunks.iterator(); it.hasNext();)
+        {
+            Vector3i chunk = it.next();
+            it.remove();
+            Optional<Chunk> loaded = getChunk(chunk);
+            if (loaded.isPresent())
+            {
+                loaded.get().refreshChunk();
+                count++;
+            }
+        }
+        return count;
+    }
+
+    @Override
+    public BlockCursor createCursor()
+    {
+        return new CommonBlockCursor(this, this.mats);
+    }
+
     @Override
     public Optional<Chunk> getChunk(Vector3i vector)
     {
@@ -140,36 +320,294 @@ public abstract class AbstractWorld<T> extends WeakWrapper<T> implements World
         setBiome(biome, vector.getX(), vector.getY(), vector.getZ());
     }
 
+    @Override
+    public Optional<BiomeRegistry<?>> getBiomeRegistry()
+    {
+        return Optional.<BiomeRegistry<?>> fromNullable(this.biomes);
+    }
+
+    /**
+     * Gets the dense id of the given biome from the biome registry of this world.
+     * 
+     * @param biome The biome
+     * @return The id, or -1 if the biome is not registered or there is no registry
+     */
+    protected int getBiomeId(Biome biome)
+    {
+        return this.biomes == null ? -1 : this.biomes.getId(biome);
+    }
+
+    /**
+     * Reads the region a chunk column at a time through
+     * {@link #readChunkBiomes(int, int, Vector3i, Vector3i, Vector3i, int, int[])}.
+     * 
+     * @param min The lowest corner of the region, inclusive
+     * @param max The highest corner of the region, inclusive
+     * @param out The array to receive the ids
+     */
+    @Override
+    public void readBiomes(Vector3i min, Vector3i max, int[] out)
+    {
+        checkNotNull(min);
+        checkNotNull(max);
+        checkNotNull(out);
+        int width = max.getX() - min.getX() + 1;
+        int length = max.getZ() - min.getZ() + 1;
+        checkArgument(width > 0 && length > 0, "The region is empty");
+        checkArgument((long) width * length <= out.length, "The output array is too small for the region");
+        Vector3i size = getChunkSize();
+        int sx = Math.max(1, size.getX());
+        int sz = Math.max(1, size.getZ());
+        for (int cx = Maths.floorDiv(min.getX(), sx); cx <= Maths.floorDiv(max.getX(), sx); cx++)
+        {
+            for (int cz = Maths.floorDiv(min.getZ(), sz); cz <= Maths.floorDiv(max.getZ(), sz); cz++)
+            {
+                Vector3i lower = new Vector3i(Math.max(min.getX(), cx * sx), min.getY(), Math.max(min.getZ(), cz * sz));
+                Vector3i upper = new Vector3i(Math.min(max.getX(), cx * sx + sx - 1), min.getY(), Math.min(max.getZ(), cz * sz + sz - 1));
+                readChunkBiomes(cx, cz, lower, upper, min, width, out);
+            }
+        }
+    }
+
+    /**
+     * Reads the biome ids of the columns of a region which lie within a single chunk column. The
+     * default reads a biome at a time, platforms should override this to copy from the biome
+     * storage of the chunk directly.
+     * 
+     * @param cx The X position of the chunk, in chunks
+     * @param cz The Z position of the chunk, in chunks
+     * @param lower The lowest corner of the part, inclusive and in world coordinates
+     * @param upper The highest corner of the part, inclusive and in world coordinates
+     * @param min The lowest corner of the whole region, which is at index zero of the output
+     * @param width The width of the whole region
+     * @param out The array to receive the ids
+     */
+    protected void readChunkBiomes(int cx, int cz, Vector3i lower, Vector3i upper, Vector3i min, int width, int[] out)
+    {
+        for (int z = lower.getZ(); z <= upper.getZ(); z++)
+        {
+            int index = (z - min.getZ()) * width + (lower.getX() - min.getX());
+            for (int x = lower.getX(); x <= upper.getX(); x++, index++)
+            {
+                Optional<Biome> biome = getBiome(x, lower.getY(), z);
+                out[index] = biome.isPresent() ? getBiomeId(biome.get()) : -1;
+            }
+        }
+    }
+
+    /**
+     * Projects the shape onto its columns and sets them a chunk column at a time through
+     * {@link #writeChunkBiomes(int, int, Vector3i, Vector3i, Vector3i, Shape, Biome)}. Each chunk
+     * changed is refreshed once the whole fill has been written.
+     * 
+     * @param biome The new biome
+     * @param origin The position of the origin of the shape
+     * @param shape The shape
+     * @return The number of columns set
+     */
+    @Override
+    public int fillBiome(Biome biome, Vector3i origin, Shape shape)
+    {
+        checkNotNull(biome);
+        checkNotNull(origin);
+        checkNotNull(shape);
+        ComplexShape columns = new ComplexShape(shape.getWidth(), 1, shape.getLength());
+        SpanBuffer spans = SpanBuffer.of(shape);
+        if (spans.size() == 0)
+        {
+            return 0;
+        }
+        for (int i = 0; i < spans.size(); i++)
+        {
+            columns.set(spans.getX(i), 0, spans.getZ(i), false);
+        }
+        Vector3i offset = new Vector3i(origin.getX() - shape.getOrigin().getX(), origin.getY(), origin.getZ() - shape.getOrigin().getZ());
+        Vector3i size = getChunkSize();
+        int sx = Math.max(1, size.getX());
+        int sy = Math.max(1, size.getY());
+        int sz = Math.max(1, size.getZ());
+        int maxX = offset.getX() + shape.getWidth() - 1;
+        int maxZ = offset.getZ() + shape.getLength() - 1;
+        int count = 0;
+        List<Vector3i> changed = Lists.newArrayList();
+        for (int cx = Maths.floorDiv(offset.getX(), sx); cx <= Maths.floorDiv(maxX, sx); cx++)
+        {
+            for (int cz = Maths.floorDiv(offset.getZ(), sz); cz <= Maths.floorDiv(maxZ, sz); cz++)
+            {
+                Vector3i lower = new Vector3i(Math.max(offset.getX(), cx * sx), offset.getY(), Math.max(offset.getZ(), cz * sz));
+                Vector3i upper = new Vector3i(Math.min(maxX, cx * sx + sx - 1), offset.getY(), Math.min(maxZ, cz * sz + sz - 1));
+                int set = writeChunkBiomes(cx, cz, lower, upper, offset, columns, biome);
+                if (set > 0)
+                {
+                    count += set;
+                    changed.add(new Vector3i(cx, Maths.floorDiv(offset.getY(), sy), cz));
+                }
+            }
+        }
+        // nothing else refreshes chunks after a biome change, so they are refreshed here rather
+        // than left to refreshDirtyChunks
+        for (Vector3i chunk : changed)
+        {
+            Optional<Chunk> loaded = getChunk(chunk);
+            if (loaded.isPresent())
+            {
+                loaded.get().refreshChunk();
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Sets the biome of the columns of a fill which lie within a single chunk column. The default
+     * sets a biome at a time, platforms should override this to write to the biome storage of the
+     * chunk directly. The chunk is refreshed by
+     * {@link #fillBiome(Biome, Vector3i, Shape)} once the whole fill has been written.
+     * 
+     * @param cx The X position of the chunk, in chunks
+     * @param cz The Z position of the chunk, in chunks
+     * @param lower The lowest corner of the part, inclusive and in world coordinates
+     * @param upper The highest corner of the part, inclusive and in world coordinates
+     * @param offset The world position of the zero position of the columns
+     * @param columns The columns to set, a shape one block high
+     * @param biome The new biome
+     * @return The number of columns set
+     */
+    protected int writeChunkBiomes(int cx, int cz, Vector3i lower, Vector3i upper, Vector3i offset, Shape columns, Biome biome)
+    {
+        int count = 0;
+        for (int z = lower.getZ(); z <= upper.getZ(); z++)
+        {
+            for (int x = lower.getX(); x <= upper.getX(); x++)
+            {
+                if (columns.get(x - offset.getX(), 0, z - offset.getZ(), false))
+                {
+                    setBiome(biome, x, lower.getY(), z);
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
     @Override
     public MaterialShape getShapeFromWorld(Location origin, Shape shape)
     {
         checkNotNull(origin);
         checkNotNull(shape);
-        MaterialShape mat = new ComplexMaterialShape(shape, this.mats.getAirMaterial());
-        for (int x = 0; x < shape.getWidth(); x++)
+        final int ox = origin.getFlooredX() - shape.getOrigin().getX();
+        final int oy = origin.getFlooredY() - shape.getOrigin().getY();
+        final int oz = origin.getFlooredZ() - shape.getOrigin().getZ();
+        // the result starts empty and only positions which are read are set, so positions outside
+        // of the world are left out of the shape
+        if ((long) shape.getWidth() * shape.getHeight() * shape.getLength() > SPARSE_VOLUME)
         {
-            int ox = x + origin.getFlooredX() - shape.getOrigin().getX();
-            for (int y = 0; y < shape.getHeight(); y++)
+            // too large to read the whole bounding box, so only the set positions are read a span
+            // at a time
+            final MaterialShape target =
+                    new SparseOctreeMaterialShape(shape.getWidth(), shape.getHeight(), shape.getLength(), shape.getOrigin(),
+                            this.mats.getAirMaterial());
+            MaterialSink sink = new MaterialSink()
             {
-                int oy = y + origin.getFlooredY() - shape.getOrigin().getY();
-                for (int z = 0; z < shape.getLength(); z++)
+
+                @Override
+                public void accept(int x, int y, int z, Material material)
                 {
-                    int oz = z + origin.getFlooredZ() - shape.getOrigin().getZ();
-                    if (shape.get(x, y, z, false))
+                    target.setMaterial(x - ox, y - oy, z - oz, false, material);
+                }
+
+            };
+            SpanBuffer spans = SpanBuffer.of(shape);
+            for (int i = 0; i < spans.size(); i++)
+            {
+                int x = ox + spans.getX(i);
+                int z = oz + spans.getZ(i);
+                readRegion(new Vector3i(x, oy + spans.getMinY(i), z), new Vector3i(x, oy + spans.getMaxY(i) - 1, z), sink);
+            }
+            return target;
+        }
+        final Shape mask = shape instanceof ComplexShape ? shape : new ComplexShape(shape);
+        final MaterialShape target =
+                new ComplexMaterialShape(new ComplexShape(shape.getWidth(), shape.getHeight(), shape.getLength(), shape.getOrigin()),
+                        this.mats.getAirMaterial());
+        readRegion(new Vector3i(ox, oy, oz), new Vector3i(ox + shape.getWidth() - 1, oy + shape.getHeight() - 1, oz + shape.getLength() - 1),
+                new MaterialSink()
+                {
+
+                    @Override
+                    public void accept(int x, int y, int z, Material material)
                     {
-                        Optional<Block> block = getBlock(ox, oy, oz);
-                        if (!block.isPresent())
-                        {
-                            mat.unset(x, y, z, false);
-                        } else
+                        if (mask.get(x - ox, y - oy, z - oz, false))
                         {
-                            mat.setMaterial(x, y, z, false, block.get().getMaterial());
+                            target.setMaterial(x - ox, y - oy, z - oz, false, material);
                         }
                     }
+
+                });
+        return target;
+    }
+
+    /**
+     * Reads the region a chunk at a time through
+     * {@link #readChunkRegion(int, int, int, Vector3i, Vector3i, MaterialSink)}.
+     * 
+     * @param min The lowest corner of the region, inclusive
+     * @param max The highest corner of the region, inclusive
+     * @param sink The sink to receive the materials
+     */
+    @Override
+    public void readRegion(Vector3i min, Vector3i max, MaterialSink sink)
+    {
+        checkNotNull(min);
+        checkNotNull(max);
+        checkNotNull(sink);
+        Vector3i size = getChunkSize();
+        int sx = Math.max(1, size.getX());
+        int sy = Math.max(1, size.getY());
+        int sz = Math.max(1, size.getZ());
+        for (int cx = Maths.floorDiv(min.getX(), sx); cx <= Maths.floorDiv(max.getX(), sx); cx++)
+        {
+            for (int cz = Maths.floorDiv(min.getZ(), sz); cz <= Maths.floorDiv(max.getZ(), sz); cz++)
+            {
+                for (int cy = Maths.floorDiv(min.getY(), sy); cy <= Maths.floorDiv(max.getY(), sy); cy++)
+                {
+                    Vector3i lower =
+                            new Vector3i(Math.max(min.getX(), cx * sx), Math.max(min.getY(), cy * sy), Math.max(min.getZ(), cz * sz));
+                    Vector3i upper =
+                            new Vector3i(Math.min(max.getX(), cx * sx + sx - 1), Math.min(max.getY(), cy * sy + sy - 1), Math.min(max.getZ(),
+                                    cz * sz + sz - 1));
+                    readChunkRegion(cx, cy, cz, lower, upper, sink);
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads the part of a region which lies within a single chunk. The default reads a block at a
+     * time, platforms should override this to copy from the chunk storage directly.
+     * 
+     * @param cx The X position of the chunk, in chunks
+     * @param cy The Y position of the chunk, in chunks
+     * @param cz The Z position of the chunk, in chunks
+     * @param min The lowest corner of the part, inclusive and in world coordinates
+     * @param max The highest corner of the part, inclusive and in world coordinates
+     * @param sink The sink to receive the materials
+     */
+    protected void readChunkRegion(int cx, int cy, int cz, Vector3i min, Vector3i max, MaterialSink sink)
+    {
+        for (int y = min.getY(); y <= max.getY(); y++)
+        {
+            for (int z = min.getZ(); z <= max.getZ(); z++)
+            {
+                for (int x = min.getX(); x <= max.getX(); x++)
+                {
+                    Optional<Block> block = getBlock(x, y, z);
+                    if (block.isPresent())
+                    {
+                        sink.accept(x, y, z, block.get().getMaterial());
+                    }
                 }
             }
         }
-        return mat;
     }
 
 }
@@ -0,0 +1,116 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 The Voxel Plugineering Team
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.voxelplugineering.voxelsniper.world;
+
+import com.google.common.base.Optional;
+import com.voxelplugineering.voxelsniper.util.Direction;
+import com.voxelplugineering.voxelsniper.world.material.Material;
+
+/**
+ * A reusable, mutable position within a {@link BlockVolume} which may be moved around and read
+ * from without creating a {@link Block} or {@link Location} for each position. A cursor is not
+ * thread safe and should not be shared.
+ */
+public interface BlockCursor
+{
+
+    /**
+     * Gets the X position of this cursor.
+     * 
+     * @return The X position
+     */
+    int getX();
+
+    /**
+     * Gets the Y position of this cursor.
+     * 
+     * @return The Y position
+     */
+    int getY();
+
+    /**
+     * Gets the Z position of this cursor.
+     * 
+     * @return The Z position
+     */
+    int getZ();
+
+    /**
+     * Moves this cursor to the given position.
+     * 
+     * @param x The X position
+     * @param y The Y position
+     * @param z The Z position
+     * @return This cursor
+     */
+    BlockCursor moveTo(int x, int y, int z);
+
+    /**
+     * Moves this cursor by the given offset.
+     * 
+     * @param dx The X offset
+     * @param dy The Y offset
+     * @param dz The Z offset
+     * @return This cursor
+     */
+    BlockCursor offset(int dx, int dy, int dz);
+
+    /**
+     * Moves this cursor one step in the given direction.
+     * 
+     * @param direction The direction
+     * @return This cursor
+     */
+    BlockCursor step(Direction direction);
+
+    /**
+     * Gets whether there is a block at the position of this cursor.
+     * 
+     * @return Whether a block is present
+     */
+    boolean isPresent();
+
+    /**
+     * Gets the material at the position of this cursor.
+     * 
+     * @return The material, or null if no block is present
+     */
+    Material getMaterial();
+
+    /**
+     * Gets the dense id, from the world's material registry, of the material at the position of
+     * this cursor.
+     * 
+     * @return The material id, or -1 if no block is present
+     */
+    int getMaterialId();
+
+    /**
+     * Creates a {@link Block} for the position of this cursor.
+     * 
+     * @return The block, or {@link Optional#absent()} if no block is present
+     */
+    Optional<Block> toBlock();
+
+}
@@ -60,6 +60,25 @@ public interface BlockVolume
      */
     Optional<Block> getBlock(Vector3i vector);
 
+    /**
+     * Reads the materials of every position in the given region into the sink, without creating a
+     * {@link Block} for each position. Positions for which {@link #getBlock(int, int, int)} would
+     * return {@link Optional#absent()} are skipped, the order positions are visited in is not
+     * defined.
+     * 
+     * @param min The lowest corner of the region, inclusive
+     * @param max The highest corner of the region, inclusive
+     * @param sink The sink to receive the materials
+     */
+    void readRegion(Vector3i min, Vector3i max, MaterialSink sink);
+
+    /**
+     * Creates a new cursor over this volume, positioned at the zero position.
+     * 
+     * @return The cursor
+     */
+    BlockCursor createCursor();
+
     /**
      * Sets the block at the given xyz coordinates to the given material.
      * 
@@ -91,4 +110,12 @@ public interface BlockVolume
      */
     void setBlock(Material material, Vector3i vector);
 
+    /**
+     * Applies every change in the given batch. The changes may be reordered to group them by
+     * chunk, but changes to a single position are applied in the order they were added.
+     * 
+     * @param batch The changes
+     */
+    void setBlocks(EditBatch batch);
+
 }
@@ -77,8 +77,9 @@ public class CommonBlock implements Block
     @Override
     public Optional<Block> withOffset(Vector3i offset)
     {
-        // TODO Auto-generated method stub
-        return null;
+        checkNotNull(offset);
+        return getWorld().getBlock(this.location.getFlooredX() + offset.getX(), this.location.getFlooredY() + offset.getY(),
+                this.location.getFlooredZ() + offset.getZ());
     }
 
 }
@@ -0,0 +1,151 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 The Voxel Plugineering Team
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.voxelplugineering.voxelsniper.world;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.common.base.Optional;
+import com.voxelplugineering.voxelsniper.service.registry.MaterialRegistry;
+import com.voxelplugineering.voxelsniper.util.Direction;
+import com.voxelplugineering.voxelsniper.world.material.Material;
+
+/**
+ * A {@link BlockCursor} which reads through {@link BlockVolume#getBlock(int, int, int)}. The block
+ * is only looked up once a position is read and is kept until the cursor is moved. Platforms should
+ * provide cursors which read from their chunk storage directly.
+ */
+public class CommonBlockCursor implements BlockCursor
+{
+
+    private final BlockVolume volume;
+    private final MaterialRegistry<?> registry;
+    private int x;
+    private int y;
+    private int z;
+    private boolean read = false;
+    private Material material;
+
+    /**
+     * Creates a new {@link CommonBlockCursor} at the zero position.
+     * 
+     * @param volume The volume to read from
+     * @param registry The registry to look up material ids from
+     */
+    public CommonBlockCursor(BlockVolume volume, MaterialRegistry<?> registry)
+    {
+        this.volume = checkNotNull(volume);
+        this.registry = registry;
+    }
+
+    @Override
+    public int getX()
+    {
+        return this.x;
+    }
+
+    @Override
+    public int getY()
+    {
+        return this.y;
+    }
+
+    @Override
+    public int getZ()
+    {
+        return this.z;
+    }
+
+    @Override
+    public BlockCursor moveTo(int x, int y, int z)
+    {
+        if (x != this.x || y != this.y || z != this.z)
+        {
+            this.x = x;
+            this.y = y;
+            this.z = z;
+            this.read = false;
+        }
+        return this;
+    }
+
+    @Override
+    public BlockCursor offset(int dx, int dy, int dz)
+    {
+        return moveTo(this.x + dx, this.y + dy, this.z + dz);
+    }
+
+    @Override
+    public BlockCursor step(Direction direction)
+    {
+        return moveTo(this.x + direction.getModX(), this.y + direction.getModY(), this.z + direction.getModZ());
+    }
+
+    private void read()
+    {
+        if (!this.read)
+        {
+            Optional<Block> block = this.volume.getBlock(this.x, this.y, this.z);
+            this.material = block.isPresent() ? block.get().getMaterial() : null;
+            this.read = true;
+        }
+    }
+
+    @Override
+    public boolean isPresent()
+    {
+        read();
+        return this.material != null;
+    }
+
+    @Override
+    public Material getMaterial()
+    {
+        read();
+        return this.material;
+    }
+
+    @Override
+    public int getMaterialId()
+    {
+        read();
+        if (this.material == null || this.registry == null)
+        {
+            return -1;
+        }
+        return this.registry.getId(this.material);
+    }
+
+    @Override
+    public Optional<Block> toBlock()
+    {
+        return this.volume.getBlock(this.x, this.y, this.z);
+    }
+
+    @Override
+    public String toString()
+    {
+        return "BlockCursor{" + this.x + ", " + this.y + ", " + this.z + "}";
+    }
+
+}
@@ -0,0 +1,290 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 The Voxel Plugineering Team
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.voxelplugineering.voxelsniper.world;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.Arrays;
+import java.util.Map;
+
+import com.google.common.collect.Maps;
+import com.voxelplugineering.voxelsniper.util.math.Maths;
+import com.voxelplugineering.voxelsniper.util.math.Vector3i;
+import com.voxelplugineering.voxelsniper.world.material.Material;
+
+/**
+ * A batch of block changes to be applied to a {@link BlockVolume} together with
+ * {@link BlockVolume#setBlocks(EditBatch)}. Changes are stored in parallel arrays and may be
+ * grouped by the chunk they fall in with {@link #sortByChunk(Vector3i)} so that each chunk's
+ * changes are applied together. Where several changes are made to one position the last one
+ * added is applied last.
+ */
+public class EditBatch
+{
+
+    private static final int INITIAL_CAPACITY = 256;
+
+    private int size = 0;
+    private int[] xs;
+    private int[] ys;
+    private int[] zs;
+    private Material[] materials;
+    private int chunkCount = 0;
+    private Vector3i[] chunks;
+    private int[] chunkStarts;
+
+    /**
+     * Creates a new, empty {@link EditBatch}.
+     */
+    public EditBatch()
+    {
+        this.xs = new int[INITIAL_CAPACITY];
+        this.ys = new int[INITIAL_CAPACITY];
+        this.zs = new int[INITIAL_CAPACITY];
+        this.materials = new Material[INITIAL_CAPACITY];
+    }
+
+    /**
+     * Adds a change to this batch.
+     * 
+     * @param material The new material
+     * @param x The X position
+     * @param y The Y position
+     * @param z The Z position
+     */
+    public void add(Material material, int x, int y, int z)
+    {
+        checkNotNull(material);
+        if (this.size == this.xs.length)
+        {
+            int capacity = this.size * 2;
+            this.xs = Arrays.copyOf(this.xs, capacity);
+            this.ys = Arrays.copyOf(this.ys, capacity);
+            this.zs = Arrays.copyOf(this.zs, capacity);
+            this.materials = Arrays.copyOf(this.materials, capacity);
+        }
+        this.xs[this.size] = x;
+        this.ys[this.size] = y;
+        this.zs[this.size] = z;
+        this.materials[this.size] = material;
+        this.size++;
+        this.chunkCount = 0;
+    }
+
+    /**
+     * Gets the number of changes in this batch.
+     * 
+     * @return The size
+     */
+    public int size()
+    {
+        return this.size;
+    }
+
+    /**
+     * Gets whether this batch has no changes.
+     * 
+     * @return Is empty
+     */
+    public boolean isEmpty()
+    {
+        return this.size == 0;
+    }
+
+    /**
+     * Gets the X position of the given change.
+     * 
+     * @param index The index of the change
+     * @return The X position
+     */
+    public int getX(int index)
+    {
+        return this.xs[index];
+    }
+
+    /**
+     * Gets the Y position of the given change.
+     * 
+     * @param index The index of the change
+     * @return The Y position
+     */
+    public int getY(int index)
+    {
+        return this.ys[index];
+    }
+
+    /**
+     * Gets the Z position of the given change.
+     * 
+     * @param index The index of the change
+     * @return The Z position
+     */
+    public int getZ(int index)
+    {
+        return this.zs[index];
+    }
+
+    /**
+     * Gets the material of the given change.
+     * 
+     * @param index The index of the change
+     * @return The material
+     */
+    public Material getMaterial(int index)
+    {
+        return this.materials[index];
+    }
+
+    /**
+     * Removes all changes from this batch, the storage is kept for reuse.
+     */
+    public void clear()
+    {
+        Arrays.fill(this.materials, 0, this.size, null);
+        this.size = 0;
+        this.chunkCount = 0;
+    }
+
+    /**
+     * Reorders the changes so that the changes within each chunk are adjacent, the order of
+     * changes within a chunk is kept. Chunks are ordered by their first change. The groups are
+     * available through {@link #getChunkCount()} until the next change is added.
+     * 
+     * @param chunkSize The size of the chunks
+     */
+    public void sortByChunk(Vector3i chunkSize)
+    {
+        int sx = Math.max(1, chunkSize.getX());
+        int sy = Math.max(1, chunkSize.getY());
+        int sz = Math.max(1, chunkSize.getZ());
+        Map<Vector3i, Integer> ids = Maps.newHashMap();
+        Vector3i[] found = new Vector3i[16];
+        int[] counts = new int[16];
+        int[] group = new int[this.size];
+        int lastX = 0;
+        int lastY = 0;
+        int lastZ = 0;
+        int last = -1;
+        for (int i = 0; i < this.size; i++)
+        {
+            int cx = Maths.floorDiv(this.xs[i], sx);
+            int cy = Maths.floorDiv(this.ys[i], sy);
+            int cz = Maths.floorDiv(this.zs[i], sz);
+            // consecutive changes are usually in the same chunk
+            if (last < 0 || cx != lastX || cy != lastY || cz != lastZ)
+            {
+                Vector3i chunk = new Vector3i(cx, cy, cz);
+                Integer id = ids.get(chunk);
+                if (id == null)
+                {
+                    id = ids.size();
+                    ids.put(chunk, id);
+                    if (id == found.length)
+                    {
+                        found = Arrays.copyOf(found, id * 2);
+                        counts = Arrays.copyOf(counts, id * 2);
+                    }
+                    found[id] = chunk;
+                }
+                last = id;
+                lastX = cx;
+                lastY = cy;
+                lastZ = cz;
+            }
+            group[i] = last;
+            counts[last]++;
+        }
+        int n = ids.size();
+        int[] starts = new int[n + 1];
+        for (int g = 0; g < n; g++)
+        {
+            starts[g + 1] = starts[g] + counts[g];
+        }
+        int[] next = Arrays.copyOf(starts, n);
+        int[] nx = new int[this.xs.length];
+        int[] ny = new int[this.xs.length];
+        int[] nz = new int[this.xs.length];
+        Material[] nm = new Material[this.xs.length];
+        for (int i = 0; i < this.size; i++)
+        {
+            int j = next[group[i]]++;
+            nx[j] = this.xs[i];
+            ny[j] = this.ys[i];
+            nz[j] = this.zs[i];
+            nm[j] = this.materials[i];
+        }
+        this.xs = nx;
+        this.ys = ny;
+        this.zs = nz;
+        this.materials = nm;
+        this.chunks = Arrays.copyOf(found, n);
+        this.chunkStarts = starts;
+        this.chunkCount = n;
+    }
+
+    /**
+     * Gets the number of chunks found by the last {@link #sortByChunk(Vector3i)}.
+     * 
+     * @return The number of chunks
+     */
+    public int getChunkCount()
+    {
+        return this.chunkCount;
+    }
+
+    /**
+     * Gets the position, in chunks, of the given chunk found by the last
+     * {@link #sortByChunk(Vector3i)}.
+     * 
+     * @param chunk The index of the chunk
+     * @return The chunk position
+     */
+    public Vector3i getChunk(int chunk)
+    {
+        return this.chunks[chunk];
+    }
+
+    /**
+     * Gets the index of the first change in the given chunk.
+     * 
+     * @param chunk The index of the chunk
+     * @return The first change
+     */
+    public int getChunkStart(int chunk)
+    {
+        return this.chunkStarts[chunk];
+    }
+
+    /**
+     * Gets the index after the last change in the given chunk.
+     * 
+     * @param chunk The index of the chunk
+     * @return The end of the chunk's changes
+     */
+    public int getChunkEnd(int chunk)
+    {
+        return this.chunkStarts[chunk + 1];
+    }
+
+}
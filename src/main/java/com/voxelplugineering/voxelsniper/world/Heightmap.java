@@ -0,0 +1,326 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 The Voxel Plugineering Team
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.voxelplugineering.voxelsniper.world;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.Arrays;
+import java.util.Map;
+
+import com.google.common.collect.Maps;
+import com.voxelplugineering.voxelsniper.util.math.Maths;
+import com.voxelplugineering.voxelsniper.util.math.Vector3i;
+import com.voxelplugineering.voxelsniper.world.material.Material;
+
+/**
+ * A cache of the highest solid and highest non-air block of every column of a world. The heights
+ * of the columns of a chunk are found with a single
+ * {@link World#readRegion(Vector3i, Vector3i, MaterialSink)} of the whole chunk column the first
+ * time they are requested and are then kept up to date by the write path of the world, so that
+ * finding the surface costs a lookup rather than a scan down through the column.
+ * <p>
+ * Worlds apply the changes of {@link World#setBlocks(EditBatch)} to their heightmap themselves,
+ * platforms should also pass each single block change to {@link #update(Material, int, int, int)}.
+ * Heights are read from the world so the heightmap must be used from the thread which owns the
+ * world.
+ * </p>
+ */
+public final class Heightmap
+{
+
+    private final World world;
+    private final int minY;
+    private final int maxY;
+    private final int sizeX;
+    private final int sizeZ;
+    private final Map<Long, Column> columns = Maps.newConcurrentMap();
+
+    /**
+     * Creates a new {@link Heightmap} for the given world, covering the height range of the world.
+     * 
+     * @param world The world
+     */
+    public Heightmap(World world)
+    {
+        this.world = checkNotNull(world);
+        this.minY = world.getMinHeight();
+        this.maxY = world.getMaxHeight();
+        this.sizeX = Math.max(1, world.getChunkSize().getX());
+        this.sizeZ = Math.max(1, world.getChunkSize().getZ());
+    }
+
+    /**
+     * Gets the height returned for columns with no matching block, one below the bottom of the
+     * world.
+     * 
+     * @return The height of an empty column
+     */
+    public int getEmptyHeight()
+    {
+        return this.minY - 1;
+    }
+
+    /**
+     * Gets the y position of the highest solid block in the given column.
+     * 
+     * @param x The X position
+     * @param z The Z position
+     * @return The height, or {@link #getEmptyHeight()} if the column has no solid blocks
+     */
+    public int getHighestSolid(int x, int z)
+    {
+        return getColumn(x, z).solid[index(x, z)];
+    }
+
+    /**
+     * Gets the y position of the highest block in the given column which is not air.
+     * 
+     * @param x The X position
+     * @param z The Z position
+     * @return The height, or {@link #getEmptyHeight()} if the column is entirely air
+     */
+    public int getHighestNonAir(int x, int z)
+    {
+        return getColumn(x, z).nonAir[index(x, z)];
+    }
+
+    /**
+     * Updates the heights of the column containing a changed block. Columns which have not been
+     * requested yet are ignored as they will be read in full when they are.
+     * 
+     * @param material The new material of the block
+     * @param x The X position
+     * @param y The Y position
+     * @param z The Z position
+     */
+    public void update(Material material, int x, int y, int z)
+    {
+        if (y < this.minY || y > this.maxY || this.columns.isEmpty())
+        {
+            return;
+        }
+        Column column = this.columns.get(key(Maths.floorDiv(x, this.sizeX), Maths.floorDiv(z, this.sizeZ)));
+        if (column != null)
+        {
+            update(column, material, x, y, z);
+        }
+    }
+
+    /**
+     * Updates the heights of the columns containing a range of changes of a batch, which must all
+     * lie within a single chunk as they do after {@link EditBatch#sortByChunk(Vector3i)}.
+     * 
+     * @param batch The batch
+     * @param start The index of the first change
+     * @param end The index after the last change
+     */
+    public void update(EditBatch batch, int start, int end)
+    {
+        if (start >= end || this.columns.isEmpty())
+        {
+            return;
+        }
+        Column column = this.columns.get(key(Maths.floorDiv(batch.getX(start), this.sizeX), Maths.floorDiv(batch.getZ(start), this.sizeZ)));
+        if (column == null)
+        {
+            return;
+        }
+        for (int i = start; i < end; i++)
+        {
+            int y = batch.getY(i);
+            if (y >= this.minY && y <= this.maxY)
+            {
+                update(column, batch.getMaterial(i), batch.getX(i), y, batch.getZ(i));
+            }
+        }
+    }
+
+    /**
+     * Drops the cached heights of a chunk column, they will be read again when next requested.
+     * 
+     * @param cx The X position of the chunk, in chunks
+     * @param cz The Z position of the chunk, in chunks
+     */
+    public void invalidate(int cx, int cz)
+    {
+        this.columns.remove(key(cx, cz));
+    }
+
+    /**
+     * Drops all cached heights.
+     */
+    public void invalidateAll()
+    {
+        this.columns.clear();
+    }
+
+    /**
+     * Gets the number of chunk columns which currently have cached heights.
+     * 
+     * @return The number of chunk columns
+     */
+    public int getCachedColumnCount()
+    {
+        return this.columns.size();
+    }
+
+    private static long key(int cx, int cz)
+    {
+        return ((long) cx << 32) | (cz & 0xFFFFFFFFL);
+    }
+
+    private int index(int x, int z)
+    {
+        return (z - Maths.floorDiv(z, this.sizeZ) * this.sizeZ) * this.sizeX + (x - Maths.floorDiv(x, this.sizeX) * this.sizeX);
+    }
+
+    private Column getColumn(int x, int z)
+    {
+        int cx = Maths.floorDiv(x, this.sizeX);
+        int cz = Maths.floorDiv(z, this.sizeZ);
+        Long key = key(cx, cz);
+        Column column = this.columns.get(key);
+        if (column == null)
+        {
+            column = build(cx, cz);
+            this.columns.put(key, column);
+        }
+        return column;
+    }
+
+    /**
+     * Reads the heights of every column of a chunk column in one pass over the world.
+     */
+    private Column build(int cx, int cz)
+    {
+        final Column column = new Column(this.sizeX * this.sizeZ, this.minY - 1);
+        final int x0 = cx * this.sizeX;
+        final int z0 = cz * this.sizeZ;
+        final Material air = this.world.getMaterialRegistry().getAirMaterial();
+        Vector3i min = new Vector3i(x0, this.minY, z0);
+        Vector3i max = new Vector3i(x0 + this.sizeX - 1, this.maxY, z0 + this.sizeZ - 1);
+        this.world.readRegion(min, max, new MaterialSink()
+        {
+
+            @Override
+            public void accept(int x, int y, int z, Material material)
+            {
+                int i = (z - z0) * Heightmap.this.sizeX + (x - x0);
+                if (y > column.nonAir[i] && !material.equals(air))
+                {
+                    column.nonAir[i] = y;
+                }
+                if (y > column.solid[i] && material.isSolid())
+                {
+                    column.solid[i] = y;
+                }
+            }
+
+        });
+        return column;
+    }
+
+    private void update(Column column, Material material, int x, int y, int z)
+    {
+        int i = index(x, z);
+        boolean rescanSolid = false;
+        boolean rescanNonAir = false;
+        if (material.isSolid())
+        {
+            column.solid[i] = Math.max(column.solid[i], y);
+        } else
+        {
+            rescanSolid = y == column.solid[i];
+        }
+        if (!material.equals(this.world.getMaterialRegistry().getAirMaterial()))
+        {
+            column.nonAir[i] = Math.max(column.nonAir[i], y);
+        } else
+        {
+            rescanNonAir = y == column.nonAir[i];
+        }
+        if (rescanSolid || rescanNonAir)
+        {
+            rescan(column, i, x, z, y, rescanSolid, rescanNonAir);
+        }
+    }
+
+    /**
+     * Finds the new heights of a column whose top block at the given height was removed, by
+     * reading down the column beneath it.
+     */
+    private void rescan(Column column, int i, int x, int z, int top, boolean solid, boolean nonAir)
+    {
+        final Material air = this.world.getMaterialRegistry().getAirMaterial();
+        final int[] found = { this.minY - 1, this.minY - 1 };
+        if (top > this.minY)
+        {
+            this.world.readRegion(new Vector3i(x, this.minY, z), new Vector3i(x, top - 1, z), new MaterialSink()
+            {
+
+                @Override
+                public void accept(int px, int py, int pz, Material material)
+                {
+                    if (py > found[0] && material.isSolid())
+                    {
+                        found[0] = py;
+                    }
+                    if (py > found[1] && !material.equals(air))
+                    {
+                        found[1] = py;
+                    }
+                }
+
+            });
+        }
+        if (solid)
+        {
+            column.solid[i] = found[0];
+        }
+        if (nonAir)
+        {
+            column.nonAir[i] = found[1];
+        }
+    }
+
+    /**
+     * The heights of the columns of a single chunk column.
+     */
+    private static final class Column
+    {
+
+        final int[] solid;
+        final int[] nonAir;
+
+        Column(int size, int empty)
+        {
+            this.solid = new int[size];
+            this.nonAir = new int[size];
+            Arrays.fill(this.solid, empty);
+            Arrays.fill(this.nonAir, empty);
+        }
+
+    }
+
+}
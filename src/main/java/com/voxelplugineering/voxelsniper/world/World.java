@@ -25,6 +25,7 @@ package com.voxelplugineering.voxelsniper.world;
 
 import com.google.common.base.Optional;
 import com.voxelplugineering.voxelsniper.entity.Entity;
+import com.voxelplugineering.voxelsniper.service.registry.BiomeRegistry;
 import com.voxelplugineering.voxelsniper.service.registry.MaterialRegistry;
 import com.voxelplugineering.voxelsniper.shape.MaterialShape;
 import com.voxelplugineering.voxelsniper.shape.Shape;
@@ -51,6 +52,13 @@ public interface World extends BlockVolume
      */
     MaterialRegistry<?> getMaterialRegistry();
 
+    /**
+     * Gets the biome registry for this world, if one is available.
+     * 
+     * @return The biome registry
+     */
+    Optional<BiomeRegistry<?>> getBiomeRegistry();
+
     /**
      * Gets a collection of the loaded entities for this world.
      * 
@@ -129,6 +137,31 @@ public interface World extends BlockVolume
      */
     void setBiome(Biome biome, Vector3i vector);
 
+    /**
+     * Reads the dense ids, from the {@link BiomeRegistry} of this world, of the biomes of every
+     * column within the X and Z bounds of the given region. Biomes are stored per column, so they
+     * are read at the Y position of the lowest corner only. The id of the column at {@code (x, z)}
+     * is written to {@code out[(z - min.z) * width + (x - min.x)]}, columns without a biome or
+     * with a biome which is not registered are given an id of -1.
+     * 
+     * @param min The lowest corner of the region, inclusive
+     * @param max The highest corner of the region, inclusive
+     * @param out The array to receive the ids, at least {@code width * length} long
+     */
+    void readBiomes(Vector3i min, Vector3i max, int[] out);
+
+    /**
+     * Sets the biome of every column containing at least one set position of the given shape. The
+     * origin of the shape is placed at the given position, and the biomes are set at its Y
+     * position. The chunks changed are refreshed before this returns.
+     * 
+     * @param biome The new biome
+     * @param origin The position of the origin of the shape
+     * @param shape The shape
+     * @return The number of columns set
+     */
+    int fillBiome(Biome biome, Vector3i origin, Shape shape);
+
     /**
      * Creates a new {@link MaterialShape} and populates it with the current contents of the world.
      * 
@@ -145,4 +178,41 @@ public interface World extends BlockVolume
      */
     Vector3i getChunkSize();
 
+    /**
+     * Gets the lowest y position blocks may be placed at in this world.
+     * 
+     * @return The minimum height
+     */
+    int getMinHeight();
+
+    /**
+     * Gets the highest y position blocks may be placed at in this world.
+     * 
+     * @return The maximum height
+     */
+    int getMaxHeight();
+
+    /**
+     * Gets the {@link Heightmap} caching the surface of this world.
+     * 
+     * @return The heightmap
+     */
+    Heightmap getHeightmap();
+
+    /**
+     * Gets the number of chunks changed by {@link #setBlocks(EditBatch)} which have not yet been
+     * refreshed.
+     * 
+     * @return The number of dirty chunks
+     */
+    int getDirtyChunkCount();
+
+    /**
+     * Refreshes every chunk changed by {@link #setBlocks(EditBatch)} since the last refresh, once
+     * each. This is called at the end of each tick of changes.
+     * 
+     * @return The number of chunks refreshed
+     */
+    int refreshDirtyChunks();
+
 }
@@ -0,0 +1,421 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 The Voxel Plugineering Team
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.voxelplugineering.voxelsniper.world;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.Arrays;
+import java.util.Map;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.Maps;
+import com.voxelplugineering.voxelsniper.shape.PackedIntArray;
+import com.voxelplugineering.voxelsniper.shape.Shape;
+import com.voxelplugineering.voxelsniper.util.Direction;
+import com.voxelplugineering.voxelsniper.util.math.Vector3i;
+import com.voxelplugineering.voxelsniper.world.material.Material;
+
+/**
+ * An immutable copy of the materials of a region of a world. A snapshot is captured once, on the
+ * thread which owns the world, with {@link World#readRegion(Vector3i, Vector3i, MaterialSink)} and
+ * may then be read from any thread. Materials are stored as palette indices in a
+ * {@link PackedIntArray}.
+ * <p>
+ * Positions outside of the captured region, or which were not present in the world when captured,
+ * read as absent. The snapshot cannot be changed.
+ * </p>
+ */
+public final class WorldSnapshot implements BlockVolume
+{
+
+    private final World world;
+    private final Vector3i min;
+    private final int width;
+    private final int height;
+    private final int length;
+    private final Optional<Material>[] palette;
+    private final PackedIntArray ids;
+
+    private WorldSnapshot(World world, Vector3i min, int width, int height, int length, Optional<Material>[] palette, PackedIntArray ids)
+    {
+        this.world = world;
+        this.min = min;
+        this.width = width;
+        this.height = height;
+        this.length = length;
+        this.palette = palette;
+        this.ids = ids;
+    }
+
+    /**
+     * Captures the materials of the given region of the world.
+     * 
+     * @param world The world
+     * @param min The lowest corner of the region, inclusive
+     * @param max The highest corner of the region, inclusive
+     * @return The snapshot
+     */
+    public static WorldSnapshot capture(World world, Vector3i min, Vector3i max)
+    {
+        checkNotNull(world);
+        checkNotNull(min);
+        checkNotNull(max);
+        checkArgument(max.getX() >= min.getX() && max.getY() >= min.getY() && max.getZ() >= min.getZ(), "Max must not be below min");
+        final int width = max.getX() - min.getX() + 1;
+        final int height = max.getY() - min.getY() + 1;
+        final int length = max.getZ() - min.getZ() + 1;
+        checkArgument((long) width * height * length <= Integer.MAX_VALUE, "Region is too large to capture");
+        final int mx = min.getX();
+        final int my = min.getY();
+        final int mz = min.getZ();
+        final PackedIntArray ids = new PackedIntArray(width * height * length, 1);
+        final Map<Material, Integer> dictionary = Maps.newHashMap();
+        world.readRegion(min, max, new MaterialSink()
+        {
+
+            @Override
+            public void accept(int x, int y, int z, Material material)
+            {
+                Integer id = dictionary.get(material);
+                if (id == null)
+                {
+                    // id 0 is left for absent positions
+                    id = dictionary.size() + 1;
+                    dictionary.put(material, id);
+                }
+                ids.set(((y - my) * length + (z - mz)) * width + (x - mx), id);
+            }
+
+        });
+        @SuppressWarnings("unchecked")
+        Optional<Material>[] palette = (Optional<Material>[]) new Optional<?>[dictionary.size() + 1];
+        palette[0] = Optional.absent();
+        for (Map.Entry<Material, Integer> e : dictionary.entrySet())
+        {
+            palette[e.getValue()] = Optional.of(e.getKey());
+        }
+        return new WorldSnapshot(world, min, width, height, length, palette, ids);
+    }
+
+    /**
+     * Captures the materials of the bounding box of the given shape placed with its origin at the
+     * given location.
+     * 
+     * @param world The world
+     * @param origin The location of the origin of the shape
+     * @param shape The shape
+     * @return The snapshot
+     */
+    public static WorldSnapshot capture(World world, Location origin, Shape shape)
+    {
+        checkNotNull(origin);
+        checkNotNull(shape);
+        Vector3i min =
+                new Vector3i(origin.getFlooredX() - shape.getOrigin().getX(), origin.getFlooredY() - shape.getOrigin().getY(),
+                        origin.getFlooredZ() - shape.getOrigin().getZ());
+        Vector3i max = new Vector3i(min.getX() + shape.getWidth() - 1, min.getY() + shape.getHeight() - 1, min.getZ() + shape.getLength() - 1);
+        return capture(world, min, max);
+    }
+
+    /**
+     * Captures every position reached by the kernel when it is placed on each position of the
+     * bounding box of the given shape, the shape placed with its origin at the given location. This
+     * is the region read by brushes which apply a kernel over a shape.
+     * 
+     * @param world The world
+     * @param origin The location of the origin of the shape
+     * @param shape The shape
+     * @param kernel The kernel
+     * @return The snapshot
+     */
+    public static WorldSnapshot captureNeighbourhood(World world, Location origin, Shape shape, Shape kernel)
+    {
+        checkNotNull(origin);
+        checkNotNull(shape);
+        checkNotNull(kernel);
+        Vector3i min =
+                new Vector3i(origin.getFlooredX() - shape.getOrigin().getX() - kernel.getOrigin().getX(), origin.getFlooredY()
+                        - shape.getOrigin().getY() - kernel.getOrigin().getY(), origin.getFlooredZ() - shape.getOrigin().getZ()
+                        - kernel.getOrigin().getZ());
+        Vector3i max =
+                new Vector3i(min.getX() + shape.getWidth() + kernel.getWidth() - 2, min.getY() + shape.getHeight() + kernel.getHeight() - 2,
+                        min.getZ() + shape.getLength() + kernel.getLength() - 2);
+        return capture(world, min, max);
+    }
+
+    /**
+     * Gets the world this snapshot was captured from.
+     * 
+     * @return The world
+     */
+    public World getWorld()
+    {
+        return this.world;
+    }
+
+    /**
+     * Gets the lowest corner of the captured region.
+     * 
+     * @return The lowest corner
+     */
+    public Vector3i getMinBound()
+    {
+        return this.min;
+    }
+
+    /**
+     * Gets the highest corner of the captured region.
+     * 
+     * @return The highest corner
+     */
+    public Vector3i getMaxBound()
+    {
+        return new Vector3i(this.min.getX() + this.width - 1, this.min.getY() + this.height - 1, this.min.getZ() + this.length - 1);
+    }
+
+    /**
+     * Gets the number of bytes used to store the captured materials.
+     * 
+     * @return The size in bytes
+     */
+    public long getByteSize()
+    {
+        return this.ids.getByteSize();
+    }
+
+    /**
+     * Gets whether the given position lies within the captured region.
+     * 
+     * @param x The X position
+     * @param y The Y position
+     * @param z The Z position
+     * @return Whether the position was captured
+     */
+    public boolean contains(int x, int y, int z)
+    {
+        x -= this.min.getX();
+        y -= this.min.getY();
+        z -= this.min.getZ();
+        return x >= 0 && x < this.width && y >= 0 && y < this.height && z >= 0 && z < this.length;
+    }
+
+    /**
+     * Gets the material at the given position without creating a {@link Block}.
+     * 
+     * @param x The X position
+     * @param y The Y position
+     * @param z The Z position
+     * @return The material, or {@link Optional#absent()} if the position is absent
+     */
+    public Optional<Material> getMaterial(int x, int y, int z)
+    {
+        if (!contains(x, y, z))
+        {
+            return this.palette[0];
+        }
+        return this.palette[this.ids.get(index(x, y, z))];
+    }
+
+    private int index(int x, int y, int z)
+    {
+        return ((y - this.min.getY()) * this.length + (z - this.min.getZ())) * this.width + (x - this.min.getX());
+    }
+
+    @Override
+    public Optional<Block> getBlock(int x, int y, int z)
+    {
+        Optional<Material> material = getMaterial(x, y, z);
+        if (!material.isPresent())
+        {
+            return Optional.absent();
+        }
+        return Optional.<Block>of(new CommonBlock(new CommonLocation(this.world, x, y, z), material.get()));
+    }
+
+    @Override
+    public Optional<Block> getBlock(Location location)
+    {
+        checkNotNull(location);
+        if (location.getWorld() != this.world)
+        {
+            return Optional.absent();
+        }
+        return getBlock(location.getFlooredX(), location.getFlooredY(), location.getFlooredZ());
+    }
+
+    @Override
+    public Optional<Block> getBlock(Vector3i vector)
+    {
+        checkNotNull(vector);
+        return getBlock(vector.getX(), vector.getY(), vector.getZ());
+    }
+
+    @Override
+    public void readRegion(Vector3i min, Vector3i max, MaterialSink sink)
+    {
+        checkNotNull(min);
+        checkNotNull(max);
+        checkNotNull(sink);
+        int x0 = Math.max(min.getX(), this.min.getX());
+        int y0 = Math.max(min.getY(), this.min.getY());
+        int z0 = Math.max(min.getZ(), this.min.getZ());
+        int x1 = Math.min(max.getX(), this.min.getX() + this.width - 1);
+        int y1 = Math.min(max.getY(), this.min.getY() + this.height - 1);
+        int z1 = Math.min(max.getZ(), this.min.getZ() + this.length - 1);
+        for (int y = y0; y <= y1; y++)
+        {
+            for (int z = z0; z <= z1; z++)
+            {
+                int index = index(x0, y, z);
+                for (int x = x0; x <= x1; x++, index++)
+                {
+                    Optional<Material> material = this.palette[this.ids.get(index)];
+                    if (material.isPresent())
+                    {
+                        sink.accept(x, y, z, material.get());
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Creates a cursor which reads directly from the captured materials.
+     * 
+     * @return The cursor
+     */
+    @Override
+    public BlockCursor createCursor()
+    {
+        return new SnapshotCursor();
+    }
+
+    @Override
+    public void setBlock(Material material, int x, int y, int z)
+    {
+        throw new UnsupportedOperationException("Cannot change a world snapshot");
+    }
+
+    @Override
+    public void setBlock(Material material, Location location)
+    {
+        throw new UnsupportedOperationException("Cannot change a world snapshot");
+    }
+
+    @Override
+    public void setBlock(Material material, Vector3i vector)
+    {
+        throw new UnsupportedOperationException("Cannot change a world snapshot");
+    }
+
+    @Override
+    public void setBlocks(EditBatch batch)
+    {
+        throw new UnsupportedOperationException("Cannot change a world snapshot");
+    }
+
+    /**
+     * A cursor over the captured materials.
+     */
+    private final class SnapshotCursor implements BlockCursor
+    {
+
+        private int x;
+        private int y;
+        private int z;
+
+        @Override
+        public int getX()
+        {
+            return this.x;
+        }
+
+        @Override
+        public int getY()
+        {
+            return this.y;
+        }
+
+        @Override
+        public int getZ()
+        {
+            return this.z;
+        }
+
+        @Override
+        public BlockCursor moveTo(int x, int y, int z)
+        {
+            this.x = x;
+            this.y = y;
+            this.z = z;
+            return this;
+        }
+
+        @Override
+        public BlockCursor offset(int dx, int dy, int dz)
+        {
+            return moveTo(this.x + dx, this.y + dy, this.z + dz);
+        }
+
+        @Override
+        public BlockCursor step(Direction direction)
+        {
+            return moveTo(this.x + direction.getModX(), this.y + direction.getModY(), this.z + direction.getModZ());
+        }
+
+        @Override
+        public boolean isPresent()
+        {
+            return WorldSnapshot.this.getMaterial(this.x, this.y, this.z).isPresent();
+        }
+
+        @Override
+        public Material getMaterial()
+        {
+            return WorldSnapshot.this.getMaterial(this.x, this.y, this.z).orNull();
+        }
+
+        @Override
+        public int getMaterialId()
+        {
+            Material material = getMaterial();
+            return material == null ? -1 : WorldSnapshot.this.world.getMaterialRegistry().getId(material);
+        }
+
+        @Override
+        public Optional<Block> toBlock()
+        {
+            return WorldSnapshot.this.getBlock(this.x, this.y, this.z);
+        }
+
+    }
+
+    @Override
+    public String toString()
+    {
+        return "WorldSnapshot{" + this.world.getName() + ", " + this.min + ", " + Arrays.asList(this.width, this.height, this.length) + "}";
+    }
+
+}
@@ -0,0 +1,270 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 The Voxel Plugineering Team
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.voxelplugineering.voxelsniper.world.memory;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.voxelplugineering.voxelsniper.entity.Entity;
+import com.voxelplugineering.voxelsniper.shape.PackedIntArray;
+import com.voxelplugineering.voxelsniper.util.math.Vector3i;
+import com.voxelplugineering.voxelsniper.world.AbstractChunk;
+import com.voxelplugineering.voxelsniper.world.Block;
+import com.voxelplugineering.voxelsniper.world.CommonBlock;
+import com.voxelplugineering.voxelsniper.world.CommonLocation;
+import com.voxelplugineering.voxelsniper.world.MaterialSink;
+import com.voxelplugineering.voxelsniper.world.material.Material;
+
+/**
+ * A chunk of a {@link MemoryWorld}. Blocks are stored as indices into a palette of the materials
+ * used within the chunk, packed into a {@link PackedIntArray}, so a chunk of a single material
+ * costs a single bit per block. Biomes are stored by the world, per column. All positions are in
+ * world coordinates.
+ */
+public class MemoryChunk extends AbstractChunk<PackedIntArray>
+{
+
+    private final MemoryWorld world;
+    private final Vector3i min;
+    private final Vector3i max;
+    private final Vector3i size;
+    private final PackedIntArray blocks;
+    private final List<Material> palette;
+    private final Map<Material, Integer> paletteIds;
+    private int refreshes;
+
+    /**
+     * Creates a new {@link MemoryChunk} filled with the given material.
+     * 
+     * @param world The parent world
+     * @param position The position of the chunk, in chunks
+     * @param fill The initial material of every block
+     */
+    MemoryChunk(MemoryWorld world, Vector3i position, Material fill)
+    {
+        this(world, position, world.getChunkSize(), fill);
+    }
+
+    private MemoryChunk(MemoryWorld world, Vector3i position, Vector3i size, Material fill)
+    {
+        this(world, position, size, new PackedIntArray(size.getX() * size.getY() * size.getZ(), 0), fill);
+    }
+
+    private MemoryChunk(MemoryWorld world, Vector3i position, Vector3i size, PackedIntArray blocks, Material fill)
+    {
+        super(blocks, world);
+        this.world = world;
+        this.size = size;
+        this.min = new Vector3i(position.getX() * size.getX(), position.getY() * size.getY(), position.getZ() * size.getZ());
+        this.max = this.min.add(new Vector3i(size.getX() - 1, size.getY() - 1, size.getZ() - 1));
+        this.blocks = blocks;
+        this.palette = Lists.newArrayList();
+        this.paletteIds = Maps.newHashMap();
+        this.palette.add(fill);
+        this.paletteIds.put(fill, 0);
+    }
+
+    /**
+     * Gets whether the given position, in world coordinates, lies within this chunk.
+     * 
+     * @param x The X position
+     * @param y The Y position
+     * @param z The Z position
+     * @return Whether the position is within the chunk
+     */
+    public boolean contains(int x, int y, int z)
+    {
+        return x >= this.min.getX() && x <= this.max.getX() && y >= this.min.getY() && y <= this.max.getY() && z >= this.min.getZ()
+                && z <= this.max.getZ();
+    }
+
+    /**
+     * Gets the index into the block storage of a position known to lie within this chunk.
+     */
+    int index(int x, int y, int z)
+    {
+        return ((y - this.min.getY()) * this.size.getZ() + (z - this.min.getZ())) * this.size.getX() + (x - this.min.getX());
+    }
+
+    /**
+     * Gets the material at the given index into the block storage.
+     */
+    Material get(int index)
+    {
+        return this.palette.get(this.blocks.get(index));
+    }
+
+    /**
+     * Sets the material at the given index into the block storage, adding it to the palette if it
+     * is not yet used within this chunk.
+     */
+    void set(int index, Material material)
+    {
+        Integer id = this.paletteIds.get(material);
+        if (id == null)
+        {
+            id = this.palette.size();
+            this.palette.add(material);
+            this.paletteIds.put(material, id);
+        }
+        this.blocks.set(index, id);
+    }
+
+    /**
+     * Copies the materials of the given region, which must lie within this chunk, into the sink.
+     */
+    void read(Vector3i lower, Vector3i upper, MaterialSink sink)
+    {
+        for (int y = lower.getY(); y <= upper.getY(); y++)
+        {
+            for (int z = lower.getZ(); z <= upper.getZ(); z++)
+            {
+                int index = index(lower.getX(), y, z);
+                for (int x = lower.getX(); x <= upper.getX(); x++, index++)
+                {
+                    sink.accept(x, y, z, this.palette.get(this.blocks.get(index)));
+                }
+            }
+        }
+    }
+
+    @Override
+    public Optional<Block> getBlock(int x, int y, int z)
+    {
+        this.world.simulateLatency();
+        if (!contains(x, y, z))
+        {
+            return Optional.absent();
+        }
+        return Optional.<Block> of(new CommonBlock(new CommonLocation(this.world, x, y, z), get(index(x, y, z))));
+    }
+
+    @Override
+    public void setBlock(Material material, int x, int y, int z)
+    {
+        checkNotNull(material);
+        this.world.simulateLatency();
+        if (contains(x, y, z))
+        {
+            set(index(x, y, z), material);
+            this.world.onChunkChange(material, x, y, z);
+        }
+    }
+
+    /**
+     * Reads the part of the region which lies within this chunk directly from the block storage.
+     * 
+     * @param min The lowest corner of the region, inclusive
+     * @param max The highest corner of the region, inclusive
+     * @param sink The sink to receive the materials
+     */
+    @Override
+    public void readRegion(Vector3i min, Vector3i max, MaterialSink sink)
+    {
+        checkNotNull(min);
+        checkNotNull(max);
+        checkNotNull(sink);
+        this.world.simulateLatency();
+        Vector3i lower =
+                new Vector3i(Math.max(min.getX(), this.min.getX()), Math.max(min.getY(), this.min.getY()), Math.max(min.getZ(), this.min.getZ()));
+        Vector3i upper =
+                new Vector3i(Math.min(max.getX(), this.max.getX()), Math.min(max.getY(), this.max.getY()), Math.min(max.getZ(), this.max.getZ()));
+        if (lower.getX() <= upper.getX() && lower.getY() <= upper.getY() && lower.getZ() <= upper.getZ())
+        {
+            read(lower, upper, sink);
+        }
+    }
+
+    @Override
+    public Iterable<Entity> getLoadedEntities()
+    {
+        return Collections.emptyList();
+    }
+
+    /**
+     * Counts the refresh, there are no clients to send the chunk to.
+     */
+    @Override
+    public void refreshChunk()
+    {
+        this.world.simulateLatency();
+        this.refreshes++;
+    }
+
+    /**
+     * Gets the number of times this chunk has been refreshed.
+     * 
+     * @return The refresh count
+     */
+    public int getRefreshCount()
+    {
+        return this.refreshes;
+    }
+
+    /**
+     * Gets the number of distinct materials which have been placed in this chunk, including the
+     * initial material.
+     * 
+     * @return The palette size
+     */
+    public int getPaletteSize()
+    {
+        return this.palette.size();
+    }
+
+    /**
+     * Gets the approximate size in bytes of the block storage of this chunk.
+     * 
+     * @return The size in bytes
+     */
+    public long getByteSize()
+    {
+        return this.blocks.getByteSize();
+    }
+
+    @Override
+    public Vector3i getMinBound()
+    {
+        return this.min;
+    }
+
+    @Override
+    public Vector3i getMaxBound()
+    {
+        return this.max;
+    }
+
+    @Override
+    public Vector3i getSize()
+    {
+        return this.size;
+    }
+
+}
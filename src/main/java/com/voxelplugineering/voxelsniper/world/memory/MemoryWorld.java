@@ -0,0 +1,539 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 The Voxel Plugineering Team
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.voxelplugineering.voxelsniper.world.memory;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.Maps;
+import com.voxelplugineering.voxelsniper.entity.Entity;
+import com.voxelplugineering.voxelsniper.service.registry.MaterialRegistry;
+import com.voxelplugineering.voxelsniper.shape.Shape;
+import com.voxelplugineering.voxelsniper.util.Context;
+import com.voxelplugineering.voxelsniper.util.math.Maths;
+import com.voxelplugineering.voxelsniper.util.math.Vector3i;
+import com.voxelplugineering.voxelsniper.world.AbstractWorld;
+import com.voxelplugineering.voxelsniper.world.Block;
+import com.voxelplugineering.voxelsniper.world.Chunk;
+import com.voxelplugineering.voxelsniper.world.CommonBlock;
+import com.voxelplugineering.voxelsniper.world.CommonLocation;
+import com.voxelplugineering.voxelsniper.world.EditBatch;
+import com.voxelplugineering.voxelsniper.world.MaterialSink;
+import com.voxelplugineering.voxelsniper.world.biome.Biome;
+import com.voxelplugineering.voxelsniper.world.material.Material;
+
+/**
+ * A world held entirely in memory, for running brushes, queues and undo without a platform. The
+ * world is a fixed box of {@link MemoryChunk}s spanning from the origin to
+ * {@code chunkSize * sizeInChunks} exclusive, positions outside of which are absent. Chunks are
+ * created the first time they are written to, until then they read as the air material of the
+ * material registry. The configured world heights are ignored in favour of the height of the box.
+ * <p>
+ * Biomes are stored per column rather than per chunk, as indices into a palette of the biomes used
+ * within the world, in an array for each chunk column created the first time a biome is set within
+ * it.
+ * </p>
+ * <p>
+ * An optional latency may be set which is spent busy waiting on every call into the world or its
+ * chunks, to stand in for the per call overhead of a real platform. Bulk calls such as
+ * {@link #readRegion(Vector3i, Vector3i, MaterialSink)} and {@link #setBlocks(EditBatch)} pay it
+ * once per chunk rather than once per block.
+ * </p>
+ * <p>
+ * Like the worlds of a platform this is not safe for concurrent writes, changes should be made from
+ * a single thread.
+ * </p>
+ */
+public class MemoryWorld extends AbstractWorld<AtomicReferenceArray<MemoryChunk>>
+{
+
+    private final String name;
+    private final MaterialRegistry<?> materials;
+    private final Vector3i chunkSize;
+    private final Vector3i sizeInChunks;
+    private final Vector3i maxBound;
+    private final AtomicReferenceArray<MemoryChunk> chunks;
+    private final AtomicReferenceArray<int[]> biomes;
+    private final List<Biome> biomePalette = new CopyOnWriteArrayList<Biome>();
+    private final Map<Biome, Integer> biomePaletteIds = Maps.newHashMap();
+    private final AtomicLong calls = new AtomicLong();
+    private volatile long latency;
+
+    /**
+     * Creates a new {@link MemoryWorld}.
+     * 
+     * @param context The context, must contain a {@link MaterialRegistry}
+     * @param name The name of the world
+     * @param chunkSize The size of each chunk, in blocks
+     * @param sizeInChunks The size of the world, in chunks
+     */
+    public MemoryWorld(Context context, String name, Vector3i chunkSize, Vector3i sizeInChunks)
+    {
+        this(context, name, chunkSize, sizeInChunks, new AtomicReferenceArray<MemoryChunk>(checkSize(chunkSize, sizeInChunks)));
+    }
+
+    private MemoryWorld(Context context, String name, Vector3i chunkSize, Vector3i sizeInChunks, AtomicReferenceArray<MemoryChunk> chunks)
+    {
+        super(context, chunks);
+        this.name = checkNotNull(name);
+        this.materials = context.getRequired(MaterialRegistry.class);
+        this.chunkSize = chunkSize;
+        this.sizeInChunks = sizeInChunks;
+        this.maxBound =
+                new Vector3i(chunkSize.getX() * sizeInChunks.getX() - 1, chunkSize.getY() * sizeInChunks.getY() - 1, chunkSize.getZ()
+                        * sizeInChunks.getZ() - 1);
+        this.chunks = chunks;
+        this.biomes = new AtomicReferenceArray<int[]>(sizeInChunks.getX() * sizeInChunks.getZ());
+    }
+
+    private static int checkSize(Vector3i chunkSize, Vector3i sizeInChunks)
+    {
+        checkNotNull(chunkSize);
+        checkNotNull(sizeInChunks);
+        checkArgument(chunkSize.getX() > 0 && chunkSize.getY() > 0 && chunkSize.getZ() > 0, "Chunk size must be positive");
+        checkArgument(sizeInChunks.getX() > 0 && sizeInChunks.getY() > 0 && sizeInChunks.getZ() > 0, "World size must be positive");
+        checkArgument((long) chunkSize.getX() * chunkSize.getY() * chunkSize.getZ() <= Integer.MAX_VALUE, "Chunk size is too large");
+        long blocks = (long) chunkSize.getX() * sizeInChunks.getX();
+        checkArgument(blocks <= Integer.MAX_VALUE && (long) chunkSize.getY() * sizeInChunks.getY() <= Integer.MAX_VALUE
+                && (long) chunkSize.getZ() * sizeInChunks.getZ() <= Integer.MAX_VALUE, "World size is too large");
+        long count = (long) sizeInChunks.getX() * sizeInChunks.getY() * sizeInChunks.getZ();
+        checkArgument(count <= Integer.MAX_VALUE, "Too many chunks");
+        checkArgument((long) chunkSize.getX() * chunkSize.getZ() <= Integer.MAX_VALUE, "Chunk size is too large");
+        return (int) count;
+    }
+
+    /**
+     * Sets the time spent on every call into the world or its chunks.
+     * 
+     * @param nanos The latency in nanoseconds, zero for none
+     */
+    public void setLatency(long nanos)
+    {
+        checkArgument(nanos >= 0, "Latency cannot be negative");
+        this.latency = nanos;
+    }
+
+    /**
+     * Gets the time spent on every call into the world or its chunks.
+     * 
+     * @return The latency in nanoseconds
+     */
+    public long getLatency()
+    {
+        return this.latency;
+    }
+
+    /**
+     * Gets the number of calls which have been made into the world and its chunks.
+     * 
+     * @return The call count
+     */
+    public long getCallCount()
+    {
+        return this.calls.get();
+    }
+
+    /**
+     * Resets the call count to zero.
+     */
+    public void resetCallCount()
+    {
+        this.calls.set(0);
+    }
+
+    /**
+     * Counts a call and busy waits for the configured latency. Sleeping is far too coarse for the
+     * microsecond latencies of a real platform.
+     */
+    void simulateLatency()
+    {
+        this.calls.incrementAndGet();
+        long nanos = this.latency;
+        if (nanos > 0)
+        {
+            long end = System.nanoTime() + nanos;
+            while (System.nanoTime() - end < 0)
+            {
+                // spin
+            }
+        }
+    }
+
+    /**
+     * Passes a block change made directly through one of the chunks of this world on to the
+     * heightmap.
+     * 
+     * @param material The new material
+     * @param x The X position
+     * @param y The Y position
+     * @param z The Z position
+     */
+    void onChunkChange(Material material, int x, int y, int z)
+    {
+        updateHeightmap(material, x, y, z);
+    }
+
+    /**
+     * Gets the size of the world, in chunks.
+     * 
+     * @return The size
+     */
+    public Vector3i getSizeInChunks()
+    {
+        return this.sizeInChunks;
+    }
+
+    /**
+     * Gets the highest position within the world, the lowest is the origin.
+     * 
+     * @return The highest position
+     */
+    public Vector3i getMaxBound()
+    {
+        return this.maxBound;
+    }
+
+    /**
+     * Gets the number of chunks which have been written to.
+     * 
+     * @return The loaded chunk count
+     */
+    public int getLoadedChunkCount()
+    {
+        int count = 0;
+        for (int i = 0; i < this.chunks.length(); i++)
+        {
+            if (this.chunks.get(i) != null)
+            {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private boolean contains(int x, int y, int z)
+    {
+        return x >= 0 && x <= this.maxBound.getX() && y >= 0 && y <= this.maxBound.getY() && z >= 0 && z <= this.maxBound.getZ();
+    }
+
+    private int chunkIndex(int cx, int cy, int cz)
+    {
+        return (cy * this.sizeInChunks.getZ() + cz) * this.sizeInChunks.getX() + cx;
+    }
+
+    /**
+     * Gets the chunk containing the given position, which must lie within the world, optionally
+     * creating it.
+     */
+    private MemoryChunk chunkAt(int x, int y, int z, boolean create)
+    {
+        return chunk(x / this.chunkSize.getX(), y / this.chunkSize.getY(), z / this.chunkSize.getZ(), create);
+    }
+
+    private MemoryChunk chunk(int cx, int cy, int cz, boolean create)
+    {
+        int index = chunkIndex(cx, cy, cz);
+        MemoryChunk chunk = this.chunks.get(index);
+        if (chunk == null && create)
+        {
+            Material air = this.materials.getAirMaterial();
+            checkState(air != null, "The material registry has no air material");
+            this.chunks.compareAndSet(index, null, new MemoryChunk(this, new Vector3i(cx, cy, cz), air));
+            chunk = this.chunks.get(index);
+        }
+        return chunk;
+    }
+
+    @Override
+    public Optional<Block> getBlock(int x, int y, int z)
+    {
+        simulateLatency();
+        if (!contains(x, y, z))
+        {
+            return Optional.absent();
+        }
+        MemoryChunk chunk = chunkAt(x, y, z, false);
+        Material material = chunk == null ? this.materials.getAirMaterial() : chunk.get(chunk.index(x, y, z));
+        return Optional.<Block> of(new CommonBlock(new CommonLocation(this, x, y, z), material));
+    }
+
+    @Override
+    public void setBlock(Material material, int x, int y, int z)
+    {
+        checkNotNull(material);
+        simulateLatency();
+        if (contains(x, y, z))
+        {
+            MemoryChunk chunk = chunkAt(x, y, z, true);
+            chunk.set(chunk.index(x, y, z), material);
+            updateHeightmap(material, x, y, z);
+        }
+    }
+
+    /**
+     * Copies the part of the region within the chunk directly from its block storage.
+     */
+    @Override
+    protected void readChunkRegion(int cx, int cy, int cz, Vector3i min, Vector3i max, MaterialSink sink)
+    {
+        if (cx < 0 || cy < 0 || cz < 0 || cx >= this.sizeInChunks.getX() || cy >= this.sizeInChunks.getY()
+                || cz >= this.sizeInChunks.getZ())
+        {
+            return;
+        }
+        simulateLatency();
+        MemoryChunk chunk = chunk(cx, cy, cz, false);
+        if (chunk != null)
+        {
+            chunk.read(min, max, sink);
+            return;
+        }
+        Material air = this.materials.getAirMaterial();
+        for (int y = min.getY(); y <= max.getY(); y++)
+        {
+            for (int z = min.getZ(); z <= max.getZ(); z++)
+            {
+                for (int x = min.getX(); x <= max.getX(); x++)
+                {
+                    sink.accept(x, y, z, air);
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes the changes directly into the block storage of the chunk.
+     */
+    @Override
+    protected void writeChunk(Vector3i chunk, EditBatch batch, int start, int end)
+    {
+        if (chunk.getX() < 0 || chunk.getY() < 0 || chunk.getZ() < 0 || chunk.getX() >= this.sizeInChunks.getX()
+                || chunk.getY() >= this.sizeInChunks.getY() || chunk.getZ() >= this.sizeInChunks.getZ())
+        {
+            return;
+        }
+        simulateLatency();
+        MemoryChunk target = chunk(chunk.getX(), chunk.getY(), chunk.getZ(), true);
+        for (int i = start; i < end; i++)
+        {
+            target.set(target.index(batch.getX(i), batch.getY(i), batch.getZ(i)), batch.getMaterial(i));
+        }
+    }
+
+    /**
+     * Gets the chunk at the given position, in chunks, creating it if it has not yet been written
+     * to.
+     * 
+     * @param x The X position of the chunk
+     * @param y The Y position of the chunk
+     * @param z The Z position of the chunk
+     * @return The chunk, or absent if the position is outside of the world
+     */
+    @Override
+    public Optional<Chunk> getChunk(int x, int y, int z)
+    {
+        if (x < 0 || y < 0 || z < 0 || x >= this.sizeInChunks.getX() || y >= this.sizeInChunks.getY() || z >= this.sizeInChunks.getZ())
+        {
+            return Optional.absent();
+        }
+        return Optional.<Chunk> of(chunk(x, y, z, true));
+    }
+
+    /**
+     * Gets the biome column array of the given chunk column, optionally creating it. Each entry is
+     * an index into the biome palette plus one, or zero for no biome.
+     */
+    private int[] biomeColumn(int cx, int cz, boolean create)
+    {
+        int index = cz * this.sizeInChunks.getX() + cx;
+        int[] column = this.biomes.get(index);
+        if (column == null && create)
+        {
+            this.biomes.compareAndSet(index, null, new int[this.chunkSize.getX() * this.chunkSize.getZ()]);
+            column = this.biomes.get(index);
+        }
+        return column;
+    }
+
+    /**
+     * Gets the entry of the given biome in the biome palette, adding it if it is not yet used.
+     */
+    private int biomePaletteId(Biome biome)
+    {
+        Integer id = this.biomePaletteIds.get(biome);
+        if (id == null)
+        {
+            this.biomePalette.add(biome);
+            id = this.biomePalette.size();
+            this.biomePaletteIds.put(biome, id);
+        }
+        return id;
+    }
+
+    private int biomeIndex(int x, int z)
+    {
+        return (z % this.chunkSize.getZ()) * this.chunkSize.getX() + (x % this.chunkSize.getX());
+    }
+
+    @Override
+    public Optional<Biome> getBiome(int x, int y, int z)
+    {
+        simulateLatency();
+        if (!contains(x, y, z))
+        {
+            return Optional.absent();
+        }
+        int[] column = biomeColumn(x / this.chunkSize.getX(), z / this.chunkSize.getZ(), false);
+        int id = column == null ? 0 : column[biomeIndex(x, z)];
+        return id == 0 ? Optional.<Biome> absent() : Optional.of(this.biomePalette.get(id - 1));
+    }
+
+    @Override
+    public void setBiome(Biome biome, int x, int y, int z)
+    {
+        checkNotNull(biome);
+        simulateLatency();
+        if (contains(x, y, z))
+        {
+            biomeColumn(x / this.chunkSize.getX(), z / this.chunkSize.getZ(), true)[biomeIndex(x, z)] = biomePaletteId(biome);
+        }
+    }
+
+    private boolean containsColumn(int cx, int cz, int y)
+    {
+        return cx >= 0 && cz >= 0 && cx < this.sizeInChunks.getX() && cz < this.sizeInChunks.getZ() && y >= 0 && y <= this.maxBound.getY();
+    }
+
+    /**
+     * Copies the ids directly from the biome column array, translating the palette once per chunk.
+     */
+    @Override
+    protected void readChunkBiomes(int cx, int cz, Vector3i lower, Vector3i upper, Vector3i min, int width, int[] out)
+    {
+        int[] column = null;
+        int[] ids = null;
+        if (containsColumn(cx, cz, lower.getY()))
+        {
+            simulateLatency();
+            column = biomeColumn(cx, cz, false);
+            if (column != null)
+            {
+                ids = new int[this.biomePalette.size() + 1];
+                ids[0] = -1;
+                for (int i = 1; i < ids.length; i++)
+                {
+                    ids[i] = getBiomeId(this.biomePalette.get(i - 1));
+                }
+            }
+        }
+        for (int z = lower.getZ(); z <= upper.getZ(); z++)
+        {
+            int index = (z - min.getZ()) * width + (lower.getX() - min.getX());
+            for (int x = lower.getX(); x <= upper.getX(); x++, index++)
+            {
+                out[index] = column == null ? -1 : ids[column[biomeIndex(x, z)]];
+            }
+        }
+    }
+
+    /**
+     * Writes the palette index directly into the biome column array.
+     */
+    @Override
+    protected int writeChunkBiomes(int cx, int cz, Vector3i lower, Vector3i upper, Vector3i offset, Shape columns, Biome biome)
+    {
+        if (!containsColumn(cx, cz, lower.getY()))
+        {
+            return 0;
+        }
+        simulateLatency();
+        int[] column = biomeColumn(cx, cz, true);
+        int id = biomePaletteId(biome);
+        int count = 0;
+        for (int z = lower.getZ(); z <= upper.getZ(); z++)
+        {
+            for (int x = lower.getX(); x <= upper.getX(); x++)
+            {
+                if (columns.get(x - offset.getX(), 0, z - offset.getZ(), false))
+                {
+                    column[biomeIndex(x, z)] = id;
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    @Override
+    public String getName()
+    {
+        return this.name;
+    }
+
+    @Override
+    public MaterialRegistry<?> getMaterialRegistry()
+    {
+        return this.materials;
+    }
+
+    @Override
+    public Iterable<Entity> getLoadedEntities()
+    {
+        return Collections.emptyList();
+    }
+
+    @Override
+    public Vector3i getChunkSize()
+    {
+        return this.chunkSize;
+    }
+
+    @Override
+    public int getMinHeight()
+    {
+        return 0;
+    }
+
+    @Override
+    public int getMaxHeight()
+    {
+        return this.maxBound.getY();
+    }
+
+    @Override
+    public String toString()
+    {
+        return "MemoryWorld{" + this.name + "}";
+    }
+
+}
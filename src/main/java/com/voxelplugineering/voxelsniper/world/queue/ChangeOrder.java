@@ -0,0 +1,210 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 The Voxel Plugineering Team
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.voxelplugineering.voxelsniper.world.queue;
+
+import java.util.Arrays;
+
+import com.voxelplugineering.voxelsniper.shape.SpanBuffer;
+import com.voxelplugineering.voxelsniper.util.math.Maths;
+import com.voxelplugineering.voxelsniper.util.math.Vector3i;
+
+/**
+ * The order in which a change queue applies the positions it changes. Chunked orders finish the
+ * changes of one chunk before moving to the next, so that each chunk is relit and resent once,
+ * and end each tick at a chunk boundary where the budget allows. Layers are always applied from
+ * the bottom up.
+ */
+public enum ChangeOrder
+{
+
+    /**
+     * Positions are applied row by row across the whole region, regardless of chunks.
+     */
+    LINEAR,
+    /**
+     * Positions are applied chunk by chunk, row by row within each chunk.
+     */
+    CHUNK,
+    /**
+     * Positions are applied chunk by chunk, each layer of a chunk in Morton order.
+     */
+    MORTON;
+
+    /**
+     * Gets whether this order groups positions by chunk.
+     * 
+     * @return Is chunked
+     */
+    public boolean isChunked()
+    {
+        return this != LINEAR;
+    }
+
+    /**
+     * Gets the rank of a position within a chunk of the given size. Positions of a chunk are
+     * applied in order of increasing rank.
+     * 
+     * @param x The X position within the chunk
+     * @param y The Y position within the chunk
+     * @param z The Z position within the chunk
+     * @param width The width of the chunk
+     * @param length The length of the chunk
+     * @return The rank
+     */
+    public long getRank(int x, int y, int z, int width, int length)
+    {
+        if (this == MORTON)
+        {
+            long side = getMortonSide(width, length);
+            return y * side * side + (spread(x) | (spread(z) << 1));
+        }
+        return ((long) y * length + z) * width + x;
+    }
+
+    /**
+     * Gets whether every rank within a chunk of the given size may be held by an int.
+     * 
+     * @param chunkSize The chunk size
+     * @return Whether the chunk size is supported
+     */
+    public boolean isSupported(Vector3i chunkSize)
+    {
+        return getRank(chunkSize.getX() - 1, chunkSize.getY() - 1, chunkSize.getZ() - 1, chunkSize.getX(), chunkSize.getZ()) < Integer.MAX_VALUE;
+    }
+
+    private static long getMortonSide(int width, int length)
+    {
+        long side = 1;
+        while (side < width || side < length)
+        {
+            side <<= 1;
+        }
+        return side;
+    }
+
+    /**
+     * Spreads the bits of the given value out to the even bits of a long.
+     */
+    private static long spread(int value)
+    {
+        long x = value & 0xFFFFFFFFL;
+        x = (x | (x << 16)) & 0x0000FFFF0000FFFFL;
+        x = (x | (x << 8)) & 0x00FF00FF00FF00FFL;
+        x = (x | (x << 4)) & 0x0F0F0F0F0F0F0F0FL;
+        x = (x | (x << 2)) & 0x3333333333333333L;
+        x = (x | (x << 1)) & 0x5555555555555555L;
+        return x;
+    }
+
+    /**
+     * Orders the spans of a shape by the chunk column they fall in, and by this order within each
+     * column.
+     * 
+     * @param spans The spans
+     * @param offsetX The world X position of the zero position of the shape
+     * @param offsetZ The world Z position of the zero position of the shape
+     * @param chunkSize The chunk size of the world
+     * @return The span indices in order, or null if this order is not chunked
+     */
+    public int[] orderSpans(SpanBuffer spans, int offsetX, int offsetZ, Vector3i chunkSize)
+    {
+        if (!isChunked() || spans.size() == 0)
+        {
+            return null;
+        }
+        int sx = Math.max(1, chunkSize.getX());
+        int sz = Math.max(1, chunkSize.getZ());
+        int minX = Integer.MAX_VALUE;
+        int maxX = Integer.MIN_VALUE;
+        int minZ = Integer.MAX_VALUE;
+        int maxZ = Integer.MIN_VALUE;
+        for (int i = 0; i < spans.size(); i++)
+        {
+            minX = Math.min(minX, Maths.floorDiv(spans.getX(i) + offsetX, sx));
+            maxX = Math.max(maxX, Maths.floorDiv(spans.getX(i) + offsetX, sx));
+            minZ = Math.min(minZ, Maths.floorDiv(spans.getZ(i) + offsetZ, sz));
+            maxZ = Math.max(maxZ, Maths.floorDiv(spans.getZ(i) + offsetZ, sz));
+        }
+        int columns = maxX - minX + 1;
+        int[] buckets = new int[spans.size()];
+        int[] ranks = new int[spans.size()];
+        for (int i = 0; i < spans.size(); i++)
+        {
+            int x = spans.getX(i) + offsetX;
+            int z = spans.getZ(i) + offsetZ;
+            int cx = Maths.floorDiv(x, sx);
+            int cz = Maths.floorDiv(z, sz);
+            buckets[i] = (cz - minZ) * columns + (cx - minX);
+            ranks[i] = (int) Math.min(Integer.MAX_VALUE, getRank(x - cx * sx, 0, z - cz * sz, sx, sz));
+        }
+        return sort(buckets, ranks, spans.size(), columns * (maxZ - minZ + 1));
+    }
+
+    /**
+     * Sorts the entries by bucket, and by rank within each bucket. Entries of equal bucket and
+     * rank keep their order.
+     * 
+     * @param buckets The bucket of each entry
+     * @param ranks The rank of each entry, not negative
+     * @param size The number of entries
+     * @param bucketCount The number of buckets
+     * @return The entry indices in order
+     */
+    static int[] sort(int[] buckets, int[] ranks, int size, int bucketCount)
+    {
+        int[] starts = new int[bucketCount + 1];
+        for (int i = 0; i < size; i++)
+        {
+            starts[buckets[i] + 1]++;
+        }
+        for (int i = 0; i < bucketCount; i++)
+        {
+            starts[i + 1] += starts[i];
+        }
+        int[] grouped = new int[size];
+        int[] next = Arrays.copyOf(starts, bucketCount);
+        for (int i = 0; i < size; i++)
+        {
+            grouped[next[buckets[i]]++] = i;
+        }
+        long[] keys = new long[size];
+        int[] sorted = new int[size];
+        for (int b = 0; b < bucketCount; b++)
+        {
+            int from = starts[b];
+            int to = starts[b + 1];
+            for (int i = from; i < to; i++)
+            {
+                keys[i] = ((long) ranks[grouped[i]] << 32) | i;
+            }
+            Arrays.sort(keys, from, to);
+            for (int i = from; i < to; i++)
+            {
+                sorted[i] = grouped[(int) keys[i]];
+            }
+        }
+        return sorted;
+    }
+
+}
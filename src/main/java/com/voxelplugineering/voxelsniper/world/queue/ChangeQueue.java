@@ -25,7 +25,10 @@ package com.voxelplugineering.voxelsniper.world.queue;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 
+import com.google.common.base.Optional;
+import com.voxelplugineering.voxelsniper.util.math.Vector3i;
 import com.voxelplugineering.voxelsniper.world.World;
+import com.voxelplugineering.voxelsniper.world.material.Material;
 
 /**
  * An abstract change queue.
@@ -41,19 +44,50 @@ public abstract class ChangeQueue
      * The world that this queue is changing.
      */
     protected World world;
+    private final StagedChanges staged;
 
     /**
-     * Creates a new {@link ChangeQueue}.
+     * Creates a new {@link ChangeQueue}. If the world is a {@link PendingChangeWorld} the queue
+     * changes the world beneath it. If the world is a {@link StagedWorld} the queue changes the
+     * world beneath the view and is staged when flushed.
      * 
      * @param sniper the player
      * @param world the world
      */
     public ChangeQueue(ChangeQueueOwner sniper, World world)
     {
-        this.world = checkNotNull(world, "World cannot be null");
+        checkNotNull(world, "World cannot be null");
+        if (world instanceof StagedWorld)
+        {
+            this.staged = ((StagedWorld) world).getStagedChanges();
+            world = ((StagedWorld) world).getView();
+        } else
+        {
+            this.staged = null;
+        }
+        this.world = world instanceof PendingChangeWorld ? ((PendingChangeWorld) world).getBase() : world;
         this.owner = checkNotNull(sniper, "Sniper cannot be null");
     }
 
+    /**
+     * Hands this queue to its owner as a pending change, adding the given queue as its undo
+     * history. If this queue was created from a {@link StagedWorld} it is staged instead.
+     * 
+     * @param reverse The queue which reverses this one, or null if no undo history is kept
+     */
+    protected void enqueue(ChangeQueue reverse)
+    {
+        if (this.staged != null && this.staged.add(this, reverse))
+        {
+            return;
+        }
+        if (reverse != null)
+        {
+            this.owner.getUndoHistory().addHistory(this, reverse);
+        }
+        this.owner.addPending(this);
+    }
+
     /**
      * Returns the player that this queue is attached to.
      * 
@@ -99,4 +133,51 @@ public abstract class ChangeQueue
      */
     public abstract void reset();
 
+    /**
+     * Gets the precomputed changes of this queue if it has not started applying them, so that they
+     * may be coalesced with those of the queues around it.
+     * 
+     * @return The changes, or absent if this queue has started or has no precomputed changes
+     */
+    public Optional<ShapeDiff> getPendingDiff()
+    {
+        return Optional.absent();
+    }
+
+    /**
+     * Gets the lowest corner of the region changed by this queue, if the changes of this queue can
+     * be read by a {@link PendingChangeWorld} before they are applied.
+     * 
+     * @return The lowest corner, inclusive
+     */
+    public Optional<Vector3i> getMinBound()
+    {
+        return Optional.absent();
+    }
+
+    /**
+     * Gets the highest corner of the region changed by this queue, if the changes of this queue
+     * can be read by a {@link PendingChangeWorld} before they are applied.
+     * 
+     * @return The highest corner, inclusive
+     */
+    public Optional<Vector3i> getMaxBound()
+    {
+        return Optional.absent();
+    }
+
+    /**
+     * Gets the material this queue will leave at the given position once it has been applied,
+     * whether or not it has been applied yet.
+     * 
+     * @param x The X position
+     * @param y The Y position
+     * @param z The Z position
+     * @return The material, or absent if this queue does not change the position
+     */
+    public Optional<Material> getPendingMaterial(int x, int y, int z)
+    {
+        return Optional.absent();
+    }
+
 }
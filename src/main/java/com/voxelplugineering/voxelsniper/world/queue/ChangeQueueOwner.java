@@ -60,6 +60,15 @@ public interface ChangeQueueOwner extends MessageReceiver
      */
     Optional<ChangeQueue> getNextPendingChange();
 
+    /**
+     * Gets a read only view of the pending {@link ChangeQueue}s, in the order they will be applied.
+     * The view may be read from threads other than the one applying the queues, so implementations
+     * should return a copy taken under the same lock as the methods which change the queues.
+     * 
+     * @return The pending change queues
+     */
+    Iterable<ChangeQueue> getPendingChanges();
+
     /**
      * Adds the given change queue to the pending changes queue.
      * 
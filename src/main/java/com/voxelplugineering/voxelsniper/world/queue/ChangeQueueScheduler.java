@@ -0,0 +1,354 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 The Voxel Plugineering Team
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.voxelplugineering.voxelsniper.world.queue;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import com.google.common.collect.Lists;
+import com.voxelplugineering.voxelsniper.GunsmithLogger;
+import com.voxelplugineering.voxelsniper.entity.Player;
+import com.voxelplugineering.voxelsniper.service.config.Configuration;
+import com.voxelplugineering.voxelsniper.service.permission.PermissionProxy;
+import com.voxelplugineering.voxelsniper.util.Contextable;
+import com.voxelplugineering.voxelsniper.world.World;
+
+/**
+ * Shares the time budget of a tick between the owners of pending change queues by deficit round
+ * robin. Only active senders, owners which have told the scheduler they have pending changes, are
+ * visited. Each turn a sender is credited a quantum of time in proportion to its weight and spends
+ * it applying changes, carrying any overrun into its next turn, so an owner with a huge edit gets
+ * no more time per round than one with a small edit. A turn cut short by the end of a tick is
+ * resumed at the start of the next.
+ * <p>
+ * Newly active senders are placed at the front of the round so small edits finish quickly, and the
+ * quantum of a sender grows the longer it has waited since it was last served, up to a limit.
+ * Weights default to {@code defaultChangeWeight}, players with a
+ * {@code voxelsniper.queue.weight.<n>} permission for n of 2, 4 or 8 are given the largest such n.
+ * </p>
+ * <p>
+ * Owners may be activated from any thread, everything else should be called from the tick thread.
+ * </p>
+ */
+public class ChangeQueueScheduler implements Contextable
+{
+
+    /**
+     * The permission prefix of sender weights.
+     */
+    public static final String WEIGHT_PERMISSION = "voxelsniper.queue.weight.";
+
+    private static final int[] WEIGHTS = { 8, 4, 2 };
+    private static final double MAXIMUM_AGING = 4;
+    private static final double DEFAULT_WEIGHT = 1;
+    private static final int DEFAULT_AGING_PERIOD = 1000;
+
+    private final Configuration conf;
+    private final PermissionProxy permissions;
+    private final Queue<ChangeQueueOwner> arrivals = new ConcurrentLinkedQueue<ChangeQueueOwner>();
+    private final Map<ChangeQueueOwner, Sender> senders = new WeakHashMap<ChangeQueueOwner, Sender>();
+    private final Deque<Sender> round = new ArrayDeque<Sender>();
+
+    /**
+     * Creates a new {@link ChangeQueueScheduler}.
+     * 
+     * @param conf The configuration
+     * @param permissions The permission proxy to read weights from, or null to give all players the
+     *            default weight
+     */
+    public ChangeQueueScheduler(Configuration conf, PermissionProxy permissions)
+    {
+        this.conf = checkNotNull(conf);
+        this.permissions = permissions;
+    }
+
+    /**
+     * Marks the given owner as having pending changes. Owners already active are unaffected.
+     * 
+     * @param owner The owner
+     */
+    public void activate(ChangeQueueOwner owner)
+    {
+        this.arrivals.add(checkNotNull(owner));
+    }
+
+    /**
+     * Moves newly activated owners to the front of the round. A sender whose turn was cut short
+     * keeps the rest of its turn, after them.
+     */
+    private void admit(long now)
+    {
+        for (ChangeQueueOwner owner = this.arrivals.poll(); owner != null; owner = this.arrivals.poll())
+        {
+            if (this.senders.containsKey(owner) || !owner.hasPendingChanges())
+            {
+                continue;
+            }
+            Sender sender = new Sender(owner, lookupWeight(owner), now);
+            this.senders.put(owner, sender);
+            this.round.addFirst(sender);
+        }
+    }
+
+    private double lookupWeight(ChangeQueueOwner owner)
+    {
+        if (this.permissions != null && owner instanceof Player)
+        {
+            for (int weight : WEIGHTS)
+            {
+                if (this.permissions.hasPermission((Player) owner, WEIGHT_PERMISSION + weight))
+                {
+                    return weight;
+                }
+            }
+        }
+        return Math.max(0.01, this.conf.get("defaultChangeWeight", double.class).or(DEFAULT_WEIGHT));
+    }
+
+    /**
+     * Applies pending changes of the active senders until the time budget or the change cap is
+     * used up. At least one change is attempted each call, however small the budget. The changes
+     * and time spent on each world are added to the given map, as a pair of the change count and
+     * nanoseconds.
+     * 
+     * @param budget The time budget, in nanoseconds
+     * @param cap The most changes to apply
+     * @param controller The controller to convert time into changes
+     * @param usage The map to add the usage of each world to
+     * @return The number of changes applied
+     */
+    public synchronized int run(long budget, int cap, ChangeRateController controller, Map<World, long[]> usage)
+    {
+        long start = System.nanoTime();
+        admit(start);
+        if (this.round.isEmpty())
+        {
+            return 0;
+        }
+        long deadline = start + budget;
+        double weights = 0;
+        for (Sender sender : this.round)
+        {
+            weights += sender.weight;
+        }
+        // a full round of quanta fills the budget of a tick
+        long quantum = Math.max(1, (long) (budget / weights));
+        long agingPeriod = Math.max(1, this.conf.get("changeAgingPeriod", int.class).or(DEFAULT_AGING_PERIOD)) * 1000000L;
+        int done = 0;
+        boolean attempted = false;
+        while (!this.round.isEmpty() && done < cap)
+        {
+            Sender sender = this.round.peekFirst();
+            ChangeQueueOwner owner = sender.owner.get();
+            if (owner == null || !owner.hasPendingChanges())
+            {
+                retire(sender, owner);
+                continue;
+            }
+            long now = System.nanoTime();
+            if (attempted && now >= deadline)
+            {
+                break;
+            }
+            if (!sender.midTurn)
+            {
+                double aging = Math.min(MAXIMUM_AGING, 1 + (now - sender.lastServed) / (double) agingPeriod);
+                sender.deficit += (long) (quantum * sender.weight * aging);
+                sender.midTurn = true;
+            }
+            while (sender.deficit > 0 && done < cap && owner.hasPendingChanges())
+            {
+                now = System.nanoTime();
+                if (attempted && now >= deadline)
+                {
+                    break;
+                }
+                ChangeQueue change = owner.getNextPendingChange().orNull();
+                if (change == null)
+                {
+                    break;
+                }
+                attempted = true;
+                World world = change.getWorld();
+                int allocation = Math.min(cap - done, controller.allocate(world, Math.min(sender.deficit, deadline - now)));
+                int performed = 0;
+                try
+                {
+                    performed = change.perform(allocation);
+                } catch (Exception e)
+                {
+                    GunsmithLogger.getLogger().error(e, "Error while performing change operation!");
+                    owner.clearNextPending(true);
+                }
+                if (change.isFinished())
+                {
+                    owner.clearNextPending(false);
+                }
+                long end = System.nanoTime();
+                sender.deficit -= end - now;
+                sender.lastServed = end;
+                sender.served += performed;
+                done += performed;
+                long[] used = usage.get(world);
+                if (used == null)
+                {
+                    usage.put(world, new long[] { performed, end - now });
+                } else
+                {
+                    used[0] += performed;
+                    used[1] += end - now;
+                }
+            }
+            if (!owner.hasPendingChanges())
+            {
+                retire(sender, owner);
+            } else if (sender.deficit <= 0)
+            {
+                // the turn is over, any overrun is paid back from the next turn
+                sender.midTurn = false;
+                this.round.addLast(this.round.removeFirst());
+            } else
+            {
+                // out of time or changes, the turn resumes next tick
+                break;
+            }
+        }
+        return done;
+    }
+
+    private void retire(Sender sender, ChangeQueueOwner owner)
+    {
+        this.round.remove(sender);
+        if (owner != null)
+        {
+            this.senders.remove(owner);
+        }
+    }
+
+    /**
+     * Gets the owners which currently have a place in the round, in the order they will be
+     * served.
+     * 
+     * @return The active senders
+     */
+    public synchronized List<ChangeQueueOwner> getActiveSenders()
+    {
+        List<ChangeQueueOwner> owners = Lists.newArrayList();
+        for (Sender sender : this.round)
+        {
+            ChangeQueueOwner owner = sender.owner.get();
+            if (owner != null)
+            {
+                owners.add(owner);
+            }
+        }
+        return owners;
+    }
+
+    /**
+     * Gets the number of change queues the given owner has waiting to be applied.
+     * 
+     * @param owner The owner
+     * @return The queue depth
+     */
+    public int getQueueDepth(ChangeQueueOwner owner)
+    {
+        int depth = 0;
+        for (Iterator<ChangeQueue> it = owner.getPendingChanges().iterator(); it.hasNext(); it.next())
+        {
+            depth++;
+        }
+        return depth;
+    }
+
+    /**
+     * Gets how long the given owner has waited since it was last served, or since it became active
+     * if it has not been served yet.
+     * 
+     * @param owner The owner
+     * @return The wait, in nanoseconds, or zero if the owner is not active
+     */
+    public synchronized long getWaitTime(ChangeQueueOwner owner)
+    {
+        Sender sender = this.senders.get(owner);
+        return sender == null ? 0 : Math.max(0, System.nanoTime() - sender.lastServed);
+    }
+
+    /**
+     * Gets the weight of the given owner, or zero if the owner is not active.
+     * 
+     * @param owner The owner
+     * @return The weight
+     */
+    public synchronized double getWeight(ChangeQueueOwner owner)
+    {
+        Sender sender = this.senders.get(owner);
+        return sender == null ? 0 : sender.weight;
+    }
+
+    /**
+     * Gets the number of changes applied for the given owner since it last became active.
+     * 
+     * @param owner The owner
+     * @return The number of changes
+     */
+    public synchronized long getServedChanges(ChangeQueueOwner owner)
+    {
+        Sender sender = this.senders.get(owner);
+        return sender == null ? 0 : sender.served;
+    }
+
+    /**
+     * The scheduling state of an active owner. The owner is held weakly so a player who leaves
+     * does not stay in the round.
+     */
+    private static final class Sender
+    {
+
+        final WeakReference<ChangeQueueOwner> owner;
+        final double weight;
+        long deficit = 0;
+        long lastServed;
+        long served = 0;
+        boolean midTurn = false;
+
+        Sender(ChangeQueueOwner owner, double weight, long now)
+        {
+            this.owner = new WeakReference<ChangeQueueOwner>(owner);
+            this.weight = weight;
+            this.lastServed = now;
+        }
+
+    }
+
+}
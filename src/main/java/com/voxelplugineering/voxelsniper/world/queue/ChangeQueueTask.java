@@ -23,28 +23,107 @@
  */
 package com.voxelplugineering.voxelsniper.world.queue;
 
-import com.google.common.base.Optional;
-import com.voxelplugineering.voxelsniper.GunsmithLogger;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.Map;
+
+import com.google.common.collect.Maps;
 import com.voxelplugineering.voxelsniper.entity.Player;
 import com.voxelplugineering.voxelsniper.service.config.Configuration;
 import com.voxelplugineering.voxelsniper.service.registry.PlayerRegistry;
+import com.voxelplugineering.voxelsniper.util.mcstats.SniperStats;
+import com.voxelplugineering.voxelsniper.world.World;
 
 /**
- * A task for executing pending change queues.
+ * A task for executing pending change queues. Each tick spends at most {@code changeTimeBudget}
+ * milliseconds applying changes, shared between the players with pending changes by a
+ * {@link ChangeQueueScheduler}. The time is converted into a number of changes by a
+ * {@link ChangeRateController} which learns the cost of a change to each world, so the work done
+ * each tick follows how busy the server actually is. The {@code blockChangesPerSecond} setting
+ * remains as a hard cap on the changes per tick, unless it is not positive.
  */
 public class ChangeQueueTask implements Runnable
 {
 
+    private static final double DEFAULT_TIME_BUDGET = 8;
+    private static final int DEFAULT_INTERVAL = 100;
+    private static final int SWEEP_INTERVAL = 20;
+
     private final PlayerRegistry<?> players;
     private final Configuration conf;
+    private final ChangeRateController controller = new ChangeRateController();
+    private final ChangeQueueScheduler scheduler;
+    private int ticks = 0;
 
     /**
-     * Creates a new {@link ChangeQueueTask}.
+     * Creates a new {@link ChangeQueueTask} with a scheduler which gives every player the default
+     * weight.
      */
     public ChangeQueueTask(PlayerRegistry<?> players, Configuration conf)
+    {
+        this(players, conf, new ChangeQueueScheduler(conf, null));
+    }
+
+    /**
+     * Creates a new {@link ChangeQueueTask}.
+     * 
+     * @param players The player registry
+     * @param conf The configuration
+     * @param scheduler The scheduler sharing each tick between players
+     */
+    public ChangeQueueTask(PlayerRegistry<?> players, Configuration conf, ChangeQueueScheduler scheduler)
     {
         this.players = players;
         this.conf = conf;
+        this.scheduler = checkNotNull(scheduler);
+    }
+
+    /**
+     * Gets the scheduler sharing each tick between players.
+     * 
+     * @return The scheduler
+     */
+    public ChangeQueueScheduler getScheduler()
+    {
+        return this.scheduler;
+    }
+
+    /**
+     * Gets the controller estimating the cost of changes.
+     * 
+     * @return The controller
+     */
+    public ChangeRateController getController()
+    {
+        return this.controller;
+    }
+
+    /**
+     * Gets the time which may be spent applying changes each tick.
+     * 
+     * @return The budget, in nanoseconds
+     */
+    protected long getTimeBudget()
+    {
+        double millis = this.conf.get("changeTimeBudget", double.class).or(DEFAULT_TIME_BUDGET);
+        return Math.max(1, (long) (millis * 1000000));
+    }
+
+    /**
+     * Gets the most changes which may be applied each tick, from {@code blockChangesPerSecond} and
+     * the interval between ticks.
+     * 
+     * @return The cap, or {@link Integer#MAX_VALUE} for none
+     */
+    protected int getChangeCap()
+    {
+        int perSecond = this.conf.get("blockChangesPerSecond", int.class).or(0);
+        if (perSecond <= 0)
+        {
+            return Integer.MAX_VALUE;
+        }
+        int interval = this.conf.get("changeInterval", int.class).or(DEFAULT_INTERVAL);
+        return (int) Math.max(1, Math.min(Integer.MAX_VALUE, (long) perSecond * Math.max(1, interval) / 1000));
     }
 
     /**
@@ -53,65 +132,39 @@ public class ChangeQueueTask implements Runnable
     @Override
     public void run()
     {
-        // long start = System.currentTimeMillis();
-        int n = 0;
-        for (Player p : this.players.getPlayers())
+        long start = System.nanoTime();
+        // players are normally activated as they add pending changes, the occasional sweep only
+        // catches owners which were not
+        if (this.ticks++ % SWEEP_INTERVAL == 0)
         {
-            if (p.hasPendingChanges())
+            for (Player p : this.players.getPlayers())
             {
-                n++;
+                if (p.hasPendingChanges())
+                {
+                    this.scheduler.activate(p);
+                }
             }
         }
-        if (n == 0)
+        Map<World, long[]> usage = Maps.newHashMap();
+        this.scheduler.run(getTimeBudget(), getChangeCap(), this.controller, usage);
+        if (usage.isEmpty())
         {
             return;
         }
-        int remaining = this.conf.get("blockChangesPerSecond", int.class).get();
-        remaining /= 10;
-        for (Player p : this.players.getPlayers())
+        // refresh each chunk changed this tick once, rather than once per block, counting the
+        // refresh as part of the cost of the changes
+        int total = 0;
+        for (Map.Entry<World, long[]> e : usage.entrySet())
         {
-            if (!p.hasPendingChanges())
-            {
-                continue;
-            }
-            int allocation = remaining / (n--);
-            // For the frankly hilarious case where there are more pending
-            // change queues than blocks allocated per tick we simple set the
-            // allocation to a minimum of 1 which will at least do something
-            // slowly rather than nothing
-            if (allocation < 0)
-            {
-                allocation = 1;
-            }
-            int actual = 0;
-            while (p.hasPendingChanges() && actual < allocation)
-            {
-                Optional<ChangeQueue> change = p.getNextPendingChange();
-                if (!change.isPresent())
-                {
-                    break;
-                }
-                try
-                {
-                    actual += change.get().perform(allocation);
-                } catch (Exception e)
-                {
-                    GunsmithLogger.getLogger().error(e, "Error while performing change operation!");
-                    p.clearNextPending(true);
-                }
-                if (change.get().isFinished())
-                {
-                    p.clearNextPending(false);
-                }
-            }
-            remaining -= actual;
-            if (remaining <= 0)
-            {
-                break;
-            }
+            World world = e.getKey();
+            long now = System.nanoTime();
+            world.refreshDirtyChunks();
+            long nanos = e.getValue()[1] + System.nanoTime() - now;
+            this.controller.record(world, (int) e.getValue()[0], nanos);
+            total += e.getValue()[0];
         }
-        // Gunsmith.getLogger().info("Change queue tick length: " +
-        // (System.currentTimeMillis() - start) + " ms");
+        this.controller.recordTick(total, System.nanoTime() - start);
+        SniperStats.setBlockChangeRate((int) this.controller.getObservedRate());
     }
 
 }
@@ -0,0 +1,155 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 The Voxel Plugineering Team
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.voxelplugineering.voxelsniper.world.queue;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import com.voxelplugineering.voxelsniper.world.World;
+
+/**
+ * A feedback controller which learns how long a change takes to apply to each world, and converts
+ * a time budget into a number of changes to allocate. The cost of a world is a moving average of
+ * the measured time per change over the ticks changes were made to it, including the time spent
+ * refreshing its chunks afterwards.
+ * <p>
+ * Costs are recorded from the tick thread only, but the observed rate may be read from any thread.
+ * </p>
+ */
+public class ChangeRateController
+{
+
+    /**
+     * The cost assumed for a world before any changes to it have been measured, in nanoseconds
+     * per change. This errs high so the first tick of a world does not overrun its budget.
+     */
+    public static final long DEFAULT_COST = 5000;
+
+    private final Map<World, Double> costs = new WeakHashMap<World, Double>();
+    private final double smoothing;
+    private volatile double rate = 0;
+
+    /**
+     * Creates a new {@link ChangeRateController} with a smoothing factor of one quarter.
+     */
+    public ChangeRateController()
+    {
+        this(0.25);
+    }
+
+    /**
+     * Creates a new {@link ChangeRateController}.
+     * 
+     * @param smoothing The weight given to each new measurement, greater than zero and at most one
+     */
+    public ChangeRateController(double smoothing)
+    {
+        checkArgument(smoothing > 0 && smoothing <= 1, "Smoothing must be within (0, 1]");
+        this.smoothing = smoothing;
+    }
+
+    /**
+     * Gets the estimated cost of a change to the given world.
+     * 
+     * @param world The world
+     * @return The cost, in nanoseconds per change
+     */
+    public double getCost(World world)
+    {
+        checkNotNull(world);
+        Double cost = this.costs.get(world);
+        return cost == null ? DEFAULT_COST : cost;
+    }
+
+    /**
+     * Gets the number of changes to the given world which are estimated to fit within the given
+     * time. At least one change is always allocated so queues continue to make progress.
+     * 
+     * @param world The world
+     * @param nanos The time available, in nanoseconds
+     * @return The number of changes
+     */
+    public int allocate(World world, long nanos)
+    {
+        double changes = nanos / getCost(world);
+        if (changes >= Integer.MAX_VALUE)
+        {
+            return Integer.MAX_VALUE;
+        }
+        return Math.max(1, (int) changes);
+    }
+
+    /**
+     * Records the time taken to apply a number of changes to a world in a single tick.
+     * Measurements of no changes are ignored.
+     * 
+     * @param world The world
+     * @param changes The number of changes applied
+     * @param nanos The time taken, in nanoseconds
+     */
+    public void record(World world, int changes, long nanos)
+    {
+        checkNotNull(world);
+        if (changes <= 0)
+        {
+            return;
+        }
+        double cost = Math.max(1, nanos) / (double) changes;
+        Double last = this.costs.get(world);
+        this.costs.put(world, last == null ? cost : last + (cost - last) * this.smoothing);
+    }
+
+    /**
+     * Records the total number of changes applied in a tick and the time taken, updating the
+     * observed rate.
+     * 
+     * @param changes The number of changes applied
+     * @param nanos The time taken, in nanoseconds
+     */
+    public void recordTick(int changes, long nanos)
+    {
+        if (changes <= 0 || nanos <= 0)
+        {
+            return;
+        }
+        double measured = changes * 1e9 / nanos;
+        double last = this.rate;
+        this.rate = last == 0 ? measured : last + (measured - last) * this.smoothing;
+    }
+
+    /**
+     * Gets the moving average of the number of changes applied per second of tick time spent
+     * applying them.
+     * 
+     * @return The observed rate, in changes per second
+     */
+    public double getObservedRate()
+    {
+        return this.rate;
+    }
+
+}
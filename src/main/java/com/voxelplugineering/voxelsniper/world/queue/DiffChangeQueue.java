@@ -0,0 +1,197 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 The Voxel Plugineering Team
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.voxelplugineering.voxelsniper.world.queue;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.Lists;
+import com.voxelplugineering.voxelsniper.util.math.Vector3i;
+import com.voxelplugineering.voxelsniper.world.EditBatch;
+import com.voxelplugineering.voxelsniper.world.World;
+import com.voxelplugineering.voxelsniper.world.material.Material;
+
+/**
+ * A change queue which replays a precomputed {@link ShapeDiff}. Only positions which change are
+ * visited and the world is not read while the queue is performed. Changes are applied in the order
+ * of the diff, each tick stopping on a chunk boundary where the diff is chunked.
+ */
+public class DiffChangeQueue extends ChangeQueue
+{
+
+    private final ShapeDiff diff;
+    private final EditBatch batch = new EditBatch();
+    private int position = 0;
+
+    /**
+     * Creates a new {@link DiffChangeQueue}.
+     * 
+     * @param sniper the owner
+     * @param world the world
+     * @param diff the changes to make
+     */
+    public DiffChangeQueue(ChangeQueueOwner sniper, World world, ShapeDiff diff)
+    {
+        super(sniper, world);
+        this.diff = checkNotNull(diff);
+    }
+
+    /**
+     * Gets the changes made by this queue.
+     * 
+     * @return The diff
+     */
+    public ShapeDiff getDiff()
+    {
+        return this.diff;
+    }
+
+    @Override
+    public Optional<ShapeDiff> getPendingDiff()
+    {
+        return this.position == 0 ? Optional.of(this.diff) : Optional.<ShapeDiff> absent();
+    }
+
+    @Override
+    public boolean isFinished()
+    {
+        return this.position >= this.diff.size();
+    }
+
+    @Override
+    public void flush()
+    {
+        reset();
+        enqueue(new DiffChangeQueue(getOwner(), this.world, this.diff.invert()));
+    }
+
+    @Override
+    public int perform(int next)
+    {
+        int end = this.diff.getBatchEnd(this.position, next);
+        this.diff.addTo(this.batch, this.position, end);
+        int count = end - this.position;
+        this.position = end;
+        if (!this.batch.isEmpty())
+        {
+            this.world.setBlocks(this.batch);
+            this.batch.clear();
+        }
+        return count;
+    }
+
+    @Override
+    public void reset()
+    {
+        this.position = 0;
+    }
+
+    @Override
+    public Optional<Vector3i> getMinBound()
+    {
+        return Optional.of(this.diff.getMinBound());
+    }
+
+    @Override
+    public Optional<Vector3i> getMaxBound()
+    {
+        return Optional.of(this.diff.getMaxBound());
+    }
+
+    @Override
+    public Optional<Material> getPendingMaterial(int x, int y, int z)
+    {
+        return this.diff.getPendingMaterial(x, y, z);
+    }
+
+    /**
+     * Merges the pending queues following the first queue which has started, or from the first
+     * queue if none has, into a single queue for as long as they have not started and have
+     * precomputed changes to the same world. Each position is then written once with the material
+     * the last of them leaves there. The merged queues are only removed from the pending queues,
+     * the undo history kept for each of them is left as it is.
+     * 
+     * @param pending The pending queues, in the order they are applied
+     * @return The number of queues merged, zero if fewer than two could be merged
+     */
+    public static int coalesce(Deque<ChangeQueue> pending)
+    {
+        checkNotNull(pending);
+        if (pending.size() < 2)
+        {
+            return 0;
+        }
+        Iterator<ChangeQueue> it = pending.iterator();
+        ChangeQueue head = null;
+        if (!pending.peekFirst().getPendingDiff().isPresent())
+        {
+            head = it.next();
+        }
+        ChangeQueue first = null;
+        List<ShapeDiff> diffs = Lists.newArrayList();
+        while (it.hasNext())
+        {
+            ChangeQueue next = it.next();
+            Optional<ShapeDiff> diff = next.getPendingDiff();
+            if (!diff.isPresent() || (first != null && (next.getWorld() != first.getWorld() || next.getOwner() != first.getOwner())))
+            {
+                break;
+            }
+            diffs.add(diff.get());
+            if (!ShapeDiff.canMerge(diffs))
+            {
+                diffs.remove(diffs.size() - 1);
+                break;
+            }
+            if (first == null)
+            {
+                first = next;
+            }
+        }
+        if (diffs.size() < 2)
+        {
+            return 0;
+        }
+        ShapeDiff merged = ShapeDiff.merge(diffs);
+        if (head != null)
+        {
+            pending.removeFirst();
+        }
+        for (int i = 0; i < diffs.size(); i++)
+        {
+            pending.removeFirst();
+        }
+        pending.addFirst(new DiffChangeQueue(first.getOwner(), first.getWorld(), merged));
+        if (head != null)
+        {
+            pending.addFirst(head);
+        }
+        return diffs.size();
+    }
+
+}
@@ -0,0 +1,379 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 The Voxel Plugineering Team
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.voxelplugineering.voxelsniper.world.queue;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.voxelplugineering.voxelsniper.entity.Entity;
+import com.voxelplugineering.voxelsniper.service.registry.BiomeRegistry;
+import com.voxelplugineering.voxelsniper.service.registry.MaterialRegistry;
+import com.voxelplugineering.voxelsniper.shape.Shape;
+import com.voxelplugineering.voxelsniper.util.math.Maths;
+import com.voxelplugineering.voxelsniper.util.math.Vector3i;
+import com.voxelplugineering.voxelsniper.world.AbstractWorld;
+import com.voxelplugineering.voxelsniper.world.Block;
+import com.voxelplugineering.voxelsniper.world.Chunk;
+import com.voxelplugineering.voxelsniper.world.CommonBlock;
+import com.voxelplugineering.voxelsniper.world.CommonLocation;
+import com.voxelplugineering.voxelsniper.world.EditBatch;
+import com.voxelplugineering.voxelsniper.world.Heightmap;
+import com.voxelplugineering.voxelsniper.world.Location;
+import com.voxelplugineering.voxelsniper.world.MaterialSink;
+import com.voxelplugineering.voxelsniper.world.World;
+import com.voxelplugineering.voxelsniper.world.biome.Biome;
+import com.voxelplugineering.voxelsniper.world.material.Material;
+
+/**
+ * A view of a world with the changes of pending {@link ChangeQueue}s layered over it, so that a
+ * brush run while earlier changes are still being applied reads the world as it will be once they
+ * are. The queues are indexed by the chunk columns they touch so a read only consults the few
+ * queues which may change it, later queues taking precedence over earlier ones.
+ * <p>
+ * The set of queues is fixed when the view is created, from the copies the owners give of their
+ * pending queues, so a view may be created off the tick thread. Blocks read from the view are
+ * located in the view, and change queues created from those locations change the world beneath.
+ * All writes and every other operation are passed through to the world beneath.
+ * </p>
+ */
+public class PendingChangeWorld extends AbstractWorld<World>
+{
+
+    private final World base;
+    private final Map<Long, List<ChangeQueue>> index = Maps.newHashMap();
+    private final int sizeX;
+    private final int sizeZ;
+    private int queues = 0;
+    private Heightmap heightmap;
+
+    /**
+     * Creates a new {@link PendingChangeWorld} layering the pending changes of the given owners
+     * over the world, the owners in the given order.
+     * 
+     * @param base The world beneath
+     * @param owners The owners whose pending changes to include
+     */
+    public PendingChangeWorld(World base, Iterable<? extends ChangeQueueOwner> owners)
+    {
+        super(base, base.getMaterialRegistry(), base.getMinHeight(), base.getMaxHeight());
+        checkNotNull(owners);
+        this.base = base;
+        this.sizeX = Math.max(1, base.getChunkSize().getX());
+        this.sizeZ = Math.max(1, base.getChunkSize().getZ());
+        for (ChangeQueueOwner owner : owners)
+        {
+            for (ChangeQueue queue : owner.getPendingChanges())
+            {
+                add(queue);
+            }
+        }
+    }
+
+    /**
+     * Gets a view of the world with the pending changes of the given owners layered over it, or
+     * the world itself if none of the owners have pending changes to it.
+     * 
+     * @param world The world
+     * @param owners The owners whose pending changes to include
+     * @return The view
+     */
+    public static World overlay(World world, Iterable<? extends ChangeQueueOwner> owners)
+    {
+        checkNotNull(world);
+        checkNotNull(owners);
+        World base = world instanceof PendingChangeWorld ? ((PendingChangeWorld) world).getBase() : world;
+        PendingChangeWorld overlay = new PendingChangeWorld(base, owners);
+        return overlay.getPendingQueueCount() == 0 ? base : overlay;
+    }
+
+    private void add(ChangeQueue queue)
+    {
+        Optional<Vector3i> min = queue.getMinBound();
+        Optional<Vector3i> max = queue.getMaxBound();
+        if (queue.getWorld() != this.base || !min.isPresent() || !max.isPresent())
+        {
+            return;
+        }
+        this.queues++;
+        for (int cx = Maths.floorDiv(min.get().getX(), this.sizeX); cx <= Maths.floorDiv(max.get().getX(), this.sizeX); cx++)
+        {
+            for (int cz = Maths.floorDiv(min.get().getZ(), this.sizeZ); cz <= Maths.floorDiv(max.get().getZ(), this.sizeZ); cz++)
+            {
+                Long key = key(cx, cz);
+                List<ChangeQueue> layers = this.index.get(key);
+                if (layers == null)
+                {
+                    layers = Lists.newArrayListWithCapacity(2);
+                    this.index.put(key, layers);
+                }
+                layers.add(queue);
+            }
+        }
+    }
+
+    private static long key(int cx, int cz)
+    {
+        return ((long) cx << 32) | (cz & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Gets the queues which may change the chunk column containing the given position, or null if
+     * there are none.
+     */
+    List<ChangeQueue> getLayers(int x, int z)
+    {
+        return this.index.get(key(Maths.floorDiv(x, this.sizeX), Maths.floorDiv(z, this.sizeZ)));
+    }
+
+    private static Material apply(List<ChangeQueue> layers, int x, int y, int z, Material material)
+    {
+        if (layers != null)
+        {
+            for (int i = layers.size() - 1; i >= 0; i--)
+            {
+                Optional<Material> pending = layers.get(i).getPendingMaterial(x, y, z);
+                if (pending.isPresent())
+                {
+                    return pending.get();
+                }
+            }
+        }
+        return material;
+    }
+
+    /**
+     * Gets the world beneath this view.
+     * 
+     * @return The world
+     */
+    public World getBase()
+    {
+        return this.base;
+    }
+
+    /**
+     * Gets the number of queues layered over the world.
+     * 
+     * @return The number of queues
+     */
+    public int getPendingQueueCount()
+    {
+        return this.queues;
+    }
+
+    /**
+     * Gets the material the pending changes will leave at the given position.
+     * 
+     * @param x The X position
+     * @param y The Y position
+     * @param z The Z position
+     * @return The material, or absent if no pending change touches the position
+     */
+    public Optional<Material> getPendingMaterial(int x, int y, int z)
+    {
+        return Optional.fromNullable(apply(getLayers(x, z), x, y, z, null));
+    }
+
+    @Override
+    public Optional<Block> getBlock(Location location)
+    {
+        checkNotNull(location);
+        if (location.getWorld() != this && location.getWorld() != this.base)
+        {
+            return Optional.absent();
+        }
+        return getBlock(location.getFlooredX(), location.getFlooredY(), location.getFlooredZ());
+    }
+
+    @Override
+    public Optional<Block> getBlock(int x, int y, int z)
+    {
+        Optional<Block> block = this.base.getBlock(x, y, z);
+        if (!block.isPresent())
+        {
+            return block;
+        }
+        Material material = apply(getLayers(x, z), x, y, z, block.get().getMaterial());
+        return Optional.<Block> of(new CommonBlock(new CommonLocation(this, x, y, z), material));
+    }
+
+    /**
+     * Reads the region from the world beneath, replacing the materials of positions with pending
+     * changes.
+     * 
+     * @param min The lowest corner of the region, inclusive
+     * @param max The highest corner of the region, inclusive
+     * @param sink The sink to receive the materials
+     */
+    @Override
+    public void readRegion(Vector3i min, Vector3i max, final MaterialSink sink)
+    {
+        checkNotNull(min);
+        checkNotNull(max);
+        checkNotNull(sink);
+        if (this.index.isEmpty())
+        {
+            this.base.readRegion(min, max, sink);
+            return;
+        }
+        this.base.readRegion(min, max, new MaterialSink()
+        {
+
+            private long lastKey = key(Integer.MIN_VALUE, Integer.MIN_VALUE);
+            private List<ChangeQueue> layers = null;
+
+            @Override
+            public void accept(int x, int y, int z, Material material)
+            {
+                long key = key(Maths.floorDiv(x, PendingChangeWorld.this.sizeX), Maths.floorDiv(z, PendingChangeWorld.this.sizeZ));
+                if (key != this.lastKey)
+                {
+                    this.lastKey = key;
+                    this.layers = PendingChangeWorld.this.index.get(key);
+                }
+                sink.accept(x, y, z, apply(this.layers, x, y, z, material));
+            }
+
+        });
+    }
+
+    @Override
+    public void setBlock(Material material, Location location)
+    {
+        checkNotNull(material);
+        checkNotNull(location);
+        if (location.getWorld() != this && location.getWorld() != this.base)
+        {
+            return;
+        }
+        this.base.setBlock(material, location.getFlooredX(), location.getFlooredY(), location.getFlooredZ());
+    }
+
+    @Override
+    public void setBlock(Material material, int x, int y, int z)
+    {
+        this.base.setBlock(material, x, y, z);
+    }
+
+    @Override
+    public void setBlocks(EditBatch batch)
+    {
+        this.base.setBlocks(batch);
+    }
+
+    @Override
+    public int getDirtyChunkCount()
+    {
+        return this.base.getDirtyChunkCount();
+    }
+
+    @Override
+    public int refreshDirtyChunks()
+    {
+        return this.base.refreshDirtyChunks();
+    }
+
+    /**
+     * Gets a heightmap of this view, so that the surface found includes the pending changes. Its
+     * columns are read through {@link #readRegion(Vector3i, Vector3i, MaterialSink)} when first
+     * requested and are not updated afterwards, like the rest of the view.
+     * 
+     * @return The heightmap
+     */
+    @Override
+    public Heightmap getHeightmap()
+    {
+        if (this.heightmap == null)
+        {
+            this.heightmap = new Heightmap(this);
+        }
+        return this.heightmap;
+    }
+
+    @Override
+    public Optional<Chunk> getChunk(int x, int y, int z)
+    {
+        return this.base.getChunk(x, y, z);
+    }
+
+    @Override
+    public Optional<Biome> getBiome(int x, int y, int z)
+    {
+        return this.base.getBiome(x, y, z);
+    }
+
+    @Override
+    public void setBiome(Biome biome, int x, int y, int z)
+    {
+        this.base.setBiome(biome, x, y, z);
+    }
+
+    @Override
+    public void readBiomes(Vector3i min, Vector3i max, int[] out)
+    {
+        this.base.readBiomes(min, max, out);
+    }
+
+    @Override
+    public int fillBiome(Biome biome, Vector3i origin, Shape shape)
+    {
+        return this.base.fillBiome(biome, origin, shape);
+    }
+
+    @Override
+    public String getName()
+    {
+        return this.base.getName();
+    }
+
+    @Override
+    public MaterialRegistry<?> getMaterialRegistry()
+    {
+        return this.base.getMaterialRegistry();
+    }
+
+    @Override
+    public Optional<BiomeRegistry<?>> getBiomeRegistry()
+    {
+        return this.base.getBiomeRegistry();
+    }
+
+    @Override
+    public Iterable<Entity> getLoadedEntities()
+    {
+        return this.base.getLoadedEntities();
+    }
+
+    @Override
+    public Vector3i getChunkSize()
+    {
+        return this.base.getChunkSize();
+    }
+
+}
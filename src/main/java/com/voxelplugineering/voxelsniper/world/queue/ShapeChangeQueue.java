@@ -23,25 +23,64 @@
  */
 package com.voxelplugineering.voxelsniper.world.queue;
 
+import static com.google.common.base.Preconditions.checkNotNull;
+
 import com.google.common.base.Optional;
 import com.voxelplugineering.voxelsniper.shape.MaterialShape;
+import com.voxelplugineering.voxelsniper.shape.SpanBuffer;
+import com.voxelplugineering.voxelsniper.util.math.Maths;
+import com.voxelplugineering.voxelsniper.util.math.Vector3i;
 import com.voxelplugineering.voxelsniper.world.Block;
+import com.voxelplugineering.voxelsniper.world.CommonLocation;
+import com.voxelplugineering.voxelsniper.world.EditBatch;
 import com.voxelplugineering.voxelsniper.world.Location;
+import com.voxelplugineering.voxelsniper.world.World;
+import com.voxelplugineering.voxelsniper.world.WorldSnapshot;
 import com.voxelplugineering.voxelsniper.world.material.Material;
 
 /**
- * A special change queue for setting all of a shape to a single material.
+ * A special change queue for setting all of a shape to a single material. The spans of the shape
+ * are collected once when the queue is first started and only set positions are visited.
+ * <p>
+ * Alternatively a {@link ShapeDiff} may be computed for the queue before it is flushed, in which
+ * case only the positions which change are replayed and the world is not read while the queue is
+ * performed. The diff also serves as the undo history, in place of a capture of the shape.
+ * </p>
+ * <p>
+ * Positions are applied in the queue's {@link ChangeOrder}, by default chunk by chunk. Positions
+ * replacing breakable materials are always applied first, layer by layer from the top down.
+ * </p>
  */
 public class ShapeChangeQueue extends ChangeQueue
 {
 
+    /**
+     * The largest number of set positions for which undo history is stored. The capture reads the
+     * world synchronously, so this is bounded by what a single tick can afford to read.
+     */
+    private static final long MAX_UNDO_POSITIONS = 2000000;
+
     private final MaterialShape shape;
     private final Location originOffset;
     private final Location origin;
     private ExecutionState state;
     private long position = 0;
+    private SpanBuffer spans;
+    private int[] byTop;
+    private int nextTop = 0;
+    private int[] active;
+    private int activeCount = 0;
+    private int span = 0;
+    private int y = 0;
     private int ticks = 0;
     private boolean reported = false;
+    private final EditBatch batch = new EditBatch();
+    private World reader;
+    private volatile Material[] palette;
+    private volatile ShapeDiff diff;
+    private ChangeOrder order = ChangeOrder.CHUNK;
+    private int[] spanOrder;
+    private long[] columnVolumes;
 
     /**
      * Creates a new {@link ShapeChangeQueue}.
@@ -53,16 +92,114 @@ public class ShapeChangeQueue extends ChangeQueue
     public ShapeChangeQueue(ChangeQueueOwner sniper, Location origin, MaterialShape shape)
     {
         super(sniper, origin.getWorld());
-        this.originOffset = origin.add(-shape.getOrigin().getX(), -shape.getOrigin().getY(), -shape.getOrigin().getZ());
-        this.origin = origin;
+        // the undo history is read from the given world, which may include pending changes, but
+        // only the world beneath is kept once flushed
+        this.reader = origin.getWorld();
+        this.origin = new CommonLocation(this.world, origin.getX(), origin.getY(), origin.getZ());
+        this.originOffset = this.origin.add(-shape.getOrigin().getX(), -shape.getOrigin().getY(), -shape.getOrigin().getZ());
         this.state = ExecutionState.UNSTARTED;
         this.shape = shape;
     }
 
+    /**
+     * Gets the order this queue applies its changes in.
+     * 
+     * @return The order
+     */
+    public ChangeOrder getOrder()
+    {
+        return this.order;
+    }
+
+    /**
+     * Sets the order this queue applies its changes in. This must be set before a diff is computed
+     * and before the queue is first performed.
+     * 
+     * @param order The order
+     * @return This queue
+     */
+    public ShapeChangeQueue setOrder(ChangeOrder order)
+    {
+        this.order = checkNotNull(order);
+        return this;
+    }
+
+    /**
+     * Captures the region this queue changes, as it will be when the queue is performed. This
+     * reads the world the queue was created from, which may include pending changes, and so should
+     * be called from the thread which owns the world.
+     * 
+     * @return The snapshot
+     */
+    public WorldSnapshot captureSnapshot()
+    {
+        return WorldSnapshot.capture(this.reader, this.origin, this.shape);
+    }
+
+    /**
+     * Computes the changes of this queue against the given snapshot, which must cover the region
+     * this queue changes. Once computed the queue replays the diff in place of visiting its shape.
+     * This does not touch the world and may be called from any thread, but must complete before
+     * the queue is flushed.
+     * 
+     * @param snapshot The snapshot
+     * @return The diff
+     */
+    public ShapeDiff computeDiff(WorldSnapshot snapshot)
+    {
+        Vector3i chunkSize = this.world.getChunkSize();
+        ChangeOrder order = this.order.isSupported(chunkSize) ? this.order : ChangeOrder.LINEAR;
+        this.diff = ShapeDiff.compute(snapshot, this.originOffset.getFlooredPosition(), this.shape, order, chunkSize);
+        return this.diff;
+    }
+
+    /**
+     * Captures the region this queue changes and computes the changes of this queue against it.
+     * Shapes too large to diff are left to be visited as normal.
+     * 
+     * @return This queue
+     */
+    public ShapeChangeQueue diff()
+    {
+        if (ShapeDiff.isSupported(this.shape))
+        {
+            computeDiff(captureSnapshot());
+        }
+        return this;
+    }
+
+    /**
+     * Gets the diff computed for this queue, if any.
+     * 
+     * @return The diff
+     */
+    public Optional<ShapeDiff> getDiff()
+    {
+        return Optional.fromNullable(this.diff);
+    }
+
+    @Override
+    public Optional<ShapeDiff> getPendingDiff()
+    {
+        if (this.state != ExecutionState.UNSTARTED)
+        {
+            return Optional.absent();
+        }
+        return Optional.fromNullable(this.diff);
+    }
+
     @Override
     public boolean isFinished()
     {
-        if (this.position == this.shape.getWidth() * this.shape.getHeight() * this.shape.getLength())
+        if (this.diff != null)
+        {
+            if (this.state == ExecutionState.INCREMENTAL && this.position >= this.diff.size())
+            {
+                this.state = ExecutionState.DONE;
+            }
+            return this.state == ExecutionState.DONE;
+        }
+        if (this.state == ExecutionState.INCREMENTAL && this.span >= this.spans.size())
         {
             this.state = ExecutionState.DONE;
         }
@@ -73,59 +210,127 @@ public class ShapeChangeQueue extends ChangeQueue
     public void flush()
     {
         reset();
-        if (this.shape.getWidth() * this.shape.getHeight() * this.shape.getLength() > 2000000)
+        ChangeQueue reverse = null;
+        if (this.diff != null)
+        {
+            reverse = new DiffChangeQueue(getOwner(), this.world, this.diff.invert());
+        } else if (getSpans().getVolume() > MAX_UNDO_POSITIONS)
         {
             getOwner().sendMessage("Shape too large, skipping undo storage.");
         } else
         {
-            this.owner.getUndoHistory()
-                    .addHistory(
-                            this,
-                            new ShapeChangeQueue(getOwner(), this.origin, this.originOffset.getWorld().getShapeFromWorld(this.origin,
-                                    this.shape.getShape())));
+            reverse =
+                    new ShapeChangeQueue(getOwner(), this.origin, this.reader.getShapeFromWorld(this.origin, this.shape.getShape()))
+                            .setOrder(this.order);
+        }
+        this.reader = this.world;
+        enqueue(reverse);
+    }
+
+    /**
+     * Gets the spans of the shape, building and ordering them on first use.
+     * 
+     * @return The spans
+     */
+    private SpanBuffer getSpans()
+    {
+        if (this.spans == null)
+        {
+            this.spans = SpanBuffer.of(this.shape);
+            orderLayers();
+            orderSpans();
+        }
+        return this.spans;
+    }
+
+    /**
+     * Orders the spans by their top layer, highest first, so that the breakable pass can sweep
+     * down through the layers while only visiting the spans which cross the current layer.
+     */
+    private void orderLayers()
+    {
+        int height = this.shape.getHeight();
+        int[] counts = new int[height + 2];
+        for (int i = 0; i < this.spans.size(); i++)
+        {
+            counts[height - this.spans.getMaxY(i) + 1]++;
+        }
+        for (int i = 1; i < counts.length; i++)
+        {
+            counts[i] += counts[i - 1];
+        }
+        this.byTop = new int[this.spans.size()];
+        for (int i = 0; i < this.spans.size(); i++)
+        {
+            this.byTop[counts[height - this.spans.getMaxY(i)]++] = i;
         }
-        this.getOwner().addPending(this);
+        this.active = new int[this.spans.size()];
     }
 
     @Override
     public int perform(int next)
     {
+        if (this.diff != null)
+        {
+            return performDiff(next);
+        }
         int count = 0;
         if (this.state == ExecutionState.UNSTARTED)
         {
+            getSpans();
+            this.nextTop = 0;
+            this.activeCount = 0;
             this.position = this.shape.getHeight() - 1;
+            this.span = 0;
+            this.y = 0;
             this.state = ExecutionState.BREAKABLE;
             this.ticks = 0;
             this.reported = false;
         }
+        Material[] palette = getPalette();
         if (this.state == ExecutionState.BREAKABLE)
         {
             for (; this.position >= 0 && count < next; this.position--)
             {
                 int subcount = 0;
-                int oy = (int) this.position + this.originOffset.getFlooredY();
-                for (int x = 0; x < this.shape.getWidth(); x++)
+                int y = (int) this.position;
+                int oy = y + this.originOffset.getFlooredY();
+                while (this.nextTop < this.byTop.length && this.spans.getMaxY(this.byTop[this.nextTop]) > y)
                 {
+                    this.active[this.activeCount++] = this.byTop[this.nextTop++];
+                }
+                int kept = 0;
+                for (int a = 0; a < this.activeCount; a++)
+                {
+                    int i = this.active[a];
+                    if (this.spans.getMinY(i) > y)
+                    {
+                        continue;
+                    }
+                    this.active[kept++] = i;
+                    int x = this.spans.getX(i);
+                    int z = this.spans.getZ(i);
                     int ox = x + this.originOffset.getFlooredX();
-                    for (int z = 0; z < this.shape.getLength(); z++)
+                    int oz = z + this.originOffset.getFlooredZ();
+                    int id = this.shape.getMaterialId(x, y, z);
+                    if (id == MaterialShape.UNSET_ID)
+                    {
+                        continue;
+                    }
+                    Optional<Block> block = this.world.getBlock(ox, oy, oz);
+                    if (!block.isPresent())
+                    {
+                        continue;
+                    }
+                    Material existingMaterial = block.get().getMaterial();
+                    if (existingMaterial.isLiquid() || existingMaterial.isReliantOnEnvironment())
                     {
-                        int oz = z + this.originOffset.getFlooredZ();
-                        Optional<Block> block = this.world.getBlock(ox, oy, oz);
-                        if (!block.isPresent())
-                        {
-                            continue;
-                        }
-                        Material existingMaterial = block.get().getMaterial();
-                        Optional<Material> newMaterial = this.shape.getMaterial(x, (int) this.position, z, false);
-                        if (newMaterial.isPresent() && (existingMaterial.isLiquid() || existingMaterial.isReliantOnEnvironment()))
-                        {
-                            this.world.setBlock(newMaterial.get(), x + this.originOffset.getFlooredX(),
-                                    (int) this.position + this.originOffset.getFlooredY(), z + this.originOffset.getFlooredZ());
-                            subcount++;
-                        }
+                        this.batch.add(palette[id], ox, oy, oz);
+                        subcount++;
                     }
                 }
-                count += Math.max(next / (100000 / (this.shape.getWidth() * this.shape.getLength())), subcount);
+                this.activeCount = kept;
+                count += Math.max(next / Math.max(1, 100000 / Math.max(1, this.spans.size())), subcount);
 
             }
             if (this.position < 0)
@@ -142,29 +347,49 @@ public class ShapeChangeQueue extends ChangeQueue
         } else if (this.state == ExecutionState.INCREMENTAL)
         {
             this.ticks++;
-            // Gunsmith.getLogger().info("Position at " + this.position);
-            for (; this.position < this.shape.getWidth() * this.shape.getHeight() * this.shape.getLength() && count < next; this.position++)
+            for (; this.span < this.spans.size() && count < next; this.span++)
             {
-                int z = (int) (this.position / (this.shape.getWidth() * this.shape.getHeight()));
-                int y = (int) ((this.position % (this.shape.getWidth() * this.shape.getHeight())) / this.shape.getWidth());
-                int x = (int) ((this.position % (this.shape.getWidth() * this.shape.getHeight())) % this.shape.getWidth());
-                Optional<Block> block =
-                        this.world.getBlock(x + this.originOffset.getFlooredX(), y + this.originOffset.getFlooredY(),
-                                z + this.originOffset.getFlooredZ());
-                if (!block.isPresent())
+                // rather than start a chunk column the budget cannot finish, stop on its boundary
+                if (this.columnVolumes != null && this.y == 0 && count > 0 && count + this.columnVolumes[this.span] > next)
                 {
-                    continue;
+                    break;
                 }
-                Material existingMaterial = block.get().getMaterial();
-                Optional<Material> newMaterial = this.shape.getMaterial(x, y, z, false);
-                if (newMaterial.isPresent() && !(existingMaterial.isLiquid() || existingMaterial.isReliantOnEnvironment()))
+                int s = this.spanOrder == null ? this.span : this.spanOrder[this.span];
+                int x = this.spans.getX(s);
+                int z = this.spans.getZ(s);
+                int ox = x + this.originOffset.getFlooredX();
+                int oz = z + this.originOffset.getFlooredZ();
+                if (this.y < this.spans.getMinY(s))
                 {
-                    count++;
-                    this.world.setBlock(newMaterial.get(), x + this.originOffset.getFlooredX(), y + this.originOffset.getFlooredY(), z
-                            + this.originOffset.getFlooredZ());
+                    this.y = this.spans.getMinY(s);
                 }
+                for (; this.y < this.spans.getMaxY(s) && count < next; this.y++, this.position++)
+                {
+                    int oy = this.y + this.originOffset.getFlooredY();
+                    int id = this.shape.getMaterialId(x, this.y, z);
+                    if (id == MaterialShape.UNSET_ID)
+                    {
+                        continue;
+                    }
+                    Optional<Block> block = this.world.getBlock(ox, oy, oz);
+                    if (!block.isPresent())
+                    {
+                        continue;
+                    }
+                    Material existingMaterial = block.get().getMaterial();
+                    if (!(existingMaterial.isLiquid() || existingMaterial.isReliantOnEnvironment()))
+                    {
+                        count++;
+                        this.batch.add(palette[id], ox, oy, oz);
+                    }
+                }
+                if (this.y < this.spans.getMaxY(s))
+                {
+                    break;
+                }
+                this.y = 0;
             }
-            if (this.position == this.shape.getWidth() * this.shape.getHeight() * this.shape.getLength())
+            if (this.span >= this.spans.size())
             {
                 if (this.reported)
                 {
@@ -175,19 +400,134 @@ public class ShapeChangeQueue extends ChangeQueue
             {
                 this.reported = true;
                 this.ticks = 0;
-                this.owner.sendMessage("Performed %d out of %d changes.", this.position,
-                        this.shape.getWidth() * this.shape.getHeight() * this.shape.getLength());
+                this.owner.sendMessage("Performed %d out of %d changes.", this.position, this.spans.getVolume());
             }
         }
+        if (!this.batch.isEmpty())
+        {
+            this.world.setBlocks(this.batch);
+            this.batch.clear();
+        }
         return count;
     }
 
+    /**
+     * Orders the spans by chunk column and sums the volume of each column, recorded against the
+     * first span of the column.
+     */
+    private void orderSpans()
+    {
+        int ox = this.originOffset.getFlooredX();
+        int oz = this.originOffset.getFlooredZ();
+        Vector3i chunkSize = this.world.getChunkSize();
+        this.spanOrder = this.order.orderSpans(this.spans, ox, oz, chunkSize);
+        this.columnVolumes = null;
+        if (this.spanOrder == null)
+        {
+            return;
+        }
+        int sx = Math.max(1, chunkSize.getX());
+        int sz = Math.max(1, chunkSize.getZ());
+        this.columnVolumes = new long[this.spanOrder.length];
+        int first = 0;
+        for (int i = 0; i < this.spanOrder.length; i++)
+        {
+            int s = this.spanOrder[i];
+            if (i > 0)
+            {
+                int last = this.spanOrder[i - 1];
+                if (Maths.floorDiv(this.spans.getX(s) + ox, sx) != Maths.floorDiv(this.spans.getX(last) + ox, sx)
+                        || Maths.floorDiv(this.spans.getZ(s) + oz, sz) != Maths.floorDiv(this.spans.getZ(last) + oz, sz))
+                {
+                    first = i;
+                }
+            }
+            this.columnVolumes[first] += this.spans.getMaxY(s) - this.spans.getMinY(s);
+        }
+    }
+
+    private int performDiff(int next)
+    {
+        if (this.state == ExecutionState.UNSTARTED)
+        {
+            this.position = 0;
+            this.state = ExecutionState.INCREMENTAL;
+            this.ticks = 0;
+            this.reported = false;
+        }
+        ShapeDiff diff = this.diff;
+        this.ticks++;
+        int start = (int) this.position;
+        int end = diff.getBatchEnd(start, next);
+        diff.addTo(this.batch, start, end);
+        this.position = end;
+        if (!this.batch.isEmpty())
+        {
+            this.world.setBlocks(this.batch);
+            this.batch.clear();
+        }
+        if (this.position >= diff.size())
+        {
+            if (this.reported)
+            {
+                this.owner.sendMessage("Finished %d changes.", this.position);
+            }
+            this.state = ExecutionState.DONE;
+        } else if (this.ticks > 10)
+        {
+            this.reported = true;
+            this.ticks = 0;
+            this.owner.sendMessage("Performed %d out of %d changes.", this.position, diff.size());
+        }
+        return end - start;
+    }
+
     @Override
     public void reset()
     {
         this.state = ExecutionState.UNSTARTED;
     }
 
+    @Override
+    public Optional<Vector3i> getMinBound()
+    {
+        return Optional.of(this.originOffset.getFlooredPosition());
+    }
+
+    @Override
+    public Optional<Vector3i> getMaxBound()
+    {
+        return Optional.of(this.originOffset.getFlooredPosition().add(
+                new Vector3i(this.shape.getWidth() - 1, this.shape.getHeight() - 1, this.shape.getLength() - 1)));
+    }
+
+    @Override
+    public Optional<Material> getPendingMaterial(int x, int y, int z)
+    {
+        int lx = x - this.originOffset.getFlooredX();
+        int ly = y - this.originOffset.getFlooredY();
+        int lz = z - this.originOffset.getFlooredZ();
+        if (lx < 0 || ly < 0 || lz < 0 || lx >= this.shape.getWidth() || ly >= this.shape.getHeight() || lz >= this.shape.getLength())
+        {
+            return Optional.absent();
+        }
+        int id = this.shape.getMaterialId(lx, ly, lz);
+        if (id == MaterialShape.UNSET_ID)
+        {
+            return Optional.absent();
+        }
+        return Optional.of(getPalette()[id]);
+    }
+
+    private Material[] getPalette()
+    {
+        if (this.palette == null)
+        {
+            this.palette = this.shape.getPalette();
+        }
+        return this.palette;
+    }
+
 }
 
 /**
@@ -0,0 +1,738 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 The Voxel Plugineering Team
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.voxelplugineering.voxelsniper.world.queue;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.voxelplugineering.voxelsniper.shape.MaterialShape;
+import com.voxelplugineering.voxelsniper.shape.SpanBuffer;
+import com.voxelplugineering.voxelsniper.util.math.Maths;
+import com.voxelplugineering.voxelsniper.util.math.Vector3i;
+import com.voxelplugineering.voxelsniper.world.EditBatch;
+import com.voxelplugineering.voxelsniper.world.WorldSnapshot;
+import com.voxelplugineering.voxelsniper.world.material.Material;
+
+/**
+ * The changes a {@link MaterialShape} makes to a world, leaving out every position whose material
+ * would not change. A diff is computed once from a {@link WorldSnapshot}, which may be done on any
+ * thread, and is then replayed without reading the world again.
+ * <p>
+ * Each change is packed into a single long of its index within the bounding box of the shape, in
+ * y-major order, and the ids of its new and old materials. Changes replacing a liquid or a material
+ * which is reliant on its environment come first, from the top of the box down, so they are broken
+ * before the blocks they rest on change. The remaining changes follow from the bottom of the box
+ * up. With a chunked {@link ChangeOrder} both runs are instead grouped by chunk, chunks taken in
+ * the same direction, and the boundaries between chunks are kept so that replays may stop on them.
+ * </p>
+ */
+public final class ShapeDiff
+{
+
+    private static final int MAX_PALETTE = 0xFFFF;
+
+    private final Layout layout;
+    private final long[] changes;
+    private final int breakables;
+    private final Material[] materials;
+    private final int[] runs;
+
+    private ShapeDiff(Layout layout, long[] changes, int breakables, Material[] materials, int[] runs)
+    {
+        this.layout = layout;
+        this.changes = changes;
+        this.breakables = breakables;
+        this.materials = materials;
+        this.runs = runs;
+    }
+
+    /**
+     * Computes the changes the shape makes when placed with its zero position at the given
+     * position, in {@link ChangeOrder#LINEAR} order. Positions which are absent from the snapshot
+     * are left out.
+     * 
+     * @param snapshot The snapshot of the world, covering the bounding box of the shape
+     * @param min The world position of the zero position of the shape
+     * @param shape The shape
+     * @return The diff
+     */
+    public static ShapeDiff compute(WorldSnapshot snapshot, Vector3i min, MaterialShape shape)
+    {
+        return compute(snapshot, min, shape, ChangeOrder.LINEAR, null);
+    }
+
+    /**
+     * Computes the changes the shape makes when placed with its zero position at the given
+     * position. Positions which are absent from the snapshot are left out.
+     * 
+     * @param snapshot The snapshot of the world, covering the bounding box of the shape
+     * @param min The world position of the zero position of the shape
+     * @param shape The shape
+     * @param order The order to apply changes in
+     * @param chunkSize The chunk size of the world, may be null if the order is not chunked
+     * @return The diff
+     */
+    public static ShapeDiff compute(WorldSnapshot snapshot, Vector3i min, MaterialShape shape, ChangeOrder order, Vector3i chunkSize)
+    {
+        checkNotNull(snapshot);
+        checkNotNull(min);
+        checkNotNull(shape);
+        checkNotNull(order);
+        checkArgument(isSupported(shape), "The shape is too large to diff");
+        checkArgument(!order.isChunked() || (chunkSize != null && order.isSupported(chunkSize)), "The chunk size is not supported");
+        Material[] palette = shape.getPalette();
+        checkArgument(palette.length <= MAX_PALETTE, "The shape uses too many materials to diff");
+        Map<Material, Integer> ids = Maps.newHashMap();
+        // the palette of the diff starts with the palette of the shape, materials only found in
+        // the world are added after it
+        Material[] materials = Arrays.copyOf(palette, Math.max(16, palette.length * 2));
+        int count = palette.length;
+        for (int i = 0; i < palette.length; i++)
+        {
+            if (palette[i] != null && !ids.containsKey(palette[i]))
+            {
+                ids.put(palette[i], i);
+            }
+        }
+        int width = shape.getWidth();
+        int length = shape.getLength();
+        long[] breakable = new long[16];
+        long[] rest = new long[16];
+        int nb = 0;
+        int nr = 0;
+        SpanBuffer spans = SpanBuffer.of(shape);
+        for (int i = 0; i < spans.size(); i++)
+        {
+            int x = spans.getX(i);
+            int z = spans.getZ(i);
+            for (int y = spans.getMinY(i); y < spans.getMaxY(i); y++)
+            {
+                int id = shape.getMaterialId(x, y, z);
+                if (id == MaterialShape.UNSET_ID)
+                {
+                    continue;
+                }
+                Optional<Material> existing = snapshot.getMaterial(min.getX() + x, min.getY() + y, min.getZ() + z);
+                if (!existing.isPresent() || existing.get().equals(palette[id]))
+                {
+                    continue;
+                }
+                Integer old = ids.get(existing.get());
+                if (old == null)
+                {
+                    checkArgument(count < MAX_PALETTE, "The region uses too many materials to diff");
+                    if (count == materials.length)
+                    {
+                        materials = Arrays.copyOf(materials, count * 2);
+                    }
+                    old = count;
+                    materials[count++] = existing.get();
+                    ids.put(existing.get(), old);
+                }
+                long change = pack((y * length + z) * width + x, id, old);
+                if (isBreakable(existing.get()))
+                {
+                    if (nb == breakable.length)
+                    {
+                        breakable = Arrays.copyOf(breakable, nb * 2);
+                    }
+                    breakable[nb++] = change;
+                } else
+                {
+                    if (nr == rest.length)
+                    {
+                        rest = Arrays.copyOf(rest, nr * 2);
+                    }
+                    rest[nr++] = change;
+                }
+            }
+        }
+        Layout layout = new Layout(min, width, shape.getHeight(), length, order, chunkSize);
+        return build(layout, breakable, nb, rest, nr, Arrays.copyOf(materials, count));
+    }
+
+    /**
+     * Gets whether a diff may be computed for the given shape, which is whether every position of
+     * its bounding box may be indexed by an int.
+     * 
+     * @param shape The shape
+     * @return Whether the shape is supported
+     */
+    public static boolean isSupported(MaterialShape shape)
+    {
+        return (long) shape.getWidth() * shape.getHeight() * shape.getLength() <= Integer.MAX_VALUE;
+    }
+
+    /**
+     * Gets whether the given diffs may be merged, which is whether every position of the box
+     * bounding all of them may be indexed by an int.
+     * 
+     * @param diffs The diffs
+     * @return Whether the diffs may be merged
+     */
+    public static boolean canMerge(List<ShapeDiff> diffs)
+    {
+        checkNotNull(diffs);
+        if (diffs.isEmpty())
+        {
+            return false;
+        }
+        Vector3i[] bounds = getBounds(diffs);
+        Vector3i min = bounds[0];
+        Vector3i max = bounds[1];
+        return (long) (max.getX() - min.getX() + 1) * (max.getY() - min.getY() + 1) * (max.getZ() - min.getZ() + 1) <= Integer.MAX_VALUE;
+    }
+
+    private static Vector3i[] getBounds(List<ShapeDiff> diffs)
+    {
+        Vector3i min = diffs.get(0).getMinBound();
+        Vector3i max = diffs.get(0).getMaxBound();
+        for (ShapeDiff diff : diffs)
+        {
+            Vector3i a = diff.getMinBound();
+            Vector3i b = diff.getMaxBound();
+            min = new Vector3i(Math.min(min.getX(), a.getX()), Math.min(min.getY(), a.getY()), Math.min(min.getZ(), a.getZ()));
+            max = new Vector3i(Math.max(max.getX(), b.getX()), Math.max(max.getY(), b.getY()), Math.max(max.getZ(), b.getZ()));
+        }
+        return new Vector3i[] { min, max };
+    }
+
+    /**
+     * Merges the given diffs, in the order they would be applied, into a single diff which changes
+     * each position once. The last diff to change a position decides its new material and the
+     * first decides its old material, positions which would end up as they started are left out.
+     * The merged diff is applied in the order of the first diff.
+     * 
+     * @param diffs The diffs to merge
+     * @return The merged diff
+     */
+    public static ShapeDiff merge(List<ShapeDiff> diffs)
+    {
+        checkArgument(canMerge(diffs), "The diffs span too large a region to merge");
+        Vector3i[] bounds = getBounds(diffs);
+        Vector3i min = bounds[0];
+        Vector3i max = bounds[1];
+        int total = 0;
+        for (ShapeDiff diff : diffs)
+        {
+            total += diff.size();
+        }
+        int width = max.getX() - min.getX() + 1;
+        int height = max.getY() - min.getY() + 1;
+        int length = max.getZ() - min.getZ() + 1;
+        // each write is keyed by its position within the merged box followed by its sequence, so
+        // sorting groups the writes to each position in the order they were made
+        long[] writes = new long[total];
+        Material[] next = new Material[total];
+        Material[] prev = new Material[total];
+        int n = 0;
+        for (ShapeDiff diff : diffs)
+        {
+            for (int i = 0; i < diff.size(); i++)
+            {
+                int index = ((diff.getY(i) - min.getY()) * length + diff.getZ(i) - min.getZ()) * width + diff.getX(i) - min.getX();
+                writes[n] = ((long) index << 32) | n;
+                next[n] = diff.getMaterial(i);
+                prev[n] = diff.getOldMaterial(i);
+                n++;
+            }
+        }
+        Arrays.sort(writes);
+        Map<Material, Integer> ids = Maps.newHashMap();
+        List<Material> palette = Lists.newArrayList();
+        long[] breakable = new long[16];
+        long[] rest = new long[16];
+        int nb = 0;
+        int nr = 0;
+        for (int i = 0; i < n;)
+        {
+            int index = index(writes[i]);
+            int j = i + 1;
+            while (j < n && index(writes[j]) == index)
+            {
+                j++;
+            }
+            Material old = prev[(int) writes[i]];
+            Material material = next[(int) writes[j - 1]];
+            i = j;
+            if (material.equals(old))
+            {
+                continue;
+            }
+            long change = pack(index, intern(material, ids, palette), intern(old, ids, palette));
+            if (isBreakable(old))
+            {
+                if (nb == breakable.length)
+                {
+                    breakable = Arrays.copyOf(breakable, nb * 2);
+                }
+                breakable[nb++] = change;
+            } else
+            {
+                if (nr == rest.length)
+                {
+                    rest = Arrays.copyOf(rest, nr * 2);
+                }
+                rest[nr++] = change;
+            }
+        }
+        Layout from = diffs.get(0).layout;
+        Vector3i chunkSize = from.order.isChunked() ? new Vector3i(from.chunkX, from.chunkY, from.chunkZ) : null;
+        Layout layout = new Layout(min, width, height, length, from.order, chunkSize);
+        return build(layout, breakable, nb, rest, nr, palette.toArray(new Material[palette.size()]));
+    }
+
+    private static int intern(Material material, Map<Material, Integer> ids, List<Material> palette)
+    {
+        Integer id = ids.get(material);
+        if (id == null)
+        {
+            checkArgument(palette.size() < MAX_PALETTE, "The diffs use too many materials to merge");
+            id = palette.size();
+            palette.add(material);
+            ids.put(material, id);
+        }
+        return id;
+    }
+
+    private static boolean isBreakable(Material material)
+    {
+        return material.isLiquid() || material.isReliantOnEnvironment();
+    }
+
+    private static long pack(int index, int newId, int oldId)
+    {
+        return ((long) index << 32) | ((long) newId << 16) | oldId;
+    }
+
+    /**
+     * Orders the breakable changes from the top down followed by the rest from the bottom up.
+     * Indices are y-major, so for linear orders sorting by index sorts by height.
+     */
+    private static ShapeDiff build(Layout layout, long[] breakable, int nb, long[] rest, int nr, Material[] materials)
+    {
+        long[] changes = new long[nb + nr];
+        if (!layout.order.isChunked())
+        {
+            Arrays.sort(breakable, 0, nb);
+            for (int i = 0; i < nb; i++)
+            {
+                changes[i] = breakable[nb - 1 - i];
+            }
+            Arrays.sort(rest, 0, nr);
+            System.arraycopy(rest, 0, changes, nb, nr);
+            return new ShapeDiff(layout, changes, nb, materials, null);
+        }
+        int[] runs = new int[changes.length + 1];
+        int count = orderChunked(layout, breakable, nb, true, changes, 0, runs, 0);
+        count = orderChunked(layout, rest, nr, false, changes, nb, runs, count);
+        runs[count++] = changes.length;
+        return new ShapeDiff(layout, changes, nb, materials, Arrays.copyOf(runs, count));
+    }
+
+    /**
+     * Copies the given changes into the output grouped by chunk and ordered within each chunk,
+     * recording the start of each chunk in the runs. The runs must have room for one entry per
+     * change.
+     * 
+     * @return The new number of runs
+     */
+    private static int orderChunked(Layout layout, long[] source, int size, boolean descending, long[] out, int offset, int[] runs, int count)
+    {
+        int[] chunks = new int[size];
+        int[] ranks = new int[size];
+        for (int i = 0; i < size; i++)
+        {
+            int index = index(source[i]);
+            chunks[i] = layout.getChunk(index);
+            ranks[i] = layout.getRank(index);
+        }
+        int[] sorted = ChangeOrder.sort(chunks, ranks, size, layout.chunkCount);
+        int last = -1;
+        for (int i = 0; i < size; i++)
+        {
+            int j = descending ? sorted[size - 1 - i] : sorted[i];
+            out[offset + i] = source[j];
+            if (chunks[j] != last)
+            {
+                last = chunks[j];
+                runs[count++] = offset + i;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Gets the diff which reverses this one, changing each position back to the material it had
+     * when this diff was computed. The reversed diff is applied in the same order.
+     * 
+     * @return The reversed diff
+     */
+    public ShapeDiff invert()
+    {
+        long[] breakable = new long[this.changes.length];
+        long[] rest = new long[this.changes.length];
+        int nb = 0;
+        int nr = 0;
+        for (long change : this.changes)
+        {
+            long inverted = pack(index(change), oldId(change), newId(change));
+            // the material this diff leaves behind is the one the reverse replaces
+            if (isBreakable(this.materials[newId(change)]))
+            {
+                breakable[nb++] = inverted;
+            } else
+            {
+                rest[nr++] = inverted;
+            }
+        }
+        return build(this.layout, breakable, nb, rest, nr, this.materials);
+    }
+
+    private static int index(long change)
+    {
+        return (int) (change >>> 32);
+    }
+
+    private static int newId(long change)
+    {
+        return (int) ((change >>> 16) & 0xFFFF);
+    }
+
+    private static int oldId(long change)
+    {
+        return (int) (change & 0xFFFF);
+    }
+
+    /**
+     * Gets the order the changes of this diff are applied in.
+     * 
+     * @return The order
+     */
+    public ChangeOrder getOrder()
+    {
+        return this.layout.order;
+    }
+
+    /**
+     * Gets the number of changes.
+     * 
+     * @return The number of changes
+     */
+    public int size()
+    {
+        return this.changes.length;
+    }
+
+    /**
+     * Gets the number of changes at the start of the diff which replace liquids or materials
+     * reliant on their environment.
+     * 
+     * @return The number of breakable changes
+     */
+    public int getBreakableCount()
+    {
+        return this.breakables;
+    }
+
+    /**
+     * Gets the number of positions in the bounding box of the shape the diff was computed from.
+     * 
+     * @return The volume
+     */
+    public long getVolume()
+    {
+        return (long) this.layout.width * this.layout.height * this.layout.length;
+    }
+
+    /**
+     * Gets the lowest corner of the bounding box of the shape, in world coordinates.
+     * 
+     * @return The lowest corner, inclusive
+     */
+    public Vector3i getMinBound()
+    {
+        return this.layout.min;
+    }
+
+    /**
+     * Gets the highest corner of the bounding box of the shape, in world coordinates.
+     * 
+     * @return The highest corner, inclusive
+     */
+    public Vector3i getMaxBound()
+    {
+        return this.layout.min.add(new Vector3i(this.layout.width - 1, this.layout.height - 1, this.layout.length - 1));
+    }
+
+    /**
+     * Gets the X position of the given change, in world coordinates.
+     * 
+     * @param change The index of the change
+     * @return The X position
+     */
+    public int getX(int change)
+    {
+        return this.layout.min.getX() + index(this.changes[change]) % this.layout.width;
+    }
+
+    /**
+     * Gets the Y position of the given change, in world coordinates.
+     * 
+     * @param change The index of the change
+     * @return The Y position
+     */
+    public int getY(int change)
+    {
+        return this.layout.min.getY() + index(this.changes[change]) / (this.layout.width * this.layout.length);
+    }
+
+    /**
+     * Gets the Z position of the given change, in world coordinates.
+     * 
+     * @param change The index of the change
+     * @return The Z position
+     */
+    public int getZ(int change)
+    {
+        return this.layout.min.getZ() + (index(this.changes[change]) / this.layout.width) % this.layout.length;
+    }
+
+    /**
+     * Gets the new material of the given change.
+     * 
+     * @param change The index of the change
+     * @return The new material
+     */
+    public Material getMaterial(int change)
+    {
+        return this.materials[newId(this.changes[change])];
+    }
+
+    /**
+     * Gets the material the given change replaces.
+     * 
+     * @param change The index of the change
+     * @return The old material
+     */
+    public Material getOldMaterial(int change)
+    {
+        return this.materials[oldId(this.changes[change])];
+    }
+
+    /**
+     * Adds a range of changes to the batch.
+     * 
+     * @param batch The batch
+     * @param start The index of the first change
+     * @param end The index after the last change
+     */
+    public void addTo(EditBatch batch, int start, int end)
+    {
+        Vector3i min = this.layout.min;
+        int width = this.layout.width;
+        int area = width * this.layout.length;
+        for (int i = start; i < end; i++)
+        {
+            long change = this.changes[i];
+            int index = index(change);
+            int y = index / area;
+            int rem = index - y * area;
+            batch.add(this.materials[newId(change)], min.getX() + rem % width, min.getY() + y, min.getZ() + rem / width);
+        }
+    }
+
+    /**
+     * Gets where a replay starting at the given change should stop to apply at most the given
+     * number of changes. For chunked orders this is the last chunk boundary within the budget, so
+     * that chunks are not left partly changed between ticks, unless the next chunk alone exceeds
+     * the budget.
+     * 
+     * @param start The index of the first change to apply
+     * @param budget The most changes to apply
+     * @return The index after the last change to apply
+     */
+    public int getBatchEnd(int start, int budget)
+    {
+        int limit = (int) Math.min(this.changes.length, (long) start + Math.max(0, budget));
+        if (this.runs == null)
+        {
+            return limit;
+        }
+        int i = Arrays.binarySearch(this.runs, limit);
+        int boundary = i >= 0 ? this.runs[i] : this.runs[-i - 2];
+        return boundary > start ? boundary : limit;
+    }
+
+    /**
+     * Gets the material this diff leaves at the given position. The breakable and remaining
+     * changes are each sorted by their order, so this is a pair of binary searches.
+     * 
+     * @param x The X position
+     * @param y The Y position
+     * @param z The Z position
+     * @return The material, or absent if the diff does not change the position
+     */
+    public Optional<Material> getPendingMaterial(int x, int y, int z)
+    {
+        int lx = x - this.layout.min.getX();
+        int ly = y - this.layout.min.getY();
+        int lz = z - this.layout.min.getZ();
+        if (lx < 0 || ly < 0 || lz < 0 || lx >= this.layout.width || ly >= this.layout.height || lz >= this.layout.length)
+        {
+            return Optional.absent();
+        }
+        long key = this.layout.getKey((ly * this.layout.length + lz) * this.layout.width + lx);
+        int found = search(key, this.breakables, this.changes.length, false);
+        if (found < 0)
+        {
+            found = search(key, 0, this.breakables, true);
+        }
+        return found < 0 ? Optional.<Material> absent() : Optional.of(getMaterial(found));
+    }
+
+    private int search(long key, int from, int to, boolean descending)
+    {
+        int low = from;
+        int high = to - 1;
+        while (low <= high)
+        {
+            int mid = (low + high) >>> 1;
+            long value = this.layout.getKey(index(this.changes[mid]));
+            if (value == key)
+            {
+                return mid;
+            }
+            if (value < key != descending)
+            {
+                low = mid + 1;
+            } else
+            {
+                high = mid - 1;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * The bounding box of a diff and the chunk grid its changes are ordered by.
+     */
+    private static final class Layout
+    {
+
+        final Vector3i min;
+        final int width;
+        final int height;
+        final int length;
+        final ChangeOrder order;
+        private final int chunkX;
+        private final int chunkY;
+        private final int chunkZ;
+        private final int minChunkX;
+        private final int minChunkY;
+        private final int minChunkZ;
+        private final int columns;
+        private final int rows;
+        final int chunkCount;
+
+        Layout(Vector3i min, int width, int height, int length, ChangeOrder order, Vector3i chunkSize)
+        {
+            this.min = min;
+            this.width = width;
+            this.height = height;
+            this.length = length;
+            this.order = order;
+            if (order.isChunked())
+            {
+                this.chunkX = Math.max(1, chunkSize.getX());
+                this.chunkY = Math.max(1, chunkSize.getY());
+                this.chunkZ = Math.max(1, chunkSize.getZ());
+            } else
+            {
+                this.chunkX = Math.max(1, width);
+                this.chunkY = Math.max(1, height);
+                this.chunkZ = Math.max(1, length);
+            }
+            this.minChunkX = Maths.floorDiv(min.getX(), this.chunkX);
+            this.minChunkY = Maths.floorDiv(min.getY(), this.chunkY);
+            this.minChunkZ = Maths.floorDiv(min.getZ(), this.chunkZ);
+            this.columns = Maths.floorDiv(min.getX() + width - 1, this.chunkX) - this.minChunkX + 1;
+            this.rows = Maths.floorDiv(min.getZ() + length - 1, this.chunkZ) - this.minChunkZ + 1;
+            int layers = Maths.floorDiv(min.getY() + height - 1, this.chunkY) - this.minChunkY + 1;
+            this.chunkCount = this.columns * this.rows * layers;
+        }
+
+        /**
+         * Gets the chunk of the given index, counted from the lowest chunk of the box in y-major
+         * order.
+         */
+        int getChunk(int index)
+        {
+            int area = this.width * this.length;
+            int y = index / area + this.min.getY();
+            int rem = index % area;
+            int x = rem % this.width + this.min.getX();
+            int z = rem / this.width + this.min.getZ();
+            int cx = Maths.floorDiv(x, this.chunkX) - this.minChunkX;
+            int cy = Maths.floorDiv(y, this.chunkY) - this.minChunkY;
+            int cz = Maths.floorDiv(z, this.chunkZ) - this.minChunkZ;
+            return (cy * this.rows + cz) * this.columns + cx;
+        }
+
+        /**
+         * Gets the rank of the given index within its chunk.
+         */
+        int getRank(int index)
+        {
+            int area = this.width * this.length;
+            int y = index / area + this.min.getY();
+            int rem = index % area;
+            int x = rem % this.width + this.min.getX();
+            int z = rem / this.width + this.min.getZ();
+            return (int) this.order.getRank(x - Maths.floorDiv(x, this.chunkX) * this.chunkX, y - Maths.floorDiv(y, this.chunkY) * this.chunkY,
+                    z - Maths.floorDiv(z, this.chunkZ) * this.chunkZ, this.chunkX, this.chunkZ);
+        }
+
+        /**
+         * Gets a key for the given index which sorts in the order changes are applied.
+         */
+        long getKey(int index)
+        {
+            if (!this.order.isChunked())
+            {
+                return index;
+            }
+            return ((long) getChunk(index) << 32) | getRank(index);
+        }
+
+    }
+
+}
@@ -0,0 +1,122 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 The Voxel Plugineering Team
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.voxelplugineering.voxelsniper.world.queue;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.List;
+
+import com.google.common.collect.Lists;
+
+/**
+ * The change queues flushed by a brush run off the tick thread. Rather than being handed to their
+ * owners as they are flushed, the queues and their undo history are held until the run is either
+ * committed on the tick thread or discarded.
+ */
+public class StagedChanges
+{
+
+    private final List<ChangeQueue> changes = Lists.newArrayList();
+    private final List<ChangeQueue> reverses = Lists.newArrayList();
+    private boolean committed = false;
+    private boolean discarded = false;
+
+    /**
+     * Stages a flushed queue.
+     * 
+     * @param change The queue
+     * @param reverse The queue which reverses it, or null if no undo history is kept
+     * @return Whether the queue was taken, false if the changes have already been committed and
+     *         the queue should be handed to its owner directly
+     */
+    synchronized boolean add(ChangeQueue change, ChangeQueue reverse)
+    {
+        checkNotNull(change);
+        if (this.committed)
+        {
+            return false;
+        }
+        if (this.discarded)
+        {
+            return true;
+        }
+        this.changes.add(change);
+        this.reverses.add(reverse);
+        return true;
+    }
+
+    /**
+     * Gets the number of staged queues.
+     * 
+     * @return The number of queues
+     */
+    public synchronized int size()
+    {
+        return this.changes.size();
+    }
+
+    /**
+     * Hands the staged queues to their owners in the order they were flushed, adding their undo
+     * history. This must be called from the tick thread. Queues flushed afterwards are handed to
+     * their owners directly.
+     */
+    public void commit()
+    {
+        List<ChangeQueue> changes;
+        List<ChangeQueue> reverses;
+        synchronized (this)
+        {
+            if (this.discarded)
+            {
+                return;
+            }
+            this.committed = true;
+            changes = Lists.newArrayList(this.changes);
+            reverses = Lists.newArrayList(this.reverses);
+            this.changes.clear();
+            this.reverses.clear();
+        }
+        for (int i = 0; i < changes.size(); i++)
+        {
+            ChangeQueue change = changes.get(i);
+            if (reverses.get(i) != null)
+            {
+                change.getOwner().getUndoHistory().addHistory(change, reverses.get(i));
+            }
+            change.getOwner().addPending(change);
+        }
+    }
+
+    /**
+     * Drops the staged queues. Queues flushed afterwards are dropped as well, as are the staged
+     * queues of a later commit.
+     */
+    public synchronized void discard()
+    {
+        this.discarded = true;
+        this.changes.clear();
+        this.reverses.clear();
+    }
+
+}
@@ -0,0 +1,642 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 The Voxel Plugineering Team
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.voxelplugineering.voxelsniper.world.queue;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.Lists;
+import com.voxelplugineering.voxelsniper.entity.Entity;
+import com.voxelplugineering.voxelsniper.service.registry.BiomeRegistry;
+import com.voxelplugineering.voxelsniper.service.registry.MaterialRegistry;
+import com.voxelplugineering.voxelsniper.shape.Shape;
+import com.voxelplugineering.voxelsniper.util.TickExecutor;
+import com.voxelplugineering.voxelsniper.util.math.Maths;
+import com.voxelplugineering.voxelsniper.util.math.Vector3i;
+import com.voxelplugineering.voxelsniper.world.AbstractWorld;
+import com.voxelplugineering.voxelsniper.world.Block;
+import com.voxelplugineering.voxelsniper.world.Chunk;
+import com.voxelplugineering.voxelsniper.world.CommonBlock;
+import com.voxelplugineering.voxelsniper.world.CommonLocation;
+import com.voxelplugineering.voxelsniper.world.EditBatch;
+import com.voxelplugineering.voxelsniper.world.Heightmap;
+import com.voxelplugineering.voxelsniper.world.Location;
+import com.voxelplugineering.voxelsniper.world.MaterialSink;
+import com.voxelplugineering.voxelsniper.world.World;
+import com.voxelplugineering.voxelsniper.world.WorldSnapshot;
+import com.voxelplugineering.voxelsniper.world.biome.Biome;
+import com.voxelplugineering.voxelsniper.world.material.Material;
+
+/**
+ * A view of a world for a brush run off the tick thread. Materials are read from
+ * {@link WorldSnapshot}s of the view, which are captured on the tick thread when first needed, so
+ * a read of a region which has not been captured waits for the next tick. Every other operation,
+ * including writes, is run on the tick thread and waited for.
+ * <p>
+ * Change queues created from locations in this view change the world beneath, and are staged in
+ * the view's {@link StagedChanges} when flushed rather than handed to their owners. A view is used
+ * by a single thread.
+ * </p>
+ */
+public class StagedWorld extends AbstractWorld<World>
+{
+
+    /**
+     * The largest region captured up front by {@link #prefetch(Vector3i, Vector3i)}.
+     */
+    private static final long MAX_PREFETCH_VOLUME = 1 << 22;
+    /**
+     * The most positions captured in a single call to the tick thread while reading a region.
+     */
+    private static final long MAX_CAPTURE_VOLUME = 1 << 20;
+    /**
+     * The most bytes of captured chunks kept for later reads, the least recently read chunks are
+     * dropped first.
+     */
+    private static final long MAX_CACHED_BYTES = 64L << 20;
+
+    private final World view;
+    private final TickExecutor tick;
+    private final StagedChanges staged;
+    private final List<WorldSnapshot> snapshots = Lists.newArrayList();
+    private final Map<Long, WorldSnapshot> chunks = new LinkedHashMap<Long, WorldSnapshot>(16, 0.75f, true);
+    private final List<Vector3i[]> deferred = Lists.newArrayList();
+    private final Heightmap heightmap;
+    private final Vector3i size;
+    private long cachedBytes = 0;
+    private int captures = 0;
+
+    /**
+     * Creates a new {@link StagedWorld}.
+     * 
+     * @param view The world to read, which may include pending changes
+     * @param tick The executor for the tick thread
+     * @param staged The changes to stage flushed queues in
+     */
+    public StagedWorld(World view, TickExecutor tick, StagedChanges staged)
+    {
+        super(view, view.getMaterialRegistry(), view.getMinHeight(), view.getMaxHeight());
+        this.view = view;
+        this.tick = checkNotNull(tick);
+        this.staged = checkNotNull(staged);
+        Vector3i chunk = view.getChunkSize();
+        this.size = new Vector3i(Math.max(1, chunk.getX()), Math.max(1, chunk.getY()), Math.max(1, chunk.getZ()));
+        this.heightmap = new Heightmap(this);
+    }
+
+    /**
+     * Gets the world read by this view.
+     * 
+     * @return The world
+     */
+    public World getView()
+    {
+        return this.view;
+    }
+
+    /**
+     * Gets the changes which queues created from this view are staged in.
+     * 
+     * @return The staged changes
+     */
+    public StagedChanges getStagedChanges()
+    {
+        return this.staged;
+    }
+
+    /**
+     * Captures the given region, clamped to the height of the world, so that reads within it do
+     * not wait for the tick thread. This must be called from the tick thread. Regions larger than a
+     * few million positions are left to be captured as they are read, in batches of nearby chunks.
+     * 
+     * @param min The lowest corner of the region, inclusive
+     * @param max The highest corner of the region, inclusive
+     */
+    public void prefetch(Vector3i min, Vector3i max)
+    {
+        Vector3i lower = new Vector3i(min.getX(), Math.max(min.getY(), getMinHeight()), min.getZ());
+        Vector3i upper = new Vector3i(max.getX(), Math.min(max.getY(), getMaxHeight()), max.getZ());
+        if (upper.getX() < lower.getX() || upper.getY() < lower.getY() || upper.getZ() < lower.getZ())
+        {
+            return;
+        }
+        long volume = (long) (upper.getX() - lower.getX() + 1) * (upper.getY() - lower.getY() + 1) * (upper.getZ() - lower.getZ() + 1);
+        if (volume <= MAX_PREFETCH_VOLUME)
+        {
+            this.snapshots.add(WorldSnapshot.capture(this.view, lower, upper));
+        } else
+        {
+            Vector3i size = this.size;
+            this.deferred.add(new Vector3i[] {
+                    new Vector3i(Maths.floorDiv(lower.getX(), size.getX()), Maths.floorDiv(lower.getY(), size.getY()), Maths.floorDiv(lower.getZ(),
+                            size.getZ())),
+                    new Vector3i(Maths.floorDiv(upper.getX(), size.getX()), Maths.floorDiv(upper.getY(), size.getY()), Maths.floorDiv(upper.getZ(),
+                            size.getZ())) });
+        }
+    }
+
+    /**
+     * Gets the number of snapshots held by this view, both prefetched regions and captured chunks.
+     * 
+     * @return The number of snapshots
+     */
+    public int getSnapshotCount()
+    {
+        return this.snapshots.size() + this.chunks.size();
+    }
+
+    private WorldSnapshot find(int x, int y, int z)
+    {
+        for (int i = this.snapshots.size() - 1; i >= 0; i--)
+        {
+            if (this.snapshots.get(i).contains(x, y, z))
+            {
+                return this.snapshots.get(i);
+            }
+        }
+        Vector3i size = this.size;
+        return this.chunks.get(key(Maths.floorDiv(x, size.getX()), Maths.floorDiv(y, size.getY()), Maths.floorDiv(z, size.getZ())));
+    }
+
+    private WorldSnapshot find(Vector3i min, Vector3i max)
+    {
+        for (int i = this.snapshots.size() - 1; i >= 0; i--)
+        {
+            WorldSnapshot snapshot = this.snapshots.get(i);
+            if (snapshot.contains(min.getX(), min.getY(), min.getZ()) && snapshot.contains(max.getX(), max.getY(), max.getZ()))
+            {
+                return snapshot;
+            }
+        }
+        return null;
+    }
+
+    private static long key(int cx, int cy, int cz)
+    {
+        return ((long) (cx & 0x1FFFFF) << 42) | ((long) (cy & 0x1FFFFF) << 21) | (cz & 0x1FFFFF);
+    }
+
+    /**
+     * Gets the chunks to capture for a read of the given chunk which has not been captured. When
+     * the chunk lies in a prefetched region too large to capture up front, the chunks of that
+     * region nearest to it which have not been captured are taken with it, up to
+     * {@link #MAX_CAPTURE_VOLUME} positions, so that reads across the region do not wait on the
+     * tick thread for every chunk.
+     * 
+     * @param chunk The chunk which was read
+     * @return The chunks to capture, the given chunk first
+     */
+    private List<Vector3i> gather(Vector3i chunk)
+    {
+        List<Vector3i> positions = Lists.newArrayList();
+        positions.add(chunk);
+        Vector3i[] region = null;
+        for (int i = this.deferred.size() - 1; i >= 0 && region == null; i--)
+        {
+            Vector3i[] candidate = this.deferred.get(i);
+            if (chunk.getX() >= candidate[0].getX() && chunk.getX() <= candidate[1].getX() && chunk.getY() >= candidate[0].getY()
+                    && chunk.getY() <= candidate[1].getY() && chunk.getZ() >= candidate[0].getZ() && chunk.getZ() <= candidate[1].getZ())
+            {
+                region = candidate;
+            }
+        }
+        if (region == null)
+        {
+            return positions;
+        }
+        long chunkVolume = (long) this.size.getX() * this.size.getY() * this.size.getZ();
+        long limit = Math.max(1, MAX_CAPTURE_VOLUME / chunkVolume);
+        Vector3i min = region[0];
+        Vector3i max = region[1];
+        int reach = Math.max(max.getX() - min.getX(), Math.max(max.getY() - min.getY(), max.getZ() - min.getZ()));
+        // visits shells of chunks around the read chunk, nearest first
+        for (int r = 1; r <= reach && positions.size() < limit; r++)
+        {
+            for (int cx = Math.max(min.getX(), chunk.getX() - r); cx <= Math.min(max.getX(), chunk.getX() + r) && positions.size() < limit; cx++)
+            {
+                for (int cz = Math.max(min.getZ(), chunk.getZ() - r); cz <= Math.min(max.getZ(), chunk.getZ() + r) && positions.size() < limit; cz++)
+                {
+                    for (int cy = Math.max(min.getY(), chunk.getY() - r); cy <= Math.min(max.getY(), chunk.getY() + r)
+                            && positions.size() < limit; cy++)
+                    {
+                        if (Math.abs(cx - chunk.getX()) != r && Math.abs(cy - chunk.getY()) != r && Math.abs(cz - chunk.getZ()) != r)
+                        {
+                            continue;
+                        }
+                        if (!this.chunks.containsKey(key(cx, cy, cz)))
+                        {
+                            positions.add(new Vector3i(cx, cy, cz));
+                        }
+                    }
+                }
+            }
+        }
+        return positions;
+    }
+
+    /**
+     * Captures the given chunks, clamped to the height of the world, in a single call to the tick
+     * thread. The snapshots are kept for later reads, dropping the least recently read chunks
+     * once the total size kept exceeds {@link #MAX_CACHED_BYTES}.
+     */
+    private List<WorldSnapshot> capture(final List<Vector3i> positions)
+    {
+        final Vector3i size = this.size;
+        final int minY = getMinHeight();
+        final int maxY = getMaxHeight();
+        List<WorldSnapshot> captured = this.tick.call(new Callable<List<WorldSnapshot>>()
+        {
+
+            @Override
+            public List<WorldSnapshot> call()
+            {
+                List<WorldSnapshot> result = Lists.newArrayListWithCapacity(positions.size());
+                for (Vector3i chunk : positions)
+                {
+                    Vector3i lower = new Vector3i(chunk.getX() * size.getX(), Math.max(minY, chunk.getY() * size.getY()), chunk.getZ() * size.getZ());
+                    Vector3i upper = new Vector3i(lower.getX() + size.getX() - 1, Math.min(maxY, (chunk.getY() + 1) * size.getY() - 1), lower.getZ()
+                            + size.getZ() - 1);
+                    result.add(WorldSnapshot.capture(StagedWorld.this.view, lower, upper));
+                }
+                return result;
+            }
+
+        });
+        this.captures++;
+        for (int i = 0; i < captured.size(); i++)
+        {
+            Vector3i chunk = positions.get(i);
+            WorldSnapshot replaced = this.chunks.put(key(chunk.getX(), chunk.getY(), chunk.getZ()), captured.get(i));
+            if (replaced != null)
+            {
+                this.cachedBytes -= replaced.getByteSize();
+            }
+            this.cachedBytes += captured.get(i).getByteSize();
+        }
+        for (Iterator<WorldSnapshot> it = this.chunks.values().iterator(); it.hasNext() && this.cachedBytes > MAX_CACHED_BYTES;)
+        {
+            this.cachedBytes -= it.next().getByteSize();
+            it.remove();
+        }
+        return captured;
+    }
+
+    /**
+     * Gets the number of times this view has waited on the tick thread to capture chunks.
+     * 
+     * @return The number of captures
+     */
+    public int getCaptureCount()
+    {
+        return this.captures;
+    }
+
+    @Override
+    public Optional<Block> getBlock(Location location)
+    {
+        checkNotNull(location);
+        if (location.getWorld() != this && location.getWorld() != this.view)
+        {
+            return Optional.absent();
+        }
+        return getBlock(location.getFlooredX(), location.getFlooredY(), location.getFlooredZ());
+    }
+
+    /**
+     * Gets the block at the given position. If the position has not been captured the whole chunk
+     * containing it is captured, along with the chunks near it of any large prefetched region
+     * containing it.
+     * 
+     * @param x The X position
+     * @param y The Y position
+     * @param z The Z position
+     * @return The block, if present
+     */
+    @Override
+    public Optional<Block> getBlock(int x, int y, int z)
+    {
+        if (y < getMinHeight() || y > getMaxHeight())
+        {
+            return Optional.absent();
+        }
+        WorldSnapshot snapshot = find(x, y, z);
+        if (snapshot == null)
+        {
+            Vector3i size = this.size;
+            snapshot = capture(gather(new Vector3i(Maths.floorDiv(x, size.getX()), Maths.floorDiv(y, size.getY()), Maths.floorDiv(z, size.getZ()))))
+                    .get(0);
+        }
+        Optional<Material> material = snapshot.getMaterial(x, y, z);
+        if (!material.isPresent())
+        {
+            return Optional.absent();
+        }
+        return Optional.<Block> of(new CommonBlock(new CommonLocation(this, x, y, z), material.get()));
+    }
+
+    /**
+     * Reads the region from the snapshots of this view. A region held by a single prefetched
+     * snapshot is read from it directly, otherwise the region is read a chunk at a time and the
+     * chunks which have not been captured are captured a bounded number of positions at a time, so
+     * that a large read spreads its work over several ticks rather than stalling one.
+     * 
+     * @param min The lowest corner of the region, inclusive
+     * @param max The highest corner of the region, inclusive
+     * @param sink The sink to receive the materials
+     */
+    @Override
+    public void readRegion(Vector3i min, Vector3i max, MaterialSink sink)
+    {
+        checkNotNull(min);
+        checkNotNull(max);
+        checkNotNull(sink);
+        if (max.getX() < min.getX() || max.getY() < min.getY() || max.getZ() < min.getZ())
+        {
+            return;
+        }
+        WorldSnapshot whole = find(min, max);
+        if (whole != null)
+        {
+            whole.readRegion(min, max, sink);
+            return;
+        }
+        int minY = Math.max(min.getY(), getMinHeight());
+        int maxY = Math.min(max.getY(), getMaxHeight());
+        Vector3i size = this.size;
+        List<Vector3i> missing = Lists.newArrayList();
+        long missingVolume = 0;
+        for (int cx = Maths.floorDiv(min.getX(), size.getX()); cx <= Maths.floorDiv(max.getX(), size.getX()); cx++)
+        {
+            for (int cz = Maths.floorDiv(min.getZ(), size.getZ()); cz <= Maths.floorDiv(max.getZ(), size.getZ()); cz++)
+            {
+                for (int cy = Maths.floorDiv(minY, size.getY()); cy <= Maths.floorDiv(maxY, size.getY()); cy++)
+                {
+                    Vector3i lower = new Vector3i(Math.max(min.getX(), cx * size.getX()), Math.max(minY, cy * size.getY()), Math.max(min.getZ(), cz
+                            * size.getZ()));
+                    Vector3i upper = new Vector3i(Math.min(max.getX(), (cx + 1) * size.getX() - 1), Math.min(maxY, (cy + 1) * size.getY() - 1), Math.min(
+                            max.getZ(), (cz + 1) * size.getZ() - 1));
+                    WorldSnapshot snapshot = find(lower, upper);
+                    if (snapshot == null)
+                    {
+                        snapshot = this.chunks.get(key(cx, cy, cz));
+                    }
+                    if (snapshot != null)
+                    {
+                        snapshot.readRegion(lower, upper, sink);
+                        continue;
+                    }
+                    missing.add(new Vector3i(cx, cy, cz));
+                    missingVolume += (long) size.getX() * size.getY() * size.getZ();
+                    if (missingVolume >= MAX_CAPTURE_VOLUME)
+                    {
+                        readCaptured(capture(missing), min, max, sink);
+                        missing.clear();
+                        missingVolume = 0;
+                    }
+                }
+            }
+        }
+        if (!missing.isEmpty())
+        {
+            readCaptured(capture(missing), min, max, sink);
+        }
+    }
+
+    private static void readCaptured(List<WorldSnapshot> captured, Vector3i min, Vector3i max, MaterialSink sink)
+    {
+        for (WorldSnapshot snapshot : captured)
+        {
+            snapshot.readRegion(min, max, sink);
+        }
+    }
+
+    @Override
+    public void setBlock(final Material material, final Location location)
+    {
+        checkNotNull(material);
+        checkNotNull(location);
+        if (location.getWorld() != this && location.getWorld() != this.view)
+        {
+            return;
+        }
+        setBlock(material, location.getFlooredX(), location.getFlooredY(), location.getFlooredZ());
+    }
+
+    @Override
+    public void setBlock(final Material material, final int x, final int y, final int z)
+    {
+        this.tick.call(new Callable<Void>()
+        {
+
+            @Override
+            public Void call()
+            {
+                StagedWorld.this.view.setBlock(material, x, y, z);
+                return null;
+            }
+
+        });
+    }
+
+    @Override
+    public void setBlocks(final EditBatch batch)
+    {
+        this.tick.call(new Callable<Void>()
+        {
+
+            @Override
+            public Void call()
+            {
+                StagedWorld.this.view.setBlocks(batch);
+                return null;
+            }
+
+        });
+    }
+
+    @Override
+    public int getDirtyChunkCount()
+    {
+        return this.tick.call(new Callable<Integer>()
+        {
+
+            @Override
+            public Integer call()
+            {
+                return StagedWorld.this.view.getDirtyChunkCount();
+            }
+
+        });
+    }
+
+    @Override
+    public int refreshDirtyChunks()
+    {
+        return this.tick.call(new Callable<Integer>()
+        {
+
+            @Override
+            public Integer call()
+            {
+                return StagedWorld.this.view.refreshDirtyChunks();
+            }
+
+        });
+    }
+
+    /**
+     * Gets a heightmap of this view. Its heights are read from the snapshots of this view rather
+     * than the live world, so they do not reflect writes made after the chunks were captured.
+     * 
+     * @return The heightmap
+     */
+    @Override
+    public Heightmap getHeightmap()
+    {
+        return this.heightmap;
+    }
+
+    @Override
+    public Optional<Chunk> getChunk(final int x, final int y, final int z)
+    {
+        return this.tick.call(new Callable<Optional<Chunk>>()
+        {
+
+            @Override
+            public Optional<Chunk> call()
+            {
+                return StagedWorld.this.view.getChunk(x, y, z);
+            }
+
+        });
+    }
+
+    @Override
+    public Optional<Biome> getBiome(final int x, final int y, final int z)
+    {
+        return this.tick.call(new Callable<Optional<Biome>>()
+        {
+
+            @Override
+            public Optional<Biome> call()
+            {
+                return StagedWorld.this.view.getBiome(x, y, z);
+            }
+
+        });
+    }
+
+    @Override
+    public void setBiome(final Biome biome, final int x, final int y, final int z)
+    {
+        this.tick.call(new Callable<Void>()
+        {
+
+            @Override
+            public Void call()
+            {
+                StagedWorld.this.view.setBiome(biome, x, y, z);
+                return null;
+            }
+
+        });
+    }
+
+    @Override
+    public void readBiomes(final Vector3i min, final Vector3i max, final int[] out)
+    {
+        this.tick.call(new Callable<Void>()
+        {
+
+            @Override
+            public Void call()
+            {
+                StagedWorld.this.view.readBiomes(min, max, out);
+                return null;
+            }
+
+        });
+    }
+
+    @Override
+    public int fillBiome(final Biome biome, final Vector3i origin, final Shape shape)
+    {
+        return this.tick.call(new Callable<Integer>()
+        {
+
+            @Override
+            public Integer call()
+            {
+                return StagedWorld.this.view.fillBiome(biome, origin, shape);
+            }
+
+        });
+    }
+
+    @Override
+    public String getName()
+    {
+        return this.view.getName();
+    }
+
+    @Override
+    public MaterialRegistry<?> getMaterialRegistry()
+    {
+        return this.view.getMaterialRegistry();
+    }
+
+    @Override
+    public Optional<BiomeRegistry<?>> getBiomeRegistry()
+    {
+        return this.view.getBiomeRegistry();
+    }
+
+    @Override
+    public Iterable<Entity> getLoadedEntities()
+    {
+        return this.tick.call(new Callable<Iterable<Entity>>()
+        {
+
+            @Override
+            public Iterable<Entity> call()
+            {
+                return Lists.newArrayList(StagedWorld.this.view.getLoadedEntities());
+            }
+
+        });
+    }
+
+    @Override
+    public Vector3i getChunkSize()
+    {
+        return this.view.getChunkSize();
+    }
+
+}
@@ -0,0 +1,132 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 The Voxel Plugineering Team
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.voxelplugineering.voxelsniper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+
+import org.junit.Test;
+
+import com.voxelplugineering.voxelsniper.shape.ComplexShape;
+import com.voxelplugineering.voxelsniper.shape.csg.CSGCompiler;
+import com.voxelplugineering.voxelsniper.shape.csg.CSGCompoundShape;
+import com.voxelplugineering.voxelsniper.shape.csg.CSGOperation;
+import com.voxelplugineering.voxelsniper.shape.csg.CSGShape;
+import com.voxelplugineering.voxelsniper.shape.csg.CuboidShape;
+import com.voxelplugineering.voxelsniper.shape.csg.EllipsoidShape;
+import com.voxelplugineering.voxelsniper.util.math.Vector3i;
+
+/**
+ * A set of tests for the {@link CSGCompoundShape} and {@link CSGCompiler}.
+ */
+@SuppressWarnings({ "checkstyle:javadocmethod", "javadoc" })
+public class CSGCompoundShapeTest
+{
+
+    @Test
+    public void testAddBounds()
+    {
+        CSGShape a = new EllipsoidShape(3, 3, 3, new Vector3i(3, 3, 3));
+        CSGShape b = new CuboidShape(2, 2, 2, new Vector3i(-6, 0, 0));
+        CSGCompoundShape shape = new CSGCompoundShape(a, b, CSGOperation.ADD);
+        assertEquals(14, shape.getWidth());
+        assertEquals(8, shape.getHeight());
+        assertEquals(8, shape.getLength());
+        assertMatches(shape, a, b, CSGOperation.ADD);
+    }
+
+    @Test
+    public void testSubtract()
+    {
+        CSGShape a = new EllipsoidShape(6, 6, 6, new Vector3i(6, 6, 6));
+        CSGShape b = new EllipsoidShape(4, 4, 4, new Vector3i(4, 4, 4));
+        CSGCompoundShape shape = new CSGCompoundShape(a, b, CSGOperation.SUBTRACT);
+        assertEquals(13, shape.getWidth());
+        assertEquals(false, shape.get(0, 0, 0, true));
+        assertEquals(true, shape.get(6, 0, 0, true));
+        assertMatches(shape, a, b, CSGOperation.SUBTRACT);
+    }
+
+    @Test
+    public void testXorNested()
+    {
+        CSGShape a = new EllipsoidShape(5, 2, 5, new Vector3i(5, 2, 5));
+        CSGShape b = new CuboidShape(4, 8, 4, new Vector3i(2, 4, 2));
+        CSGCompoundShape inner = new CSGCompoundShape(a, b, CSGOperation.XOR);
+        CSGShape c = new EllipsoidShape(2, 2, 2, new Vector3i(2, 2, 2));
+        CSGCompoundShape outer = new CSGCompoundShape(inner, c, CSGOperation.SUBTRACT);
+        for (int x = -6; x <= 6; x++)
+        {
+            for (int y = -6; y <= 6; y++)
+            {
+                for (int z = -6; z <= 6; z++)
+                {
+                    boolean expected = (a.get(x, y, z, true) ^ b.get(x, y, z, true)) && !c.get(x, y, z, true);
+                    assertEquals(expected, outer.get(x, y, z, true));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testMemoized()
+    {
+        CSGCompoundShape shape =
+                new CSGCompoundShape(new EllipsoidShape(4, 4, 4, new Vector3i(4, 4, 4)), new EllipsoidShape(2, 2, 2, new Vector3i(2, 2, 2)),
+                        CSGOperation.SUBTRACT);
+        ComplexShape first = CSGCompiler.compile(shape);
+        ComplexShape second = CSGCompiler.compile(shape.clone());
+        assertNotSame(first, second);
+        assertEquals(first.cardinality(), second.cardinality());
+        first.invert();
+        assertEquals(second.cardinality(), CSGCompiler.compile(shape).cardinality());
+    }
+
+    private static void assertMatches(CSGCompoundShape shape, CSGShape a, CSGShape b, CSGOperation op)
+    {
+        int count = 0;
+        for (int x = 0; x < shape.getWidth(); x++)
+        {
+            for (int y = 0; y < shape.getHeight(); y++)
+            {
+                for (int z = 0; z < shape.getLength(); z++)
+                {
+                    int rx = x - shape.getOrigin().getX();
+                    int ry = y - shape.getOrigin().getY();
+                    int rz = z - shape.getOrigin().getZ();
+                    boolean inA = a.get(rx, ry, rz, true);
+                    boolean inB = b.get(rx, ry, rz, true);
+                    boolean expected = op == CSGOperation.ADD ? inA || inB : op == CSGOperation.SUBTRACT ? inA && !inB : inA ^ inB;
+                    assertEquals(expected, shape.get(x, y, z, false));
+                    if (expected)
+                    {
+                        count++;
+                    }
+                }
+            }
+        }
+        assertEquals(count, CSGCompiler.compile(shape).cardinality());
+    }
+
+}
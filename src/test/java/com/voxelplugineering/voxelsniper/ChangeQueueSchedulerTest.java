@@ -0,0 +1,229 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 The Voxel Plugineering Team
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.voxelplugineering.voxelsniper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.Maps;
+import com.voxelplugineering.voxelsniper.service.config.Configuration;
+import com.voxelplugineering.voxelsniper.world.World;
+import com.voxelplugineering.voxelsniper.world.queue.ChangeQueue;
+import com.voxelplugineering.voxelsniper.world.queue.ChangeQueueOwner;
+import com.voxelplugineering.voxelsniper.world.queue.ChangeQueueScheduler;
+import com.voxelplugineering.voxelsniper.world.queue.ChangeRateController;
+import com.voxelplugineering.voxelsniper.world.queue.UndoQueue;
+
+/**
+ * A set of tests for the {@link ChangeQueueScheduler}.
+ */
+@SuppressWarnings({ "checkstyle:javadocmethod", "javadoc" })
+public class ChangeQueueSchedulerTest
+{
+
+    private static final long SECOND = 1000000000L;
+
+    private World world;
+    private ChangeQueueScheduler scheduler;
+    private ChangeRateController controller;
+
+    @Before
+    public void setup()
+    {
+        Configuration conf = mock(Configuration.class);
+        when(conf.get("defaultChangeWeight", double.class)).thenReturn(Optional.<Double> absent());
+        when(conf.get("changeAgingPeriod", int.class)).thenReturn(Optional.<Integer> absent());
+        this.world = mock(World.class);
+        this.scheduler = new ChangeQueueScheduler(conf, null);
+        this.controller = new ChangeRateController();
+    }
+
+    @Test
+    public void testSmallEditsFirst()
+    {
+        Owner big = new Owner();
+        Owner small = new Owner();
+        new CountingQueue(big, this.world, 10000).flush();
+        this.scheduler.activate(big);
+        Map<World, long[]> usage = Maps.newHashMap();
+        assertEquals(50, this.scheduler.run(SECOND, 50, this.controller, usage));
+        assertEquals(50, usage.get(this.world)[0]);
+
+        new CountingQueue(small, this.world, 10).flush();
+        new CountingQueue(small, this.world, 5).flush();
+        this.scheduler.activate(small);
+        // activating twice has no effect
+        this.scheduler.activate(small);
+        assertEquals(100, this.scheduler.run(SECOND, 100, this.controller, Maps.<World, long[]> newHashMap()));
+        // the newly active sender is served before the one already in the round
+        assertFalse(small.hasPendingChanges());
+        assertEquals(135, big.served());
+        assertEquals(Arrays.<ChangeQueueOwner> asList(big), this.scheduler.getActiveSenders());
+        assertEquals(1, this.scheduler.getQueueDepth(big));
+        assertEquals(1, this.scheduler.getWeight(big), 0);
+        assertEquals(135, this.scheduler.getServedChanges(big));
+        assertEquals(0, this.scheduler.getWaitTime(small));
+    }
+
+    @Test
+    public void testRetire()
+    {
+        Owner owner = new Owner();
+        new CountingQueue(owner, this.world, 20).flush();
+        this.scheduler.activate(owner);
+        assertEquals(20, this.scheduler.run(SECOND, 1000, this.controller, Maps.<World, long[]> newHashMap()));
+        assertFalse(owner.hasPendingChanges());
+        assertTrue(this.scheduler.getActiveSenders().isEmpty());
+        assertEquals(0, this.scheduler.run(SECOND, 1000, this.controller, Maps.<World, long[]> newHashMap()));
+    }
+
+    /**
+     * A queue which makes the given number of changes without touching the world.
+     */
+    private static class CountingQueue extends ChangeQueue
+    {
+
+        private int remaining;
+
+        CountingQueue(ChangeQueueOwner owner, World world, int changes)
+        {
+            super(owner, world);
+            this.remaining = changes;
+        }
+
+        @Override
+        public boolean isFinished()
+        {
+            return this.remaining == 0;
+        }
+
+        @Override
+        public void flush()
+        {
+            getOwner().addPending(this);
+        }
+
+        @Override
+        public int perform(int next)
+        {
+            int count = Math.min(next, this.remaining);
+            this.remaining -= count;
+            ((Owner) getOwner()).served += count;
+            return count;
+        }
+
+        @Override
+        public void reset()
+        {
+        }
+
+    }
+
+    /**
+     * An owner holding its pending queues in a list.
+     */
+    private static class Owner implements ChangeQueueOwner
+    {
+
+        private final LinkedList<ChangeQueue> pending = new LinkedList<ChangeQueue>();
+        int served = 0;
+
+        int served()
+        {
+            return this.served;
+        }
+
+        @Override
+        public void sendMessage(String msg)
+        {
+        }
+
+        @Override
+        public void sendMessage(String format, Object... args)
+        {
+        }
+
+        @Override
+        public void undoHistory(int n)
+        {
+        }
+
+        @Override
+        public void redoHistory(int n)
+        {
+        }
+
+        @Override
+        public boolean hasPendingChanges()
+        {
+            return !this.pending.isEmpty();
+        }
+
+        @Override
+        public Optional<ChangeQueue> getNextPendingChange()
+        {
+            return Optional.fromNullable(this.pending.peek());
+        }
+
+        @Override
+        public Iterable<ChangeQueue> getPendingChanges()
+        {
+            return this.pending;
+        }
+
+        @Override
+        public void addPending(ChangeQueue queue)
+        {
+            this.pending.add(queue);
+        }
+
+        @Override
+        public void clearNextPending(boolean force)
+        {
+            if (!this.pending.isEmpty() && (this.pending.peek().isFinished() || force))
+            {
+                this.pending.remove();
+            }
+        }
+
+        @Override
+        public UndoQueue getUndoHistory()
+        {
+            return null;
+        }
+
+    }
+
+}
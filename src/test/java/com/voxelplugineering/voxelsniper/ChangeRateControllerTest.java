@@ -0,0 +1,76 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 The Voxel Plugineering Team
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.voxelplugineering.voxelsniper;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.mock;
+
+import org.junit.Test;
+
+import com.voxelplugineering.voxelsniper.world.World;
+import com.voxelplugineering.voxelsniper.world.queue.ChangeRateController;
+
+/**
+ * A set of tests for the {@link ChangeRateController}.
+ */
+@SuppressWarnings({ "checkstyle:javadocmethod", "javadoc" })
+public class ChangeRateControllerTest
+{
+
+    @Test
+    public void testAllocate()
+    {
+        World fast = mock(World.class);
+        World slow = mock(World.class);
+        ChangeRateController controller = new ChangeRateController(0.5);
+        assertEquals(ChangeRateController.DEFAULT_COST, controller.getCost(fast), 0);
+        assertEquals(1600, controller.allocate(fast, 8000000));
+
+        controller.record(fast, 8000, 8000000);
+        controller.record(slow, 1000, 8000000);
+        assertEquals(8000, controller.allocate(fast, 8000000));
+        assertEquals(1000, controller.allocate(slow, 8000000));
+        // an empty measurement is ignored
+        controller.record(slow, 0, 8000000);
+        assertEquals(8000, controller.getCost(slow), 0);
+        // later measurements are averaged in
+        controller.record(slow, 2000, 8000000);
+        assertEquals(6000, controller.getCost(slow), 0);
+        // some progress is always made
+        assertEquals(1, controller.allocate(slow, 0));
+        assertEquals(1, controller.allocate(slow, -5));
+    }
+
+    @Test
+    public void testObservedRate()
+    {
+        ChangeRateController controller = new ChangeRateController(0.5);
+        assertEquals(0, controller.getObservedRate(), 0);
+        controller.recordTick(1000, 10000000);
+        assertEquals(100000, controller.getObservedRate(), 0.001);
+        controller.recordTick(3000, 10000000);
+        assertEquals(200000, controller.getObservedRate(), 0.001);
+    }
+
+}
@@ -374,6 +374,59 @@ public class ComplexShapeTest
         assertShapesDeepEqual(shape2, shape1);
     }
 
+    @Test
+    public void testInvertTall()
+    {
+        ComplexShape shape = new ComplexShape(2, 70, 3);
+        shape.set(1, 65, 2, false);
+        shape.invert();
+        assertEquals(2 * 70 * 3 - 1, shape.cardinality());
+        assertEquals(false, shape.get(1, 65, 2, false));
+    }
+
+    @Test
+    public void testSubtract()
+    {
+        ComplexShape shape1 = new ComplexShape(3, 1, 1);
+        shape1.set(0, 0, 0, false);
+        shape1.set(1, 0, 0, false);
+        ComplexShape shape2 = new ComplexShape(3, 1, 1);
+        shape2.set(1, 0, 0, false);
+        shape2.set(2, 0, 0, false);
+        shape1.subtract(shape2);
+        assertEquals(1, shape1.cardinality());
+        assertEquals(true, shape1.get(0, 0, 0, false));
+    }
+
+    @Test
+    public void testXorOffset()
+    {
+        ComplexShape shape1 = new ComplexShape(1, 100, 1);
+        shape1.set(0, 70, 0, false);
+        ComplexShape shape2 = new ComplexShape(1, 1, 1, new Vector3i(-2, -70, 0));
+        shape2.set(0, 0, 0, false);
+        shape1.xor(shape2);
+        assertEquals(3, shape1.getWidth());
+        assertEquals(100, shape1.getHeight());
+        assertEquals(2, shape1.cardinality());
+        assertEquals(true, shape1.get(0, 70, 0, false));
+        assertEquals(true, shape1.get(2, 70, 0, false));
+    }
+
+    @Test
+    public void testResizeRetainsContents()
+    {
+        ComplexShape shape = new ComplexShape(2, 2, 2);
+        shape.set(1, 1, 1, false);
+        shape.grow(-3, -70, 0);
+        assertEquals(5, shape.getWidth());
+        assertEquals(72, shape.getHeight());
+        assertEquals(1, shape.cardinality());
+        assertEquals(true, shape.get(1, 1, 1, true));
+        ComplexShape copy = new ComplexShape(shape);
+        assertShapesDeepEqual(shape, copy);
+    }
+
     // @Test
     public void testCombine()
     {
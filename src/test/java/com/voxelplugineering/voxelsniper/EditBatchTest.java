@@ -0,0 +1,90 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 The Voxel Plugineering Team
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.voxelplugineering.voxelsniper;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.mock;
+
+import org.junit.Test;
+
+import com.voxelplugineering.voxelsniper.util.math.Vector3i;
+import com.voxelplugineering.voxelsniper.world.EditBatch;
+import com.voxelplugineering.voxelsniper.world.material.Material;
+
+/**
+ * A set of tests for the {@link EditBatch}.
+ */
+@SuppressWarnings({ "checkstyle:javadocmethod", "javadoc" })
+public class EditBatchTest
+{
+
+    @Test
+    public void testSortByChunk()
+    {
+        Material a = mock(Material.class);
+        Material b = mock(Material.class);
+        EditBatch batch = new EditBatch();
+        batch.add(a, 0, 0, 0);
+        batch.add(a, -1, 0, 0);
+        batch.add(b, 15, 5, 15);
+        batch.add(b, -16, 0, 0);
+        batch.add(a, 16, 0, 0);
+        batch.add(b, 0, 0, 0);
+        batch.sortByChunk(new Vector3i(16, 256, 16));
+
+        assertEquals(6, batch.size());
+        assertEquals(3, batch.getChunkCount());
+        assertEquals(new Vector3i(0, 0, 0), batch.getChunk(0));
+        assertEquals(new Vector3i(-1, 0, 0), batch.getChunk(1));
+        assertEquals(new Vector3i(1, 0, 0), batch.getChunk(2));
+        assertEquals(0, batch.getChunkStart(0));
+        assertEquals(3, batch.getChunkEnd(0));
+        assertEquals(5, batch.getChunkEnd(1));
+        // changes to one position keep their order
+        assertEquals(a, batch.getMaterial(0));
+        assertEquals(15, batch.getX(1));
+        assertEquals(b, batch.getMaterial(2));
+        assertEquals(-1, batch.getX(3));
+        assertEquals(-16, batch.getX(4));
+        assertEquals(16, batch.getX(5));
+    }
+
+    @Test
+    public void testGrowAndClear()
+    {
+        Material a = mock(Material.class);
+        EditBatch batch = new EditBatch();
+        for (int i = 0; i < 1000; i++)
+        {
+            batch.add(a, i, i, i);
+        }
+        assertEquals(1000, batch.size());
+        assertEquals(999, batch.getZ(999));
+        batch.clear();
+        assertEquals(0, batch.size());
+        batch.sortByChunk(new Vector3i(16, 256, 16));
+        assertEquals(0, batch.getChunkCount());
+    }
+
+}
@@ -0,0 +1,135 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 The Voxel Plugineering Team
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.voxelplugineering.voxelsniper;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableMap;
+import com.voxelplugineering.voxelsniper.util.Context;
+import com.voxelplugineering.voxelsniper.util.ContextTestUtil;
+import com.voxelplugineering.voxelsniper.util.math.Vector3i;
+import com.voxelplugineering.voxelsniper.world.EditBatch;
+import com.voxelplugineering.voxelsniper.world.Heightmap;
+import com.voxelplugineering.voxelsniper.world.material.Material;
+import com.voxelplugineering.voxelsniper.world.memory.MemoryWorld;
+
+/**
+ * A set of tests for the {@link Heightmap}.
+ */
+@SuppressWarnings({ "checkstyle:javadocmethod", "javadoc" })
+public class HeightmapTest
+{
+
+    private MemoryWorld world;
+    private Material air;
+    private Material water;
+    private Material stone;
+
+    @Before
+    public void setup()
+    {
+        this.air = mock(Material.class);
+        this.water = mock(Material.class);
+        this.stone = mock(Material.class);
+        when(this.stone.isSolid()).thenReturn(true);
+        Context context = ContextTestUtil.createWithMaterials(ImmutableMap.of("air", this.air, "water", this.water, "stone", this.stone));
+        this.world = new MemoryWorld(context, "test", new Vector3i(16, 16, 16), new Vector3i(2, 2, 2));
+    }
+
+    @Test
+    public void testBuild()
+    {
+        for (int y = 0; y < 20; y++)
+        {
+            this.world.setBlock(this.stone, 3, y, 4);
+        }
+        this.world.setBlock(this.water, 3, 25, 4);
+        Heightmap map = this.world.getHeightmap();
+        assertEquals(19, map.getHighestSolid(3, 4));
+        assertEquals(25, map.getHighestNonAir(3, 4));
+        assertEquals(-1, map.getHighestSolid(4, 4));
+        assertEquals(-1, map.getHighestNonAir(20, 20));
+        assertEquals(2, map.getCachedColumnCount());
+    }
+
+    @Test
+    public void testSingleUpdates()
+    {
+        Heightmap map = this.world.getHeightmap();
+        assertEquals(-1, map.getHighestSolid(3, 4));
+        this.world.setBlock(this.stone, 3, 5, 4);
+        this.world.setBlock(this.stone, 3, 10, 4);
+        assertEquals(10, map.getHighestSolid(3, 4));
+        this.world.setBlock(this.water, 3, 10, 4);
+        assertEquals(5, map.getHighestSolid(3, 4));
+        assertEquals(10, map.getHighestNonAir(3, 4));
+        this.world.setBlock(this.air, 3, 10, 4);
+        assertEquals(5, map.getHighestNonAir(3, 4));
+        this.world.setBlock(this.air, 3, 5, 4);
+        assertEquals(-1, map.getHighestSolid(3, 4));
+        assertEquals(-1, map.getHighestNonAir(3, 4));
+    }
+
+    @Test
+    public void testChunkUpdates()
+    {
+        Heightmap map = this.world.getHeightmap();
+        assertEquals(-1, map.getHighestSolid(3, 4));
+        this.world.getChunk(0, 0, 0).get().setBlock(this.stone, 3, 7, 4);
+        assertEquals(7, map.getHighestSolid(3, 4));
+        this.world.getChunk(0, 0, 0).get().setBlock(this.air, 3, 7, 4);
+        assertEquals(-1, map.getHighestSolid(3, 4));
+    }
+
+    @Test
+    public void testBatchUpdates()
+    {
+        Heightmap map = this.world.getHeightmap();
+        assertEquals(-1, map.getHighestSolid(17, 17));
+        EditBatch batch = new EditBatch();
+        for (int y = 0; y < 30; y++)
+        {
+            batch.add(this.stone, 17, y, 17);
+        }
+        this.world.setBlocks(batch);
+        assertEquals(29, map.getHighestSolid(17, 17));
+        batch.clear();
+        for (int y = 12; y < 30; y++)
+        {
+            batch.add(this.air, 17, y, 17);
+        }
+        this.world.setBlocks(batch);
+        assertEquals(11, map.getHighestSolid(17, 17));
+        assertEquals(11, map.getHighestNonAir(17, 17));
+
+        map.invalidateAll();
+        assertEquals(11, map.getHighestSolid(17, 17));
+    }
+
+}
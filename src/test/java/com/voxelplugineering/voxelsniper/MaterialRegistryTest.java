@@ -0,0 +1,107 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 The Voxel Plugineering Team
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.voxelplugineering.voxelsniper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.BitSet;
+
+import org.junit.Test;
+
+import com.google.common.base.Optional;
+import com.voxelplugineering.voxelsniper.registry.WeakRegistry;
+import com.voxelplugineering.voxelsniper.service.MaterialRegistryService;
+import com.voxelplugineering.voxelsniper.service.config.Configuration;
+import com.voxelplugineering.voxelsniper.util.Context;
+import com.voxelplugineering.voxelsniper.util.ContextTestUtil;
+import com.voxelplugineering.voxelsniper.world.material.Material;
+
+/**
+ * A set of tests for the dense material ids of the {@link MaterialRegistryService}.
+ */
+@SuppressWarnings({ "checkstyle:javadocmethod", "javadoc" })
+public class MaterialRegistryTest
+{
+
+    private static Material material(boolean liquid, boolean solid)
+    {
+        Material material = mock(Material.class);
+        when(material.isLiquid()).thenReturn(liquid);
+        when(material.isSolid()).thenReturn(solid);
+        return material;
+    }
+
+    @Test
+    public void testDenseIds()
+    {
+        Context context = ContextTestUtil.create();
+        Configuration conf = context.getRequired(Configuration.class);
+        when(conf.get("defaultMaterialName", String.class)).thenReturn(Optional.of("air"));
+        MaterialRegistryService<Object> registry = new MaterialRegistryService<Object>(context);
+        registry.start();
+
+        Material air = material(false, false);
+        Material water = material(true, false);
+        Material stone = material(false, true);
+        registry.registerMaterial("air", new Object(), air);
+        registry.registerMaterial("water", new Object(), water);
+        registry.registerMaterial("stone", new Object(), stone);
+        // registering the same material again keeps its id
+        registry.registerMaterial("rock", new Object(), stone);
+
+        assertEquals(3, registry.getMaterialCount());
+        assertEquals(0, registry.getId(air));
+        assertEquals(2, registry.getId(stone));
+        assertEquals(-1, registry.getId(mock(Material.class)));
+        assertSame(water, registry.byId(1));
+        assertSame(air, registry.getAirMaterial());
+
+        BitSet liquid = registry.getLiquidMaterials();
+        assertTrue(liquid.get(1));
+        assertEquals(1, liquid.cardinality());
+        assertTrue(registry.getSolidMaterials().get(2));
+        assertFalse(registry.getGravityMaterials().get(0));
+        liquid.clear();
+        assertTrue(registry.getLiquidMaterials().get(1));
+    }
+
+    @Test
+    public void testNameForValue()
+    {
+        WeakRegistry<Object, String> registry = new WeakRegistry<Object, String>();
+        registry.setCaseSensitiveKeys(false);
+        Object key = new Object();
+        String value = "value";
+        registry.register("Name", key, value);
+        assertEquals("NAME", registry.getNameForValue(value).get());
+        registry.remove(key);
+        assertFalse(registry.getNameForValue(value).isPresent());
+    }
+
+}
@@ -0,0 +1,81 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 The Voxel Plugineering Team
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.voxelplugineering.voxelsniper;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.mockito.Mockito.mock;
+
+import org.junit.Test;
+
+import com.voxelplugineering.voxelsniper.shape.ComplexMaterialShape;
+import com.voxelplugineering.voxelsniper.shape.ComplexShape;
+import com.voxelplugineering.voxelsniper.shape.MaterialShape;
+import com.voxelplugineering.voxelsniper.shape.SingleMaterialShape;
+import com.voxelplugineering.voxelsniper.world.material.Material;
+
+/**
+ * A set of tests for the material id access of the {@link MaterialShape} implementations.
+ */
+@SuppressWarnings({ "checkstyle:javadocmethod", "javadoc" })
+public class MaterialShapeTest
+{
+
+    @Test
+    public void testMaterialIds()
+    {
+        Material air = mock(Material.class);
+        Material stone = mock(Material.class);
+        ComplexShape shape = new ComplexShape(3, 3, 3);
+        shape.set(1, 1, 1, false);
+        shape.set(2, 1, 1, false);
+        ComplexMaterialShape ms = new ComplexMaterialShape(shape, air);
+        ms.setMaterial(2, 1, 1, false, stone);
+        Material[] palette = ms.getPalette();
+        assertEquals(air, palette[ms.getMaterialId(1, 1, 1)]);
+        assertEquals(stone, palette[ms.getMaterialId(2, 1, 1)]);
+        assertEquals(MaterialShape.UNSET_ID, ms.getMaterialId(0, 0, 0));
+
+        int[] ids = new int[4];
+        ms.copyIds(ids, 1, 1, 0, 2, 1, 2);
+        assertArrayEquals(new int[] { MaterialShape.UNSET_ID, MaterialShape.UNSET_ID, 0, ms.getMaterialId(2, 1, 1) }, ids);
+    }
+
+    @Test
+    public void testSingleMaterialIds()
+    {
+        Material stone = mock(Material.class);
+        ComplexShape shape = new ComplexShape(3, 3, 3);
+        shape.set(1, 1, 1, false);
+        SingleMaterialShape single = new SingleMaterialShape(shape, stone);
+        assertEquals(stone, single.getPalette()[single.getMaterialId(1, 1, 1)]);
+        assertEquals(MaterialShape.UNSET_ID, single.getMaterialId(0, 1, 1));
+
+        byte[] lower = single.getLowerMaterialData();
+        assertEquals(27, lower.length);
+        assertNotSame(lower, single.getLowerMaterialData());
+    }
+
+}
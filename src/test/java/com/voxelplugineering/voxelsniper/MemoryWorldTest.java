@@ -0,0 +1,257 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 The Voxel Plugineering Team
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.voxelplugineering.voxelsniper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableMap;
+import com.voxelplugineering.voxelsniper.service.BiomeRegistryService;
+import com.voxelplugineering.voxelsniper.service.config.Configuration;
+import com.voxelplugineering.voxelsniper.shape.ComplexShape;
+import com.voxelplugineering.voxelsniper.shape.MaterialShape;
+import com.voxelplugineering.voxelsniper.shape.csg.CuboidShape;
+import com.voxelplugineering.voxelsniper.util.Context;
+import com.voxelplugineering.voxelsniper.util.ContextTestUtil;
+import com.voxelplugineering.voxelsniper.util.math.Vector3i;
+import com.voxelplugineering.voxelsniper.world.CommonLocation;
+import com.voxelplugineering.voxelsniper.world.EditBatch;
+import com.voxelplugineering.voxelsniper.world.MaterialSink;
+import com.voxelplugineering.voxelsniper.world.WorldSnapshot;
+import com.voxelplugineering.voxelsniper.world.biome.Biome;
+import com.voxelplugineering.voxelsniper.world.material.Material;
+import com.voxelplugineering.voxelsniper.world.memory.MemoryChunk;
+import com.voxelplugineering.voxelsniper.world.memory.MemoryWorld;
+
+/**
+ * A set of tests for the {@link MemoryWorld}.
+ */
+@SuppressWarnings({ "checkstyle:javadocmethod", "javadoc" })
+public class MemoryWorldTest
+{
+
+    private MemoryWorld world;
+    private Material air;
+    private Material stone;
+    private Biome plains;
+    private Biome desert;
+
+    @Before
+    public void setup()
+    {
+        this.air = mock(Material.class);
+        this.stone = mock(Material.class);
+        Context context = ContextTestUtil.createWithMaterials(ImmutableMap.of("air", this.air, "stone", this.stone));
+        Configuration conf = context.getRequired(Configuration.class);
+        when(conf.get("defaultBiomeName", String.class)).thenReturn(Optional.of("plains"));
+        BiomeRegistryService<Object> biomes = new BiomeRegistryService<Object>(context);
+        biomes.start();
+        this.plains = mock(Biome.class);
+        this.desert = mock(Biome.class);
+        biomes.registerBiome("plains", new Object(), this.plains);
+        biomes.registerBiome("desert", new Object(), this.desert);
+        context.put(biomes);
+        this.world = new MemoryWorld(context, "test", new Vector3i(16, 16, 16), new Vector3i(4, 2, 4));
+    }
+
+    @Test
+    public void testGetAndSet()
+    {
+        assertSame(this.air, this.world.getBlock(5, 20, 40).get().getMaterial());
+        assertEquals(0, this.world.getLoadedChunkCount());
+        this.world.setBlock(this.stone, 5, 20, 40);
+        assertSame(this.stone, this.world.getBlock(5, 20, 40).get().getMaterial());
+        assertSame(this.air, this.world.getBlock(6, 20, 40).get().getMaterial());
+        assertEquals(1, this.world.getLoadedChunkCount());
+        assertEquals(new Vector3i(63, 31, 63), this.world.getMaxBound());
+        assertFalse(this.world.getBlock(-1, 0, 0).isPresent());
+        assertFalse(this.world.getBlock(0, 32, 0).isPresent());
+        this.world.setBlock(this.stone, 64, 0, 0);
+        assertEquals(1, this.world.getLoadedChunkCount());
+
+        MemoryChunk chunk = (MemoryChunk) this.world.getChunk(0, 1, 2).get();
+        assertEquals(new Vector3i(0, 16, 32), chunk.getMinBound());
+        assertSame(this.stone, chunk.getBlock(5, 20, 40).get().getMaterial());
+        assertFalse(chunk.getBlock(5, 0, 40).isPresent());
+        assertEquals(2, chunk.getPaletteSize());
+        assertFalse(this.world.getChunk(4, 0, 0).isPresent());
+    }
+
+    @Test
+    public void testBulk()
+    {
+        EditBatch batch = new EditBatch();
+        for (int x = 10; x < 40; x++)
+        {
+            batch.add(this.stone, x, 3, 7);
+        }
+        this.world.resetCallCount();
+        this.world.setBlocks(batch);
+        // one write per chunk
+        assertEquals(3, this.world.getCallCount());
+        assertEquals(3, this.world.getDirtyChunkCount());
+        assertEquals(3, this.world.refreshDirtyChunks());
+        assertEquals(1, ((MemoryChunk) this.world.getChunk(1, 0, 0).get()).getRefreshCount());
+
+        final int[] count = new int[2];
+        this.world.readRegion(new Vector3i(0, 3, 7), new Vector3i(63, 3, 7), new MaterialSink()
+        {
+
+            @Override
+            public void accept(int x, int y, int z, Material material)
+            {
+                count[material == MemoryWorldTest.this.stone ? 0 : 1]++;
+                assertEquals(x >= 10 && x < 40, material == MemoryWorldTest.this.stone);
+            }
+
+        });
+        assertEquals(30, count[0]);
+        assertEquals(34, count[1]);
+
+        WorldSnapshot snapshot = WorldSnapshot.capture(this.world, new Vector3i(-2, 0, 0), new Vector3i(20, 5, 10));
+        assertSame(this.stone, snapshot.getMaterial(12, 3, 7).get());
+        assertFalse(snapshot.getMaterial(-1, 3, 7).isPresent());
+    }
+
+    @Test
+    public void testShapeFromWorld()
+    {
+        this.world.setBlock(this.stone, 1, 30, 1);
+        this.world.resetCallCount();
+        // covers x -1..1, y 30..32 and z -1..1, partly outside of the world
+        MaterialShape shape =
+                this.world.getShapeFromWorld(new CommonLocation(this.world, 0, 31, 0), new CuboidShape(3, 3, 3, new Vector3i(1, 1, 1)));
+        // the bounding box is read in one call to the only chunk it overlaps
+        assertEquals(1, this.world.getCallCount());
+        assertSame(this.stone, shape.getMaterial(2, 0, 2, false).get());
+        assertSame(this.air, shape.getMaterial(1, 0, 1, false).get());
+        assertFalse(shape.get(0, 0, 1, false));
+        assertFalse(shape.get(1, 2, 1, false));
+        int set = 0;
+        for (int x = 0; x < 3; x++)
+        {
+            for (int y = 0; y < 3; y++)
+            {
+                for (int z = 0; z < 3; z++)
+                {
+                    set += shape.get(x, y, z, false) ? 1 : 0;
+                }
+            }
+        }
+        assertEquals(8, set);
+
+        // large enough to be read span by span into a sparse shape
+        shape = this.world.getShapeFromWorld(new CommonLocation(this.world, 0, 0, 0), new CuboidShape(130, 130, 130, Vector3i.ZERO));
+        assertSame(this.stone, shape.getMaterial(1, 30, 1, false).get());
+        assertSame(this.air, shape.getMaterial(63, 0, 63, false).get());
+        assertFalse(shape.get(64, 0, 0, false));
+        assertFalse(shape.get(0, 32, 0, false));
+
+        final int[] count = new int[2];
+        this.world.readRegion(new Vector3i(-3, 30, 1), new Vector3i(1, 33, 1), new MaterialSink()
+        {
+
+            @Override
+            public void accept(int x, int y, int z, Material material)
+            {
+                count[material == MemoryWorldTest.this.stone ? 0 : 1]++;
+            }
+
+        });
+        assertEquals(1, count[0]);
+        assertEquals(3, count[1]);
+    }
+
+    @Test
+    public void testBiome()
+    {
+        Biome biome = mock(Biome.class);
+        assertFalse(this.world.getBiome(3, 4, 5).isPresent());
+        this.world.setBiome(biome, 3, 4, 5);
+        assertSame(biome, this.world.getBiome(3, 9, 5).get());
+        assertFalse(this.world.getBiome(4, 4, 5).isPresent());
+    }
+
+    @Test
+    public void testBulkBiomes()
+    {
+        this.world.setBiome(this.plains, 0, 0, 0);
+        // a 30 by 3 rectangle of columns, with only the middle row set at the top
+        ComplexShape shape = new ComplexShape(30, 2, 3, new Vector3i(0, 1, 1));
+        for (int x = 0; x < 30; x++)
+        {
+            for (int z = 0; z < 3; z++)
+            {
+                shape.set(x, z == 1 ? 1 : 0, z, false);
+            }
+        }
+        this.world.resetCallCount();
+        assertEquals(90, this.world.fillBiome(this.desert, new Vector3i(10, 4, 8), shape));
+        // one write per chunk column, then each chunk changed is refreshed once
+        assertEquals(6, this.world.getCallCount());
+        assertEquals(0, this.world.getDirtyChunkCount());
+        for (int cx = 0; cx < 3; cx++)
+        {
+            assertEquals(1, ((MemoryChunk) this.world.getChunk(cx, 0, 0).get()).getRefreshCount());
+        }
+        assertEquals(0, ((MemoryChunk) this.world.getChunk(3, 0, 0).get()).getRefreshCount());
+        assertSame(this.desert, this.world.getBiome(10, 30, 7).get());
+        assertSame(this.desert, this.world.getBiome(39, 0, 9).get());
+        assertFalse(this.world.getBiome(40, 0, 9).isPresent());
+
+        int[] ids = new int[64 * 4];
+        this.world.readBiomes(new Vector3i(0, 5, 6), new Vector3i(63, 20, 9), ids);
+        for (int z = 6; z <= 9; z++)
+        {
+            for (int x = 0; x < 64; x++)
+            {
+                int expected = x >= 10 && x < 40 && z >= 7 && z <= 9 ? 1 : -1;
+                assertEquals(expected, ids[(z - 6) * 64 + x]);
+            }
+        }
+        this.world.readBiomes(new Vector3i(-1, 0, -1), new Vector3i(0, 0, 0), ids);
+        assertEquals(-1, ids[0]);
+        assertEquals(-1, ids[1]);
+        assertEquals(-1, ids[2]);
+        assertEquals(0, ids[3]);
+    }
+
+    @Test
+    public void testLatency()
+    {
+        this.world.setLatency(1000000);
+        long start = System.nanoTime();
+        this.world.getBlock(0, 0, 0);
+        assertTrue(System.nanoTime() - start >= 1000000);
+    }
+
+}
@@ -0,0 +1,221 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 The Voxel Plugineering Team
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.voxelplugineering.voxelsniper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.voxelplugineering.voxelsniper.shape.ComplexShape;
+import com.voxelplugineering.voxelsniper.shape.Morphology;
+import com.voxelplugineering.voxelsniper.shape.Shape;
+import com.voxelplugineering.voxelsniper.shape.csg.CuboidShape;
+import com.voxelplugineering.voxelsniper.shape.csg.EllipsoidShape;
+import com.voxelplugineering.voxelsniper.util.math.Vector3i;
+
+/**
+ * A set of tests for the {@link Morphology} operators, checked against a position by position
+ * evaluation.
+ */
+@SuppressWarnings({ "checkstyle:javadocmethod", "javadoc" })
+public class MorphologyTest
+{
+
+    private static ComplexShape random(int w, int h, int l, long seed)
+    {
+        Random random = new Random(seed);
+        ComplexShape shape = new ComplexShape(w, h, l, new Vector3i(w / 2, h / 2, l / 2));
+        for (int x = 0; x < w; x++)
+        {
+            for (int y = 0; y < h; y++)
+            {
+                for (int z = 0; z < l; z++)
+                {
+                    if (random.nextInt(3) != 0)
+                    {
+                        shape.set(x, y, z, false);
+                    }
+                }
+            }
+        }
+        return shape;
+    }
+
+    private static ComplexShape lKernel()
+    {
+        ComplexShape kernel = new ComplexShape(3, 2, 2, new Vector3i(1, 0, 0));
+        kernel.set(0, 0, 0, false);
+        kernel.set(1, 0, 0, false);
+        kernel.set(2, 0, 0, false);
+        kernel.set(2, 1, 1, false);
+        return kernel;
+    }
+
+    private static boolean inside(Shape shape, int x, int y, int z)
+    {
+        return x >= 0 && x < shape.getWidth() && y >= 0 && y < shape.getHeight() && z >= 0 && z < shape.getLength()
+                && shape.get(x, y, z, false);
+    }
+
+    private static ComplexShape bruteForce(ComplexShape shape, Shape kernel, boolean dilate)
+    {
+        ComplexShape result = new ComplexShape(shape.getWidth(), shape.getHeight(), shape.getLength(), shape.getOrigin());
+        Vector3i o = kernel.getOrigin();
+        for (int x = 0; x < shape.getWidth(); x++)
+        {
+            for (int y = 0; y < shape.getHeight(); y++)
+            {
+                for (int z = 0; z < shape.getLength(); z++)
+                {
+                    boolean value = !dilate;
+                    for (int a = 0; a < kernel.getWidth(); a++)
+                    {
+                        for (int b = 0; b < kernel.getHeight(); b++)
+                        {
+                            for (int c = 0; c < kernel.getLength(); c++)
+                            {
+                                if (!kernel.get(a, b, c, false))
+                                {
+                                    continue;
+                                }
+                                int dx = a - o.getX();
+                                int dy = b - o.getY();
+                                int dz = c - o.getZ();
+                                if (dilate)
+                                {
+                                    value |= inside(shape, x - dx, y - dy, z - dz);
+                                } else
+                                {
+                                    value &= inside(shape, x + dx, y + dy, z + dz);
+                                }
+                            }
+                        }
+                    }
+                    if (value)
+                    {
+                        result.set(x, y, z, false);
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    private static void assertShapeEquals(Shape expected, Shape actual)
+    {
+        assertEquals(expected.getWidth(), actual.getWidth());
+        assertEquals(expected.getHeight(), actual.getHeight());
+        assertEquals(expected.getLength(), actual.getLength());
+        for (int x = 0; x < expected.getWidth(); x++)
+        {
+            for (int y = 0; y < expected.getHeight(); y++)
+            {
+                for (int z = 0; z < expected.getLength(); z++)
+                {
+                    assertEquals(x + " " + y + " " + z, expected.get(x, y, z, false), actual.get(x, y, z, false));
+                }
+            }
+        }
+    }
+
+    private static void check(ComplexShape shape, Shape kernel)
+    {
+        assertShapeEquals(bruteForce(shape, kernel, true), Morphology.dilate(shape, kernel));
+        assertShapeEquals(bruteForce(shape, kernel, false), Morphology.erode(shape, kernel));
+    }
+
+    @Test
+    public void testBoxKernel()
+    {
+        check(random(6, 140, 5, 1), new CuboidShape(3, 3, 3, new Vector3i(1, 1, 1)));
+    }
+
+    @Test
+    public void testTallKernel()
+    {
+        check(random(4, 150, 3, 2), new CuboidShape(2, 70, 1, new Vector3i(0, 3, 0)));
+    }
+
+    @Test
+    public void testEllipsoidKernel()
+    {
+        check(random(7, 70, 6, 3), new EllipsoidShape(2, 2, 2, new Vector3i(2, 2, 2)));
+    }
+
+    @Test
+    public void testIrregularKernel()
+    {
+        check(random(5, 66, 5, 4), lKernel());
+    }
+
+    @Test
+    public void testOpenClose()
+    {
+        ComplexShape shape = random(6, 20, 6, 5);
+        Shape kernel = lKernel();
+        assertShapeEquals(bruteForce(bruteForce(shape, kernel, false), kernel, true), Morphology.open(shape, kernel));
+        assertShapeEquals(bruteForce(bruteForce(shape, kernel, true), kernel, false), Morphology.close(shape, kernel));
+    }
+
+    @Test
+    public void testHitOrMiss()
+    {
+        ComplexShape shape = random(6, 10, 6, 6);
+        ComplexShape hit = new ComplexShape(1, 1, 1, Vector3i.ZERO);
+        hit.set(0, 0, 0, false);
+        ComplexShape miss = new ComplexShape(1, 2, 1, Vector3i.ZERO);
+        miss.set(0, 1, 0, false);
+        ComplexShape result = Morphology.hitOrMiss(shape, hit, miss);
+        for (int x = 0; x < 6; x++)
+        {
+            for (int y = 0; y < 10; y++)
+            {
+                for (int z = 0; z < 6; z++)
+                {
+                    boolean top = shape.get(x, y, z, false) && y + 1 < 10 && !shape.get(x, y + 1, z, false);
+                    assertEquals(top, result.get(x, y, z, false));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testReach()
+    {
+        ComplexShape shape = new ComplexShape(1, 1, 1, Vector3i.ZERO);
+        shape.set(0, 0, 0, false);
+        Shape kernel = lKernel();
+        ComplexShape reach = Morphology.reach(shape, kernel);
+        assertEquals(3, reach.getWidth());
+        assertEquals(2, reach.getHeight());
+        assertEquals(2, reach.getLength());
+        assertEquals(kernel.getOrigin(), reach.getOrigin());
+        assertShapeEquals(kernel, reach);
+        assertTrue(reach.get(0, 0, 0, true));
+    }
+
+}
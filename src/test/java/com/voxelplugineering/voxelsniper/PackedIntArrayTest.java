@@ -0,0 +1,147 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 The Voxel Plugineering Team
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.voxelplugineering.voxelsniper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+
+import org.junit.Test;
+
+import com.voxelplugineering.voxelsniper.shape.ComplexMaterialShape;
+import com.voxelplugineering.voxelsniper.shape.ComplexShape;
+import com.voxelplugineering.voxelsniper.shape.PackedIntArray;
+import com.voxelplugineering.voxelsniper.world.material.Material;
+
+/**
+ * A set of tests for the {@link PackedIntArray} and the palette storage of the
+ * {@link ComplexMaterialShape}.
+ */
+@SuppressWarnings({ "checkstyle:javadocmethod", "javadoc" })
+public class PackedIntArrayTest
+{
+
+    @Test
+    public void testGrow()
+    {
+        PackedIntArray array = new PackedIntArray(100, 1);
+        assertEquals(1, array.getBits());
+        for (int i = 0; i < 100; i++)
+        {
+            array.set(i, i % 2);
+        }
+        array.set(50, 300);
+        assertEquals(16, array.getBits());
+        for (int i = 0; i < 100; i++)
+        {
+            assertEquals(i == 50 ? 300 : i % 2, array.get(i));
+        }
+    }
+
+    @Test
+    public void testFillAndSwap()
+    {
+        PackedIntArray array = new PackedIntArray(200, 3);
+        array.fill(5, 190, 3);
+        array.fill(20, 21, 1);
+        array.swap(0, 3);
+        for (int i = 0; i < 200; i++)
+        {
+            int expected = i == 20 ? 1 : i >= 5 && i < 190 ? 0 : 3;
+            assertEquals(expected, array.get(i));
+        }
+    }
+
+    @Test
+    public void testMaterialShape()
+    {
+        Material air = mock(Material.class);
+        Material stone = mock(Material.class);
+        ComplexShape shape = new ComplexShape(4, 4, 4);
+        shape.invert();
+        ComplexMaterialShape ms = new ComplexMaterialShape(shape, air);
+        assertEquals(1, ms.getBitsPerPoint());
+        ms.setMaterial(1, 2, 3, false, stone);
+        assertEquals(stone, ms.getMaterial(1, 2, 3, false).get());
+        assertEquals(air, ms.getMaterial(0, 0, 0, false).get());
+        assertNull(ms.getUpperMaterialData());
+
+        for (int i = 0; i < 300; i++)
+        {
+            ms.setMaterial(i % 4, (i / 4) % 4, 0, false, mock(Material.class));
+        }
+        assertEquals(16, ms.getBitsPerPoint());
+        assertEquals(stone, ms.getMaterial(1, 2, 3, false).get());
+        assertEquals(64, ms.getUpperMaterialData().length);
+
+        ms.setDefaultMaterial(stone);
+        assertEquals(air, ms.getMaterial(0, 0, 1, false).get());
+        assertEquals(stone, ms.getMaterial(1, 2, 3, false).get());
+        assertEquals(stone, ms.getMaterialsDictionary().get((short) 0));
+        ms.unsetMaterial(1, 2, 3, false);
+        assertFalse(ms.getMaterial(1, 2, 3, false).isPresent());
+    }
+
+    @Test
+    public void testUnsetMaterialData()
+    {
+        Material air = mock(Material.class);
+        Material stone = mock(Material.class);
+        ComplexMaterialShape ms = new ComplexMaterialShape(new ComplexShape(4, 4, 4), air);
+        ms.setMaterial(1, 2, 3, false, stone);
+        ms.setMaterial(0, 0, 0, false, air);
+        byte[] lower = ms.getLowerMaterialData();
+        assertEquals(1, lower[3 * 4 + 2 * 16 + 1]);
+        assertEquals(0, lower[0]);
+        assertEquals(-1, lower[1]);
+
+        ms.setDefaultMaterial(stone);
+        assertFalse(ms.getMaterial(1, 0, 0, false).isPresent());
+        lower = ms.getLowerMaterialData();
+        assertEquals(0, lower[3 * 4 + 2 * 16 + 1]);
+        assertEquals(1, lower[0]);
+        assertEquals(-1, lower[1]);
+    }
+
+    @Test
+    public void testUpperMaterialData()
+    {
+        ComplexMaterialShape ms = new ComplexMaterialShape(new ComplexShape(16, 2, 16), mock(Material.class));
+        for (int i = 1; i < 256; i++)
+        {
+            ms.setMaterial(i % 16, 0, i / 16, false, mock(Material.class));
+        }
+        assertFalse(ms.hasExtraData());
+        assertNull(ms.getUpperMaterialData());
+        ms.setMaterial(0, 1, 0, false, mock(Material.class));
+        assertTrue(ms.hasExtraData());
+        byte[] upper = ms.getUpperMaterialData();
+        assertEquals(1, upper[256]);
+        assertEquals(0, upper[255]);
+        assertEquals(-1, upper[257]);
+    }
+
+}
@@ -0,0 +1,173 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 The Voxel Plugineering Team
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.voxelplugineering.voxelsniper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.same;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.voxelplugineering.voxelsniper.shape.ComplexMaterialShape;
+import com.voxelplugineering.voxelsniper.shape.ComplexShape;
+import com.voxelplugineering.voxelsniper.util.Context;
+import com.voxelplugineering.voxelsniper.util.ContextTestUtil;
+import com.voxelplugineering.voxelsniper.util.math.Vector3i;
+import com.voxelplugineering.voxelsniper.world.CommonLocation;
+import com.voxelplugineering.voxelsniper.world.MaterialSink;
+import com.voxelplugineering.voxelsniper.world.World;
+import com.voxelplugineering.voxelsniper.world.material.Material;
+import com.voxelplugineering.voxelsniper.world.memory.MemoryWorld;
+import com.voxelplugineering.voxelsniper.world.queue.ChangeQueue;
+import com.voxelplugineering.voxelsniper.world.queue.ChangeQueueOwner;
+import com.voxelplugineering.voxelsniper.world.queue.PendingChangeWorld;
+import com.voxelplugineering.voxelsniper.world.queue.ShapeChangeQueue;
+import com.voxelplugineering.voxelsniper.world.queue.UndoQueue;
+
+/**
+ * A set of tests for the {@link PendingChangeWorld}.
+ */
+@SuppressWarnings({ "checkstyle:javadocmethod", "javadoc" })
+public class PendingChangeWorldTest
+{
+
+    private MemoryWorld world;
+    private Material air;
+    private Material stone;
+    private Material water;
+    private ChangeQueueOwner owner;
+    private UndoQueue undo;
+    private List<ChangeQueue> pending;
+
+    @Before
+    public void setup()
+    {
+        this.air = mock(Material.class);
+        this.stone = mock(Material.class);
+        this.water = mock(Material.class);
+        Context context = ContextTestUtil.createWithMaterials(ImmutableMap.of("air", this.air, "stone", this.stone, "water", this.water));
+        this.world = new MemoryWorld(context, "test", new Vector3i(16, 16, 16), new Vector3i(4, 2, 4));
+
+        this.pending = Lists.newArrayList();
+        this.undo = mock(UndoQueue.class);
+        this.owner = mock(ChangeQueueOwner.class);
+        when(this.owner.getPendingChanges()).thenReturn(this.pending);
+        when(this.owner.getUndoHistory()).thenReturn(this.undo);
+    }
+
+    private ShapeChangeQueue cuboid(World w, int x, int y, int z, int size, Material material)
+    {
+        ComplexMaterialShape shape = new ComplexMaterialShape(new ComplexShape(size, size, size), this.air);
+        for (int i = 0; i < size; i++)
+        {
+            for (int j = 0; j < size; j++)
+            {
+                for (int k = 0; k < size; k++)
+                {
+                    shape.setMaterial(i, j, k, false, material);
+                }
+            }
+        }
+        return new ShapeChangeQueue(this.owner, new CommonLocation(w, x, y, z), shape);
+    }
+
+    @Test
+    public void testNoPending()
+    {
+        assertSame(this.world, PendingChangeWorld.overlay(this.world, Collections.singleton(this.owner)));
+    }
+
+    @Test
+    public void testLayers()
+    {
+        this.pending.add(cuboid(this.world, 14, 5, 10, 3, this.stone));
+        this.pending.add(cuboid(this.world, 15, 6, 11, 1, this.water));
+        World overlay = PendingChangeWorld.overlay(this.world, Collections.singleton(this.owner));
+        assertEquals(2, ((PendingChangeWorld) overlay).getPendingQueueCount());
+
+        assertSame(this.air, this.world.getBlock(14, 5, 10).get().getMaterial());
+        assertSame(this.stone, overlay.getBlock(14, 5, 10).get().getMaterial());
+        assertSame(this.stone, overlay.getBlock(16, 7, 12).get().getMaterial());
+        assertSame(this.water, overlay.getBlock(15, 6, 11).get().getMaterial());
+        assertSame(this.air, overlay.getBlock(17, 6, 11).get().getMaterial());
+        assertSame(overlay, overlay.getBlock(15, 6, 11).get().getWorld());
+        assertFalse(((PendingChangeWorld) overlay).getPendingMaterial(13, 5, 10).isPresent());
+
+        final int[] count = new int[3];
+        overlay.readRegion(new Vector3i(10, 5, 10), new Vector3i(20, 7, 12), new MaterialSink()
+        {
+
+            @Override
+            public void accept(int x, int y, int z, Material material)
+            {
+                count[material == PendingChangeWorldTest.this.stone ? 0 : material == PendingChangeWorldTest.this.water ? 1 : 2]++;
+            }
+
+        });
+        assertEquals(26, count[0]);
+        assertEquals(1, count[1]);
+        assertEquals(11 * 3 * 3 - 27, count[2]);
+    }
+
+    @Test
+    public void testUndoReadsPending()
+    {
+        this.pending.add(cuboid(this.world, 14, 5, 10, 3, this.stone));
+        World overlay = PendingChangeWorld.overlay(this.world, Collections.singleton(this.owner));
+        ShapeChangeQueue next = cuboid(overlay, 16, 7, 12, 2, this.water);
+        assertSame(this.world, next.getWorld());
+        next.flush();
+
+        ArgumentCaptor<ChangeQueue> reverse = ArgumentCaptor.forClass(ChangeQueue.class);
+        verify(this.undo).addHistory(same((ChangeQueue) next), reverse.capture());
+        verify(this.owner).addPending(next);
+        assertSame(this.world, reverse.getValue().getWorld());
+        assertSame(this.stone, reverse.getValue().getPendingMaterial(16, 7, 12).get());
+        assertSame(this.air, reverse.getValue().getPendingMaterial(17, 8, 13).get());
+        assertFalse(reverse.getValue().getPendingMaterial(15, 7, 12).isPresent());
+    }
+
+    @Test
+    public void testHeightmapIncludesPending()
+    {
+        this.pending.add(cuboid(this.world, 14, 5, 10, 3, this.stone));
+        World overlay = PendingChangeWorld.overlay(this.world, Collections.singleton(this.owner));
+        assertEquals(this.world.getHeightmap().getEmptyHeight(), this.world.getHeightmap().getHighestNonAir(15, 11));
+        assertEquals(7, overlay.getHeightmap().getHighestNonAir(15, 11));
+        assertEquals(overlay.getHeightmap().getEmptyHeight(), overlay.getHeightmap().getHighestNonAir(13, 11));
+    }
+
+}
@@ -0,0 +1,109 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 The Voxel Plugineering Team
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.voxelplugineering.voxelsniper;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import com.voxelplugineering.voxelsniper.shape.ComplexShape;
+import com.voxelplugineering.voxelsniper.shape.PrimativeComplexShapeFactory;
+import com.voxelplugineering.voxelsniper.util.Direction;
+
+/**
+ * A set of tests for the {@link PrimativeComplexShapeFactory}.
+ */
+@SuppressWarnings({ "checkstyle:javadocmethod", "javadoc" })
+public class PrimativeShapeFactoryTest
+{
+
+    @Test
+    public void testEllipsoid()
+    {
+        double[] radii = { 0.5, 1, 2.7, 4, 6.5 };
+        for (double rx : radii)
+        {
+            for (double ry : radii)
+            {
+                for (double rz : radii)
+                {
+                    assertEllipsoid(PrimativeComplexShapeFactory.createEllipsoid(rx, ry, rz), rx, ry, rz);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testLargeSphere()
+    {
+        // large enough to be rasterized in parallel slabs
+        assertEllipsoid(PrimativeComplexShapeFactory.createSphere(40.5), 40.5, 40.5, 40.5);
+    }
+
+    @Test
+    public void testCylinder()
+    {
+        ComplexShape up = PrimativeComplexShapeFactory.createEllipticalCylinder(3.5, 2, 4, Direction.UP);
+        ComplexShape south = PrimativeComplexShapeFactory.createEllipticalCylinder(3.5, 2, 4, Direction.SOUTH);
+        ComplexShape east = PrimativeComplexShapeFactory.createEllipticalCylinder(3.5, 2, 4, Direction.EAST);
+        assertEquals(4, up.getHeight());
+        assertEquals(4, south.getLength());
+        assertEquals(4, east.getWidth());
+        for (int h = 0; h < 4; h++)
+        {
+            for (int a = -4; a <= 4; a++)
+            {
+                for (int b = -2; b <= 2; b++)
+                {
+                    boolean expected = (a / 3.5) * (a / 3.5) + (b / 2.0) * (b / 2.0) <= 1;
+                    assertEquals(expected, up.get(a + 4, h, b + 2, false));
+                    assertEquals(expected, south.get(a + 4, b + 2, h, false));
+                    assertEquals(expected, east.get(h, a + 4, b + 2, false));
+                }
+            }
+        }
+    }
+
+    private static void assertEllipsoid(ComplexShape shape, double rx, double ry, double rz)
+    {
+        int cx = (int) Math.ceil(rx);
+        int cy = (int) Math.ceil(ry);
+        int cz = (int) Math.ceil(rz);
+        for (int x = -cx; x <= cx; x++)
+        {
+            for (int y = -cy; y <= cy; y++)
+            {
+                for (int z = -cz; z <= cz; z++)
+                {
+                    double fx = Math.abs(x) / rx;
+                    double fy = Math.abs(y) / ry;
+                    double fz = Math.abs(z) / rz;
+                    boolean expected = fx * fx + fy * fy + fz * fz <= 1;
+                    assertEquals(expected, shape.get(x + cx, y + cy, z + cz, false));
+                }
+            }
+        }
+    }
+
+}
@@ -0,0 +1,116 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 The Voxel Plugineering Team
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.voxelplugineering.voxelsniper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.voxelplugineering.voxelsniper.shape.Shape;
+import com.voxelplugineering.voxelsniper.shape.ShapeCache;
+import com.voxelplugineering.voxelsniper.shape.csg.CylinderShape;
+import com.voxelplugineering.voxelsniper.shape.csg.EllipsoidShape;
+import com.voxelplugineering.voxelsniper.util.Direction;
+import com.voxelplugineering.voxelsniper.util.math.Vector3i;
+
+/**
+ * A set of tests for the {@link ShapeCache}.
+ */
+@SuppressWarnings({ "checkstyle:javadocmethod", "javadoc" })
+public class ShapeCacheTest
+{
+
+    @Before
+    public void setup()
+    {
+        ShapeCache.invalidateAll();
+    }
+
+    @Test
+    public void testMatchesPrimitive()
+    {
+        CylinderShape primitive = new CylinderShape(3.5, 4, 3.5, new Vector3i(3, 0, 3), Direction.EAST);
+        Shape cached = ShapeCache.get(primitive);
+        assertEquals(primitive.getWidth(), cached.getWidth());
+        assertEquals(primitive.getHeight(), cached.getHeight());
+        assertEquals(primitive.getLength(), cached.getLength());
+        assertEquals(primitive.getOrigin(), cached.getOrigin());
+        for (int x = 0; x < primitive.getWidth(); x++)
+        {
+            for (int y = 0; y < primitive.getHeight(); y++)
+            {
+                for (int z = 0; z < primitive.getLength(); z++)
+                {
+                    assertEquals(primitive.get(x, y, z, false), cached.get(x, y, z, false));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testHits()
+    {
+        long hits = ShapeCache.getStats().hitCount();
+        long misses = ShapeCache.getStats().missCount();
+        Shape first = ShapeCache.get(new EllipsoidShape(4, 4, 4, new Vector3i(4, 4, 4)));
+        Shape second = ShapeCache.get(new EllipsoidShape(4, 4, 4, new Vector3i(4, 4, 4)));
+        ShapeCache.get(new EllipsoidShape(4, 4, 4, new Vector3i(4, 3, 4)));
+        assertSame(first, second);
+        assertEquals(hits + 1, ShapeCache.getStats().hitCount());
+        assertEquals(misses + 2, ShapeCache.getStats().missCount());
+        assertEquals(2, ShapeCache.size());
+    }
+
+    @Test
+    public void testLargeShapes()
+    {
+        // larger than a quarter of the bound, but still cached
+        Shape first = ShapeCache.get(new EllipsoidShape(600, 2, 600, new Vector3i(600, 2, 600)));
+        assertSame(first, ShapeCache.get(new EllipsoidShape(600, 2, 600, new Vector3i(600, 2, 600))));
+        assertEquals(1, ShapeCache.size());
+
+        // larger than half of the bound, rasterized without being cached
+        Shape large = ShapeCache.get(new EllipsoidShape(800, 2, 800, new Vector3i(800, 2, 800)));
+        assertEquals(1601, large.getWidth());
+        assertTrue(large.get(800, 2, 800, false));
+        assertFalse(large.isMutable());
+        assertEquals(1, ShapeCache.size());
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testReadOnly()
+    {
+        Shape shape = ShapeCache.get(new EllipsoidShape(2, 2, 2, new Vector3i(2, 2, 2)));
+        assertFalse(shape.isMutable());
+        Shape copy = shape.clone();
+        copy.unset(2, 2, 2, false);
+        assertFalse(copy.get(2, 2, 2, false));
+        shape.unset(2, 2, 2, false);
+    }
+
+}
@@ -0,0 +1,325 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 The Voxel Plugineering Team
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.voxelplugineering.voxelsniper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.same;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.LinkedList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.voxelplugineering.voxelsniper.shape.ComplexMaterialShape;
+import com.voxelplugineering.voxelsniper.shape.ComplexShape;
+import com.voxelplugineering.voxelsniper.util.Context;
+import com.voxelplugineering.voxelsniper.util.ContextTestUtil;
+import com.voxelplugineering.voxelsniper.util.math.Vector3i;
+import com.voxelplugineering.voxelsniper.world.CommonLocation;
+import com.voxelplugineering.voxelsniper.world.WorldSnapshot;
+import com.voxelplugineering.voxelsniper.world.material.Material;
+import com.voxelplugineering.voxelsniper.world.memory.MemoryWorld;
+import com.voxelplugineering.voxelsniper.world.queue.ChangeOrder;
+import com.voxelplugineering.voxelsniper.world.queue.ChangeQueue;
+import com.voxelplugineering.voxelsniper.world.queue.ChangeQueueOwner;
+import com.voxelplugineering.voxelsniper.world.queue.DiffChangeQueue;
+import com.voxelplugineering.voxelsniper.world.queue.ShapeChangeQueue;
+import com.voxelplugineering.voxelsniper.world.queue.ShapeDiff;
+import com.voxelplugineering.voxelsniper.world.queue.UndoQueue;
+
+/**
+ * A set of tests for the {@link ShapeDiff}.
+ */
+@SuppressWarnings({ "checkstyle:javadocmethod", "javadoc" })
+public class ShapeDiffTest
+{
+
+    private MemoryWorld world;
+    private Material air;
+    private Material stone;
+    private Material water;
+    private ChangeQueueOwner owner;
+    private UndoQueue undo;
+    private List<ChangeQueue> pending;
+    private ComplexMaterialShape shape;
+
+    @Before
+    public void setup()
+    {
+        this.air = mock(Material.class);
+        this.stone = mock(Material.class);
+        this.water = mock(Material.class);
+        when(this.water.isLiquid()).thenReturn(true);
+        Context context = ContextTestUtil.createWithMaterials(ImmutableMap.of("air", this.air, "stone", this.stone, "water", this.water));
+        this.world = new MemoryWorld(context, "test", new Vector3i(16, 16, 16), new Vector3i(4, 2, 4));
+
+        this.pending = Lists.newArrayList();
+        this.undo = mock(UndoQueue.class);
+        this.owner = mock(ChangeQueueOwner.class);
+        when(this.owner.getPendingChanges()).thenReturn(this.pending);
+        when(this.owner.getUndoHistory()).thenReturn(this.undo);
+
+        this.shape = new ComplexMaterialShape(new ComplexShape(3, 3, 3), this.air);
+        for (int i = 0; i < 3; i++)
+        {
+            for (int j = 0; j < 3; j++)
+            {
+                for (int k = 0; k < 3; k++)
+                {
+                    this.shape.setMaterial(i, j, k, false, this.stone);
+                }
+            }
+        }
+        this.world.setBlock(this.stone, 2, 2, 2);
+        this.world.setBlock(this.water, 3, 4, 3);
+    }
+
+    private ShapeDiff compute()
+    {
+        WorldSnapshot snapshot = WorldSnapshot.capture(this.world, new CommonLocation(this.world, 2, 2, 2), this.shape.getShape());
+        return ShapeDiff.compute(snapshot, new Vector3i(2, 2, 2), this.shape);
+    }
+
+    @Test
+    public void testSkipsUnchanged()
+    {
+        ShapeDiff diff = compute();
+        assertEquals(26, diff.size());
+        assertEquals(27, diff.getVolume());
+        assertFalse(diff.getPendingMaterial(2, 2, 2).isPresent());
+        assertSame(this.stone, diff.getPendingMaterial(3, 3, 3).get());
+        assertFalse(diff.getPendingMaterial(5, 3, 3).isPresent());
+    }
+
+    @Test
+    public void testOrder()
+    {
+        ShapeDiff diff = compute();
+        assertEquals(1, diff.getBreakableCount());
+        assertEquals(3, diff.getX(0));
+        assertEquals(4, diff.getY(0));
+        assertEquals(3, diff.getZ(0));
+        assertSame(this.water, diff.getOldMaterial(0));
+        assertSame(this.stone, diff.getPendingMaterial(3, 4, 3).get());
+        for (int i = 2; i < diff.size(); i++)
+        {
+            assertTrue(diff.getY(i - 1) <= diff.getY(i));
+        }
+        assertEquals(2, diff.getY(1));
+        assertEquals(4, diff.getY(diff.size() - 1));
+    }
+
+    private ComplexMaterialShape fill(int width, int height, int length)
+    {
+        ComplexMaterialShape shape = new ComplexMaterialShape(new ComplexShape(width, height, length), this.air);
+        for (int i = 0; i < width; i++)
+        {
+            for (int j = 0; j < height; j++)
+            {
+                for (int k = 0; k < length; k++)
+                {
+                    shape.setMaterial(i, j, k, false, this.stone);
+                }
+            }
+        }
+        return shape;
+    }
+
+    private ShapeDiff compute(int x, int y, int z, ComplexMaterialShape shape, ChangeOrder order)
+    {
+        WorldSnapshot snapshot = WorldSnapshot.capture(this.world, new CommonLocation(this.world, x, y, z), shape.getShape());
+        return ShapeDiff.compute(snapshot, new Vector3i(x, y, z), shape, order, this.world.getChunkSize());
+    }
+
+    @Test
+    public void testChunkOrder()
+    {
+        ShapeDiff diff = compute(13, 8, 0, fill(6, 1, 2), ChangeOrder.CHUNK);
+        assertEquals(12, diff.size());
+        for (int i = 0; i < 6; i++)
+        {
+            assertTrue(diff.getX(i) < 16);
+            assertTrue(diff.getX(i + 6) >= 16);
+        }
+        assertEquals(13, diff.getX(0));
+        assertEquals(0, diff.getZ(0));
+        assertEquals(13, diff.getX(3));
+        assertEquals(1, diff.getZ(3));
+        assertEquals(6, diff.getBatchEnd(0, 8));
+        assertEquals(4, diff.getBatchEnd(0, 4));
+        assertEquals(12, diff.getBatchEnd(6, 8));
+        for (int i = 0; i < diff.size(); i++)
+        {
+            assertSame(this.stone, diff.getPendingMaterial(diff.getX(i), diff.getY(i), diff.getZ(i)).get());
+        }
+    }
+
+    @Test
+    public void testMortonOrder()
+    {
+        ShapeDiff diff = compute(0, 8, 0, fill(4, 1, 4), ChangeOrder.MORTON);
+        assertEquals(16, diff.size());
+        assertEquals(1, diff.getX(1));
+        assertEquals(0, diff.getZ(1));
+        assertEquals(0, diff.getX(2));
+        assertEquals(1, diff.getZ(2));
+        assertEquals(2, diff.getX(4));
+        assertEquals(0, diff.getZ(4));
+        assertSame(this.stone, diff.getPendingMaterial(3, 8, 3).get());
+        assertFalse(diff.getPendingMaterial(3, 9, 3).isPresent());
+    }
+
+    @Test
+    public void testChunkedSpans()
+    {
+        ShapeChangeQueue queue = new ShapeChangeQueue(this.owner, new CommonLocation(this.world, 13, 8, 0), fill(6, 1, 2));
+        queue.flush();
+        // the first pass only replaces breakable materials, of which there are none
+        assertEquals(0, queue.perform(8));
+        // the first chunk column holds six changes, so a budget of eight stops after it
+        assertEquals(6, queue.perform(8));
+        assertSame(this.stone, this.world.getBlock(15, 8, 1).get().getMaterial());
+        assertSame(this.air, this.world.getBlock(16, 8, 0).get().getMaterial());
+        assertEquals(6, queue.perform(8));
+        assertTrue(queue.isFinished());
+    }
+
+    @Test
+    public void testReplayAndUndo()
+    {
+        ShapeChangeQueue queue = new ShapeChangeQueue(this.owner, new CommonLocation(this.world, 2, 2, 2), this.shape).diff();
+        assertTrue(queue.getDiff().isPresent());
+        queue.flush();
+
+        ArgumentCaptor<ChangeQueue> reverse = ArgumentCaptor.forClass(ChangeQueue.class);
+        verify(this.undo).addHistory(same((ChangeQueue) queue), reverse.capture());
+        verify(this.owner).addPending(queue);
+        assertTrue(reverse.getValue() instanceof DiffChangeQueue);
+
+        // the breakable change is its own run, so the first tick stops on its boundary
+        assertEquals(1, queue.perform(10));
+        assertFalse(queue.isFinished());
+        assertSame(this.stone, this.world.getBlock(3, 4, 3).get().getMaterial());
+        // a chunk larger than the budget is split
+        assertEquals(10, queue.perform(10));
+        assertEquals(15, queue.perform(100));
+        assertTrue(queue.isFinished());
+        assertSame(this.stone, this.world.getBlock(4, 4, 4).get().getMaterial());
+
+        ChangeQueue undo = reverse.getValue();
+        assertEquals(26, undo.perform(100));
+        assertTrue(undo.isFinished());
+        assertSame(this.water, this.world.getBlock(3, 4, 3).get().getMaterial());
+        assertSame(this.stone, this.world.getBlock(2, 2, 2).get().getMaterial());
+        assertSame(this.air, this.world.getBlock(4, 4, 4).get().getMaterial());
+    }
+
+    private ShapeDiff waterCube()
+    {
+        ComplexMaterialShape cube = new ComplexMaterialShape(new ComplexShape(2, 2, 2), this.air);
+        for (int i = 0; i < 2; i++)
+        {
+            for (int j = 0; j < 2; j++)
+            {
+                for (int k = 0; k < 2; k++)
+                {
+                    cube.setMaterial(i, j, k, false, this.water);
+                }
+            }
+        }
+        WorldSnapshot snapshot = WorldSnapshot.capture(this.world, new CommonLocation(this.world, 4, 4, 4), cube.getShape());
+        return ShapeDiff.compute(snapshot, new Vector3i(4, 4, 4), cube);
+    }
+
+    @Test
+    public void testMerge()
+    {
+        ShapeDiff merged = ShapeDiff.merge(Arrays.asList(compute(), waterCube()));
+        // 26 changes and 8 changes overlapping at a single position
+        assertEquals(33, merged.size());
+        assertEquals(64, merged.getVolume());
+        assertEquals(1, merged.getBreakableCount());
+        assertSame(this.water, merged.getPendingMaterial(4, 4, 4).get());
+        assertSame(this.water, merged.getPendingMaterial(5, 5, 5).get());
+        assertSame(this.stone, merged.getPendingMaterial(3, 3, 3).get());
+        assertFalse(merged.getPendingMaterial(2, 2, 2).isPresent());
+        for (int i = 0; i < merged.size(); i++)
+        {
+            if (merged.getX(i) == 4 && merged.getY(i) == 4 && merged.getZ(i) == 4)
+            {
+                // the old material is the one before the first write
+                assertSame(this.air, merged.getOldMaterial(i));
+            }
+        }
+
+        // a diff followed by its reverse leaves nothing to change
+        ShapeDiff diff = compute();
+        assertEquals(0, ShapeDiff.merge(Arrays.asList(diff, diff.invert())).size());
+    }
+
+    @Test
+    public void testCoalesce()
+    {
+        Deque<ChangeQueue> queues = new LinkedList<ChangeQueue>();
+        ChangeQueue started = new DiffChangeQueue(this.owner, this.world, compute());
+        ShapeChangeQueue first = new ShapeChangeQueue(this.owner, new CommonLocation(this.world, 2, 2, 2), this.shape).diff();
+        ChangeQueue second = new DiffChangeQueue(this.owner, this.world, waterCube());
+        ChangeQueue plain = new ShapeChangeQueue(this.owner, new CommonLocation(this.world, 8, 8, 8), this.shape);
+        started.perform(1);
+        queues.add(started);
+        queues.add(first);
+        queues.add(second);
+        queues.add(plain);
+
+        assertEquals(2, DiffChangeQueue.coalesce(queues));
+        assertEquals(3, queues.size());
+        assertSame(started, queues.pollFirst());
+        ChangeQueue merged = queues.pollFirst();
+        assertSame(plain, queues.pollFirst());
+        assertEquals(33, ((DiffChangeQueue) merged).getDiff().size());
+        // the merged queues are left untouched for their undo history
+        assertEquals(26, first.getDiff().get().size());
+
+        assertEquals(33, merged.perform(100));
+        assertTrue(merged.isFinished());
+        assertSame(this.water, this.world.getBlock(4, 4, 4).get().getMaterial());
+        assertSame(this.stone, this.world.getBlock(3, 4, 3).get().getMaterial());
+
+        queues.add(merged);
+        assertEquals(0, DiffChangeQueue.coalesce(queues));
+    }
+
+}
@@ -0,0 +1,118 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 The Voxel Plugineering Team
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.voxelplugineering.voxelsniper;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import com.voxelplugineering.voxelsniper.shape.ComplexShape;
+import com.voxelplugineering.voxelsniper.shape.Shape;
+import com.voxelplugineering.voxelsniper.shape.SpanBuffer;
+import com.voxelplugineering.voxelsniper.shape.SparseOctreeShape;
+import com.voxelplugineering.voxelsniper.shape.Spans;
+import com.voxelplugineering.voxelsniper.shape.csg.CuboidShape;
+import com.voxelplugineering.voxelsniper.shape.csg.CylinderShape;
+import com.voxelplugineering.voxelsniper.shape.csg.EllipsoidShape;
+import com.voxelplugineering.voxelsniper.util.Direction;
+import com.voxelplugineering.voxelsniper.util.math.Vector3i;
+
+/**
+ * A set of tests for the span iteration of the various {@link Shape}s.
+ */
+@SuppressWarnings({ "checkstyle:javadocmethod", "javadoc" })
+public class ShapeSpanTest
+{
+
+    @Test
+    public void testCuboid()
+    {
+        assertSpansMatch(new CuboidShape(3, 4, 5, new Vector3i(1, 1, 1)));
+    }
+
+    @Test
+    public void testEllipsoid()
+    {
+        assertSpansMatch(new EllipsoidShape(5.5, 3, 7, new Vector3i(5, 3, 7)));
+        assertSpansMatch(new EllipsoidShape(4, 4, 4, new Vector3i(2, 6, 4)));
+        assertSpansMatch(new EllipsoidShape(0, 0, 0, new Vector3i(0, 0, 0)));
+    }
+
+    @Test
+    public void testCylinder()
+    {
+        assertSpansMatch(new CylinderShape(4, 6, 3, new Vector3i(4, 0, 3)));
+        assertSpansMatch(new CylinderShape(4, 6, 3, new Vector3i(0, 4, 3), Direction.EAST));
+        assertSpansMatch(new CylinderShape(4, 6, 3, new Vector3i(4, 3, 0), Direction.SOUTH));
+    }
+
+    @Test
+    public void testComplexShape()
+    {
+        ComplexShape shape = new ComplexShape(3, 200, 2);
+        for (int y = 10; y < 140; y++)
+        {
+            shape.set(1, y, 1, false);
+        }
+        shape.set(0, 0, 0, false);
+        shape.set(0, 63, 0, false);
+        shape.set(0, 64, 0, false);
+        shape.set(2, 199, 1, false);
+        assertSpansMatch(shape);
+        assertEquals(shape.cardinality(), SpanBuffer.of(shape).getVolume());
+    }
+
+    @Test
+    public void testSparseOctree()
+    {
+        assertSpansMatch(new SparseOctreeShape(new EllipsoidShape(9, 6, 9, new Vector3i(9, 6, 9))));
+    }
+
+    private static void assertSpansMatch(Shape shape)
+    {
+        ComplexShape expected = new ComplexShape(shape.getWidth(), shape.getHeight(), shape.getLength());
+        ComplexShape actual = new ComplexShape(shape.getWidth(), shape.getHeight(), shape.getLength());
+        SpanBuffer scanned = new SpanBuffer();
+        Spans.scan(shape, scanned);
+        fill(expected, scanned);
+        SpanBuffer spans = SpanBuffer.of(shape);
+        fill(actual, spans);
+        assertEquals(scanned.getVolume(), spans.getVolume());
+        assertEquals(expected.cardinality(), actual.cardinality());
+        expected.xor(actual);
+        assertEquals(0, expected.cardinality());
+    }
+
+    private static void fill(ComplexShape shape, SpanBuffer spans)
+    {
+        for (int i = 0; i < spans.size(); i++)
+        {
+            for (int y = spans.getMinY(i); y < spans.getMaxY(i); y++)
+            {
+                shape.set(spans.getX(i), y, spans.getZ(i), false);
+            }
+        }
+    }
+
+}
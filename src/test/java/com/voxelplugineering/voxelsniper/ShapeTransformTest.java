@@ -0,0 +1,197 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 The Voxel Plugineering Team
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.voxelplugineering.voxelsniper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.voxelplugineering.voxelsniper.shape.ComplexMaterialShape;
+import com.voxelplugineering.voxelsniper.shape.ComplexShape;
+import com.voxelplugineering.voxelsniper.shape.MaterialShape;
+import com.voxelplugineering.voxelsniper.shape.Shape;
+import com.voxelplugineering.voxelsniper.shape.ShapeTransform;
+import com.voxelplugineering.voxelsniper.shape.TransformedMaterialShape;
+import com.voxelplugineering.voxelsniper.shape.TransformedShape;
+import com.voxelplugineering.voxelsniper.util.math.Vector3i;
+import com.voxelplugineering.voxelsniper.world.material.Material;
+
+/**
+ * A set of tests for the {@link ShapeTransform} views.
+ */
+@SuppressWarnings({ "checkstyle:javadocmethod", "javadoc" })
+public class ShapeTransformTest
+{
+
+    private static final ShapeTransform[] TRANSFORMS = {
+        ShapeTransform.IDENTITY,
+        ShapeTransform.IDENTITY.rotateY(1),
+        ShapeTransform.IDENTITY.rotateY(2).mirror(0),
+        ShapeTransform.IDENTITY.rotateX(1),
+        ShapeTransform.IDENTITY.rotateZ(-1).scale(2),
+        ShapeTransform.IDENTITY.mirror(1).rotateX(3).translate(new Vector3i(1, 2, 3)),
+    };
+
+    private static ComplexShape random(int w, int h, int l, long seed)
+    {
+        Random random = new Random(seed);
+        ComplexShape shape = new ComplexShape(w, h, l, new Vector3i(1, 2, 3));
+        for (int x = 0; x < w; x++)
+        {
+            for (int y = 0; y < h; y++)
+            {
+                for (int z = 0; z < l; z++)
+                {
+                    if (random.nextBoolean())
+                    {
+                        shape.set(x, y, z, false);
+                    }
+                }
+            }
+        }
+        return shape;
+    }
+
+    private static void assertShapeEquals(Shape expected, Shape actual)
+    {
+        assertEquals(expected.getWidth(), actual.getWidth());
+        assertEquals(expected.getHeight(), actual.getHeight());
+        assertEquals(expected.getLength(), actual.getLength());
+        assertEquals(expected.getOrigin(), actual.getOrigin());
+        for (int x = 0; x < expected.getWidth(); x++)
+        {
+            for (int y = 0; y < expected.getHeight(); y++)
+            {
+                for (int z = 0; z < expected.getLength(); z++)
+                {
+                    assertEquals(expected.get(x, y, z, false), actual.get(x, y, z, false));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testRotateAboutOrigin()
+    {
+        ComplexShape shape = new ComplexShape(4, 3, 5, new Vector3i(1, 2, 3));
+        shape.set(2, 2, 3, false);
+        TransformedShape view = ShapeTransform.IDENTITY.rotateY(1).apply(shape);
+        assertEquals(5, view.getWidth());
+        assertEquals(3, view.getHeight());
+        assertEquals(4, view.getLength());
+        // relative (1, 0, 0) is turned from x towards minus z
+        assertTrue(view.get(0, 0, -1, true));
+        assertShapeEquals(shape, ShapeTransform.IDENTITY.rotateY(4).apply(shape));
+        assertShapeEquals(shape, ShapeTransform.IDENTITY.rotateX(1).rotateX(-1).apply(shape));
+    }
+
+    @Test
+    public void testScale()
+    {
+        ComplexShape shape = new ComplexShape(2, 2, 2, Vector3i.ZERO);
+        shape.set(1, 0, 1, false);
+        TransformedShape view = ShapeTransform.IDENTITY.scale(3).apply(shape);
+        assertEquals(6, view.getWidth());
+        for (int x = 0; x < 6; x++)
+        {
+            for (int y = 0; y < 6; y++)
+            {
+                for (int z = 0; z < 6; z++)
+                {
+                    assertEquals(x >= 3 && y < 3 && z >= 3, view.get(x, y, z, false));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testSpansAndMaterialize()
+    {
+        ComplexShape shape = random(5, 7, 3, 1);
+        for (ShapeTransform transform : TRANSFORMS)
+        {
+            TransformedShape view = transform.apply(shape);
+            assertShapeEquals(view, view.materialize());
+            assertShapeEquals(view, new ComplexShape(view));
+        }
+    }
+
+    @Test
+    public void testMaterialView()
+    {
+        Material air = mock(Material.class);
+        Material[] materials = { mock(Material.class), mock(Material.class), mock(Material.class) };
+        ComplexShape shape = random(20, 18, 17, 2);
+        ComplexMaterialShape source = new ComplexMaterialShape(shape, air);
+        Random random = new Random(3);
+        for (int x = 0; x < 20; x++)
+        {
+            for (int y = 0; y < 18; y++)
+            {
+                for (int z = 0; z < 17; z++)
+                {
+                    if (shape.get(x, y, z, false))
+                    {
+                        source.setMaterial(x, y, z, false, materials[random.nextInt(3)]);
+                    }
+                }
+            }
+        }
+        for (ShapeTransform transform : TRANSFORMS)
+        {
+            TransformedMaterialShape view = transform.apply(source);
+            ComplexMaterialShape copy = view.materialize();
+            assertShapeEquals(view, copy);
+            Material[] palette = view.getPalette();
+            Material[] copyPalette = copy.getPalette();
+            int[] ids = new int[view.getWidth() * view.getHeight() * view.getLength()];
+            view.copyIds(ids, 0, 0, 0, view.getWidth(), view.getHeight(), view.getLength());
+            int i = 0;
+            for (int y = 0; y < view.getHeight(); y++)
+            {
+                for (int z = 0; z < view.getLength(); z++)
+                {
+                    for (int x = 0; x < view.getWidth(); x++, i++)
+                    {
+                        int id = view.getMaterialId(x, y, z);
+                        assertEquals(id, ids[i]);
+                        if (id == MaterialShape.UNSET_ID)
+                        {
+                            assertEquals(MaterialShape.UNSET_ID, copy.getMaterialId(x, y, z));
+                        } else
+                        {
+                            assertEquals(palette[id], copyPalette[copy.getMaterialId(x, y, z)]);
+                            assertEquals(palette[id], view.getMaterial(x, y, z, false).get());
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+}
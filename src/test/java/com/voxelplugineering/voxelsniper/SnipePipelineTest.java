@@ -0,0 +1,349 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 The Voxel Plugineering Team
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.voxelplugineering.voxelsniper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.voxelplugineering.voxelsniper.brush.SnipePipeline;
+import com.voxelplugineering.voxelsniper.entity.Player;
+import com.voxelplugineering.voxelsniper.shape.ComplexMaterialShape;
+import com.voxelplugineering.voxelsniper.shape.ComplexShape;
+import com.voxelplugineering.voxelsniper.util.Context;
+import com.voxelplugineering.voxelsniper.util.ContextTestUtil;
+import com.voxelplugineering.voxelsniper.util.TickExecutor;
+import com.voxelplugineering.voxelsniper.util.math.Vector3i;
+import com.voxelplugineering.voxelsniper.world.CommonLocation;
+import com.voxelplugineering.voxelsniper.world.MaterialSink;
+import com.voxelplugineering.voxelsniper.world.World;
+import com.voxelplugineering.voxelsniper.world.material.Material;
+import com.voxelplugineering.voxelsniper.world.memory.MemoryWorld;
+import com.voxelplugineering.voxelsniper.world.queue.ChangeQueue;
+import com.voxelplugineering.voxelsniper.world.queue.ShapeChangeQueue;
+import com.voxelplugineering.voxelsniper.world.queue.StagedWorld;
+import com.voxelplugineering.voxelsniper.world.queue.UndoQueue;
+
+/**
+ * A set of tests for the {@link SnipePipeline}.
+ */
+@SuppressWarnings({ "checkstyle:javadocmethod", "javadoc" })
+public class SnipePipelineTest
+{
+
+    private Context context;
+    private MemoryWorld world;
+    private Material air;
+    private Material stone;
+    private Material water;
+    private Player player;
+    private UndoQueue undo;
+    private TickExecutor tick;
+    private SnipePipeline pipeline;
+
+    @Before
+    public void setup()
+    {
+        this.air = mock(Material.class);
+        this.stone = mock(Material.class);
+        this.water = mock(Material.class);
+        Context context = ContextTestUtil.createWithMaterials(ImmutableMap.of("air", this.air, "stone", this.stone, "water", this.water));
+        this.context = context;
+        this.world = new MemoryWorld(context, "test", new Vector3i(16, 16, 16), new Vector3i(4, 2, 4));
+
+        this.undo = mock(UndoQueue.class);
+        this.player = mock(Player.class);
+        when(this.player.getPendingChanges()).thenReturn(Lists.<ChangeQueue> newArrayList());
+        when(this.player.getUndoHistory()).thenReturn(this.undo);
+        this.tick = new TickExecutor();
+        this.pipeline = new SnipePipeline(this.tick, 1, "SnipePipelineTest-");
+    }
+
+    @After
+    public void teardown()
+    {
+        this.pipeline.shutdown();
+    }
+
+    private ShapeChangeQueue cuboid(World w, int x, int y, int z, int size, Material material)
+    {
+        ComplexMaterialShape shape = new ComplexMaterialShape(new ComplexShape(size, size, size), this.air);
+        for (int i = 0; i < size; i++)
+        {
+            for (int j = 0; j < size; j++)
+            {
+                for (int k = 0; k < size; k++)
+                {
+                    shape.setMaterial(i, j, k, false, material);
+                }
+            }
+        }
+        return new ShapeChangeQueue(this.player, new CommonLocation(w, x, y, z), shape);
+    }
+
+    /**
+     * Runs the tick executor on this thread until no snipes remain in flight.
+     */
+    private void drain() throws InterruptedException
+    {
+        long timeout = System.currentTimeMillis() + 5000;
+        while (this.pipeline.getActiveSnipes() > 0 || this.tick.getQueuedTaskCount() > 0)
+        {
+            assertTrue("Timed out waiting for snipes", System.currentTimeMillis() < timeout);
+            this.tick.run();
+            Thread.sleep(1);
+        }
+    }
+
+    @Test
+    public void testStagedUntilCommit() throws InterruptedException
+    {
+        this.world.setBlock(this.stone, 2, 2, 2);
+        this.world.setBlock(this.stone, 13, 13, 13);
+        SnipePipeline.Snipe snipe = this.pipeline.begin(this.player);
+        final StagedWorld staged = snipe.createWorld(this.world, this.tick);
+        staged.prefetch(new Vector3i(0, 0, 0), new Vector3i(7, 7, 7));
+        assertEquals(1, staged.getSnapshotCount());
+
+        final AtomicReference<Material> near = new AtomicReference<Material>();
+        final AtomicReference<Material> far = new AtomicReference<Material>();
+        final AtomicInteger stagedCount = new AtomicInteger(-1);
+        final AtomicInteger pendingAtCommit = new AtomicInteger(-1);
+        this.pipeline.evaluate(snipe, new Runnable()
+        {
+
+            @Override
+            public void run()
+            {
+                near.set(staged.getBlock(2, 2, 2).get().getMaterial());
+                far.set(staged.getBlock(13, 13, 13).get().getMaterial());
+                cuboid(staged, 4, 4, 4, 2, SnipePipelineTest.this.water).flush();
+                stagedCount.set(staged.getStagedChanges().size());
+            }
+
+        }, new Runnable()
+        {
+
+            @Override
+            public void run()
+            {
+                pendingAtCommit.set(staged.getStagedChanges().size());
+            }
+
+        });
+        drain();
+
+        assertSame(this.stone, near.get());
+        assertSame(this.stone, far.get());
+        // the far read captured the chunk holding it through the tick thread
+        assertEquals(2, staged.getSnapshotCount());
+        assertEquals(1, stagedCount.get());
+        assertEquals(0, pendingAtCommit.get());
+        verify(this.player).addPending(any(ShapeChangeQueue.class));
+        verify(this.undo).addHistory(any(ChangeQueue.class), any(ChangeQueue.class));
+    }
+
+    @Test
+    public void testResnipeDiscards() throws InterruptedException
+    {
+        final SnipePipeline.Snipe first = this.pipeline.begin(this.player);
+        final StagedWorld staged = first.createWorld(this.world, this.tick);
+        // the undo history is read while this thread is blocked, so it must already be captured
+        staged.prefetch(new Vector3i(0, 0, 0), new Vector3i(7, 7, 7));
+        final CountDownLatch flushed = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        this.pipeline.evaluate(first, new Runnable()
+        {
+
+            @Override
+            public void run()
+            {
+                cuboid(staged, 4, 4, 4, 2, SnipePipelineTest.this.water).flush();
+                flushed.countDown();
+                try
+                {
+                    release.await();
+                } catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                }
+            }
+
+        }, null);
+        assertTrue(flushed.await(5, TimeUnit.SECONDS));
+        assertEquals(1, staged.getStagedChanges().size());
+
+        SnipePipeline.Snipe second = this.pipeline.begin(this.player);
+        assertTrue(first.isCancelled());
+        assertFalse(second.isCancelled());
+        assertEquals(0, staged.getStagedChanges().size());
+        this.pipeline.evaluate(second, new Runnable()
+        {
+
+            @Override
+            public void run()
+            {
+            }
+
+        }, null);
+        drain();
+
+        verify(this.player, never()).addPending(any(ChangeQueue.class));
+        verify(this.undo, never()).addHistory(any(ChangeQueue.class), any(ChangeQueue.class));
+    }
+
+    @Test
+    public void testWritesRunOnTick() throws InterruptedException
+    {
+        SnipePipeline.Snipe snipe = this.pipeline.begin(this.player);
+        final StagedWorld staged = snipe.createWorld(this.world, this.tick);
+        this.pipeline.evaluate(snipe, new Runnable()
+        {
+
+            @Override
+            public void run()
+            {
+                staged.setBlock(SnipePipelineTest.this.stone, 1, 1, 1);
+            }
+
+        }, null);
+        drain();
+
+        assertSame(this.stone, this.world.getBlock(1, 1, 1).get().getMaterial());
+    }
+
+    @Test
+    public void testLargeReadIsSplit() throws InterruptedException
+    {
+        // 272 x 64 x 256 positions, more than a prefetch may hold
+        MemoryWorld large = new MemoryWorld(this.context, "large", new Vector3i(16, 16, 16), new Vector3i(17, 4, 16));
+        large.setBlock(this.stone, 270, 63, 200);
+        SnipePipeline.Snipe snipe = this.pipeline.begin(this.player);
+        final StagedWorld staged = snipe.createWorld(large, this.tick);
+        staged.prefetch(new Vector3i(0, 0, 0), new Vector3i(271, 63, 255));
+        assertEquals(0, staged.getSnapshotCount());
+        // the top layer of the world is included in a prefetch
+        staged.prefetch(new Vector3i(0, 48, 0), new Vector3i(7, 100, 7));
+
+        final AtomicInteger top = new AtomicInteger(-1);
+        final AtomicInteger read = new AtomicInteger();
+        final AtomicInteger found = new AtomicInteger();
+        final AtomicInteger height = new AtomicInteger();
+        this.pipeline.evaluate(snipe, new Runnable()
+        {
+
+            @Override
+            public void run()
+            {
+                staged.getBlock(3, 63, 3);
+                top.set(staged.getCaptureCount());
+                staged.readRegion(new Vector3i(0, 0, 0), new Vector3i(271, 63, 255), new MaterialSink()
+                {
+
+                    @Override
+                    public void accept(int x, int y, int z, Material material)
+                    {
+                        read.incrementAndGet();
+                        if (material == SnipePipelineTest.this.stone)
+                        {
+                            found.incrementAndGet();
+                        }
+                    }
+
+                });
+                height.set(staged.getHeightmap().getHighestNonAir(270, 200));
+            }
+
+        }, null);
+        drain();
+
+        assertEquals(0, top.get());
+        assertEquals(272 * 64 * 256, read.get());
+        assertEquals(1, found.get());
+        // 1088 chunks of 4096 positions, captured at most 256 chunks at a time
+        assertEquals(5, staged.getCaptureCount());
+        // the heights of the view are read from its own snapshots
+        assertEquals(63, height.get());
+        assertNotSame(large.getHeightmap(), staged.getHeightmap());
+    }
+
+    @Test
+    public void testDeferredReadsAreBatched() throws InterruptedException
+    {
+        MemoryWorld large = new MemoryWorld(this.context, "large", new Vector3i(16, 16, 16), new Vector3i(17, 4, 16));
+        large.setBlock(this.stone, 40, 20, 40);
+        SnipePipeline.Snipe snipe = this.pipeline.begin(this.player);
+        final StagedWorld staged = snipe.createWorld(large, this.tick);
+        staged.prefetch(new Vector3i(0, 0, 0), new Vector3i(271, 63, 255));
+        assertEquals(0, staged.getSnapshotCount());
+
+        final AtomicInteger captures = new AtomicInteger(-1);
+        final AtomicReference<Material> found = new AtomicReference<Material>();
+        this.pipeline.evaluate(snipe, new Runnable()
+        {
+
+            @Override
+            public void run()
+            {
+                for (int x = 0; x < 2; x++)
+                {
+                    for (int y = 0; y < 2; y++)
+                    {
+                        for (int z = 0; z < 2; z++)
+                        {
+                            staged.getBlock(24 + x * 16, 8 + y * 16, 24 + z * 16);
+                        }
+                    }
+                }
+                found.set(staged.getBlock(40, 20, 40).get().getMaterial());
+                captures.set(staged.getCaptureCount());
+            }
+
+        }, null);
+        drain();
+
+        // the chunks around the first read were captured with it
+        assertEquals(1, captures.get());
+        assertSame(this.stone, found.get());
+    }
+
+}
@@ -0,0 +1,139 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 The Voxel Plugineering Team
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.voxelplugineering.voxelsniper;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.mock;
+
+import org.junit.Test;
+
+import com.voxelplugineering.voxelsniper.shape.ComplexShape;
+import com.voxelplugineering.voxelsniper.shape.SparseOctreeMaterialShape;
+import com.voxelplugineering.voxelsniper.shape.SparseOctreeShape;
+import com.voxelplugineering.voxelsniper.shape.csg.EllipsoidShape;
+import com.voxelplugineering.voxelsniper.util.math.Vector3i;
+import com.voxelplugineering.voxelsniper.world.material.Material;
+
+/**
+ * A set of tests for the {@link SparseOctreeShape} and {@link SparseOctreeMaterialShape}.
+ */
+@SuppressWarnings({ "checkstyle:javadocmethod", "javadoc" })
+public class SparseOctreeShapeTest
+{
+
+    @Test
+    public void testBasic()
+    {
+        SparseOctreeShape shape = new SparseOctreeShape(5, 70, 3, new Vector3i(0, 0, 0));
+        assertEquals(false, shape.get(4, 69, 2, false));
+        shape.set(4, 69, 2, false);
+        assertEquals(true, shape.get(4, 69, 2, false));
+        assertEquals(1, shape.cardinality());
+        shape.unset(4, 69, 2, false);
+        assertEquals(false, shape.get(4, 69, 2, false));
+        assertEquals(0, shape.getNodeCount());
+    }
+
+    @Test(expected = ArrayIndexOutOfBoundsException.class)
+    public void testBasicOOB()
+    {
+        SparseOctreeShape shape = new SparseOctreeShape(5, 5, 5, new Vector3i(0, 0, 0));
+        shape.set(5, 0, 0, false);
+    }
+
+    @Test
+    public void testCollapse()
+    {
+        SparseOctreeShape shape = new SparseOctreeShape(8, 8, 8, new Vector3i(0, 0, 0));
+        for (int x = 0; x < 8; x++)
+        {
+            for (int y = 0; y < 8; y++)
+            {
+                for (int z = 0; z < 8; z++)
+                {
+                    shape.set(x, y, z, false);
+                }
+            }
+        }
+        assertEquals(512, shape.cardinality());
+        assertEquals(0, shape.getNodeCount());
+    }
+
+    @Test
+    public void testRoundTrip()
+    {
+        ComplexShape source = new ComplexShape(new EllipsoidShape(9, 9, 9, new Vector3i(9, 9, 9)));
+        SparseOctreeShape shape = new SparseOctreeShape(source);
+        assertEquals(source.cardinality(), shape.cardinality());
+        ComplexShape result = shape.toComplexShape();
+        for (int x = 0; x < source.getWidth(); x++)
+        {
+            for (int y = 0; y < source.getHeight(); y++)
+            {
+                for (int z = 0; z < source.getLength(); z++)
+                {
+                    assertEquals(source.get(x, y, z, false), shape.get(x, y, z, false));
+                    assertEquals(source.get(x, y, z, false), result.get(x, y, z, false));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testMaterials()
+    {
+        Material air = mock(Material.class);
+        Material stone = mock(Material.class);
+        ComplexShape source = new ComplexShape(6, 6, 6);
+        source.set(1, 2, 3, false);
+        source.set(5, 5, 5, false);
+        SparseOctreeMaterialShape shape = new SparseOctreeMaterialShape(source, air);
+        assertEquals(air, shape.getMaterial(1, 2, 3, false).get());
+        assertEquals(false, shape.getMaterial(0, 0, 0, false).isPresent());
+
+        shape.setMaterial(5, 5, 5, false, stone);
+        assertEquals(stone, shape.getMaterial(5, 5, 5, false).get());
+
+        shape.setDefaultMaterial(stone);
+        assertEquals(stone, shape.getMaterial(5, 5, 5, false).get());
+        assertEquals(air, shape.getMaterial(1, 2, 3, false).get());
+
+        shape.flood(air);
+        assertEquals(air, shape.getMaterial(5, 5, 5, false).get());
+        assertEquals(false, shape.get(0, 0, 0, false));
+    }
+
+    @Test
+    public void testUpperMaterialData()
+    {
+        SparseOctreeMaterialShape shape = new SparseOctreeMaterialShape(16, 16, 2, new Vector3i(0, 0, 0), mock(Material.class));
+        for (int i = 0; i < 300; i++)
+        {
+            shape.setMaterial(i % 16, (i / 16) % 16, i / 256, false, mock(Material.class));
+            assertEquals(shape.hasExtraData(), shape.getUpperMaterialData() != null);
+        }
+        assertEquals(true, shape.hasExtraData());
+    }
+
+}
@@ -0,0 +1,117 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 The Voxel Plugineering Team
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.voxelplugineering.voxelsniper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import com.voxelplugineering.voxelsniper.util.Direction;
+import com.voxelplugineering.voxelsniper.util.math.Vector3i;
+import com.voxelplugineering.voxelsniper.world.BlockCursor;
+import com.voxelplugineering.voxelsniper.world.MaterialSink;
+import com.voxelplugineering.voxelsniper.world.World;
+import com.voxelplugineering.voxelsniper.world.WorldSnapshot;
+import com.voxelplugineering.voxelsniper.world.material.Material;
+
+/**
+ * A set of tests for the {@link WorldSnapshot}.
+ */
+@SuppressWarnings({ "checkstyle:javadocmethod", "javadoc" })
+public class WorldSnapshotTest
+{
+
+    @Test
+    public void testCapture()
+    {
+        final Material stone = mock(Material.class);
+        final Material dirt = mock(Material.class);
+        World world = mock(World.class);
+        // a world with stone below y = 0 and dirt above, with nothing at x = 2
+        doAnswer(new Answer<Void>()
+        {
+
+            @Override
+            public Void answer(InvocationOnMock invocation)
+            {
+                Vector3i min = (Vector3i) invocation.getArguments()[0];
+                Vector3i max = (Vector3i) invocation.getArguments()[1];
+                MaterialSink sink = (MaterialSink) invocation.getArguments()[2];
+                for (int x = min.getX(); x <= max.getX(); x++)
+                {
+                    for (int y = min.getY(); y <= max.getY(); y++)
+                    {
+                        for (int z = min.getZ(); z <= max.getZ(); z++)
+                        {
+                            if (x != 2)
+                            {
+                                sink.accept(x, y, z, y < 0 ? stone : dirt);
+                            }
+                        }
+                    }
+                }
+                return null;
+            }
+
+        }).when(world).readRegion(any(Vector3i.class), any(Vector3i.class), any(MaterialSink.class));
+
+        WorldSnapshot snapshot = WorldSnapshot.capture(world, new Vector3i(-3, -3, -3), new Vector3i(3, 3, 3));
+        assertEquals(stone, snapshot.getMaterial(0, -1, 0).get());
+        assertEquals(dirt, snapshot.getMaterial(-3, 3, 3).get());
+        assertEquals(dirt, snapshot.getBlock(1, 0, 1).get().getMaterial());
+        assertEquals(new Vector3i(1, 0, 1), snapshot.getBlock(1, 0, 1).get().getPosition());
+        assertFalse(snapshot.getMaterial(2, 0, 0).isPresent());
+        assertFalse(snapshot.getMaterial(4, 0, 0).isPresent());
+        assertFalse(snapshot.getBlock(0, -4, 0).isPresent());
+        assertTrue(snapshot.contains(3, 3, 3));
+        assertFalse(snapshot.contains(3, 4, 3));
+        assertEquals(new Vector3i(3, 3, 3), snapshot.getMaxBound());
+
+        BlockCursor cursor = snapshot.createCursor();
+        assertEquals(stone, cursor.moveTo(0, -1, 0).getMaterial());
+        assertEquals(dirt, cursor.step(Direction.UP).getMaterial());
+        assertEquals(0, cursor.getY());
+        assertFalse(cursor.offset(2, 0, 0).isPresent());
+        assertNull(cursor.getMaterial());
+        assertEquals(-1, cursor.getMaterialId());
+        assertTrue(cursor.step(Direction.WEST).toBlock().isPresent());
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testReadOnly()
+    {
+        World world = mock(World.class);
+        WorldSnapshot snapshot = WorldSnapshot.capture(world, Vector3i.ZERO, Vector3i.ZERO);
+        snapshot.setBlock(mock(Material.class), 0, 0, 0);
+    }
+
+}
@@ -24,9 +24,15 @@
 package com.voxelplugineering.voxelsniper.util;
 
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
 
+import java.util.Map;
+
+import com.google.common.base.Optional;
+import com.voxelplugineering.voxelsniper.service.MaterialRegistryService;
 import com.voxelplugineering.voxelsniper.service.config.Configuration;
 import com.voxelplugineering.voxelsniper.util.Context;
+import com.voxelplugineering.voxelsniper.world.material.Material;
 
 /**
  * A util for creating mock {@link Context}s.
@@ -62,4 +68,25 @@ public class ContextTestUtil
         }
         return c;
     }
+
+    /**
+     * Creates a mock context with a started material registry holding the given materials. The
+     * first material is the default material and the world heights are left to the platform.
+     */
+    public static Context createWithMaterials(Map<String, Material> materials)
+    {
+        Context c = create();
+        Configuration conf = c.getRequired(Configuration.class);
+        when(conf.get("defaultMaterialName", String.class)).thenReturn(Optional.of(materials.keySet().iterator().next()));
+        when(conf.get("minimumWorldDepth", int.class)).thenReturn(Optional.<Integer> absent());
+        when(conf.get("maximumWorldHeight", int.class)).thenReturn(Optional.<Integer> absent());
+        MaterialRegistryService<Object> registry = new MaterialRegistryService<Object>(c);
+        registry.start();
+        for (Map.Entry<String, Material> material : materials.entrySet())
+        {
+            registry.registerMaterial(material.getKey(), new Object(), material.getValue());
+        }
+        c.put(registry);
+        return c;
+    }
 }